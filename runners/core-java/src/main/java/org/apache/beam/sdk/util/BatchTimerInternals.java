@@ -25,7 +25,9 @@ import com.google.common.base.MoreObjects;
 
 import org.joda.time.Instant;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Set;
 
@@ -124,18 +126,20 @@ public class BatchTimerInternals implements TimerInternals {
   private void advance(ReduceFnRunner<?, ?, ?, ?> runner, Instant newTime, TimeDomain domain)
       throws Exception {
     PriorityQueue<TimerData> timers = queue(domain);
-    boolean shouldFire = false;
+    List<TimerData> readyTimers;
 
     do {
-      TimerData timer = timers.peek();
-      // Timers fire if the new time is ahead of the timer
-      shouldFire = timer != null && newTime.isAfter(timer.getTimestamp());
-      if (shouldFire) {
+      // Timers fire if the new time is ahead of the timer. Fire all of them together so that the
+      // runner can prefetch the state of their windows, then fire any timers they set.
+      readyTimers = new ArrayList<>();
+      while (!timers.isEmpty() && newTime.isAfter(timers.peek().getTimestamp())) {
         // Remove before firing, so that if the trigger adds another identical
         // timer we don't remove it.
-        timers.remove();
-        runner.onTimer(timer);
+        readyTimers.add(timers.remove());
       }
-    } while (shouldFire);
+      if (!readyTimers.isEmpty()) {
+        runner.onTimers(readyTimers);
+      }
+    } while (!readyTimers.isEmpty());
   }
 }
@@ -49,6 +49,10 @@ public abstract class GroupAlsoByWindowsDoFn<K, InputT, OutputT, W extends Bound
    * Create the default {@link GroupAlsoByWindowsDoFn}, which uses window sets to implement the
    * grouping.
    *
+   * <p>For non-merging windows with the default trigger, this is a
+   * {@link GroupAlsoByWindowsViaIteratorsDoFn}, which groups the values without any state or
+   * timers.
+   *
    * @param windowingStrategy The window function and trigger to use for grouping
    * @param inputCoder the input coder to use
    */
@@ -57,6 +61,9 @@ public abstract class GroupAlsoByWindowsDoFn<K, InputT, OutputT, W extends Bound
           WindowingStrategy<?, W> windowingStrategy,
           StateInternalsFactory<K> stateInternalsFactory,
           Coder<V> inputCoder) {
+    if (GroupAlsoByWindowsViaIteratorsDoFn.isSupported(windowingStrategy)) {
+      return new GroupAlsoByWindowsViaIteratorsDoFn<K, V, W>(windowingStrategy);
+    }
     return new GroupAlsoByWindowsViaOutputBufferDoFn<>(
         windowingStrategy, stateInternalsFactory, SystemReduceFn.<K, V, W>buffering(inputCoder));
   }
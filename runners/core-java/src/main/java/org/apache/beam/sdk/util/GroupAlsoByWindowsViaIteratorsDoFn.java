@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.beam.sdk.transforms.OldDoFn;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.DefaultTrigger;
+import org.apache.beam.sdk.transforms.windowing.OutputTimeFn;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo.Timing;
+import org.apache.beam.sdk.transforms.windowing.Window.ClosingBehavior;
+import org.apache.beam.sdk.values.KV;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A "fast path" batch {@link GroupAlsoByWindowsDoFn} for non-merging windows and the
+ * {@link DefaultTrigger}, which buffers the values of each key into their windows with a single
+ * pass over the timestamp-ordered input, without any state or timer machinery.
+ *
+ * <p>Because the input is sorted by timestamp, a window can be emitted as soon as an element with
+ * a timestamp after the end of that window is seen, so only the windows that contain the current
+ * element are buffered. Each window produces the single pane that {@link ReduceFnRunner} would
+ * produce in batch: an {@link Timing#ON_TIME} pane, which is also the last pane if the
+ * allowed lateness is zero.
+ *
+ * <p>Values assigned to a window that ends before their own timestamp, which the
+ * {@link org.apache.beam.sdk.transforms.windowing.WindowFn WindowFns} provided by the SDK never
+ * do, may arrive after that window has been emitted, and are dropped.
+ */
+@SystemDoFnInternal
+public class GroupAlsoByWindowsViaIteratorsDoFn<K, V, W extends BoundedWindow>
+    extends GroupAlsoByWindowsDoFn<K, V, Iterable<V>, W> {
+
+  private final WindowingStrategy<?, W> strategy;
+  private final PaneInfo pane;
+
+  /**
+   * Returns whether a {@link GroupAlsoByWindowsViaIteratorsDoFn} produces the same output as
+   * {@link GroupAlsoByWindowsViaOutputBufferDoFn} for the provided {@link WindowingStrategy}.
+   */
+  public static boolean isSupported(WindowingStrategy<?, ?> strategy) {
+    return strategy.getWindowFn().isNonMerging()
+        && strategy.getTrigger().getSpec() instanceof DefaultTrigger
+        // With a non-zero allowed lateness, ReduceFnRunner may emit a trailing empty pane
+        && (strategy.getAllowedLateness().equals(Duration.ZERO)
+            || strategy.getClosingBehavior() == ClosingBehavior.FIRE_IF_NON_EMPTY);
+  }
+
+  public GroupAlsoByWindowsViaIteratorsDoFn(WindowingStrategy<?, W> strategy) {
+    checkArgument(isSupported(strategy),
+        "%s does not support the windowing strategy %s",
+        getClass().getSimpleName(),
+        strategy);
+    this.strategy = strategy;
+    this.pane = strategy.getAllowedLateness().equals(Duration.ZERO)
+        ? PaneInfo.ON_TIME_AND_ONLY_FIRING
+        : PaneInfo.createPane(true, false, Timing.ON_TIME, 0, 0);
+  }
+
+  @Override
+  public void processElement(
+      OldDoFn<KV<K, Iterable<WindowedValue<V>>>, KV<K, Iterable<V>>>.ProcessContext c)
+          throws Exception {
+    K key = c.element().getKey();
+    Map<W, WindowValues<V>> openWindows = new HashMap<>();
+    PriorityQueue<W> windowsByEnd = new PriorityQueue<>(11, new Comparator<W>() {
+      @Override
+      public int compare(W w1, W w2) {
+        return w1.maxTimestamp().compareTo(w2.maxTimestamp());
+      }
+    });
+
+    for (WindowedValue<V> value : c.element().getValue()) {
+      Instant timestamp = value.getTimestamp();
+      // The input is sorted by timestamp, so no later value can belong to these windows.
+      emitWindowsEndingBefore(c, key, timestamp, openWindows, windowsByEnd);
+
+      for (BoundedWindow untypedWindow : value.getWindows()) {
+        @SuppressWarnings("unchecked")
+        W window = (W) untypedWindow;
+        if (window.maxTimestamp().isBefore(timestamp)) {
+          droppedDueToClosedWindow.addValue(1L);
+          continue;
+        }
+        WindowValues<V> windowValues = openWindows.get(window);
+        if (windowValues == null) {
+          windowValues = new WindowValues<>();
+          openWindows.put(window, windowValues);
+          windowsByEnd.add(window);
+        }
+        windowValues.add(
+            value.getValue(),
+            strategy.getOutputTimeFn().assignOutputTime(timestamp, window),
+            strategy.getOutputTimeFn());
+      }
+    }
+
+    // All of the values for this key have been seen, so every remaining window is complete.
+    while (!windowsByEnd.isEmpty()) {
+      W window = windowsByEnd.poll();
+      emitWindow(c, key, window, openWindows.remove(window));
+    }
+  }
+
+  private void emitWindowsEndingBefore(
+      OldDoFn<KV<K, Iterable<WindowedValue<V>>>, KV<K, Iterable<V>>>.ProcessContext c,
+      K key,
+      Instant timestamp,
+      Map<W, WindowValues<V>> openWindows,
+      PriorityQueue<W> windowsByEnd) {
+    while (!windowsByEnd.isEmpty() && windowsByEnd.peek().maxTimestamp().isBefore(timestamp)) {
+      W window = windowsByEnd.poll();
+      emitWindow(c, key, window, openWindows.remove(window));
+    }
+  }
+
+  private void emitWindow(
+      OldDoFn<KV<K, Iterable<WindowedValue<V>>>, KV<K, Iterable<V>>>.ProcessContext c,
+      K key,
+      W window,
+      WindowValues<V> windowValues) {
+    // As in WatermarkHold, an output time beyond the end of the window is clipped to it.
+    Instant outputTime = windowValues.outputTime.isAfter(window.maxTimestamp())
+        ? window.maxTimestamp()
+        : windowValues.outputTime;
+    c.windowingInternals().outputWindowedValue(
+        KV.<K, Iterable<V>>of(key, windowValues.values),
+        outputTime,
+        Collections.singletonList(window),
+        pane);
+  }
+
+  /**
+   * The values buffered for a single open window, and the combined output time of those values.
+   */
+  private static class WindowValues<T> {
+    private final List<T> values = new ArrayList<>();
+    private Instant outputTime;
+
+    private void add(T value, Instant valueOutputTime, OutputTimeFn<?> outputTimeFn) {
+      values.add(value);
+      outputTime = outputTime == null
+          ? valueOutputTime
+          : outputTimeFn.combine(outputTime, valueOutputTime);
+    }
+  }
+}
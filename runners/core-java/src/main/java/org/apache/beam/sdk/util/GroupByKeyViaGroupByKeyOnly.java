@@ -256,14 +256,12 @@ public class GroupByKeyViaGroupByKeyOnly<K, V>
     }
 
     private <W extends BoundedWindow>
-        GroupAlsoByWindowsViaOutputBufferDoFn<K, V, Iterable<V>, W> groupAlsoByWindowsFn(
+        GroupAlsoByWindowsDoFn<K, V, Iterable<V>, W> groupAlsoByWindowsFn(
             WindowingStrategy<?, W> strategy,
             StateInternalsFactory<K> stateInternalsFactory,
             Coder<V> inputIterableElementValueCoder) {
-      return new GroupAlsoByWindowsViaOutputBufferDoFn<K, V, Iterable<V>, W>(
-          strategy,
-          stateInternalsFactory,
-          SystemReduceFn.<K, V, W>buffering(inputIterableElementValueCoder));
+      return GroupAlsoByWindowsDoFn.<K, V, W>createDefault(
+          strategy, stateInternalsFactory, inputIterableElementValueCoder);
     }
   }
 }
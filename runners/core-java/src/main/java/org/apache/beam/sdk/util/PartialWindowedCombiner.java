@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.transforms.Combine.KeyedCombineFn;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.OutputTimeFn;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.WindowFn;
+import org.apache.beam.sdk.values.KV;
+
+import org.joda.time.Instant;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Partially combines the values of each key and window on the sending side of a
+ * {@code Combine.PerKey}, so that only one accumulator per key and window is shuffled to the
+ * {@link ReduceFnRunner}, which merges the accumulators with a
+ * {@link SystemReduceFn#combiningAccumulators} {@link ReduceFn}.
+ *
+ * <p>For a merging {@link WindowFn}, such as
+ * {@link org.apache.beam.sdk.transforms.windowing.Sessions}, the windows of each key are merged
+ * locally when the partial results are flushed, and the accumulators of merged windows are merged.
+ * The merged windows are a valid input for further merging, so {@link ReduceFnRunner} produces
+ * the same windows as if each value had been sent individually.
+ *
+ * <p>A {@link PartialWindowedCombiner} holds at most one accumulator for each key and window that
+ * has been added since the last {@link #flush}. Callers should flush it when {@link #isFull}
+ * returns {@code true}, and at the end of each bundle.
+ *
+ * @param <K> the type of key being combined
+ * @param <InputT> the type of input values
+ * @param <AccumT> the type of accumulators
+ * @param <W> the type of windows
+ */
+public class PartialWindowedCombiner<K, InputT, AccumT, W extends BoundedWindow> {
+  private final Coder<K> keyCoder;
+  private final KeyedCombineFn<K, InputT, AccumT, ?> combineFn;
+  private final WindowingStrategy<?, W> strategy;
+  private final int maxAccumulators;
+
+  /** The partial results for each key, by the structural value of the key. */
+  private final Map<Object, KeyAccumulators> keyAccumulators = new HashMap<>();
+  private int numAccumulators;
+
+  public PartialWindowedCombiner(
+      Coder<K> keyCoder,
+      KeyedCombineFn<K, InputT, AccumT, ?> combineFn,
+      WindowingStrategy<?, W> strategy,
+      int maxAccumulators) {
+    checkArgument(maxAccumulators > 0,
+        "maxAccumulators must be positive, but was %s", maxAccumulators);
+    this.keyCoder = keyCoder;
+    this.combineFn = combineFn;
+    this.strategy = strategy;
+    this.maxAccumulators = maxAccumulators;
+  }
+
+  /**
+   * Adds the value of the provided element to the accumulator of its key in each of its windows.
+   */
+  public void add(WindowedValue<KV<K, InputT>> element) {
+    add(element, BoundedWindow.TIMESTAMP_MIN_VALUE);
+  }
+
+  /**
+   * Adds the value of the provided element to the accumulator of its key in each of its windows
+   * that has not expired with respect to the provided input watermark.
+   *
+   * <p>The {@link ReduceFnRunner} drops a value that is too late for its window. Once the window of
+   * a late value has been merged into a window which has not expired, the value can no longer be
+   * dropped, so it must not be added.
+   */
+  public void add(WindowedValue<KV<K, InputT>> element, Instant inputWatermark) {
+    K key = element.getValue().getKey();
+    Object structuralKey;
+    try {
+      structuralKey = keyCoder.structuralValue(key);
+    } catch (Exception e) {
+      throw new IllegalArgumentException(
+          "Could not encode a key with its provided coder " + keyCoder.getClass().getSimpleName(),
+          e);
+    }
+    KeyAccumulators accumulators = keyAccumulators.get(structuralKey);
+    if (accumulators == null) {
+      accumulators = new KeyAccumulators(key);
+      keyAccumulators.put(structuralKey, accumulators);
+    }
+    for (BoundedWindow untypedWindow : element.getWindows()) {
+      @SuppressWarnings("unchecked")
+      W window = (W) untypedWindow;
+      if (window.maxTimestamp().plus(strategy.getAllowedLateness()).isBefore(inputWatermark)) {
+        continue;
+      }
+      accumulators.add(window, element.getValue().getValue(), element.getTimestamp());
+    }
+  }
+
+  /**
+   * Returns whether the number of accumulators held has reached the maximum this
+   * {@link PartialWindowedCombiner} was created with.
+   */
+  public boolean isFull() {
+    return numAccumulators >= maxAccumulators;
+  }
+
+  /**
+   * Returns the accumulators of each key and window added since the last call to {@link #flush},
+   * and clears them. Each accumulator is in a single window, and has the combined output time of
+   * the values it contains as its timestamp.
+   */
+  public List<WindowedValue<KV<K, AccumT>>> flush() throws Exception {
+    List<WindowedValue<KV<K, AccumT>>> partials = new ArrayList<>(numAccumulators);
+    for (KeyAccumulators accumulators : keyAccumulators.values()) {
+      if (!strategy.getWindowFn().isNonMerging()) {
+        accumulators.mergeWindows();
+      }
+      for (Map.Entry<W, WindowAccumulator> window : accumulators.windows.entrySet()) {
+        partials.add(WindowedValue.of(
+            KV.of(accumulators.key, combineFn.compact(accumulators.key, window.getValue().accum)),
+            window.getValue().outputTime,
+            window.getKey(),
+            PaneInfo.NO_FIRING));
+      }
+    }
+    keyAccumulators.clear();
+    numAccumulators = 0;
+    return partials;
+  }
+
+  /**
+   * The accumulator of a key in a single window, and the combined output time of its values.
+   */
+  private class WindowAccumulator {
+    private AccumT accum;
+    private Instant outputTime;
+
+    private WindowAccumulator(AccumT accum, Instant outputTime) {
+      this.accum = accum;
+      this.outputTime = outputTime;
+    }
+  }
+
+  /**
+   * The accumulators of a single key.
+   */
+  private class KeyAccumulators {
+    private final K key;
+    private final Map<W, WindowAccumulator> windows = new HashMap<>();
+
+    private KeyAccumulators(K key) {
+      this.key = key;
+    }
+
+    private void add(W window, InputT value, Instant timestamp) {
+      OutputTimeFn<? super W> outputTimeFn = strategy.getOutputTimeFn();
+      Instant outputTime = outputTimeFn.assignOutputTime(timestamp, window);
+      WindowAccumulator accumulator = windows.get(window);
+      if (accumulator == null) {
+        accumulator = new WindowAccumulator(combineFn.createAccumulator(key), outputTime);
+        windows.put(window, accumulator);
+        numAccumulators++;
+      } else {
+        accumulator.outputTime = outputTimeFn.combine(accumulator.outputTime, outputTime);
+      }
+      accumulator.accum = combineFn.addInput(key, accumulator.accum, value);
+    }
+
+    private void mergeWindows() throws Exception {
+      if (windows.size() < 2) {
+        return;
+      }
+      @SuppressWarnings("unchecked")
+      WindowFn<Object, W> windowFn = (WindowFn<Object, W>) strategy.getWindowFn();
+      windowFn.mergeWindows(windowFn.new MergeContext() {
+        @Override
+        public Collection<W> windows() {
+          return new ArrayList<>(windows.keySet());
+        }
+
+        @Override
+        public void merge(Collection<W> toBeMerged, W mergeResult) {
+          List<AccumT> accums = new ArrayList<>(toBeMerged.size());
+          List<Instant> outputTimes = new ArrayList<>(toBeMerged.size());
+          for (W window : toBeMerged) {
+            WindowAccumulator accumulator = windows.remove(window);
+            accums.add(accumulator.accum);
+            outputTimes.add(accumulator.outputTime);
+          }
+          WindowAccumulator merged = new WindowAccumulator(
+              combineFn.mergeAccumulators(key, accums),
+              strategy.getOutputTimeFn().merge(mergeResult, outputTimes));
+          windows.put(mergeResult, merged);
+          numAccumulators -= toBeMerged.size() - 1;
+        }
+      });
+    }
+  }
+}
@@ -59,6 +59,8 @@ import java.util.Set;
 
 import javax.annotation.Nullable;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
 /**
  * Manages the execution of a {@link ReduceFn} after a {@link GroupByKeyOnly} has partitioned the
  * {@link PCollection} by key.
@@ -250,7 +252,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
 
   @VisibleForTesting
   boolean isFinished(W window) {
-    return triggerRunner.isClosed(contextFactory.base(window, StateStyle.DIRECT).state());
+    return triggerRunner.isClosed(window, contextFactory.base(window, StateStyle.DIRECT).state());
   }
 
   @VisibleForTesting
@@ -311,6 +313,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
   }
 
   public void persist() {
+    triggerRunner.persist();
     activeWindows.persist();
   }
 
@@ -497,7 +500,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     for (W window : windows) {
       ReduceFn<K, InputT, OutputT, W>.ProcessValueContext directContext = contextFactory.forValue(
           window, value.getValue(), value.getTimestamp(), StateStyle.DIRECT);
-      if (triggerRunner.isClosed(directContext.state())) {
+      if (triggerRunner.isClosed(window, directContext.state())) {
         // This window has already been closed.
         droppedDueToClosedWindow.addValue(1L);
         WindowTracing.debug(
@@ -556,16 +559,49 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     return triggerableWindows;
   }
 
+  /**
+   * Called when a batch of end-of-window, garbage collection, or trigger-specific timers fire.
+   *
+   * <p>The state each timer may need is prefetched for all of their windows before any timer is
+   * processed, so that the reads can be batched, rather than each timer waiting on its own reads.
+   * The timers are then processed in the order of {@code timers}, which is iterated twice.
+   */
+  public void onTimers(Iterable<TimerData> timers) throws Exception {
+    Set<W> windows = new HashSet<>();
+    for (TimerData timer : timers) {
+      W window = windowForTimer(timer);
+      if (windows.add(window) && activeWindows.isActive(window)) {
+        prefetchOnTimer(window);
+      }
+    }
+    for (TimerData timer : timers) {
+      onTimer(timer);
+    }
+  }
+
+  /**
+   * Prefetch the state read when a timer fires for {@code window}, which is ACTIVE.
+   */
+  @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
+      justification = "prefetch side effect")
+  private void prefetchOnTimer(W window) {
+    ReduceFn<K, InputT, OutputT, W>.Context directContext =
+        contextFactory.base(window, StateStyle.DIRECT);
+    ReduceFn<K, InputT, OutputT, W>.Context renamedContext =
+        contextFactory.base(window, StateStyle.RENAMED);
+    triggerRunner.prefetchShouldFire(window, directContext.state());
+    triggerRunner.prefetchOnFire(window, directContext.state());
+    watermarkHold.prefetchExtract(renamedContext);
+    paneInfoTracker.getNextPaneInfo(directContext, false).readLater();
+    nonEmptyPanes.isEmpty(renamedContext.state()).readLater();
+    reduceFn.prefetchOnTrigger(directContext.state());
+  }
+
   /**
    * Called when an end-of-window, garbage collection, or trigger-specific timer fires.
    */
   public void onTimer(TimerData timer) throws Exception {
-    // Which window is the timer for?
-    checkArgument(timer.getNamespace() instanceof WindowNamespace,
-        "Expected timer to be in WindowNamespace, but was in %s", timer.getNamespace());
-    @SuppressWarnings("unchecked")
-    WindowNamespace<W> windowNamespace = (WindowNamespace<W>) timer.getNamespace();
-    W window = windowNamespace.getWindow();
+    W window = windowForTimer(timer);
     ReduceFn<K, InputT, OutputT, W>.Context directContext =
         contextFactory.base(window, StateStyle.DIRECT);
     ReduceFn<K, InputT, OutputT, W>.Context renamedContext =
@@ -577,7 +613,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     // active.
     // So we must take conjunction of activeWindows and triggerRunner state.
     boolean windowIsActiveAndOpen =
-        activeWindows.isActive(window) && !triggerRunner.isClosed(directContext.state());
+        activeWindows.isActive(window) && !triggerRunner.isClosed(window, directContext.state());
 
     if (!windowIsActiveAndOpen) {
       WindowTracing.debug(
@@ -652,6 +688,17 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     }
   }
 
+  /**
+   * Returns the window {@code timer} is for.
+   */
+  private W windowForTimer(TimerData timer) {
+    checkArgument(timer.getNamespace() instanceof WindowNamespace,
+        "Expected timer to be in WindowNamespace, but was in %s", timer.getNamespace());
+    @SuppressWarnings("unchecked")
+    WindowNamespace<W> windowNamespace = (WindowNamespace<W>) timer.getNamespace();
+    return windowNamespace.getWindow();
+  }
+
   /**
    * Clear all the state associated with {@code context}'s window.
    * Should only be invoked if we know all future elements for this window will be considered
@@ -711,7 +758,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
     // Don't need to track address state windows anymore.
     activeWindows.remove(directContext.window());
     // We'll never need to test for the trigger being closed again.
-    triggerRunner.clearFinished(directContext.state());
+    triggerRunner.clearFinished(directContext.window(), directContext.state());
   }
 
   /** Should the reduce function state be cleared? */
@@ -741,7 +788,7 @@ public class ReduceFnRunner<K, InputT, OutputT, W extends BoundedWindow> {
 
     // Inform the trigger of the transition to see if it is finished
     triggerRunner.onFire(directContext.window(), directContext.timers(), directContext.state());
-    boolean isFinished = triggerRunner.isClosed(directContext.state());
+    boolean isFinished = triggerRunner.isClosed(directContext.window(), directContext.state());
 
     // Will be able to clear all element state after triggering?
     boolean shouldDiscard = shouldDiscardAfterFiring(isFinished);
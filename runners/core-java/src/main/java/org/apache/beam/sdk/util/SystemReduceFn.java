@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.util;
 
+import static com.google.common.base.Preconditions.checkArgument;
 
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.transforms.Combine.CombineFn;
@@ -34,6 +35,8 @@ import org.apache.beam.sdk.util.state.StateMerging;
 import org.apache.beam.sdk.util.state.StateTag;
 import org.apache.beam.sdk.util.state.StateTags;
 
+import java.util.Arrays;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
@@ -103,6 +106,68 @@ public abstract class SystemReduceFn<K, InputT, AccumT, OutputT, W extends Bound
     };
   }
 
+  /**
+   * Create a factory that produces {@link SystemReduceFn} instances that combine accumulators
+   * produced by partially combining the input values with the provided {@link KeyedCombineFn},
+   * such as by a {@link PartialWindowedCombiner}.
+   *
+   * <p>When windows merge, the accumulators of the merged windows are merged, so a merging
+   * {@link org.apache.beam.sdk.transforms.windowing.WindowFn WindowFn} never needs to hold the
+   * individual input values.
+   */
+  public static <K, InputT, AccumT, OutputT, W extends BoundedWindow>
+      SystemReduceFn<K, AccumT, AccumT, OutputT, W> combiningAccumulators(
+          Coder<K> keyCoder, AppliedCombineFn<K, InputT, AccumT, OutputT> combineFn) {
+    checkArgument(combineFn.getFn() instanceof KeyedCombineFn,
+        "Only a %s can be combined from accumulators, but got %s",
+        KeyedCombineFn.class.getSimpleName(),
+        combineFn.getFn());
+    KeyedCombineFn<K, InputT, AccumT, OutputT> fn =
+        (KeyedCombineFn<K, InputT, AccumT, OutputT>) combineFn.getFn();
+    return combining(
+        keyCoder,
+        AppliedCombineFn.<K, AccumT, AccumT, OutputT>withAccumulatorCoder(
+            new MergingAccumulatorsFn<>(fn), combineFn.getAccumulatorCoder()));
+  }
+
+  /**
+   * A {@link KeyedCombineFn} whose inputs are the accumulators of another {@link KeyedCombineFn},
+   * which are added by merging them.
+   */
+  private static class MergingAccumulatorsFn<K, InputT, AccumT, OutputT>
+      extends KeyedCombineFn<K, AccumT, AccumT, OutputT> {
+    private final KeyedCombineFn<K, InputT, AccumT, OutputT> fn;
+
+    private MergingAccumulatorsFn(KeyedCombineFn<K, InputT, AccumT, OutputT> fn) {
+      this.fn = fn;
+    }
+
+    @Override
+    public AccumT createAccumulator(K key) {
+      return fn.createAccumulator(key);
+    }
+
+    @Override
+    public AccumT addInput(K key, AccumT accumulator, AccumT value) {
+      return fn.mergeAccumulators(key, Arrays.asList(accumulator, value));
+    }
+
+    @Override
+    public AccumT mergeAccumulators(K key, Iterable<AccumT> accumulators) {
+      return fn.mergeAccumulators(key, accumulators);
+    }
+
+    @Override
+    public OutputT extractOutput(K key, AccumT accumulator) {
+      return fn.extractOutput(key, accumulator);
+    }
+
+    @Override
+    public AccumT compact(K key, AccumT accumulator) {
+      return fn.compact(key, accumulator);
+    }
+  }
+
   private StateTag<? super K, ? extends CombiningState<InputT, OutputT>> bufferTag;
 
   public SystemReduceFn(
@@ -35,8 +35,11 @@ import org.joda.time.Instant;
 
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
@@ -54,6 +57,10 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
  *       (via {#link #clearFinished}) that it is no longer needed.</li>
  * </ul>
  *
+ * <p>The finished set of the whole trigger tree is a single {@link BitSet} per window. It is read
+ * at most once per window and cached until {@link #persist}, which writes each changed finished
+ * set once, however many elements, timers and merges touched the window in between.
+ *
  * <p>These responsibilities are intertwined: trigger contexts include mutable information about
  * which subtriggers are finished. This class provides the information when building the contexts
  * and commits the information when the method of the {@link ExecutableTrigger} returns.
@@ -68,44 +75,67 @@ public class TriggerRunner<W extends BoundedWindow> {
   private final ExecutableTrigger rootTrigger;
   private final TriggerContextFactory<W> contextFactory;
 
+  /** The finished sets of the windows accessed since the last {@link #persist}. */
+  private final Map<W, CachedFinishedBits> finishedBitsCache = new HashMap<>();
+
   public TriggerRunner(ExecutableTrigger rootTrigger, TriggerContextFactory<W> contextFactory) {
     checkState(rootTrigger.getTriggerIndex() == 0);
     this.rootTrigger = rootTrigger;
     this.contextFactory = contextFactory;
   }
 
-  private FinishedTriggersBitSet readFinishedBits(ValueState<BitSet> state) {
+  /**
+   * Returns the finished set of {@code window}, whose persisted finished bits are in
+   * {@code state}. The result must be copied before being modified.
+   */
+  private FinishedTriggersBitSet readFinishedBits(W window, ValueState<BitSet> state) {
     if (!isFinishedSetNeeded()) {
       // If no trigger in the tree will ever have finished bits, then we don't need to read them.
       // So that the code can be agnostic to that fact, we create a BitSet that is all 0 (not
       // finished) for each trigger in the tree.
-      return FinishedTriggersBitSet.emptyWithCapacity(rootTrigger.getFirstIndexAfterSubtree());
+      return emptyFinishedBits();
     }
 
-    BitSet bitSet = state.read();
-    return bitSet == null
-        ? FinishedTriggersBitSet.emptyWithCapacity(rootTrigger.getFirstIndexAfterSubtree())
-            : FinishedTriggersBitSet.fromBitSet(bitSet);
+    CachedFinishedBits cached = finishedBitsCache.get(window);
+    if (cached == null) {
+      BitSet bitSet = state.read();
+      cached = new CachedFinishedBits(state, true, bitSet, bitSet == null
+          ? emptyFinishedBits()
+          : FinishedTriggersBitSet.fromBitSet(bitSet));
+      finishedBitsCache.put(window, cached);
+    }
+    return cached.finishedSet;
   }
 
-
-  private void clearFinishedBits(ValueState<BitSet> state) {
+  private void clearFinishedBits(W window, ValueState<BitSet> state) {
     if (!isFinishedSetNeeded()) {
       // Nothing to clear.
       return;
     }
-    state.clear();
+    CachedFinishedBits cached = finishedBitsCache.get(window);
+    if (cached == null) {
+      // The persisted bits are unknown, so they will be cleared regardless.
+      cached = new CachedFinishedBits(state, false, null, emptyFinishedBits());
+      cached.isModified = true;
+      finishedBitsCache.put(window, cached);
+    } else {
+      cached.setFinishedSet(emptyFinishedBits());
+    }
+  }
+
+  private FinishedTriggersBitSet emptyFinishedBits() {
+    return FinishedTriggersBitSet.emptyWithCapacity(rootTrigger.getFirstIndexAfterSubtree());
   }
 
   /** Return true if the trigger is closed in the window corresponding to the specified state. */
-  public boolean isClosed(StateAccessor<?> state) {
-    return readFinishedBits(state.access(FINISHED_BITS_TAG)).isFinished(rootTrigger);
+  public boolean isClosed(W window, StateAccessor<?> state) {
+    return readFinishedBits(window, state.access(FINISHED_BITS_TAG)).isFinished(rootTrigger);
   }
 
   @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
       justification = "prefetch side effect")
   public void prefetchForValue(W window, StateAccessor<?> state) {
-    if (isFinishedSetNeeded()) {
+    if (isFinishedSetNeeded() && !finishedBitsCache.containsKey(window)) {
       state.access(FINISHED_BITS_TAG).readLater();
     }
     rootTrigger.getSpec().prefetchOnElement(
@@ -115,7 +145,7 @@ public class TriggerRunner<W extends BoundedWindow> {
   @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
       justification = "prefetch side effect")
   public void prefetchOnFire(W window, StateAccessor<?> state) {
-    if (isFinishedSetNeeded()) {
+    if (isFinishedSetNeeded() && !finishedBitsCache.containsKey(window)) {
       state.access(FINISHED_BITS_TAG).readLater();
     }
     rootTrigger.getSpec().prefetchOnFire(contextFactory.createStateAccessor(window, rootTrigger));
@@ -124,7 +154,7 @@ public class TriggerRunner<W extends BoundedWindow> {
   @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
       justification = "prefetch side effect")
   public void prefetchShouldFire(W window, StateAccessor<?> state) {
-    if (isFinishedSetNeeded()) {
+    if (isFinishedSetNeeded() && !finishedBitsCache.containsKey(window)) {
       state.access(FINISHED_BITS_TAG).readLater();
     }
     rootTrigger.getSpec().prefetchShouldFire(
@@ -138,11 +168,11 @@ public class TriggerRunner<W extends BoundedWindow> {
       throws Exception {
     // Clone so that we can detect changes and so that changes here don't pollute merging.
     FinishedTriggersBitSet finishedSet =
-        readFinishedBits(state.access(FINISHED_BITS_TAG)).copy();
+        readFinishedBits(window, state.access(FINISHED_BITS_TAG)).copy();
     Trigger.OnElementContext triggerContext = contextFactory.createOnElementContext(
         window, timers, timestamp, rootTrigger, finishedSet);
     rootTrigger.invokeOnElement(triggerContext);
-    persistFinishedSet(state, finishedSet);
+    updateFinishedSet(window, finishedSet);
   }
 
   @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
@@ -150,8 +180,11 @@ public class TriggerRunner<W extends BoundedWindow> {
   public void prefetchForMerge(
       W window, Collection<W> mergingWindows, MergingStateAccessor<?, W> state) {
     if (isFinishedSetNeeded()) {
-      for (ValueState<?> value : state.accessInEachMergingWindow(FINISHED_BITS_TAG).values()) {
-        value.readLater();
+      for (Map.Entry<W, ValueState<BitSet>> entry :
+          state.accessInEachMergingWindow(FINISHED_BITS_TAG).entrySet()) {
+        if (!finishedBitsCache.containsKey(entry.getKey())) {
+          entry.getValue().readLater();
+        }
       }
     }
     rootTrigger.getSpec().prefetchOnMerge(contextFactory.createMergingStateAccessor(
@@ -164,16 +197,16 @@ public class TriggerRunner<W extends BoundedWindow> {
   public void onMerge(W window, Timers timers, MergingStateAccessor<?, W> state) throws Exception {
     // Clone so that we can detect changes and so that changes here don't pollute merging.
     FinishedTriggersBitSet finishedSet =
-        readFinishedBits(state.access(FINISHED_BITS_TAG)).copy();
+        readFinishedBits(window, state.access(FINISHED_BITS_TAG)).copy();
 
     // And read the finished bits in each merging window.
     ImmutableMap.Builder<W, FinishedTriggers> builder = ImmutableMap.builder();
     for (Map.Entry<W, ValueState<BitSet>> entry :
         state.accessInEachMergingWindow(FINISHED_BITS_TAG).entrySet()) {
       // Don't need to clone these, since the trigger context doesn't allow modification
-      builder.put(entry.getKey(), readFinishedBits(entry.getValue()));
+      builder.put(entry.getKey(), readFinishedBits(entry.getKey(), entry.getValue()));
       // Clear the underlying finished bits.
-      clearFinishedBits(entry.getValue());
+      clearFinishedBits(entry.getKey(), entry.getValue());
     }
     ImmutableMap<W, FinishedTriggers> mergingFinishedSets = builder.build();
 
@@ -183,11 +216,12 @@ public class TriggerRunner<W extends BoundedWindow> {
     // Run the merge from the trigger
     rootTrigger.invokeOnMerge(mergeContext);
 
-    persistFinishedSet(state, finishedSet);
+    updateFinishedSet(window, finishedSet);
   }
 
   public boolean shouldFire(W window, Timers timers, StateAccessor<?> state) throws Exception {
-    FinishedTriggers finishedSet = readFinishedBits(state.access(FINISHED_BITS_TAG)).copy();
+    FinishedTriggers finishedSet =
+        readFinishedBits(window, state.access(FINISHED_BITS_TAG)).copy();
     Trigger.TriggerContext context = contextFactory.base(window, timers,
         rootTrigger, finishedSet);
     return rootTrigger.invokeShouldFire(context);
@@ -197,34 +231,53 @@ public class TriggerRunner<W extends BoundedWindow> {
     // shouldFire should be false.
     // However it is too expensive to assert.
     FinishedTriggersBitSet finishedSet =
-        readFinishedBits(state.access(FINISHED_BITS_TAG)).copy();
+        readFinishedBits(window, state.access(FINISHED_BITS_TAG)).copy();
     Trigger.TriggerContext context = contextFactory.base(window, timers,
         rootTrigger, finishedSet);
     rootTrigger.invokeOnFire(context);
-    persistFinishedSet(state, finishedSet);
+    updateFinishedSet(window, finishedSet);
   }
 
-  private void persistFinishedSet(
-      StateAccessor<?> state, FinishedTriggersBitSet modifiedFinishedSet) {
+  /**
+   * Replaces the cached finished set of {@code window}, which must have been read, with
+   * {@code modifiedFinishedSet}. It is written by the next {@link #persist}.
+   */
+  private void updateFinishedSet(W window, FinishedTriggersBitSet modifiedFinishedSet) {
     if (!isFinishedSetNeeded()) {
       return;
     }
+    CachedFinishedBits cached = finishedBitsCache.get(window);
+    checkState(cached != null, "Finished bits of window %s were not read", window);
+    cached.setFinishedSet(modifiedFinishedSet);
+  }
 
-    ValueState<BitSet> finishedSetState = state.access(FINISHED_BITS_TAG);
-    if (!readFinishedBits(finishedSetState).equals(modifiedFinishedSet)) {
-      if (modifiedFinishedSet.getBitSet().isEmpty()) {
-        finishedSetState.clear();
-      } else {
-        finishedSetState.write(modifiedFinishedSet.getBitSet());
+  /**
+   * Writes the finished set of each window that changed since it was read, and forgets all of
+   * the cached finished sets. An empty finished set is only cleared if something may have been
+   * persisted for it.
+   */
+  public void persist() {
+    for (CachedFinishedBits cached : finishedBitsCache.values()) {
+      if (!cached.isModified) {
+        continue;
+      }
+      BitSet bitSet = cached.finishedSet.getBitSet();
+      if (bitSet.isEmpty()) {
+        if (!cached.isPersistedBitSetKnown || cached.persistedBitSet != null) {
+          cached.state.clear();
+        }
+      } else if (!bitSet.equals(cached.persistedBitSet)) {
+        cached.state.write(bitSet);
       }
     }
+    finishedBitsCache.clear();
   }
 
   /**
    * Clear the finished bits.
    */
-  public void clearFinished(StateAccessor<?> state) {
-    clearFinishedBits(state.access(FINISHED_BITS_TAG));
+  public void clearFinished(W window, StateAccessor<?> state) {
+    clearFinishedBits(window, state.access(FINISHED_BITS_TAG));
   }
 
   /**
@@ -233,7 +286,7 @@ public class TriggerRunner<W extends BoundedWindow> {
    */
   public void clearState(W window, Timers timers, StateAccessor<?> state) throws Exception {
     // Don't need to clone, because we'll be clearing the finished bits anyways.
-    FinishedTriggers finishedSet = readFinishedBits(state.access(FINISHED_BITS_TAG));
+    FinishedTriggers finishedSet = readFinishedBits(window, state.access(FINISHED_BITS_TAG));
     rootTrigger.invokeClear(contextFactory.base(window, timers, rootTrigger, finishedSet));
   }
 
@@ -242,4 +295,33 @@ public class TriggerRunner<W extends BoundedWindow> {
     // lookup. Right now, we special case this for the DefaultTrigger.
     return !(rootTrigger.getSpec() instanceof DefaultTrigger);
   }
+
+  /**
+   * The finished set of a window, as persisted and as modified since.
+   */
+  private static class CachedFinishedBits {
+    private final ValueState<BitSet> state;
+    /** Whether {@link #persistedBitSet} was read, rather than being unknown. */
+    private final boolean isPersistedBitSetKnown;
+    @Nullable
+    private final BitSet persistedBitSet;
+    private FinishedTriggersBitSet finishedSet;
+    private boolean isModified;
+
+    private CachedFinishedBits(
+        ValueState<BitSet> state,
+        boolean isPersistedBitSetKnown,
+        @Nullable BitSet persistedBitSet,
+        FinishedTriggersBitSet finishedSet) {
+      this.state = state;
+      this.isPersistedBitSetKnown = isPersistedBitSetKnown;
+      this.persistedBitSet = persistedBitSet;
+      this.finishedSet = finishedSet;
+    }
+
+    private void setFinishedSet(FinishedTriggersBitSet finishedSet) {
+      this.finishedSet = finishedSet;
+      this.isModified = true;
+    }
+  }
 }
@@ -432,6 +432,16 @@ class WatermarkHold<W extends BoundedWindow> implements Serializable {
     addEndOfWindowOrGarbageCollectionHolds(context, false /*paneIsEmpty*/);
   }
 
+  /**
+   * Prefetch the holds read by {@link #extractAndRelease} for {@code context}'s window.
+   */
+  @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
+      justification = "prefetch side effect")
+  public void prefetchExtract(ReduceFn<?, ?, ?, W>.Context context) {
+    context.state().access(elementHoldTag).readLater();
+    context.state().access(EXTRA_HOLD_TAG).readLater();
+  }
+
   /**
    * Result of {@link #extractAndRelease}.
    */
@@ -21,6 +21,8 @@ import org.apache.beam.sdk.util.TimerInternals.TimerData;
 import org.apache.beam.sdk.util.state.StateNamespace;
 import org.apache.beam.sdk.util.state.StateNamespaceForTest;
 
+import com.google.common.collect.ImmutableList;
+
 import org.joda.time.Instant;
 import org.junit.Before;
 import org.junit.Test;
@@ -56,7 +58,7 @@ public class BatchTimerInternalsTest {
     underTest.setTimer(processingTime2);
 
     underTest.advanceProcessingTime(mockRunner, new Instant(20));
-    Mockito.verify(mockRunner).onTimer(processingTime1);
+    Mockito.verify(mockRunner).onTimers(ImmutableList.of(processingTime1));
     Mockito.verifyNoMoreInteractions(mockRunner);
 
     // Advancing just a little shouldn't refire
@@ -65,13 +67,13 @@ public class BatchTimerInternalsTest {
 
     // Adding the timer and advancing a little should refire
     underTest.setTimer(processingTime1);
-    Mockito.verify(mockRunner).onTimer(processingTime1);
+    Mockito.verify(mockRunner).onTimers(ImmutableList.of(processingTime1));
     underTest.advanceProcessingTime(mockRunner, new Instant(21));
     Mockito.verifyNoMoreInteractions(mockRunner);
 
     // And advancing the rest of the way should still have the other timer
     underTest.advanceProcessingTime(mockRunner, new Instant(30));
-    Mockito.verify(mockRunner).onTimer(processingTime2);
+    Mockito.verify(mockRunner).onTimers(ImmutableList.of(processingTime2));
     Mockito.verifyNoMoreInteractions(mockRunner);
   }
 
@@ -89,13 +91,11 @@ public class BatchTimerInternalsTest {
     underTest.setTimer(watermarkTime2);
 
     underTest.advanceInputWatermark(mockRunner, new Instant(30));
-    Mockito.verify(mockRunner).onTimer(watermarkTime1);
-    Mockito.verify(mockRunner).onTimer(watermarkTime2);
+    Mockito.verify(mockRunner).onTimers(ImmutableList.of(watermarkTime1, watermarkTime2));
     Mockito.verifyNoMoreInteractions(mockRunner);
 
     underTest.advanceProcessingTime(mockRunner, new Instant(30));
-    Mockito.verify(mockRunner).onTimer(processingTime1);
-    Mockito.verify(mockRunner).onTimer(processingTime2);
+    Mockito.verify(mockRunner).onTimers(ImmutableList.of(processingTime1, processingTime2));
     Mockito.verifyNoMoreInteractions(mockRunner);
   }
 
@@ -111,8 +111,8 @@ public class BatchTimerInternalsTest {
     underTest.advanceProcessingTime(mockRunner, new Instant(20));
     underTest.advanceInputWatermark(mockRunner, new Instant(20));
 
-    Mockito.verify(mockRunner).onTimer(processingTime);
-    Mockito.verify(mockRunner).onTimer(watermarkTime);
+    Mockito.verify(mockRunner).onTimers(ImmutableList.of(processingTime));
+    Mockito.verify(mockRunner).onTimers(ImmutableList.of(watermarkTime));
     Mockito.verifyNoMoreInteractions(mockRunner);
   }
 }
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.AfterPane;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Repeatedly;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.util.GroupAlsoByWindowsProperties.GroupAlsoByWindowsDoFnFactory;
+import org.apache.beam.sdk.util.state.InMemoryStateInternals;
+import org.apache.beam.sdk.util.state.StateInternals;
+import org.apache.beam.sdk.util.state.StateInternalsFactory;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link GroupAlsoByWindowsViaIteratorsDoFn}.
+ */
+@RunWith(JUnit4.class)
+public class GroupAlsoByWindowsViaIteratorsDoFnTest {
+
+  private class GABWViaIteratorsDoFnFactory<K, InputT>
+  implements GroupAlsoByWindowsDoFnFactory<K, InputT, Iterable<InputT>> {
+    @Override
+    public <W extends BoundedWindow>
+        GroupAlsoByWindowsDoFn<K, InputT, Iterable<InputT>, W> forStrategy(
+            WindowingStrategy<?, W> windowingStrategy,
+            StateInternalsFactory<K> stateInternalsFactory) {
+      return new GroupAlsoByWindowsViaIteratorsDoFn<K, InputT, W>(windowingStrategy);
+    }
+  }
+
+  @Test
+  public void testEmptyInputEmptyOutput() throws Exception {
+    GroupAlsoByWindowsProperties.emptyInputEmptyOutput(
+        new GABWViaIteratorsDoFnFactory<String, String>());
+  }
+
+  @Test
+  public void testGroupsElementsIntoFixedWindows() throws Exception {
+    GroupAlsoByWindowsProperties.groupsElementsIntoFixedWindows(
+        new GABWViaIteratorsDoFnFactory<String, String>());
+  }
+
+  @Test
+  public void testGroupsElementsIntoSlidingWindows() throws Exception {
+    GroupAlsoByWindowsProperties.groupsElementsIntoSlidingWindowsWithMinTimestamp(
+        new GABWViaIteratorsDoFnFactory<String, String>());
+  }
+
+  @Test
+  public void testGroupsIntoOverlappingNonmergingWindows() throws Exception {
+    GroupAlsoByWindowsProperties.groupsIntoOverlappingNonmergingWindows(
+        new GABWViaIteratorsDoFnFactory<String, String>());
+  }
+
+  @Test
+  public void testGroupsElementsIntoFixedWindowsWithEndOfWindowTimestamp() throws Exception {
+    GroupAlsoByWindowsProperties.groupsElementsIntoFixedWindowsWithEndOfWindowTimestamp(
+        new GABWViaIteratorsDoFnFactory<String, String>());
+  }
+
+  @Test
+  public void testGroupsElementsIntoFixedWindowsWithLatestTimestamp() throws Exception {
+    GroupAlsoByWindowsProperties.groupsElementsIntoFixedWindowsWithLatestTimestamp(
+        new GABWViaIteratorsDoFnFactory<String, String>());
+  }
+
+  @Test
+  public void testIsSupported() {
+    WindowingStrategy<?, ?> fixed = WindowingStrategy.of(FixedWindows.of(Duration.millis(10)));
+    assertTrue(GroupAlsoByWindowsViaIteratorsDoFn.isSupported(fixed));
+    assertTrue(GroupAlsoByWindowsViaIteratorsDoFn.isSupported(
+        fixed.withMode(WindowingStrategy.AccumulationMode.ACCUMULATING_FIRED_PANES)));
+    assertFalse(GroupAlsoByWindowsViaIteratorsDoFn.isSupported(
+        WindowingStrategy.of(Sessions.withGapDuration(Duration.millis(10)))));
+    assertFalse(GroupAlsoByWindowsViaIteratorsDoFn.isSupported(
+        fixed.withTrigger(Repeatedly.forever(AfterPane.elementCountAtLeast(2)))));
+  }
+
+  @Test
+  public void testCreateDefaultUsesIteratorsForDefaultTrigger() {
+    StateInternalsFactory<String> stateInternalsFactory = new StateInternalsFactory<String>() {
+      @Override
+      public StateInternals<String> stateInternalsForKey(String key) {
+        return InMemoryStateInternals.forKey(key);
+      }
+    };
+    assertThat(
+        GroupAlsoByWindowsDoFn.createDefault(
+            WindowingStrategy.of(FixedWindows.of(Duration.millis(10))),
+            stateInternalsFactory,
+            StringUtf8Coder.of()),
+        instanceOf(GroupAlsoByWindowsViaIteratorsDoFn.class));
+    assertThat(
+        GroupAlsoByWindowsDoFn.createDefault(
+            WindowingStrategy.of(Sessions.withGapDuration(Duration.millis(10))),
+            stateInternalsFactory,
+            StringUtf8Coder.of()),
+        instanceOf(GroupAlsoByWindowsViaOutputBufferDoFn.class));
+  }
+}
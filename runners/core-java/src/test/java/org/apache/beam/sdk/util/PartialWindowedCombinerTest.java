@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.transforms.Combine.KeyedCombineFn;
+import org.apache.beam.sdk.transforms.DoFnTester;
+import org.apache.beam.sdk.transforms.DoFnTester.CloningBehavior;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.OutputTimeFns;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.SlidingWindows;
+import org.apache.beam.sdk.util.state.InMemoryStateInternals;
+import org.apache.beam.sdk.util.state.StateInternals;
+import org.apache.beam.sdk.util.state.StateInternalsFactory;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.TimestampedValue;
+
+import com.google.common.collect.Iterables;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tests for {@link PartialWindowedCombiner}.
+ */
+@RunWith(JUnit4.class)
+public class PartialWindowedCombinerTest {
+  private final KeyedCombineFn<String, Long, long[], Long> sumFn =
+      new Sum.SumLongFn().<String>asKeyedFn();
+
+  @Test
+  public void testCombinesPerSlidingWindow() throws Exception {
+    WindowingStrategy<?, IntervalWindow> strategy =
+        WindowingStrategy.of(SlidingWindows.of(Duration.millis(20)).every(Duration.millis(10)))
+            .withOutputTimeFn(OutputTimeFns.outputAtEarliestInputTimestamp());
+    PartialWindowedCombiner<String, Long, long[], IntervalWindow> combiner =
+        new PartialWindowedCombiner<>(StringUtf8Coder.of(), sumFn, strategy, 100);
+
+    combiner.add(element("k", 1L, 5, window(-10, 10), window(0, 20)));
+    combiner.add(element("k", 2L, 15, window(0, 20), window(10, 30)));
+    combiner.add(element("k", 4L, 18, window(0, 20), window(10, 30)));
+
+    List<WindowedValue<KV<String, long[]>>> partials = combiner.flush();
+    assertThat(partials, hasSize(3));
+    assertPartial(partials, window(-10, 10), 1L, new Instant(5));
+    // Output times adjusted by the WindowFn to exceed the end of the prior sliding window
+    assertPartial(partials, window(0, 20), 7L, new Instant(10));
+    assertPartial(partials, window(10, 30), 6L, new Instant(20));
+  }
+
+  @Test
+  public void testMergesSessionsBeforeFlushing() throws Exception {
+    WindowingStrategy<?, IntervalWindow> strategy =
+        WindowingStrategy.of(Sessions.withGapDuration(Duration.millis(10)));
+    PartialWindowedCombiner<String, Long, long[], IntervalWindow> combiner =
+        new PartialWindowedCombiner<>(StringUtf8Coder.of(), sumFn, strategy, 100);
+
+    combiner.add(element("k", 1L, 0, window(0, 10)));
+    combiner.add(element("k", 2L, 5, window(5, 15)));
+    combiner.add(element("k", 4L, 15, window(15, 25)));
+    combiner.add(element("other", 8L, 3, window(3, 13)));
+
+    List<WindowedValue<KV<String, long[]>>> partials = combiner.flush();
+    assertThat(partials, hasSize(3));
+    assertPartial(partials, window(0, 15), 3L, window(0, 15).maxTimestamp());
+    assertPartial(partials, window(15, 25), 4L, window(15, 25).maxTimestamp());
+    assertPartial(partials, window(3, 13), 8L, window(3, 13).maxTimestamp());
+
+    assertThat(combiner.flush(), hasSize(0));
+  }
+
+  /**
+   * Tests that a value which is too late for its own session is dropped rather than merged into an
+   * on-time session, which the {@link ReduceFnRunner} would not drop.
+   */
+  @Test
+  public void testDropsLateValuesBeforeMergingSessions() throws Exception {
+    WindowingStrategy<?, IntervalWindow> strategy =
+        WindowingStrategy.of(Sessions.withGapDuration(Duration.millis(10)))
+            .withAllowedLateness(Duration.millis(1));
+    PartialWindowedCombiner<String, Long, long[], IntervalWindow> combiner =
+        new PartialWindowedCombiner<>(StringUtf8Coder.of(), sumFn, strategy, 100);
+
+    Instant inputWatermark = new Instant(16);
+    // [5, 15) expired at 15, so the value is late and would otherwise merge into [5, 22).
+    combiner.add(element("k", 1L, 5, window(5, 15)), inputWatermark);
+    combiner.add(element("k", 2L, 12, window(12, 22)), inputWatermark);
+    // [6, 16) is still within the allowed lateness.
+    combiner.add(element("other", 4L, 6, window(6, 16)), inputWatermark);
+
+    List<WindowedValue<KV<String, long[]>>> partials = combiner.flush();
+    assertThat(partials, hasSize(2));
+    assertPartial(partials, window(12, 22), 2L, window(12, 22).maxTimestamp());
+    assertPartial(partials, window(6, 16), 4L, window(6, 16).maxTimestamp());
+  }
+
+  @Test
+  public void testIsFull() throws Exception {
+    PartialWindowedCombiner<String, Long, long[], IntervalWindow> combiner =
+        new PartialWindowedCombiner<>(
+            StringUtf8Coder.of(),
+            sumFn,
+            WindowingStrategy.of(Sessions.withGapDuration(Duration.millis(10))),
+            2);
+
+    combiner.add(element("k", 1L, 0, window(0, 10)));
+    combiner.add(element("k", 2L, 0, window(0, 10)));
+    assertFalse(combiner.isFull());
+    combiner.add(element("k", 4L, 5, window(5, 15)));
+    assertTrue(combiner.isFull());
+    combiner.flush();
+    assertFalse(combiner.isFull());
+  }
+
+  /**
+   * Tests that session windows partially combined in separate bundles are merged, along with their
+   * accumulators, by a {@link GroupAlsoByWindowsDoFn} using
+   * {@link SystemReduceFn#combiningAccumulators}.
+   */
+  @Test
+  public void testLiftedSessionsCombineThroughGroupAlsoByWindow() throws Exception {
+    WindowingStrategy<?, IntervalWindow> strategy =
+        WindowingStrategy.of(Sessions.withGapDuration(Duration.millis(10)));
+    PartialWindowedCombiner<String, Long, long[], IntervalWindow> combiner =
+        new PartialWindowedCombiner<>(StringUtf8Coder.of(), sumFn, strategy, 100);
+
+    List<WindowedValue<long[]>> accumulators = new ArrayList<>();
+    combiner.add(element("k", 1L, 0, window(0, 10)));
+    combiner.add(element("k", 4L, 15, window(15, 25)));
+    for (WindowedValue<KV<String, long[]>> partial : combiner.flush()) {
+      accumulators.add(partial.withValue(partial.getValue().getValue()));
+    }
+    combiner.add(element("k", 2L, 5, window(5, 15)));
+    for (WindowedValue<KV<String, long[]>> partial : combiner.flush()) {
+      accumulators.add(partial.withValue(partial.getValue().getValue()));
+    }
+    Collections.sort(accumulators, new Comparator<WindowedValue<long[]>>() {
+      @Override
+      public int compare(WindowedValue<long[]> e1, WindowedValue<long[]> e2) {
+        return e1.getTimestamp().compareTo(e2.getTimestamp());
+      }
+    });
+
+    CoderRegistry registry = new CoderRegistry();
+    registry.registerStandardCoders();
+    AppliedCombineFn<String, Long, long[], Long> appliedFn =
+        AppliedCombineFn.<String, Long, long[], Long>withInputCoder(
+            sumFn, registry, KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()));
+    DoFnTester<KV<String, Iterable<WindowedValue<long[]>>>, KV<String, Long>> tester =
+        DoFnTester.of(
+            new GroupAlsoByWindowsViaOutputBufferDoFn<String, long[], Long, IntervalWindow>(
+                strategy,
+                new StateInternalsFactory<String>() {
+                  @Override
+                  public StateInternals<String> stateInternalsForKey(String key) {
+                    return InMemoryStateInternals.forKey(key);
+                  }
+                },
+                SystemReduceFn.<String, Long, long[], Long, IntervalWindow>combiningAccumulators(
+                    StringUtf8Coder.of(), appliedFn)));
+    tester.setCloningBehavior(CloningBehavior.DO_NOT_CLONE);
+    tester.startBundle();
+    tester.processElement(KV.<String, Iterable<WindowedValue<long[]>>>of("k", accumulators));
+    tester.finishBundle();
+
+    assertThat(tester.peekOutputElements(), containsInAnyOrder(KV.of("k", 3L), KV.of("k", 4L)));
+    TimestampedValue<KV<String, Long>> merged =
+        Iterables.getOnlyElement(tester.peekOutputElementsInWindow(window(0, 15)));
+    assertThat(merged.getValue().getValue(), equalTo(3L));
+    assertThat(merged.getTimestamp(), equalTo(window(0, 15).maxTimestamp()));
+  }
+
+  private static void assertPartial(
+      List<WindowedValue<KV<String, long[]>>> partials,
+      BoundedWindow window,
+      long sum,
+      Instant timestamp) {
+    for (WindowedValue<KV<String, long[]>> partial : partials) {
+      if (partial.getWindows().contains(window)) {
+        assertThat(partial.getValue().getValue()[0], equalTo(sum));
+        assertThat(partial.getTimestamp(), equalTo(timestamp));
+        return;
+      }
+    }
+    throw new AssertionError("No partial result in window " + window + ": " + partials);
+  }
+
+  private static WindowedValue<KV<String, Long>> element(
+      String key, long value, long timestamp, BoundedWindow... windows) {
+    return WindowedValue.of(
+        KV.of(key, value), new Instant(timestamp), Arrays.asList(windows), PaneInfo.NO_FIRING);
+  }
+
+  private static IntervalWindow window(long start, long end) {
+    return new IntervalWindow(new Instant(start), new Instant(end));
+  }
+}
@@ -1093,6 +1093,109 @@ public class ReduceFnRunnerTest {
     assertEquals(0, tester.getElementsDroppedDueToClosedWindow());
   }
 
+  /**
+   * Tests that an end-of-window and a garbage collection timer fired together in one batch
+   * produce the on-time pane and then clean up the window.
+   */
+  @Test
+  public void testOnTimersEndOfWindowAndGarbageCollection() throws Exception {
+    ReduceFnTester<Integer, Iterable<Integer>, IntervalWindow> tester =
+        ReduceFnTester.nonCombining(FixedWindows.of(Duration.millis(10)), mockTrigger,
+            AccumulationMode.DISCARDING_FIRED_PANES, Duration.millis(100),
+            ClosingBehavior.FIRE_IF_NON_EMPTY);
+
+    injectElement(tester, 1);
+    injectElement(tester, 2);
+    tester.advanceInputWatermark(new Instant(12));
+
+    when(mockTrigger.shouldFire(anyTriggerContext())).thenReturn(true);
+    tester.fireTimers(firstWindow,
+        TimestampedValue.of(TimeDomain.EVENT_TIME, new Instant(9)),
+        TimestampedValue.of(TimeDomain.EVENT_TIME, new Instant(109)));
+
+    List<WindowedValue<Iterable<Integer>>> output = tester.extractOutput();
+    assertThat(output.size(), equalTo(1));
+    assertThat(output.get(0), isSingleWindowedValue(containsInAnyOrder(1, 2), 1, 0, 10));
+    assertThat(output.get(0).getPane(),
+        equalTo(PaneInfo.createPane(true, false, Timing.ON_TIME, 0, 0)));
+
+    // The garbage collection timer cleaned up the window.
+    assertFalse(tester.isMarkedFinished(firstWindow));
+    tester.assertHasOnlyGlobalAndFinishedSetsFor();
+  }
+
+  /**
+   * Tests that finished bits are written at most once per persist, survive into a new runner, and
+   * are cleared when the window is garbage collected.
+   */
+  @Test
+  public void testFinishedBitsWrittenOncePerPersist() throws Exception {
+    ReduceFnTester<Integer, Iterable<Integer>, IntervalWindow> tester =
+        ReduceFnTester.nonCombining(FixedWindows.of(Duration.millis(10)), mockTrigger,
+            AccumulationMode.DISCARDING_FIRED_PANES, Duration.millis(100),
+            ClosingBehavior.FIRE_IF_NON_EMPTY);
+
+    // Nothing has finished, so nothing is written.
+    injectElement(tester, 1);
+    assertEquals(0, tester.getFinishedBitsWrites(firstWindow));
+
+    // Several elements and the finishing fire in one bundle write the finished bits once.
+    when(mockTrigger.shouldFire(anyTriggerContext())).thenReturn(true);
+    triggerShouldFinish(mockTrigger);
+    tester.injectElements(
+        TimestampedValue.of(2, new Instant(2)),
+        TimestampedValue.of(3, new Instant(3)),
+        TimestampedValue.of(4, new Instant(4)));
+    assertEquals(1, tester.getFinishedBitsWrites(firstWindow));
+
+    // Each of these creates a new runner, which reads the persisted finished bits.
+    assertTrue(tester.isMarkedFinished(firstWindow));
+    injectElement(tester, 5);
+    assertEquals(1, tester.getElementsDroppedDueToClosedWindow());
+    assertEquals(1, tester.getFinishedBitsWrites(firstWindow));
+    tester.assertHasOnlyGlobalAndFinishedSetsFor(firstWindow);
+
+    // Garbage collection clears the finished bits.
+    tester.advanceInputWatermark(new Instant(200));
+    assertEquals(2, tester.getFinishedBitsWrites(firstWindow));
+    assertFalse(tester.hasFinishedBits(firstWindow));
+    assertFalse(tester.isMarkedFinished(firstWindow));
+  }
+
+  /**
+   * Tests that the finished bits of a merged away window are cleared and those of the merge
+   * result are written once.
+   */
+  @Test
+  public void testFinishedBitsOfMergedAwayWindowCleared() throws Exception {
+    ReduceFnTester<Integer, Iterable<Integer>, IntervalWindow> tester =
+        ReduceFnTester.nonCombining(Sessions.withGapDuration(Duration.millis(10)),
+            AfterEach.inOrder(AfterPane.elementCountAtLeast(1), AfterPane.elementCountAtLeast(100)),
+            AccumulationMode.DISCARDING_FIRED_PANES, Duration.millis(0),
+            ClosingBehavior.FIRE_IF_NON_EMPTY);
+    IntervalWindow firstSession = new IntervalWindow(new Instant(1), new Instant(11));
+    IntervalWindow mergedSession = new IntervalWindow(new Instant(1), new Instant(15));
+
+    // The first subtrigger finishes, but the window is still open.
+    tester.injectElements(TimestampedValue.of(1, new Instant(1)));
+    assertEquals(1, tester.getFinishedBitsWrites(firstSession));
+    assertTrue(tester.hasFinishedBits(firstSession));
+    assertFalse(tester.isMarkedFinished(firstSession));
+
+    // Merging moves the finished bits into the merge result.
+    tester.injectElements(TimestampedValue.of(5, new Instant(5)));
+    assertEquals(2, tester.getFinishedBitsWrites(firstSession));
+    assertFalse(tester.hasFinishedBits(firstSession));
+    assertEquals(1, tester.getFinishedBitsWrites(mergedSession));
+    assertTrue(tester.hasFinishedBits(mergedSession));
+
+    // Garbage collection clears the finished bits of the merge result.
+    tester.advanceInputWatermark(new Instant(100));
+    assertEquals(2, tester.getFinishedBitsWrites(mergedSession));
+    assertFalse(tester.hasFinishedBits(mergedSession));
+    assertEquals(2, tester.getFinishedBitsWrites(firstSession));
+  }
+
   @Test
   public void testIdempotentEmptyPanesAccumulating() throws Exception {
     // Test uninteresting (empty) panes don't increment the index or otherwise
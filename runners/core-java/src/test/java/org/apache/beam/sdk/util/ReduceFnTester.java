@@ -48,10 +48,13 @@ import org.apache.beam.sdk.util.TimerInternals.TimerData;
 import org.apache.beam.sdk.util.WindowingStrategy.AccumulationMode;
 import org.apache.beam.sdk.util.state.InMemoryStateInternals;
 import org.apache.beam.sdk.util.state.State;
+import org.apache.beam.sdk.util.state.StateContext;
+import org.apache.beam.sdk.util.state.StateContexts;
 import org.apache.beam.sdk.util.state.StateInternals;
 import org.apache.beam.sdk.util.state.StateNamespace;
 import org.apache.beam.sdk.util.state.StateNamespaces;
 import org.apache.beam.sdk.util.state.StateTag;
+import org.apache.beam.sdk.util.state.ValueState;
 import org.apache.beam.sdk.util.state.WatermarkHoldState;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollectionView;
@@ -321,6 +324,21 @@ public class ReduceFnTester<InputT, OutputT, W extends BoundedWindow> {
     return StateNamespaces.window(windowFn.windowCoder(), window);
   }
 
+  /**
+   * Returns whether finished bits are stored for {@code window}.
+   */
+  public boolean hasFinishedBits(W window) {
+    return stateInternals.getTagsInUse(windowNamespace(window))
+        .contains(TriggerRunner.FINISHED_BITS_TAG);
+  }
+
+  /**
+   * Returns the number of times the finished bits of {@code window} have been written or cleared.
+   */
+  public int getFinishedBitsWrites(W window) {
+    return stateInternals.getFinishedBitsWrites(windowNamespace(window));
+  }
+
   public Instant getWatermarkHold() {
     return stateInternals.earliestWatermarkHold();
   }
@@ -433,15 +451,56 @@ public class ReduceFnTester<InputT, OutputT, W extends BoundedWindow> {
     runner.persist();
   }
 
+  /**
+   * Fires the provided timers for {@code window} as a single batch.
+   */
+  @SafeVarargs
+  public final void fireTimers(W window, TimestampedValue<TimeDomain>... timers)
+      throws Exception {
+    ReduceFnRunner<String, InputT, OutputT, W> runner = createRunner();
+    List<TimerData> timerData = new ArrayList<>();
+    for (TimestampedValue<TimeDomain> timer : timers) {
+      timerData.add(TimerData.of(
+          StateNamespaces.window(windowFn.windowCoder(), window),
+          timer.getTimestamp(),
+          timer.getValue()));
+    }
+    runner.onTimers(timerData);
+    runner.persist();
+  }
+
   /**
    * Simulate state.
    */
   private static class TestInMemoryStateInternals<K> extends InMemoryStateInternals<K> {
+    private final Map<StateNamespace, Integer> finishedBitsWrites = new HashMap<>();
 
     public TestInMemoryStateInternals(K key) {
       super(key);
     }
 
+    @Override
+    public <T extends State> T state(StateNamespace namespace, StateTag<? super K, T> address) {
+      return state(namespace, address, StateContexts.nullContext());
+    }
+
+    @Override
+    public <T extends State> T state(
+        StateNamespace namespace, StateTag<? super K, T> address, StateContext<?> c) {
+      T state = super.state(namespace, address, c);
+      if (TriggerRunner.FINISHED_BITS_TAG.equals(address)) {
+        @SuppressWarnings("unchecked")
+        T countingState = (T) new CountingValueState<>(namespace, (ValueState<?>) state);
+        return countingState;
+      }
+      return state;
+    }
+
+    public int getFinishedBitsWrites(StateNamespace namespace) {
+      Integer writes = finishedBitsWrites.get(namespace);
+      return writes == null ? 0 : writes;
+    }
+
     public Set<StateTag<? super K, ?>> getTagsInUse(StateNamespace namespace) {
       Set<StateTag<? super K, ?>> inUse = new HashSet<>();
       for (Entry<StateTag<? super K, ?>, State> entry :
@@ -457,6 +516,46 @@ public class ReduceFnTester<InputT, OutputT, W extends BoundedWindow> {
       return inMemoryState.getNamespacesInUse();
     }
 
+    /**
+     * A {@link ValueState} which counts the writes and clears of the finished bits of a window.
+     */
+    private class CountingValueState<T> implements ValueState<T> {
+      private final StateNamespace namespace;
+      private final ValueState<T> delegate;
+
+      private CountingValueState(StateNamespace namespace, ValueState<T> delegate) {
+        this.namespace = namespace;
+        this.delegate = delegate;
+      }
+
+      @Override
+      public T read() {
+        return delegate.read();
+      }
+
+      @Override
+      public ValueState<T> readLater() {
+        delegate.readLater();
+        return this;
+      }
+
+      @Override
+      public void write(T input) {
+        countWrite();
+        delegate.write(input);
+      }
+
+      @Override
+      public void clear() {
+        countWrite();
+        delegate.clear();
+      }
+
+      private void countWrite() {
+        finishedBitsWrites.put(namespace, getFinishedBitsWrites(namespace) + 1);
+      }
+    }
+
     /** Return the earliest output watermark hold in state, or null if none. */
     public Instant earliestWatermarkHold() {
       Instant minimum = null;
@@ -148,6 +148,27 @@ public class AggregatorContainer {
       }
     }
 
+    /**
+     * Adds all of the changes made within the provided {@link Mutator} to this {@link Mutator}.
+     * The changes will become visible when this {@link Mutator} is committed. The provided
+     * {@link Mutator} cannot be committed after this call.
+     */
+    void addAll(Mutator other) {
+      Preconditions.checkState(!committed, "Cannot add changes after committing");
+      Preconditions.checkState(!other.committed, "Cannot add changes that are already committed");
+      other.committed = true;
+
+      for (Map.Entry<AggregatorKey, AggregatorInfo<?, ?, ?>> entry :
+          other.accumulatorDeltas.entrySet()) {
+        AggregatorInfo<?, ?, ?> existing = accumulatorDeltas.get(entry.getKey());
+        if (existing == null) {
+          accumulatorDeltas.put(entry.getKey(), entry.getValue());
+        } else {
+          existing.merge(entry.getValue());
+        }
+      }
+    }
+
     @Override
     public <InputT, AccumT, OutputT> Aggregator<InputT, OutputT> createAggregatorForDoFn(
         Class<?> fnClass, ExecutionContext.StepContext step,
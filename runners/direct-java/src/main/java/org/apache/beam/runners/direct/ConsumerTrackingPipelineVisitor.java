@@ -24,11 +24,18 @@ import org.apache.beam.sdk.Pipeline.PipelineVisitor;
 import org.apache.beam.sdk.runners.PipelineRunner;
 import org.apache.beam.sdk.runners.TransformTreeNode;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.Flatten.FlattenPCollectionList;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.PInput;
 import org.apache.beam.sdk.values.PValue;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -42,6 +49,24 @@ import java.util.Set;
  * input after the upstream transform has produced and committed output.
  */
 public class ConsumerTrackingPipelineVisitor extends PipelineVisitor.Defaults {
+  /**
+   * Primitive {@link PTransform PTransforms} which produce output only in response to input
+   * elements, and which may have their output fused into a consumer.
+   */
+  @SuppressWarnings("rawtypes")
+  private static final Set<Class<? extends PTransform>> FUSIBLE_PRODUCERS =
+      ImmutableSet.<Class<? extends PTransform>>of(
+          ParDo.Bound.class, ParDo.BoundMulti.class, Window.Bound.class,
+          FlattenPCollectionList.class);
+
+  /**
+   * Primitive {@link PTransform PTransforms} which may be fused into the producer of their input.
+   */
+  @SuppressWarnings("rawtypes")
+  private static final Set<Class<? extends PTransform>> FUSIBLE_CONSUMERS =
+      ImmutableSet.<Class<? extends PTransform>>of(
+          ParDo.Bound.class, ParDo.BoundMulti.class, Window.Bound.class);
+
   private Map<PValue, Collection<AppliedPTransform<?, ?, ?>>> valueToConsumers = new HashMap<>();
   private Collection<AppliedPTransform<?, ?, ?>> rootTransforms = new ArrayList<>();
   private Collection<PCollectionView<?>> views = new ArrayList<>();
@@ -159,6 +184,55 @@ public class ConsumerTrackingPipelineVisitor extends PipelineVisitor.Defaults {
     return views;
   }
 
+  /**
+   * Returns a mapping from each {@link PCollection} which can be fused into its consumer to that
+   * consumer. The elements of a fused {@link PCollection} can be passed directly from the producing
+   * {@link AppliedPTransform} to the consuming {@link AppliedPTransform} as they are output,
+   * without being committed to an intermediate bundle.
+   *
+   * <p>A {@link PCollection} can be fused if it is produced by a {@link ParDo}, {@link Window}, or
+   * {@link FlattenPCollectionList} and has exactly one consumer, which is a {@link ParDo} with no
+   * side inputs or a {@link Window}.
+   */
+  public Map<PValue, AppliedPTransform<?, ?, ?>> getFusedConsumers() {
+    checkState(
+        finalized,
+        "Can't call getFusedConsumers before the Pipeline has been completely traversed");
+
+    Map<PValue, AppliedPTransform<?, ?, ?>> fusedConsumers = new HashMap<>();
+    for (Map.Entry<PValue, Collection<AppliedPTransform<?, ?, ?>>> valueConsumers :
+        valueToConsumers.entrySet()) {
+      PValue value = valueConsumers.getKey();
+      if (!(value instanceof PCollection) || valueConsumers.getValue().size() != 1) {
+        continue;
+      }
+      AppliedPTransform<?, ?, ?> consumer = Iterables.getOnlyElement(valueConsumers.getValue());
+      AppliedPTransform<?, ?, ?> producer = value.getProducingTransformInternal();
+      if (producer != null
+          && FUSIBLE_PRODUCERS.contains(producer.getTransform().getClass())
+          && isFusibleConsumer(consumer)) {
+        fusedConsumers.put(value, consumer);
+      }
+    }
+    return fusedConsumers;
+  }
+
+  private static boolean isFusibleConsumer(AppliedPTransform<?, ?, ?> consumer) {
+    PTransform<?, ?> transform = consumer.getTransform();
+    if (!FUSIBLE_CONSUMERS.contains(transform.getClass())
+        || consumer.getInput().expand().size() != 1) {
+      return false;
+    }
+    // Elements which are blocked on side inputs are pushed back to be reprocessed later, which is
+    // only possible for the first transform in a fused stage.
+    if (transform instanceof ParDo.Bound) {
+      return ((ParDo.Bound<?, ?>) transform).getSideInputs().isEmpty();
+    } else if (transform instanceof ParDo.BoundMulti) {
+      return ((ParDo.BoundMulti<?, ?>) transform).getSideInputs().isEmpty();
+    }
+    return true;
+  }
+
   /**
    * Returns all of the {@link PValue PValues} that have been produced but not consumed. These
    * {@link PValue PValues} should be finalized by the {@link PipelineRunner} before the
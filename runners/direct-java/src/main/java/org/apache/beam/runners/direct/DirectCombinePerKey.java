@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupByKeyOnly;
+import org.apache.beam.sdk.coders.CannotProvideCoderException;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Combine.KeyedCombineFn;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.transforms.display.HasDisplayData;
+import org.apache.beam.sdk.transforms.windowing.DefaultTrigger;
+import org.apache.beam.sdk.util.AppliedCombineFn;
+import org.apache.beam.sdk.util.KeyedWorkItem;
+import org.apache.beam.sdk.util.KeyedWorkItemCoder;
+import org.apache.beam.sdk.util.PartialWindowedCombiner;
+import org.apache.beam.sdk.util.ReifyTimestampsAndWindows;
+import org.apache.beam.sdk.util.SystemReduceFn;
+import org.apache.beam.sdk.util.WindowingStrategy;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+
+/**
+ * The {@link DirectRunner} override for {@link Combine.PerKey}. The values of each key and window
+ * are partially combined within each bundle by a {@link PartialWindowedCombiner}, so only the
+ * accumulators are grouped, and the grouped accumulators are merged with a
+ * {@link SystemReduceFn#combiningAccumulators} {@link SystemReduceFn}.
+ *
+ * <p>A {@link Combine.PerKey} is expanded as usual if it has side inputs, if its function is not a
+ * {@link KeyedCombineFn}, if its input is triggered by anything but the {@link DefaultTrigger}
+ * (the accumulators would be counted in place of the values they combine), or if the coder of its
+ * accumulators or outputs cannot be inferred.
+ */
+class DirectCombinePerKey<K, InputT, OutputT>
+    extends ForwardingPTransform<PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>> {
+  private final Combine.PerKey<K, InputT, OutputT> original;
+
+  DirectCombinePerKey(Combine.PerKey<K, InputT, OutputT> from) {
+    this.original = from;
+  }
+
+  @Override
+  public PTransform<PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>> delegate() {
+    return original;
+  }
+
+  @Override
+  public PCollection<KV<K, OutputT>> apply(PCollection<KV<K, InputT>> input) {
+    if (!original.getSideInputs().isEmpty()
+        || !(original.getFn() instanceof KeyedCombineFn)
+        || !(input.getCoder() instanceof KvCoder)
+        || !(input.getWindowingStrategy().getTrigger().getSpec() instanceof DefaultTrigger)) {
+      return original.apply(input);
+    }
+    @SuppressWarnings("unchecked")
+    KvCoder<K, InputT> inputCoder = (KvCoder<K, InputT>) input.getCoder();
+    // Casting down the K and InputT is safe because they're only used as inputs.
+    @SuppressWarnings("unchecked")
+    KeyedCombineFn<K, InputT, ?, OutputT> fn =
+        (KeyedCombineFn<K, InputT, ?, OutputT>) original.getFn();
+    try {
+      return applyLifted(input, inputCoder, fn);
+    } catch (CannotProvideCoderException e) {
+      return original.apply(input);
+    }
+  }
+
+  private <AccumT> PCollection<KV<K, OutputT>> applyLifted(
+      PCollection<KV<K, InputT>> input,
+      KvCoder<K, InputT> inputCoder,
+      KeyedCombineFn<K, InputT, AccumT, OutputT> fn)
+      throws CannotProvideCoderException {
+    CoderRegistry registry = input.getPipeline().getCoderRegistry();
+    Coder<K> keyCoder = inputCoder.getKeyCoder();
+    Coder<AccumT> accumCoder =
+        fn.getAccumulatorCoder(registry, keyCoder, inputCoder.getValueCoder());
+    Coder<OutputT> outputCoder =
+        fn.getDefaultOutputCoder(registry, keyCoder, inputCoder.getValueCoder());
+
+    // The combine is expanded without a GroupByKey, so check the input as one would.
+    GroupByKey<K, InputT> groupByKey = GroupByKey.create();
+    groupByKey.validate(input);
+
+    WindowingStrategy<?, ?> windowingStrategy = input.getWindowingStrategy();
+    return input
+        // Combine the values of each key and window within each bundle.
+        .apply("PartialCombine", new DirectPartialCombine<K, InputT, AccumT>(original, fn))
+        .setCoder(KvCoder.of(keyCoder, accumCoder))
+
+        // Group the accumulators as DirectGroupByKey groups values.
+        .apply(new ReifyTimestampsAndWindows<K, AccumT>())
+        .apply(new DirectGroupByKeyOnly<K, AccumT>())
+        .setCoder(
+            KeyedWorkItemCoder.of(
+                keyCoder, accumCoder, windowingStrategy.getWindowFn().windowCoder()))
+
+        // Merge the accumulators of each key and window, merging windows as needed.
+        .apply(
+            "CombineAlsoByWindow",
+            new DirectCombineAlsoByWindow<K, AccumT, OutputT>(
+                original,
+                windowingStrategy,
+                AppliedCombineFn.<K, InputT, AccumT, OutputT>withAccumulatorCoder(
+                    fn, accumCoder)))
+
+        // And update the windowing strategy as the GroupByKey would have.
+        .setWindowingStrategyInternal(groupByKey.updateWindowingStrategy(windowingStrategy))
+        .setCoder(KvCoder.of(keyCoder, outputCoder));
+  }
+
+  /**
+   * The primitive which partially combines the values of each key and window of each bundle into
+   * accumulators. It has the display data of the {@link Combine.PerKey} it was expanded from.
+   */
+  static final class DirectPartialCombine<K, InputT, AccumT>
+      extends PTransform<PCollection<KV<K, InputT>>, PCollection<KV<K, AccumT>>> {
+    private final HasDisplayData original;
+    private final KeyedCombineFn<K, InputT, AccumT, ?> combineFn;
+
+    DirectPartialCombine(HasDisplayData original, KeyedCombineFn<K, InputT, AccumT, ?> combineFn) {
+      this.original = original;
+      this.combineFn = combineFn;
+    }
+
+    public KeyedCombineFn<K, InputT, AccumT, ?> getCombineFn() {
+      return combineFn;
+    }
+
+    @Override
+    public PCollection<KV<K, AccumT>> apply(PCollection<KV<K, InputT>> input) {
+      return PCollection.<KV<K, AccumT>>createPrimitiveOutputInternal(
+          input.getPipeline(), input.getWindowingStrategy(), input.isBounded());
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      original.populateDisplayData(builder);
+    }
+  }
+
+  /**
+   * The primitive which merges the grouped accumulators of each key and window, and extracts the
+   * output of each pane. It has the display data of the {@link Combine.PerKey} it was expanded
+   * from.
+   */
+  static final class DirectCombineAlsoByWindow<K, AccumT, OutputT>
+      extends PTransform<PCollection<KeyedWorkItem<K, AccumT>>, PCollection<KV<K, OutputT>>> {
+    private final HasDisplayData original;
+    private final WindowingStrategy<?, ?> windowingStrategy;
+    private final AppliedCombineFn<K, ?, AccumT, OutputT> combineFn;
+
+    DirectCombineAlsoByWindow(
+        HasDisplayData original,
+        WindowingStrategy<?, ?> windowingStrategy,
+        AppliedCombineFn<K, ?, AccumT, OutputT> combineFn) {
+      this.original = original;
+      this.windowingStrategy = windowingStrategy;
+      this.combineFn = combineFn;
+    }
+
+    public WindowingStrategy<?, ?> getWindowingStrategy() {
+      return windowingStrategy;
+    }
+
+    public AppliedCombineFn<K, ?, AccumT, OutputT> getCombineFn() {
+      return combineFn;
+    }
+
+    public Coder<K> getKeyCoder(Coder<KeyedWorkItem<K, AccumT>> inputCoder) {
+      checkArgument(
+          inputCoder instanceof KeyedWorkItemCoder,
+          "%s requires a %s<...> but got %s",
+          getClass().getSimpleName(),
+          KeyedWorkItemCoder.class.getSimpleName(),
+          inputCoder);
+      @SuppressWarnings("unchecked")
+      KeyedWorkItemCoder<K, AccumT> keyedWorkItemCoder = (KeyedWorkItemCoder<K, AccumT>) inputCoder;
+      return keyedWorkItemCoder.getKeyCoder();
+    }
+
+    @Override
+    public PCollection<KV<K, OutputT>> apply(PCollection<KeyedWorkItem<K, AccumT>> input) {
+      return PCollection.<KV<K, OutputT>>createPrimitiveOutputInternal(
+          input.getPipeline(), input.getWindowingStrategy(), input.isBounded());
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      original.populateDisplayData(builder);
+    }
+  }
+}
@@ -29,7 +29,7 @@ import org.apache.beam.sdk.transforms.PTransform;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Options that can be used to configure the {@link org.apache.beam.runners.direct.DirectRunner}.
@@ -43,17 +43,26 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
    * it cannot enter a state in which it will not schedule additional pending work unless currently
    * scheduled work completes, as this may cause the {@link Pipeline} to cease processing.
    *
-   * <p>Defaults to a {@link FixedThreadPoolExecutorServiceFactory}, which produces instances of
-   * {@link Executors#newCachedThreadPool()}.
+   * <p>Defaults to a {@link ForkJoinPoolExecutorServiceFactory}, which produces instances of
+   * {@link ForkJoinPool} with a parallelism equal to the number of available processors.
    */
   @JsonIgnore
   @Required
   @Hidden
-  @Default.InstanceFactory(FixedThreadPoolExecutorServiceFactory.class)
+  @Default.InstanceFactory(ForkJoinPoolExecutorServiceFactory.class)
   ExecutorServiceFactory getExecutorServiceFactory();
 
   void setExecutorServiceFactory(ExecutorServiceFactory executorService);
 
+  @Default.Integer(16)
+  @Description(
+      "The maximum number of bundles of each PTransform that may be submitted for evaluation "
+          + "at once. Additional bundles are queued by the runner until an earlier bundle of that "
+          + "PTransform completes.")
+  int getMaxOutstandingBundlesPerStep();
+
+  void setMaxOutstandingBundlesPerStep(int maxOutstanding);
+
   /**
    * Gets the {@link Clock} used by this pipeline. The clock is used in place of accessing the
    * system time when time values are required by the evaluator.
@@ -98,4 +107,89 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
   boolean isTestImmutability();
 
   void setTestImmutability(boolean test);
+
+  @Default.Boolean(true)
+  @Description(
+      "Controls whether the runner should ensure that all of the elements input to every ParDo "
+          + "can be encoded and decoded by the Coder of their PCollection, and that the Coder "
+          + "preserves the structural value of elements when it is consistent with equals.")
+  boolean isTestEncodability();
+
+  void setTestEncodability(boolean test);
+
+  @Default.Integer(1)
+  @Description(
+      "Controls how many of the elements of each bundle are checked by the immutability and "
+          + "encodability enforcements. Each element of a bundle is checked at random with "
+          + "probability 1/N, so on average one in every N elements is checked; 1 checks every "
+          + "element. The numbers of elements checked are reported by "
+          + "DirectPipelineResult#getCheckedInputElementCounts(), for the elements input to each "
+          + "PTransform, and DirectPipelineResult#getCheckedOutputElementCounts(), for the "
+          + "elements output by each PTransform.")
+  int getEnforcementSampleRate();
+
+  void setEnforcementSampleRate(int sampleRate);
+
+  @Default.Integer(0)
+  @Description(
+      "The maximum number of elements of each bundle that are checked by each of the "
+          + "immutability and encodability enforcements. 0 checks an unlimited number of "
+          + "elements.")
+  int getEnforcementMaxElementsPerBundle();
+
+  void setEnforcementMaxElementsPerBundle(int maxElements);
+
+  @Default.Boolean(false)
+  @Description(
+      "Controls whether the runner should fuse chains of element-wise PTransforms. If enabled, "
+          + "the elements output by a ParDo, Window, or Flatten that is consumed only by a "
+          + "ParDo without side inputs or a Window are passed directly to the consumer, instead of "
+          + "being committed to an intermediate bundle and scheduled separately.")
+  boolean isFuseStages();
+
+  void setFuseStages(boolean fuse);
+
+  @Default.Long(64L * 1024L * 1024L)
+  @Description(
+      "The approximate number of bytes of encoded elements each evaluation of a GroupByKey "
+          + "buffers in memory. When the buffered elements exceed this size, they are sorted by "
+          + "key and spilled to a temporary file, and all of the spilled files are merged when the "
+          + "evaluation completes.")
+  long getGroupByKeyBufferBytes();
+
+  void setGroupByKeyBufferBytes(long bufferBytes);
+
+  @Default.Long(10L * 60L * 1000L)
+  @Description(
+      "The minimum number of milliseconds for which the record IDs of an unbounded source that "
+          + "requires deduplication are retained. A record with an ID seen within this period is "
+          + "not output.")
+  long getDeduplicationRetentionMillis();
+
+  void setDeduplicationRetentionMillis(long retentionMillis);
+
+  @Default.Boolean(false)
+  @Description(
+      "Controls whether record IDs older than the most recent fraction of the deduplication "
+          + "retention period are stored in Bloom filters. This reduces the memory used per ID, "
+          + "but occasionally causes a record which is not a duplicate to be dropped.")
+  boolean isDeduplicateWithBloomFilters();
+
+  void setDeduplicateWithBloomFilters(boolean useBloomFilters);
+
+  @Default.Boolean(false)
+  @Description(
+      "Controls whether the runner should record the time spent and the elements processed by "
+          + "each step. If enabled, a report of each step sorted by wall time is logged when the "
+          + "pipeline completes.")
+  boolean isProfileSteps();
+
+  void setProfileSteps(boolean profile);
+
+  @Description(
+      "If step profiling is enabled, the path of a file to which the step profiles are written as "
+          + "JSON when the pipeline completes.")
+  String getProfileOutputFile();
+
+  void setProfileOutputFile(String profileOutputFile);
 }
@@ -17,6 +17,8 @@
  */
 package org.apache.beam.runners.direct;
 
+import static com.google.common.base.Preconditions.checkState;
+
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupByKeyOnly;
 import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
 import org.apache.beam.runners.direct.ViewEvaluatorFactory.ViewOverrideFactory;
@@ -31,10 +33,12 @@ import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.runners.PipelineRunner;
 import org.apache.beam.sdk.transforms.Aggregator;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.View.CreatePCollectionView;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.TimerInternals.TimerData;
 import org.apache.beam.sdk.util.UserCodeException;
 import org.apache.beam.sdk.util.WindowedValue;
@@ -59,6 +63,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
+import javax.annotation.Nullable;
+
 /**
  * An In-Memory implementation of the Dataflow Programming Model. Supports Unbounded
  * {@link PCollection PCollections}.
@@ -77,6 +83,7 @@ public class DirectRunner
       defaultTransformOverrides =
           ImmutableMap.<Class<? extends PTransform>, PTransformOverrideFactory>builder()
               .put(GroupByKey.class, new DirectGroupByKeyOverrideFactory())
+              .put(Combine.PerKey.class, new DirectCombinePerKeyOverrideFactory())
               .put(CreatePCollectionView.class, new ViewOverrideFactory())
               .put(Write.Bound.class, new WriteWithShardingFactory())
               .build();
@@ -149,6 +156,15 @@ public class DirectRunner
      */
     Instant getSynchronizedProcessingOutputWatermark();
 
+    /**
+     * Returns the minimum timestamp among the elements of this bundle that are in at least one
+     * window, or {@link BoundedWindow#TIMESTAMP_MAX_VALUE} if there are no such elements. Pending
+     * bundles hold the input watermark of the consuming {@link PTransform} to this value.
+     *
+     * <p>This value is computed once, when the bundle is committed.
+     */
+    Instant getMinTimestamp();
+
     /**
      * Return a new {@link CommittedBundle} that is like this one, except calls to
      * {@link #getElements()} will return the provided elements. This bundle is unchanged.
@@ -220,10 +236,32 @@ public class DirectRunner
 
     DisplayDataValidator.validatePipeline(pipeline);
 
+    EnforcementSampler sampler =
+        EnforcementSampler.create(
+            options.getEnforcementSampleRate(), options.getEnforcementMaxElementsPerBundle());
+    @SuppressWarnings("rawtypes")
+    Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>> enforcements =
+        defaultModelEnforcements(options, sampler);
+    TransformEvaluatorFactory evaluatorFactory = TransformEvaluatorRegistry.defaultRegistry();
+    BundleFactory bundleFactory = createBundleFactory(getPipelineOptions(), sampler);
+    if (options.isFuseStages()) {
+      FusedStageEvaluatorFactory fusedFactory =
+          FusedStageEvaluatorFactory.create(
+              evaluatorFactory, consumerTrackingVisitor.getFusedConsumers(), enforcements);
+      evaluatorFactory = fusedFactory;
+      bundleFactory = fusedFactory.fusingBundleFactory(bundleFactory);
+    }
+    StepProfiler profiler = null;
+    if (options.isProfileSteps()) {
+      profiler = StepProfiler.create();
+      evaluatorFactory = profiler.profilingEvaluatorFactory(evaluatorFactory);
+      bundleFactory = profiler.profilingBundleFactory(bundleFactory);
+    }
+
     EvaluationContext context =
         EvaluationContext.create(
             getPipelineOptions(),
-            createBundleFactory(getPipelineOptions()),
+            bundleFactory,
             consumerTrackingVisitor.getRootTransforms(),
             consumerTrackingVisitor.getValueToConsumers(),
             consumerTrackingVisitor.getStepNames(),
@@ -237,15 +275,16 @@ public class DirectRunner
             executorService,
             consumerTrackingVisitor.getValueToConsumers(),
             keyedPValueVisitor.getKeyedPValues(),
-            TransformEvaluatorRegistry.defaultRegistry(),
-            defaultModelEnforcements(options),
+            evaluatorFactory,
+            enforcements,
             context);
     executor.start(consumerTrackingVisitor.getRootTransforms());
 
     Map<Aggregator<?, ?>, Collection<PTransform<?, ?>>> aggregatorSteps =
         pipeline.getAggregatorSteps();
     DirectPipelineResult result =
-        new DirectPipelineResult(executor, context, aggregatorSteps);
+        new DirectPipelineResult(
+            executor, context, aggregatorSteps, sampler, profiler, options.getProfileOutputFile());
     if (options.isBlockOnRun()) {
       try {
         result.awaitCompletion();
@@ -262,28 +301,33 @@ public class DirectRunner
   }
 
   private Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>>
-      defaultModelEnforcements(DirectOptions options) {
+      defaultModelEnforcements(DirectOptions options, EnforcementSampler sampler) {
     ImmutableMap.Builder<Class<? extends PTransform>, Collection<ModelEnforcementFactory>>
         enforcements = ImmutableMap.builder();
-    Collection<ModelEnforcementFactory> parDoEnforcements = createParDoEnforcements(options);
+    Collection<ModelEnforcementFactory> parDoEnforcements =
+        createParDoEnforcements(options, sampler);
     enforcements.put(ParDo.Bound.class, parDoEnforcements);
     enforcements.put(ParDo.BoundMulti.class, parDoEnforcements);
     return enforcements.build();
   }
 
   private Collection<ModelEnforcementFactory> createParDoEnforcements(
-      DirectOptions options) {
+      DirectOptions options, EnforcementSampler sampler) {
     ImmutableList.Builder<ModelEnforcementFactory> enforcements = ImmutableList.builder();
     if (options.isTestImmutability()) {
-      enforcements.add(ImmutabilityEnforcementFactory.create());
+      enforcements.add(ImmutabilityEnforcementFactory.create(sampler));
+    }
+    if (options.isTestEncodability()) {
+      enforcements.add(EncodabilityEnforcementFactory.create(sampler));
     }
     return enforcements.build();
   }
 
-  private BundleFactory createBundleFactory(DirectOptions pipelineOptions) {
+  private BundleFactory createBundleFactory(
+      DirectOptions pipelineOptions, EnforcementSampler sampler) {
     BundleFactory bundleFactory = ImmutableListBundleFactory.create();
     if (pipelineOptions.isTestImmutability()) {
-      bundleFactory = ImmutabilityCheckingBundleFactory.create(bundleFactory);
+      bundleFactory = ImmutabilityCheckingBundleFactory.create(bundleFactory, sampler);
     }
     return bundleFactory;
   }
@@ -297,15 +341,24 @@ public class DirectRunner
     private final PipelineExecutor executor;
     private final EvaluationContext evaluationContext;
     private final Map<Aggregator<?, ?>, Collection<PTransform<?, ?>>> aggregatorSteps;
+    private final EnforcementSampler enforcementSampler;
+    @Nullable private final StepProfiler profiler;
+    @Nullable private final String profileOutputFile;
     private State state;
 
     private DirectPipelineResult(
         PipelineExecutor executor,
         EvaluationContext evaluationContext,
-        Map<Aggregator<?, ?>, Collection<PTransform<?, ?>>> aggregatorSteps) {
+        Map<Aggregator<?, ?>, Collection<PTransform<?, ?>>> aggregatorSteps,
+        EnforcementSampler enforcementSampler,
+        @Nullable StepProfiler profiler,
+        @Nullable String profileOutputFile) {
       this.executor = executor;
       this.evaluationContext = evaluationContext;
       this.aggregatorSteps = aggregatorSteps;
+      this.enforcementSampler = enforcementSampler;
+      this.profiler = profiler;
+      this.profileOutputFile = profileOutputFile;
       // Only ever constructed after the executor has started.
       this.state = State.RUNNING;
     }
@@ -345,6 +398,41 @@ public class DirectRunner
       };
     }
 
+    /**
+     * Returns the number of input elements checked by the immutability and encodability
+     * enforcements at each step of the {@link Pipeline}, keyed by the full name of the step. Each
+     * enforcement counts the elements it checks. The elements that are checked are controlled by
+     * {@link DirectOptions#getEnforcementSampleRate()} and
+     * {@link DirectOptions#getEnforcementMaxElementsPerBundle()}.
+     */
+    public Map<String, Long> getCheckedInputElementCounts() {
+      return enforcementSampler.getCheckedInputElementCounts();
+    }
+
+    /**
+     * Returns the number of output elements checked by the immutability enforcement at each step
+     * of the {@link Pipeline}, keyed by the full name of the step that produced them. The elements
+     * that are checked are controlled by {@link DirectOptions#getEnforcementSampleRate()} and
+     * {@link DirectOptions#getEnforcementMaxElementsPerBundle()}.
+     */
+    public Map<String, Long> getCheckedOutputElementCounts() {
+      return enforcementSampler.getCheckedOutputElementCounts();
+    }
+
+    /**
+     * Returns a report of the time spent and the elements processed by each step of the
+     * {@link Pipeline}, in descending order of wall time.
+     *
+     * <p>Requires {@link DirectOptions#isProfileSteps()} to be enabled.
+     */
+    public String getProfileReport() {
+      checkState(
+          profiler != null,
+          "Step profiling is not enabled. Set %s to true to record step profiles.",
+          "DirectOptions.profileSteps");
+      return profiler.toReport();
+    }
+
     /**
      * Blocks until the {@link Pipeline} execution represented by this
      * {@link DirectPipelineResult} is complete, returning the terminal state.
@@ -371,6 +459,10 @@ public class DirectRunner
         } catch (Throwable t) {
           state = State.FAILED;
           throw t;
+        } finally {
+          if (profiler != null && state.isTerminal()) {
+            profiler.report(profileOutputFile);
+          }
         }
       }
       return state;
@@ -20,6 +20,7 @@ package org.apache.beam.runners.direct;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.EnforcementSampler.BundleSampler;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
 import org.apache.beam.sdk.util.CoderUtils;
@@ -33,24 +34,43 @@ import org.apache.beam.sdk.values.PCollection;
  */
 class EncodabilityEnforcementFactory implements ModelEnforcementFactory {
   public static EncodabilityEnforcementFactory create() {
-    return new EncodabilityEnforcementFactory();
+    return create(EnforcementSampler.all());
+  }
+
+  /**
+   * Create a new {@link EncodabilityEnforcementFactory} which checks the elements selected by the
+   * provided {@link EnforcementSampler}.
+   */
+  public static EncodabilityEnforcementFactory create(EnforcementSampler sampler) {
+    return new EncodabilityEnforcementFactory(sampler);
+  }
+
+  private final EnforcementSampler sampler;
+
+  private EncodabilityEnforcementFactory(EnforcementSampler sampler) {
+    this.sampler = sampler;
   }
 
   @Override
   public <T> ModelEnforcement<T> forBundle(
       CommittedBundle<T> input, AppliedPTransform<?, ?, ?> consumer) {
-    return new EncodabilityEnforcement<>(input);
+    return new EncodabilityEnforcement<>(input, sampler.forInputBundle(consumer));
   }
 
   private static class EncodabilityEnforcement<T> extends AbstractModelEnforcement<T> {
     private Coder<T> coder;
+    private final BundleSampler sampler;
 
-    public EncodabilityEnforcement(CommittedBundle<T> input) {
+    public EncodabilityEnforcement(CommittedBundle<T> input, BundleSampler sampler) {
       coder = input.getPCollection().getCoder();
+      this.sampler = sampler;
     }
 
     @Override
     public void beforeElement(WindowedValue<T> element) {
+      if (!sampler.sample()) {
+        return;
+      }
       try {
         T clone = CoderUtils.clone(coder, element.getValue());
         if (coder.consistentWithEquals()) {
@@ -66,5 +86,13 @@ class EncodabilityEnforcementFactory implements ModelEnforcementFactory {
         throw UserCodeException.wrap(e);
       }
     }
+
+    @Override
+    public void afterFinish(
+        CommittedBundle<T> input,
+        TransformResult result,
+        Iterable<? extends CommittedBundle<?>> outputs) {
+      sampler.finish();
+    }
   }
 }
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Determines which elements of a bundle are checked by the immutability and encodability
+ * enforcements of the {@link DirectRunner}, and counts the elements checked at each step.
+ *
+ * <p>Each element of a bundle is checked with probability {@code 1 / sampleRate}, up to a maximum
+ * of {@code maxElementsPerBundle} elements (if nonzero). As elements are selected at random, an
+ * element which is not checked in one bundle may be checked in another, regardless of its position
+ * within the bundle. Checking a subset of elements allows large inputs to be processed with
+ * enforcement still partially enabled.
+ *
+ * <p>The elements of bundles input to a step and the elements of bundles output by a step are
+ * counted separately.
+ */
+class EnforcementSampler {
+  /**
+   * Create a new {@link EnforcementSampler} which checks each element with probability
+   * {@code 1 / sampleRate}, and at most {@code maxElementsPerBundle} elements of each bundle. If
+   * {@code maxElementsPerBundle} is zero, the number of checked elements is not limited.
+   */
+  public static EnforcementSampler create(int sampleRate, int maxElementsPerBundle) {
+    checkArgument(sampleRate > 0, "Enforcement sample rate must be positive, got %s", sampleRate);
+    checkArgument(
+        maxElementsPerBundle >= 0,
+        "Maximum enforced elements per bundle must be nonnegative, got %s",
+        maxElementsPerBundle);
+    return new EnforcementSampler(sampleRate, maxElementsPerBundle);
+  }
+
+  /**
+   * Create a new {@link EnforcementSampler} which checks every element.
+   */
+  public static EnforcementSampler all() {
+    return create(1, 0);
+  }
+
+  private final int sampleRate;
+  private final int maxElementsPerBundle;
+  private final ConcurrentMap<AppliedPTransform<?, ?, ?>, AtomicLong> checkedInputElements;
+  private final ConcurrentMap<AppliedPTransform<?, ?, ?>, AtomicLong> checkedOutputElements;
+
+  private EnforcementSampler(int sampleRate, int maxElementsPerBundle) {
+    this.sampleRate = sampleRate;
+    this.maxElementsPerBundle = maxElementsPerBundle;
+    this.checkedInputElements = new ConcurrentHashMap<>();
+    this.checkedOutputElements = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns a new {@link BundleSampler} for a bundle of elements input to the provided step.
+   */
+  public BundleSampler forInputBundle(AppliedPTransform<?, ?, ?> consumer) {
+    return new BundleSampler(stepCounter(checkedInputElements, consumer));
+  }
+
+  /**
+   * Returns a new {@link BundleSampler} for a bundle of elements output by the provided step.
+   */
+  public BundleSampler forOutputBundle(AppliedPTransform<?, ?, ?> producer) {
+    return new BundleSampler(stepCounter(checkedOutputElements, producer));
+  }
+
+  /**
+   * Returns the number of input elements checked for each step, keyed by the full name of the
+   * step. Each enforcement applied to the inputs of a step counts the elements it checks. Checks
+   * are counted when the bundle they were performed on completes.
+   */
+  public Map<String, Long> getCheckedInputElementCounts() {
+    return counts(checkedInputElements);
+  }
+
+  /**
+   * Returns the number of output elements checked for each step, keyed by the full name of the
+   * step that produced them. Checks are counted when the bundle they were performed on is
+   * committed.
+   */
+  public Map<String, Long> getCheckedOutputElementCounts() {
+    return counts(checkedOutputElements);
+  }
+
+  private static AtomicLong stepCounter(
+      ConcurrentMap<AppliedPTransform<?, ?, ?>, AtomicLong> checkedElements,
+      AppliedPTransform<?, ?, ?> step) {
+    AtomicLong stepChecked = checkedElements.get(step);
+    if (stepChecked == null) {
+      checkedElements.putIfAbsent(step, new AtomicLong());
+      stepChecked = checkedElements.get(step);
+    }
+    return stepChecked;
+  }
+
+  private static Map<String, Long> counts(
+      ConcurrentMap<AppliedPTransform<?, ?, ?>, AtomicLong> checkedElements) {
+    ImmutableMap.Builder<String, Long> counts = ImmutableMap.builder();
+    for (Map.Entry<AppliedPTransform<?, ?, ?>, AtomicLong> stepChecked :
+        checkedElements.entrySet()) {
+      counts.put(stepChecked.getKey().getFullName(), stepChecked.getValue().get());
+    }
+    return counts.build();
+  }
+
+  /**
+   * Determines which elements of a single bundle are checked. A {@link BundleSampler} is not
+   * thread-safe.
+   */
+  public class BundleSampler {
+    private final AtomicLong stepChecked;
+    private long checked;
+    private long reported;
+
+    private BundleSampler(AtomicLong stepChecked) {
+      this.stepChecked = stepChecked;
+    }
+
+    /**
+     * Returns true if the next element of the bundle should be checked.
+     */
+    public boolean sample() {
+      if (maxElementsPerBundle != 0 && checked >= maxElementsPerBundle) {
+        return false;
+      }
+      if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+        checked++;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Adds the elements checked within this bundle to the total for the step.
+     */
+    public void finish() {
+      stepChecked.addAndGet(checked - reported);
+      reported = checked;
+    }
+  }
+}
@@ -322,6 +322,13 @@ class EvaluationContext {
         watermarkManager.getWatermarks(application));
   }
 
+  /**
+   * Get the current watermarks of the provided {@link AppliedPTransform}.
+   */
+  public TransformWatermarks getWatermarks(AppliedPTransform<?, ?, ?> application) {
+    return watermarkManager.getWatermarks(application);
+  }
+
   /**
    * Get all of the steps used in this {@link Pipeline}.
    */
@@ -18,6 +18,7 @@
 package org.apache.beam.runners.direct;
 
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.TransformExecutorServices.BoundedEvaluationState;
 import org.apache.beam.runners.direct.WatermarkManager.FiredTimers;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
@@ -32,6 +33,7 @@ import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.PValue;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
@@ -39,6 +41,8 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,13 +50,14 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -66,23 +71,47 @@ import javax.annotation.Nullable;
 final class ExecutorServiceParallelExecutor implements PipelineExecutor {
   private static final Logger LOG = LoggerFactory.getLogger(ExecutorServiceParallelExecutor.class);
 
+  /**
+   * The maximum time the monitor waits to be signalled while no work is outstanding. Without
+   * outstanding work, only the passage of processing time, such as for processing time timers, can
+   * allow the monitor to make progress, so it must check for work periodically. While work is
+   * outstanding, the monitor is woken only by the completion of that work.
+   */
+  private static final long IDLE_MONITOR_DELAY_MILLIS = 10L;
+
   private final ExecutorService executorService;
 
   private final Map<PValue, Collection<AppliedPTransform<?, ?, ?>>> valueToConsumers;
   private final Set<PValue> keyedPValues;
-  private final TransformEvaluatorRegistry registry;
+  private final TransformEvaluatorFactory registry;
   @SuppressWarnings("rawtypes")
   private final Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>>
       transformEnforcements;
 
   private final EvaluationContext evaluationContext;
 
+  private final LoadingCache<AppliedPTransform<?, ?, ?>, BoundedEvaluationState>
+      stepExecutorServices;
   private final LoadingCache<StepAndKey, TransformExecutorService> executorServices;
 
   private final Queue<ExecutorUpdate> allUpdates;
-  private final BlockingQueue<VisibleExecutorUpdate> visibleUpdates;
+  /**
+   * Completed when the {@link Pipeline} completes, or failed with the first {@link Throwable}
+   * thrown during execution.
+   */
+  private final SettableFuture<Void> completion;
+
+  private final MonitorRunnable monitor;
+  /**
+   * The executor the monitor runs on. The monitor runs on its own thread, so it is never queued
+   * behind, or starved by, the work it schedules on the {@link ExecutorService}.
+   */
+  private final ExecutorService monitorExecutor;
+  /**
+   * Signalled whenever an event that may allow the monitor to make progress occurs.
+   */
+  private final MonitorSignal monitorSignal = new MonitorSignal();
 
-  private final TransformExecutorService parallelExecutorService;
   private final CompletionCallback defaultCompletionCallback;
 
   private Collection<AppliedPTransform<?, ?, ?>> rootNodes;
@@ -103,7 +132,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
       ExecutorService executorService,
       Map<PValue, Collection<AppliedPTransform<?, ?, ?>>> valueToConsumers,
       Set<PValue> keyedPValues,
-      TransformEvaluatorRegistry registry,
+      TransformEvaluatorFactory registry,
       @SuppressWarnings("rawtypes")
       Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>> transformEnforcements,
       EvaluationContext context) {
@@ -115,7 +144,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
       ExecutorService executorService,
       Map<PValue, Collection<AppliedPTransform<?, ?, ?>>> valueToConsumers,
       Set<PValue> keyedPValues,
-      TransformEvaluatorRegistry registry,
+      TransformEvaluatorFactory registry,
       @SuppressWarnings("rawtypes")
       Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>> transformEnforcements,
       EvaluationContext context) {
@@ -126,6 +155,14 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
     this.transformEnforcements = transformEnforcements;
     this.evaluationContext = context;
 
+    // Each step has a single executor service for all of its bundles, which bounds the number of
+    // bundles of that step submitted to the ExecutorService at once. Keyed executor services
+    // submit their work to the executor service of their step.
+    stepExecutorServices =
+        CacheBuilder.newBuilder()
+            .build(
+                boundedTransformExecutorServiceCacheLoader(
+                    context.getPipelineOptions().getMaxOutstandingBundlesPerStep()));
     // Weak Values allows TransformExecutorServices that are no longer in use to be reclaimed.
     // Executing TransformExecutorServices have a strong reference to their TransformExecutorService
     // which stops the TransformExecutorServices from being prematurely garbage collected
@@ -133,19 +170,43 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
         CacheBuilder.newBuilder().weakValues().build(serialTransformExecutorServiceCacheLoader());
 
     this.allUpdates = new ConcurrentLinkedQueue<>();
-    this.visibleUpdates = new ArrayBlockingQueue<>(20);
+    this.completion = SettableFuture.create();
+
+    this.monitor = new MonitorRunnable();
+    // The monitor thread is not a daemon thread, so a pipeline that is run without blocking keeps
+    // the JVM alive until it completes.
+    this.monitorExecutor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setDaemon(false)
+                .setNameFormat(
+                    String.format(
+                        "%s$%s-monitor",
+                        context.getPipelineOptions().getAppName(),
+                        ExecutorServiceParallelExecutor.class.getSimpleName()))
+                .build());
 
-    parallelExecutorService = TransformExecutorServices.parallel(executorService);
     defaultCompletionCallback =
         new TimerIterableCompletionCallback(Collections.<TimerData>emptyList());
   }
 
+  private CacheLoader<AppliedPTransform<?, ?, ?>, BoundedEvaluationState>
+      boundedTransformExecutorServiceCacheLoader(final int maxOutstandingBundlesPerStep) {
+    return new CacheLoader<AppliedPTransform<?, ?, ?>, BoundedEvaluationState>() {
+      @Override
+      public BoundedEvaluationState load(AppliedPTransform<?, ?, ?> step) throws Exception {
+        return TransformExecutorServices.bounded(executorService, maxOutstandingBundlesPerStep);
+      }
+    };
+  }
+
   private CacheLoader<StepAndKey, TransformExecutorService>
       serialTransformExecutorServiceCacheLoader() {
     return new CacheLoader<StepAndKey, TransformExecutorService>() {
       @Override
       public TransformExecutorService load(StepAndKey stepAndKey) throws Exception {
-        return TransformExecutorServices.serial(executorService);
+        return TransformExecutorServices.serial(
+            stepExecutorServices.getUnchecked(stepAndKey.getStep()));
       }
     };
   }
@@ -153,8 +214,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
   @Override
   public void start(Collection<AppliedPTransform<?, ?, ?>> roots) {
     rootNodes = ImmutableList.copyOf(roots);
-    Runnable monitorRunnable = new MonitorRunnable();
-    executorService.submit(monitorRunnable);
+    monitorExecutor.submit(monitor);
   }
 
   @SuppressWarnings("unchecked")
@@ -181,7 +241,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
       // ExecutorService before the Earlier TransformExecutor callable completes.
       transformExecutor = executorServices.getUnchecked(stepAndKey);
     } else {
-      transformExecutor = parallelExecutorService;
+      transformExecutor = stepExecutorServices.getUnchecked(transform);
     }
 
     Collection<ModelEnforcementFactory> enforcements =
@@ -215,19 +275,13 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
 
   @Override
   public void awaitCompletion() throws Throwable {
-    VisibleExecutorUpdate update;
-    do {
-      // Get an update; don't block forever if another thread has handled it
-      update = visibleUpdates.poll(2L, TimeUnit.SECONDS);
-      if (update == null && executorService.isShutdown()) {
-        // there are no updates to process and no updates will ever be published because the
-        // executor is shutdown
-        return;
-      } else if (update != null && update.throwable.isPresent()) {
-        throw update.throwable.get();
-      }
-    } while (update == null || !update.isDone());
+    try {
+      completion.get();
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    }
     executorService.shutdown();
+    monitorExecutor.shutdown();
   }
 
   /**
@@ -259,18 +313,21 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
         state.set(ExecutorState.ACTIVE);
       }
       outstandingWork.decrementAndGet();
+      monitorSignal.signal();
       return committedResult;
     }
 
     @Override
     public void handleEmpty(AppliedPTransform<?, ?, ?> transform) {
       outstandingWork.decrementAndGet();
+      monitorSignal.signal();
     }
 
     @Override
     public final void handleThrowable(CommittedBundle<?> inputBundle, Throwable t) {
       allUpdates.offer(ExecutorUpdate.fromThrowable(t));
       outstandingWork.decrementAndGet();
+      monitorSignal.signal();
     }
   }
 
@@ -312,44 +369,89 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
   }
 
   /**
-   * An update of interest to the user. Used in {@link #awaitCompletion} to decide whether to
-   * return normally or throw an exception.
+   * Wakes the monitor when an event that may allow it to make progress occurs, such as the
+   * completion of a {@link TransformExecutor}. A signal that occurs while the monitor is not
+   * waiting is not lost; the next call to {@link #await(long)} returns immediately.
    */
-  private static class VisibleExecutorUpdate {
-    private final Optional<? extends Throwable> throwable;
-    private final boolean done;
+  @VisibleForTesting
+  static class MonitorSignal {
+    private boolean signalled = false;
 
-    public static VisibleExecutorUpdate fromThrowable(Throwable e) {
-      return new VisibleExecutorUpdate(false, e);
+    public synchronized void signal() {
+      signalled = true;
+      notifyAll();
     }
 
-    public static VisibleExecutorUpdate finished() {
-      return new VisibleExecutorUpdate(true, null);
-    }
-
-    private VisibleExecutorUpdate(boolean done, @Nullable Throwable exception) {
-      this.throwable = Optional.fromNullable(exception);
-      this.done = done;
-    }
-
-    public boolean isDone() {
-      return done;
+    /**
+     * Waits until this {@link MonitorSignal} has been signalled since the previous call to await,
+     * and clears the signal. If {@code maxWaitMillis} is positive, returns after at most that
+     * many milliseconds even if not signalled.
+     */
+    public synchronized void await(long maxWaitMillis) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + maxWaitMillis;
+      while (!signalled) {
+        if (maxWaitMillis <= 0L) {
+          wait();
+        } else {
+          long remainingMillis = deadline - System.currentTimeMillis();
+          if (remainingMillis <= 0L) {
+            break;
+          }
+          wait(remainingMillis);
+        }
+      }
+      signalled = false;
     }
   }
 
+  /**
+   * Evaluates the state of the executor, scheduling available work and detecting the completion of
+   * the {@link Pipeline}.
+   *
+   * <p>The monitor runs on its own thread until the {@link Pipeline} terminates. If an evaluation
+   * of the executor makes progress it is immediately repeated; otherwise the monitor waits until it
+   * is signalled, which occurs when a {@link TransformExecutor} completes. If no work is
+   * outstanding, it waits for at most {@link #IDLE_MONITOR_DELAY_MILLIS}, so work that depends on
+   * the passage of processing time is eventually discovered.
+   */
   private class MonitorRunnable implements Runnable {
     // arbitrary termination condition to ensure progress in the presence of pushback
     private final long maxTimeProcessingUpdatesNanos = TimeUnit.MILLISECONDS.toNanos(5L);
-    private final String runnableName = String.format("%s$%s-monitor",
-        evaluationContext.getPipelineOptions().getAppName(),
-        ExecutorServiceParallelExecutor.class.getSimpleName());
+    /**
+     * The Steps which consume the outputs of each Step. Only accessed by the monitor.
+     */
+    private final Map<AppliedPTransform<?, ?, ?>, Collection<AppliedPTransform<?, ?, ?>>>
+        downstreamSteps = new HashMap<>();
 
     private boolean exceptionThrown = false;
 
     @Override
     public void run() {
-      String oldName = Thread.currentThread().getName();
-      Thread.currentThread().setName(runnableName);
+      while (true) {
+        boolean progressed = evaluate();
+        if (shouldShutdown()) {
+          return;
+        }
+        if (!progressed) {
+          try {
+            monitorSignal.await(outstandingWork.get() == 0L ? IDLE_MONITOR_DELAY_MILLIS : 0L);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Monitor died due to being interrupted");
+            completion.setException(e);
+            exceptionThrown = true;
+            shouldShutdown();
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Evaluates the state of the executor once. Returns true if the evaluation made progress.
+     */
+    private boolean evaluate() {
+      boolean progressed = false;
       try {
         boolean noWorkOutstanding = outstandingWork.get() == 0L;
         ExecutorState startingState = state.get();
@@ -364,7 +466,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
           // The executor re-ran all blocked work and nothing could make progress.
           state.compareAndSet(ExecutorState.QUIESCING, ExecutorState.QUIESCENT);
         }
-        fireTimers();
+        progressed = fireTimers();
         Collection<ExecutorUpdate> updates = new ArrayList<>();
         // Pull all available updates off of the queue before adding additional work. This ensures
         // both loops terminate.
@@ -376,42 +478,67 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
         for (ExecutorUpdate update : updates) {
           LOG.debug("Executor Update: {}", update);
           if (update.getBundle().isPresent()) {
-            if (ExecutorState.ACTIVE == startingState || (ExecutorState.PROCESSING == startingState
-                && noWorkOutstanding)) {
+            if ((ExecutorState.ACTIVE == startingState || (ExecutorState.PROCESSING == startingState
+                && noWorkOutstanding)) && !isHeldBack(update)) {
               scheduleConsumers(update);
+              progressed = true;
             } else {
               allUpdates.offer(update);
             }
           } else if (update.getException().isPresent()) {
-            visibleUpdates.offer(VisibleExecutorUpdate.fromThrowable(update.getException().get()));
+            completion.setException(update.getException().get());
             exceptionThrown = true;
           }
         }
-        addWorkIfNecessary();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        LOG.error("Monitor died due to being interrupted");
-        while (!visibleUpdates.offer(VisibleExecutorUpdate.fromThrowable(e))) {
-          visibleUpdates.poll();
-        }
+        progressed |= addWorkIfNecessary();
+        progressed |= state.get() != startingState;
       } catch (Throwable t) {
         LOG.error("Monitor thread died due to throwable", t);
-        while (!visibleUpdates.offer(VisibleExecutorUpdate.fromThrowable(t))) {
-          visibleUpdates.poll();
+        completion.setException(t);
+        exceptionThrown = true;
+      }
+      return progressed;
+    }
+
+    /**
+     * Returns true if a Step which consumes the output of any consumer of the update is saturated.
+     * The update is held back until that Step completes its queued work, which signals the
+     * monitor, so the consumers do not produce bundles faster than they can be evaluated.
+     */
+    private boolean isHeldBack(ExecutorUpdate update) {
+      for (AppliedPTransform<?, ?, ?> consumer : update.getConsumers()) {
+        for (AppliedPTransform<?, ?, ?> downstream : getDownstreamSteps(consumer)) {
+          BoundedEvaluationState downstreamService =
+              stepExecutorServices.getIfPresent(downstream);
+          if (downstreamService != null && downstreamService.isSaturated()) {
+            return true;
+          }
         }
-      } finally {
-        if (!shouldShutdown()) {
-          // The monitor thread should always be scheduled; but we only need to be scheduled once
-          executorService.submit(this);
+      }
+      return false;
+    }
+
+    private Collection<AppliedPTransform<?, ?, ?>> getDownstreamSteps(
+        AppliedPTransform<?, ?, ?> step) {
+      Collection<AppliedPTransform<?, ?, ?>> downstream = downstreamSteps.get(step);
+      if (downstream == null) {
+        downstream = new ArrayList<>();
+        for (PValue output : step.getOutput().expand()) {
+          Collection<AppliedPTransform<?, ?, ?>> consumers = valueToConsumers.get(output);
+          if (consumers != null) {
+            downstream.addAll(consumers);
+          }
         }
-        Thread.currentThread().setName(oldName);
+        downstreamSteps.put(step, downstream);
       }
+      return downstream;
     }
 
     /**
      * Fires any available timers. Returns true if at least one timer was fired.
      */
-    private void fireTimers() throws Exception {
+    private boolean fireTimers() throws Exception {
+      boolean firedTimers = false;
       try {
         for (Map.Entry<
                AppliedPTransform<?, ?, ?>, Map<StructuralKey<?>, FiredTimers>> transformTimers :
@@ -435,6 +562,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
                       .commit(evaluationContext.now());
               scheduleConsumption(transform, bundle, new TimerIterableCompletionCallback(delivery));
               state.set(ExecutorState.ACTIVE);
+              firedTimers = true;
             }
           }
         }
@@ -442,6 +570,7 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
         LOG.error("Internal Error while delivering timers", e);
         throw e;
       }
+      return firedTimers;
     }
 
     private boolean shouldShutdown() {
@@ -449,15 +578,14 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
       if (shouldShutdown) {
         LOG.debug("Pipeline has terminated. Shutting down.");
         executorService.shutdown();
+        monitorExecutor.shutdown();
         try {
           registry.cleanup();
         } catch (Exception e) {
-          visibleUpdates.add(VisibleExecutorUpdate.fromThrowable(e));
+          completion.setException(e);
         }
         if (evaluationContext.isDone()) {
-          while (!visibleUpdates.offer(VisibleExecutorUpdate.finished())) {
-            visibleUpdates.poll();
-          }
+          completion.set(null);
         }
       }
       return shouldShutdown;
@@ -467,8 +595,10 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
      * If all active {@link TransformExecutor TransformExecutors} are in a blocked state,
      * add more work from root nodes that may have additional work. This ensures that if a pipeline
      * has elements available from the root nodes it will add those elements when necessary.
+     * Returns true if any work was added.
      */
-    private void addWorkIfNecessary() {
+    private boolean addWorkIfNecessary() {
+      boolean addedWork = false;
       // If any timers have fired, they will add more work; We don't need to add more
       if (state.get() == ExecutorState.QUIESCENT) {
         // All current TransformExecutors are blocked; add more work from the roots.
@@ -476,9 +606,11 @@ final class ExecutorServiceParallelExecutor implements PipelineExecutor {
           if (!evaluationContext.isDone(root)) {
             scheduleConsumption(root, null, defaultCompletionCallback);
             state.set(ExecutorState.ACTIVE);
+            addedWork = true;
           }
         }
       }
+      return addedWork;
     }
   }
 
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import org.apache.beam.sdk.options.DefaultValueFactory;
+import org.apache.beam.sdk.options.PipelineOptions;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * A {@link ExecutorServiceFactory} that produces {@link ForkJoinPool ForkJoinPools}, with the
+ * parallelism equal to the available processors as provided by
+ * {@link Runtime#availableProcessors()}.
+ *
+ * <p>Each worker of a {@link ForkJoinPool} has its own work queue, and idle workers steal work
+ * from busy workers. Work scheduled by a worker of the pool, such as the next bundle for a
+ * {@link StepAndKey} scheduled when the previous bundle completes, is placed on that worker's
+ * queue, so work for a single {@link StepAndKey} tends to remain on the same worker. The pool is
+ * created in asynchronous mode, so locally scheduled work is executed in the order it is
+ * scheduled.
+ *
+ * <p>Unlike the workers of the default {@link ForkJoinPool}, the workers of the produced pools are
+ * not daemon threads, so a pipeline that is run without blocking keeps the JVM alive until it
+ * completes, as with a {@link FixedThreadPoolExecutorServiceFactory}.
+ */
+class ForkJoinPoolExecutorServiceFactory
+    implements DefaultValueFactory<ExecutorServiceFactory>, ExecutorServiceFactory {
+  private static final ForkJoinPoolExecutorServiceFactory INSTANCE =
+      new ForkJoinPoolExecutorServiceFactory();
+
+  private static final ForkJoinWorkerThreadFactory NON_DAEMON_THREAD_FACTORY =
+      new ForkJoinWorkerThreadFactory() {
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+          ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+          thread.setDaemon(false);
+          return thread;
+        }
+      };
+
+  @Override
+  public ExecutorServiceFactory create(PipelineOptions options) {
+    return INSTANCE;
+  }
+
+  @Override
+  public ExecutorService create() {
+    return new ForkJoinPool(
+        Runtime.getRuntime().availableProcessors(),
+        NON_DAEMON_THREAD_FACTORY,
+        null,
+        true);
+  }
+}
@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import org.apache.beam.runners.direct.CommittedResult.OutputType;
+import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate;
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.UserCodeException;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PValue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import org.joda.time.Instant;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TransformEvaluatorFactory} which fuses chains of element-wise {@link PTransform
+ * PTransforms} into a single {@link TransformEvaluator}.
+ *
+ * <p>When an evaluator is created for an {@link AppliedPTransform} which produces a
+ * {@link PCollection} that is fused into its consumer (as determined by
+ * {@link ConsumerTrackingPipelineVisitor#getFusedConsumers()}), an evaluator is also created for
+ * the consumer. Elements added to the bundle for the fused {@link PCollection} are passed directly
+ * to the consumer's evaluator, instead of being committed and scheduled separately. The results of
+ * all of the evaluators in the fused stage are reported as a single {@link TransformResult} for the
+ * first {@link AppliedPTransform} of the stage.
+ *
+ * <p>Fused bundles are only produced by {@link BundleFactory BundleFactories} returned by
+ * {@link #fusingBundleFactory(BundleFactory)}, which must be used to construct the
+ * {@link EvaluationContext} evaluators are created with.
+ */
+class FusedStageEvaluatorFactory implements TransformEvaluatorFactory {
+  /**
+   * Create a new {@link FusedStageEvaluatorFactory} which creates evaluators for each
+   * {@link AppliedPTransform} using the underlying {@link TransformEvaluatorFactory}.
+   */
+  public static FusedStageEvaluatorFactory create(
+      TransformEvaluatorFactory underlying,
+      Map<PValue, AppliedPTransform<?, ?, ?>> fusedConsumers,
+      @SuppressWarnings("rawtypes")
+      Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>> transformEnforcements) {
+    return new FusedStageEvaluatorFactory(underlying, fusedConsumers, transformEnforcements);
+  }
+
+  private final TransformEvaluatorFactory underlying;
+  private final Map<PValue, AppliedPTransform<?, ?, ?>> fusedConsumers;
+  @SuppressWarnings("rawtypes")
+  private final Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>>
+      transformEnforcements;
+
+  /**
+   * The fused stage members that consume each fused {@link PCollection} while the evaluator that
+   * produces that {@link PCollection} is being constructed on the current thread.
+   */
+  private final ThreadLocal<Map<PValue, FusedMember<?>>> fusedOutputs =
+      new ThreadLocal<Map<PValue, FusedMember<?>>>() {
+        @Override
+        protected Map<PValue, FusedMember<?>> initialValue() {
+          return new HashMap<>();
+        }
+      };
+
+  private FusedStageEvaluatorFactory(
+      TransformEvaluatorFactory underlying,
+      Map<PValue, AppliedPTransform<?, ?, ?>> fusedConsumers,
+      @SuppressWarnings("rawtypes")
+      Map<Class<? extends PTransform>, Collection<ModelEnforcementFactory>> transformEnforcements) {
+    this.underlying = checkNotNull(underlying);
+    this.fusedConsumers = checkNotNull(fusedConsumers);
+    this.transformEnforcements = checkNotNull(transformEnforcements);
+  }
+
+  /**
+   * Returns a {@link BundleFactory} which creates bundles using the underlying
+   * {@link BundleFactory}, except for bundles of fused {@link PCollection PCollections} created
+   * while constructing a fused stage, which pass their elements directly to the consumer.
+   */
+  public BundleFactory fusingBundleFactory(BundleFactory underlying) {
+    return new FusingBundleFactory(underlying);
+  }
+
+  @Nullable
+  @Override
+  public <InputT> TransformEvaluator<InputT> forApplication(
+      AppliedPTransform<?, ?, ?> application,
+      @Nullable CommittedBundle<?> inputBundle,
+      EvaluationContext evaluationContext) throws Exception {
+    if (inputBundle == null) {
+      return underlying.forApplication(application, null, evaluationContext);
+    }
+    List<FusedMember<?>> members = new ArrayList<>();
+    TransformEvaluator<InputT> head =
+        createEvaluator(application, inputBundle, evaluationContext, members);
+    if (head == null || members.isEmpty()) {
+      return head;
+    }
+    // Members are created after all of their consumers, so the reverse of the creation order is a
+    // topological order
+    return new FusedStageEvaluator<>(head, Lists.reverse(members), evaluationContext);
+  }
+
+  @Override
+  public void cleanup() throws Exception {
+    underlying.cleanup();
+  }
+
+  /**
+   * Creates the evaluator for the provided {@link AppliedPTransform} using the underlying
+   * {@link TransformEvaluatorFactory}, first creating the members of the stage that consume any of
+   * its fused outputs and adding them to the provided list of members.
+   */
+  @Nullable
+  private <InputT> TransformEvaluator<InputT> createEvaluator(
+      AppliedPTransform<?, ?, ?> application,
+      CommittedBundle<?> inputBundle,
+      EvaluationContext evaluationContext,
+      List<FusedMember<?>> members) throws Exception {
+    Map<PValue, FusedMember<?>> consumingMembers = new HashMap<>();
+    for (PValue output : application.getOutput().expand()) {
+      AppliedPTransform<?, ?, ?> consumer = fusedConsumers.get(output);
+      if (consumer != null) {
+        // The consumer never receives a real input bundle; this empty bundle identifies its input
+        // to the evaluator and any enforcements.
+        CommittedBundle<?> fusedInput =
+            evaluationContext
+                .createBundle(inputBundle, (PCollection<?>) output)
+                .commit(inputBundle.getSynchronizedProcessingOutputWatermark());
+        consumingMembers.put(
+            output, createMember(consumer, fusedInput, evaluationContext, members));
+      }
+    }
+
+    Map<PValue, FusedMember<?>> registeredOutputs = fusedOutputs.get();
+    registeredOutputs.putAll(consumingMembers);
+    try {
+      return underlying.forApplication(application, inputBundle, evaluationContext);
+    } finally {
+      registeredOutputs.keySet().removeAll(consumingMembers.keySet());
+    }
+  }
+
+  private <T> FusedMember<T> createMember(
+      AppliedPTransform<?, ?, ?> application,
+      CommittedBundle<T> fusedInput,
+      EvaluationContext evaluationContext,
+      List<FusedMember<?>> members) throws Exception {
+    List<ModelEnforcement<T>> enforcements = new ArrayList<>();
+    Collection<ModelEnforcementFactory> enforcementFactories =
+        transformEnforcements.get(application.getTransform().getClass());
+    if (enforcementFactories != null) {
+      for (ModelEnforcementFactory enforcementFactory : enforcementFactories) {
+        enforcements.add(enforcementFactory.forBundle(fusedInput, application));
+      }
+    }
+    TransformEvaluator<T> evaluator =
+        createEvaluator(application, fusedInput, evaluationContext, members);
+    checkState(
+        evaluator != null,
+        "No evaluator could be created for fused %s %s",
+        AppliedPTransform.class.getSimpleName(),
+        application.getFullName());
+    FusedMember<T> member = new FusedMember<>(application, fusedInput, evaluator, enforcements);
+    members.add(member);
+    return member;
+  }
+
+  /**
+   * An {@link AppliedPTransform} within a fused stage other than the first, with the evaluator
+   * and {@link ModelEnforcement ModelEnforcements} for its input.
+   */
+  private static class FusedMember<T> {
+    private final AppliedPTransform<?, ?, ?> application;
+    private final CommittedBundle<T> fusedInput;
+    private final TransformEvaluator<T> evaluator;
+    private final Collection<ModelEnforcement<T>> enforcements;
+
+    private FusedMember(
+        AppliedPTransform<?, ?, ?> application,
+        CommittedBundle<T> fusedInput,
+        TransformEvaluator<T> evaluator,
+        Collection<ModelEnforcement<T>> enforcements) {
+      this.application = application;
+      this.fusedInput = fusedInput;
+      this.evaluator = evaluator;
+      this.enforcements = enforcements;
+    }
+
+    public void processElement(WindowedValue<T> element) {
+      for (ModelEnforcement<T> enforcement : enforcements) {
+        enforcement.beforeElement(element);
+      }
+      try {
+        evaluator.processElement(element);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw UserCodeException.wrap(e);
+      }
+      for (ModelEnforcement<T> enforcement : enforcements) {
+        enforcement.afterElement(element);
+      }
+    }
+
+    public TransformResult finishBundle() throws Exception {
+      TransformResult result = evaluator.finishBundle();
+      TimerUpdate timerUpdate = result.getTimerUpdate();
+      checkState(
+          result.getState() == null
+              && Iterables.isEmpty(timerUpdate.getSetTimers())
+              && Iterables.isEmpty(timerUpdate.getDeletedTimers())
+              && result.getWatermarkHold().equals(BoundedWindow.TIMESTAMP_MAX_VALUE)
+              && Iterables.isEmpty(result.getUnprocessedElements()),
+          "Fused %s %s used state, timers, or watermark holds, which are not supported within a "
+              + "fused stage. Disable stage fusion to run this Pipeline.",
+          AppliedPTransform.class.getSimpleName(),
+          application.getFullName());
+      for (ModelEnforcement<T> enforcement : enforcements) {
+        enforcement.afterFinish(
+            fusedInput, result, Collections.<CommittedBundle<?>>emptyList());
+      }
+      return result;
+    }
+  }
+
+  /**
+   * A {@link TransformEvaluator} for a fused stage. Elements are processed by the evaluator for the
+   * first {@link AppliedPTransform} of the stage, which passes its output to the remaining members
+   * of the stage as it is produced.
+   */
+  private static class FusedStageEvaluator<InputT> implements TransformEvaluator<InputT> {
+    private final TransformEvaluator<InputT> head;
+    private final List<FusedMember<?>> members;
+    private final EvaluationContext evaluationContext;
+
+    private FusedStageEvaluator(
+        TransformEvaluator<InputT> head,
+        List<FusedMember<?>> members,
+        EvaluationContext evaluationContext) {
+      this.head = head;
+      this.members = members;
+      this.evaluationContext = evaluationContext;
+    }
+
+    @Override
+    public void processElement(WindowedValue<InputT> element) throws Exception {
+      head.processElement(element);
+    }
+
+    @Override
+    public TransformResult finishBundle() throws Exception {
+      TransformResult headResult = head.finishBundle();
+      StepTransformResult.Builder result =
+          StepTransformResult.withHold(headResult.getTransform(), headResult.getWatermarkHold())
+              .withState(headResult.getState())
+              .withTimerUpdate(headResult.getTimerUpdate())
+              .addUnprocessedElements(headResult.getUnprocessedElements());
+      AggregatorContainer.Mutator aggregatorChanges = headResult.getAggregatorChanges();
+      if (aggregatorChanges == null) {
+        aggregatorChanges = evaluationContext.getAggregatorMutator();
+      }
+
+      List<TransformResult> results = new ArrayList<>();
+      results.add(headResult);
+      // Each member is finished after every member that produces its input, so all elements have
+      // been passed to a member before it is finished
+      for (FusedMember<?> member : members) {
+        TransformResult memberResult = member.finishBundle();
+        if (memberResult.getAggregatorChanges() != null) {
+          aggregatorChanges.addAll(memberResult.getAggregatorChanges());
+        }
+        results.add(memberResult);
+      }
+      for (TransformResult stepResult : results) {
+        result.addOutput(ImmutableList.<UncommittedBundle<?>>copyOf(stepResult.getOutputBundles()));
+        for (OutputType outputType : stepResult.getOutputTypes()) {
+          result.withAdditionalOutput(outputType);
+        }
+      }
+      return result.withAggregatorChanges(aggregatorChanges).build();
+    }
+  }
+
+  /**
+   * A {@link BundleFactory} that creates {@link FusedBundle FusedBundles} for fused
+   * {@link PCollection PCollections} registered on the current thread.
+   */
+  private class FusingBundleFactory implements BundleFactory {
+    private final BundleFactory underlying;
+
+    private FusingBundleFactory(BundleFactory underlying) {
+      this.underlying = checkNotNull(underlying);
+    }
+
+    @Override
+    public <T> UncommittedBundle<T> createRootBundle(PCollection<T> output) {
+      return underlying.createRootBundle(output);
+    }
+
+    @Override
+    public <T> UncommittedBundle<T> createBundle(CommittedBundle<?> input, PCollection<T> output) {
+      @SuppressWarnings("unchecked")
+      FusedMember<T> consumer = (FusedMember<T>) fusedOutputs.get().get(output);
+      UncommittedBundle<T> bundle = underlying.createBundle(input, output);
+      if (consumer == null) {
+        return bundle;
+      }
+      return new FusedBundle<>(bundle, consumer);
+    }
+
+    @Override
+    public <K, T> UncommittedBundle<T> createKeyedBundle(
+        CommittedBundle<?> input, StructuralKey<K> key, PCollection<T> output) {
+      return underlying.createKeyedBundle(input, key, output);
+    }
+  }
+
+  /**
+   * An {@link UncommittedBundle} which passes elements directly to the consuming member of a fused
+   * stage. The bundle is always empty when committed.
+   */
+  private static class FusedBundle<T> implements UncommittedBundle<T> {
+    private final UncommittedBundle<T> underlying;
+    private final FusedMember<T> consumer;
+
+    private FusedBundle(UncommittedBundle<T> underlying, FusedMember<T> consumer) {
+      this.underlying = underlying;
+      this.consumer = consumer;
+    }
+
+    @Override
+    public PCollection<T> getPCollection() {
+      return underlying.getPCollection();
+    }
+
+    @Override
+    public UncommittedBundle<T> add(WindowedValue<T> element) {
+      consumer.processElement(element);
+      return this;
+    }
+
+    @Override
+    public CommittedBundle<T> commit(Instant synchronizedProcessingTime) {
+      return underlying.commit(synchronizedProcessingTime);
+    }
+  }
+}
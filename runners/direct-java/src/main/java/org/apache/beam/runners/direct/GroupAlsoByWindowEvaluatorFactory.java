@@ -18,14 +18,19 @@
 package org.apache.beam.runners.direct;
 
 import org.apache.beam.runners.core.GroupAlsoByWindowViaWindowSetDoFn;
+import org.apache.beam.runners.direct.DirectCombinePerKey.DirectCombineAlsoByWindow;
 import org.apache.beam.runners.direct.DirectExecutionContext.DirectStepContext;
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupAlsoByWindow;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.Combine.KeyedCombineFn;
 import org.apache.beam.sdk.transforms.OldDoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.AppliedCombineFn;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.GroupByKeyViaGroupByKeyOnly;
 import org.apache.beam.sdk.util.GroupByKeyViaGroupByKeyOnly.GroupAlsoByWindow;
 import org.apache.beam.sdk.util.GroupByKeyViaGroupByKeyOnly.GroupByKeyOnly;
@@ -46,7 +51,8 @@ import java.util.Collections;
 
 /**
  * The {@link DirectRunner} {@link TransformEvaluatorFactory} for the
- * {@link GroupByKeyOnly} {@link PTransform}.
+ * {@link GroupByKeyOnly} {@link PTransform}, and for the {@link DirectCombineAlsoByWindow}
+ * {@link PTransform} which replaces it in the expansion of a lifted {@code Combine.PerKey}.
  */
 class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
   @Override
@@ -54,9 +60,16 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
       AppliedPTransform<?, ?, ?> application,
       CommittedBundle<?> inputBundle,
       EvaluationContext evaluationContext) {
+    if (application.getTransform() instanceof DirectCombineAlsoByWindow) {
+      @SuppressWarnings({"cast", "unchecked", "rawtypes"})
+      TransformEvaluator<InputT> evaluator =
+          createCombiningEvaluator(
+              (AppliedPTransform) application, (CommittedBundle) inputBundle, evaluationContext);
+      return evaluator;
+    }
     @SuppressWarnings({"cast", "unchecked", "rawtypes"})
     TransformEvaluator<InputT> evaluator =
-        createEvaluator(
+        createGroupingEvaluator(
             (AppliedPTransform) application, (CommittedBundle) inputBundle, evaluationContext);
     return evaluator;
   }
@@ -64,7 +77,7 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
   @Override
   public void cleanup() {}
 
-  private <K, V> TransformEvaluator<KeyedWorkItem<K, V>> createEvaluator(
+  private <K, V> TransformEvaluator<KeyedWorkItem<K, V>> createGroupingEvaluator(
       AppliedPTransform<
               PCollection<KeyedWorkItem<K, V>>,
               PCollection<KV<K, Iterable<V>>>,
@@ -72,17 +85,59 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
           application,
       CommittedBundle<KeyedWorkItem<K, V>> inputBundle,
       EvaluationContext evaluationContext) {
+    Coder<V> valueCoder =
+        application.getTransform().getValueCoder(inputBundle.getPCollection().getCoder());
+    return new GroupAlsoByWindowEvaluator<>(
+        evaluationContext,
+        inputBundle,
+        application,
+        application.getTransform().getWindowingStrategy(),
+        SystemReduceFn.<K, V, BoundedWindow>buffering(valueCoder));
+  }
+
+  private <K, AccumT, OutputT> TransformEvaluator<KeyedWorkItem<K, AccumT>>
+      createCombiningEvaluator(
+          AppliedPTransform<
+                  PCollection<KeyedWorkItem<K, AccumT>>,
+                  PCollection<KV<K, OutputT>>,
+                  DirectCombineAlsoByWindow<K, AccumT, OutputT>>
+              application,
+          CommittedBundle<KeyedWorkItem<K, AccumT>> inputBundle,
+          EvaluationContext evaluationContext) {
+    DirectCombineAlsoByWindow<K, AccumT, OutputT> transform = application.getTransform();
+    Coder<K> keyCoder = transform.getKeyCoder(inputBundle.getPCollection().getCoder());
     return new GroupAlsoByWindowEvaluator<>(
-        evaluationContext, inputBundle, application);
+        evaluationContext,
+        inputBundle,
+        application,
+        transform.getWindowingStrategy(),
+        combiningAccumulators(keyCoder, inputBundle.getKey(), transform.getCombineFn()));
+  }
+
+  private static <K, InputT, AccumT, OutputT>
+      SystemReduceFn<K, AccumT, AccumT, OutputT, BoundedWindow> combiningAccumulators(
+          Coder<K> keyCoder,
+          StructuralKey<?> bundleKey,
+          AppliedCombineFn<K, InputT, AccumT, OutputT> combineFn) {
+    @SuppressWarnings("unchecked")
+    KeyedCombineFn<K, InputT, AccumT, OutputT> fn =
+        (KeyedCombineFn<K, InputT, AccumT, OutputT>) combineFn.getFn();
+    @SuppressWarnings("unchecked")
+    K key = (K) bundleKey.getKey();
+    return SystemReduceFn.<K, InputT, AccumT, OutputT, BoundedWindow>combiningAccumulators(
+        keyCoder,
+        AppliedCombineFn.withAccumulatorCoder(
+            new BundleKeyCombineFn<>(fn, keyCoder, key), combineFn.getAccumulatorCoder()));
   }
 
   /**
-   * A transform evaluator for the pseudo-primitive {@link GroupAlsoByWindow}. Windowing is ignored;
-   * all input should be in the global window since all output will be as well.
+   * A transform evaluator for the pseudo-primitive {@link GroupAlsoByWindow}, and for the
+   * {@link DirectCombineAlsoByWindow} primitive, which merges partially combined accumulators
+   * rather than buffering each value.
    *
    * @see GroupByKeyViaGroupByKeyOnly
    */
-  private static class GroupAlsoByWindowEvaluator<K, V>
+  private static class GroupAlsoByWindowEvaluator<K, V, OutputT>
       implements TransformEvaluator<KeyedWorkItem<K, V>> {
 
     private final TransformEvaluator<KeyedWorkItem<K, V>> gabwParDoEvaluator;
@@ -90,17 +145,10 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
     public GroupAlsoByWindowEvaluator(
         final EvaluationContext evaluationContext,
         CommittedBundle<KeyedWorkItem<K, V>> inputBundle,
-        final AppliedPTransform<
-                PCollection<KeyedWorkItem<K, V>>,
-                PCollection<KV<K, Iterable<V>>>,
-                DirectGroupAlsoByWindow<K, V>> application) {
-
-      Coder<V> valueCoder =
-          application.getTransform().getValueCoder(inputBundle.getPCollection().getCoder());
-
-      @SuppressWarnings("unchecked")
-      WindowingStrategy<?, BoundedWindow> windowingStrategy =
-          (WindowingStrategy<?, BoundedWindow>) application.getTransform().getWindowingStrategy();
+        final AppliedPTransform<PCollection<KeyedWorkItem<K, V>>, PCollection<KV<K, OutputT>>, ?>
+            application,
+        WindowingStrategy<?, ?> windowingStrategy,
+        SystemReduceFn<K, V, ?, OutputT, BoundedWindow> reduceFn) {
 
       DirectStepContext stepContext =
           evaluationContext
@@ -110,13 +158,14 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
 
       StateInternals<K> stateInternals = (StateInternals<K>) stepContext.stateInternals();
 
-      OldDoFn<KeyedWorkItem<K, V>, KV<K, Iterable<V>>> gabwDoFn =
+      @SuppressWarnings("unchecked")
+      OldDoFn<KeyedWorkItem<K, V>, KV<K, OutputT>> gabwDoFn =
           GroupAlsoByWindowViaWindowSetDoFn.create(
-              windowingStrategy,
+              (WindowingStrategy<?, BoundedWindow>) windowingStrategy,
               new ConstantStateInternalsFactory<K>(stateInternals),
-              SystemReduceFn.<K, V, BoundedWindow>buffering(valueCoder));
+              reduceFn);
 
-      TupleTag<KV<K, Iterable<V>>> mainOutputTag = new TupleTag<KV<K, Iterable<V>>>() {};
+      TupleTag<KV<K, OutputT>> mainOutputTag = new TupleTag<KV<K, OutputT>>() {};
 
       // Not technically legit, as the application is not a ParDo
       this.gabwParDoEvaluator =
@@ -143,6 +192,70 @@ class GroupAlsoByWindowEvaluatorFactory implements TransformEvaluatorFactory {
     }
   }
 
+  /**
+   * A {@link KeyedCombineFn} which provides the key of the bundle being evaluated to the
+   * {@link KeyedCombineFn} it wraps. The state of a bundle is keyed by the {@link StructuralKey}
+   * of the bundle, which the combining state would otherwise provide in place of the key.
+   */
+  private static final class BundleKeyCombineFn<K, InputT, AccumT, OutputT>
+      extends KeyedCombineFn<K, InputT, AccumT, OutputT> {
+    private final KeyedCombineFn<K, InputT, AccumT, OutputT> fn;
+    private final Coder<K> keyCoder;
+    private final byte[] encodedKey;
+    private transient K key;
+
+    private BundleKeyCombineFn(
+        KeyedCombineFn<K, InputT, AccumT, OutputT> fn, Coder<K> keyCoder, K key) {
+      this.fn = fn;
+      this.keyCoder = keyCoder;
+      try {
+        this.encodedKey = CoderUtils.encodeToByteArray(keyCoder, key);
+      } catch (CoderException e) {
+        throw new IllegalArgumentException(
+            "Could not encode a key with its provided coder " + keyCoder.getClass().getSimpleName(),
+            e);
+      }
+      this.key = key;
+    }
+
+    private K bundleKey() {
+      if (key == null) {
+        try {
+          key = CoderUtils.decodeFromByteArray(keyCoder, encodedKey);
+        } catch (CoderException e) {
+          throw new IllegalArgumentException(
+              "Could not decode Key with coder of type " + keyCoder.getClass().getSimpleName(), e);
+        }
+      }
+      return key;
+    }
+
+    @Override
+    public AccumT createAccumulator(K ignored) {
+      return fn.createAccumulator(bundleKey());
+    }
+
+    @Override
+    public AccumT addInput(K ignored, AccumT accumulator, InputT value) {
+      return fn.addInput(bundleKey(), accumulator, value);
+    }
+
+    @Override
+    public AccumT mergeAccumulators(K ignored, Iterable<AccumT> accumulators) {
+      return fn.mergeAccumulators(bundleKey(), accumulators);
+    }
+
+    @Override
+    public OutputT extractOutput(K ignored, AccumT accumulator) {
+      return fn.extractOutput(bundleKey(), accumulator);
+    }
+
+    @Override
+    public AccumT compact(K ignored, AccumT accumulator) {
+      return fn.compact(bundleKey(), accumulator);
+    }
+  }
+
   private static final class ConstantStateInternalsFactory<K>
       implements StateInternalsFactory<K> {
     private final StateInternals<K> stateInternals;
@@ -17,15 +17,18 @@
  */
 package org.apache.beam.runners.direct;
 
+import static org.apache.beam.sdk.util.CoderUtils.decodeFromByteArray;
 import static org.apache.beam.sdk.util.CoderUtils.encodeToByteArray;
 import static com.google.common.base.Preconditions.checkState;
 
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupByKeyOnly;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
 import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.runners.direct.SpillableGroupingBuffer.KeyGroup;
 import org.apache.beam.runners.direct.StepTransformResult.Builder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.EncodedKey;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
 import org.apache.beam.sdk.transforms.PTransform;
@@ -37,11 +40,9 @@ import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * The {@link DirectRunner} {@link TransformEvaluatorFactory} for the
@@ -78,6 +79,12 @@ class GroupByKeyOnlyEvaluatorFactory implements TransformEvaluatorFactory {
    * A transform evaluator for the pseudo-primitive {@link GroupByKeyOnly}. Windowing is ignored;
    * all input should be in the global window since all output will be as well.
    *
+   * <p>Input elements are encoded and grouped in a {@link SpillableGroupingBuffer}, which bounds
+   * the memory used to group the input by spilling sorted runs of elements to disk. Output bundles
+   * are produced in the order of the encoded keys. The values of each key are streamed from the
+   * merged runs and decoded once as the group is produced; the encoded elements are released as
+   * they are read. Any spilled runs are deleted when the bundle finishes or fails.
+   *
    * @see GroupByKeyViaGroupByKeyOnly
    */
   private static class GroupByKeyOnlyEvaluator<K, V>
@@ -90,7 +97,8 @@ class GroupByKeyOnlyEvaluatorFactory implements TransformEvaluatorFactory {
             PCollection<KeyedWorkItem<K, V>>,
             DirectGroupByKeyOnly<K, V>> application;
     private final Coder<K> keyCoder;
-    private Map<GroupingKey<K>, List<WindowedValue<V>>> groupingMap;
+    private final Coder<WindowedValue<V>> valueCoder;
+    private final SpillableGroupingBuffer groupingBuffer;
 
     public GroupByKeyOnlyEvaluator(
         EvaluationContext evaluationContext,
@@ -102,11 +110,15 @@ class GroupByKeyOnlyEvaluatorFactory implements TransformEvaluatorFactory {
       this.evaluationContext = evaluationContext;
       this.inputBundle = inputBundle;
       this.application = application;
-      this.keyCoder = getKeyCoder(application.getInput().getCoder());
-      this.groupingMap = new HashMap<>();
+      KvCoder<K, WindowedValue<V>> inputCoder = getKvCoder(application.getInput().getCoder());
+      this.keyCoder = inputCoder.getKeyCoder();
+      this.valueCoder = inputCoder.getValueCoder();
+      this.groupingBuffer =
+          SpillableGroupingBuffer.create(
+              evaluationContext.getPipelineOptions().getGroupByKeyBufferBytes());
     }
 
-    private Coder<K> getKeyCoder(Coder<KV<K, WindowedValue<V>>> coder) {
+    private KvCoder<K, WindowedValue<V>> getKvCoder(Coder<KV<K, WindowedValue<V>>> coder) {
       checkState(
           coder instanceof KvCoder,
           "%s requires a coder of class %s."
@@ -114,13 +126,26 @@ class GroupByKeyOnlyEvaluatorFactory implements TransformEvaluatorFactory {
               + " but became corrupted.",
           getClass().getSimpleName(),
           KvCoder.class.getSimpleName());
-      @SuppressWarnings("unchecked")
-      Coder<K> keyCoder = ((KvCoder<K, WindowedValue<V>>) coder).getKeyCoder();
-      return keyCoder;
+      return (KvCoder<K, WindowedValue<V>>) coder;
     }
 
     @Override
-    public void processElement(WindowedValue<KV<K, WindowedValue<V>>> element) {
+    public void processElement(WindowedValue<KV<K, WindowedValue<V>>> element)
+        throws IOException {
+      try {
+        addToBuffer(element);
+      } catch (IOException | RuntimeException e) {
+        // finishBundle will not be called, so release the spilled runs now.
+        try {
+          groupingBuffer.close();
+        } catch (IOException closeException) {
+          e.addSuppressed(closeException);
+        }
+        throw e;
+      }
+    }
+
+    private void addToBuffer(WindowedValue<KV<K, WindowedValue<V>>> element) throws IOException {
       KV<K, WindowedValue<V>> kv = element.getValue();
       K key = kv.getKey();
       byte[] encodedKey;
@@ -133,56 +158,64 @@ class GroupByKeyOnlyEvaluatorFactory implements TransformEvaluatorFactory {
             String.format("unable to encode key %s of input to %s using %s", key, this, keyCoder),
             exn);
       }
-      GroupingKey<K> groupingKey = new GroupingKey<>(key, encodedKey);
-      List<WindowedValue<V>> values = groupingMap.get(groupingKey);
-      if (values == null) {
-        values = new ArrayList<WindowedValue<V>>();
-        groupingMap.put(groupingKey, values);
+      byte[] encodedValue;
+      try {
+        encodedValue = encodeToByteArray(valueCoder, kv.getValue());
+      } catch (CoderException exn) {
+        throw new IllegalArgumentException(
+            String.format(
+                "unable to encode value %s of input to %s using %s",
+                kv.getValue(),
+                this,
+                valueCoder),
+            exn);
       }
-      values.add(kv.getValue());
+      groupingBuffer.add(encodedKey, encodedValue);
     }
 
     @Override
-    public TransformResult finishBundle() {
+    public TransformResult finishBundle() throws IOException {
       Builder resultBuilder = StepTransformResult.withoutHold(application);
-      for (Map.Entry<GroupingKey<K>, List<WindowedValue<V>>> groupedEntry :
-          groupingMap.entrySet()) {
-        K key = groupedEntry.getKey().key;
-        KeyedWorkItem<K, V> groupedKv =
-            KeyedWorkItems.elementsWorkItem(key, groupedEntry.getValue());
-        UncommittedBundle<KeyedWorkItem<K, V>> bundle = evaluationContext.createKeyedBundle(
-            inputBundle,
-            StructuralKey.of(key, keyCoder),
-            application.getOutput());
-        bundle.add(WindowedValue.valueInGlobalWindow(groupedKv));
-        resultBuilder.addOutput(bundle);
+      try {
+        KeyGroup group = groupingBuffer.nextGroup();
+        while (group != null) {
+          // The key is encoded once per element, and the encoding it was grouped by is reused as
+          // the key of the output bundle.
+          EncodedKey encodedKey = EncodedKey.of(group.getKey());
+          K key = encodedKey.decode(keyCoder);
+          KeyedWorkItem<K, V> groupedKv =
+              KeyedWorkItems.elementsWorkItem(key, decodeValues(group));
+          UncommittedBundle<KeyedWorkItem<K, V>> bundle = evaluationContext.createKeyedBundle(
+              inputBundle,
+              StructuralKey.ofEncoded(encodedKey, keyCoder),
+              application.getOutput());
+          bundle.add(WindowedValue.valueInGlobalWindow(groupedKv));
+          resultBuilder.addOutput(bundle);
+          group = groupingBuffer.nextGroup();
+        }
+      } finally {
+        groupingBuffer.close();
       }
       return resultBuilder.build();
     }
 
-    private static class GroupingKey<K> {
-      private K key;
-      private byte[] encodedKey;
-
-      public GroupingKey(K key, byte[] encodedKey) {
-        this.key = key;
-        this.encodedKey = encodedKey;
-      }
-
-      @Override
-      public boolean equals(Object o) {
-        if (o instanceof GroupingKey) {
-          GroupingKey<?> that = (GroupingKey<?>) o;
-          return Arrays.equals(this.encodedKey, that.encodedKey);
-        } else {
-          return false;
+    /**
+     * Decodes the values of the provided group as they are read from the buffer. Each value is
+     * decoded once, and its encoded form is not retained.
+     */
+    private List<WindowedValue<V>> decodeValues(KeyGroup group) throws IOException {
+      List<WindowedValue<V>> values = new ArrayList<>();
+      byte[] encodedValue = group.nextValue();
+      while (encodedValue != null) {
+        try {
+          values.add(decodeFromByteArray(valueCoder, encodedValue));
+        } catch (CoderException exn) {
+          throw new IllegalStateException(
+              String.format("unable to decode grouped value using %s", valueCoder), exn);
         }
+        encodedValue = group.nextValue();
       }
-
-      @Override
-      public int hashCode() {
-        return Arrays.hashCode(encodedKey);
-      }
+      return values;
     }
   }
 }
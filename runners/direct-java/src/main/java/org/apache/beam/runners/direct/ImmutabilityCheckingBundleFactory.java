@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
 import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.runners.direct.EnforcementSampler.BundleSampler;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.transforms.OldDoFn;
@@ -51,40 +52,56 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
    * {@link BundleFactory} to create the output bundle.
    */
   public static ImmutabilityCheckingBundleFactory create(BundleFactory underlying) {
-    return new ImmutabilityCheckingBundleFactory(underlying);
+    return create(underlying, EnforcementSampler.all());
+  }
+
+  /**
+   * Create a new {@link ImmutabilityCheckingBundleFactory} that uses the underlying
+   * {@link BundleFactory} to create the output bundle, and checks the elements selected by the
+   * provided {@link EnforcementSampler}.
+   */
+  public static ImmutabilityCheckingBundleFactory create(
+      BundleFactory underlying, EnforcementSampler sampler) {
+    return new ImmutabilityCheckingBundleFactory(underlying, sampler);
   }
 
   private final BundleFactory underlying;
+  private final EnforcementSampler sampler;
 
-  private ImmutabilityCheckingBundleFactory(BundleFactory underlying) {
+  private ImmutabilityCheckingBundleFactory(BundleFactory underlying, EnforcementSampler sampler) {
     this.underlying = checkNotNull(underlying);
+    this.sampler = checkNotNull(sampler);
   }
 
   @Override
   public <T> UncommittedBundle<T> createRootBundle(PCollection<T> output) {
-    return new ImmutabilityEnforcingBundle<>(underlying.createRootBundle(output));
+    return new ImmutabilityEnforcingBundle<>(underlying.createRootBundle(output), sampler);
   }
 
   @Override
   public <T> UncommittedBundle<T> createBundle(CommittedBundle<?> input, PCollection<T> output) {
-    return new ImmutabilityEnforcingBundle<>(underlying.createBundle(input, output));
+    return new ImmutabilityEnforcingBundle<>(underlying.createBundle(input, output), sampler);
   }
 
   @Override
   public <K, T> UncommittedBundle<T> createKeyedBundle(
       CommittedBundle<?> input, StructuralKey<K> key, PCollection<T> output) {
-    return new ImmutabilityEnforcingBundle<>(underlying.createKeyedBundle(input, key, output));
+    return new ImmutabilityEnforcingBundle<>(
+        underlying.createKeyedBundle(input, key, output), sampler);
   }
 
   private static class ImmutabilityEnforcingBundle<T> implements UncommittedBundle<T> {
     private final UncommittedBundle<T> underlying;
     private final SetMultimap<WindowedValue<T>, MutationDetector> mutationDetectors;
+    private final BundleSampler sampler;
     private Coder<T> coder;
 
-    public ImmutabilityEnforcingBundle(UncommittedBundle<T> underlying) {
+    public ImmutabilityEnforcingBundle(
+        UncommittedBundle<T> underlying, EnforcementSampler sampler) {
       this.underlying = underlying;
       mutationDetectors = HashMultimap.create();
       coder = getPCollection().getCoder();
+      this.sampler = sampler.forOutputBundle(getPCollection().getProducingTransformInternal());
     }
 
     @Override
@@ -94,11 +111,13 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
 
     @Override
     public UncommittedBundle<T> add(WindowedValue<T> element) {
-      try {
-        mutationDetectors.put(
-            element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
-      } catch (CoderException e) {
-        throw new RuntimeException(e);
+      if (sampler.sample()) {
+        try {
+          mutationDetectors.put(
+              element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
+        } catch (CoderException e) {
+          throw new RuntimeException(e);
+        }
       }
       underlying.add(element);
       return this;
@@ -122,6 +141,7 @@ class ImmutabilityCheckingBundleFactory implements BundleFactory {
                 exn);
         }
       }
+      sampler.finish();
       return underlying.commit(synchronizedProcessingTime);
     }
   }
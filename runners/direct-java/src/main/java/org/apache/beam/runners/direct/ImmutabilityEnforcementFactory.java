@@ -18,6 +18,7 @@
 package org.apache.beam.runners.direct;
 
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.EnforcementSampler.BundleSampler;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
@@ -38,29 +39,49 @@ import java.util.Map;
  */
 class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
   public static ModelEnforcementFactory create() {
-    return new ImmutabilityEnforcementFactory();
+    return create(EnforcementSampler.all());
+  }
+
+  /**
+   * Create a new {@link ImmutabilityEnforcementFactory} which checks the elements selected by the
+   * provided {@link EnforcementSampler}.
+   */
+  public static ModelEnforcementFactory create(EnforcementSampler sampler) {
+    return new ImmutabilityEnforcementFactory(sampler);
+  }
+
+  private final EnforcementSampler sampler;
+
+  private ImmutabilityEnforcementFactory(EnforcementSampler sampler) {
+    this.sampler = sampler;
   }
 
   @Override
   public <T> ModelEnforcement<T> forBundle(
       CommittedBundle<T> input, AppliedPTransform<?, ?, ?> consumer) {
-    return new ImmutabilityCheckingEnforcement<T>(input, consumer);
+    return new ImmutabilityCheckingEnforcement<T>(
+        input, consumer, sampler.forInputBundle(consumer));
   }
 
   private static class ImmutabilityCheckingEnforcement<T> extends AbstractModelEnforcement<T> {
     private final AppliedPTransform<?, ?, ?> transform;
     private final Map<WindowedValue<T>, MutationDetector> mutationElements;
     private final Coder<T> coder;
+    private final BundleSampler sampler;
 
     private ImmutabilityCheckingEnforcement(
-        CommittedBundle<T> input, AppliedPTransform<?, ?, ?> transform) {
+        CommittedBundle<T> input, AppliedPTransform<?, ?, ?> transform, BundleSampler sampler) {
       this.transform = transform;
       coder = input.getPCollection().getCoder();
       mutationElements = new IdentityHashMap<>();
+      this.sampler = sampler;
     }
 
     @Override
     public void beforeElement(WindowedValue<T> element) {
+      if (!sampler.sample()) {
+        return;
+      }
       try {
         mutationElements.put(
             element, MutationDetectors.forValueWithCoder(element.getValue(), coder));
@@ -71,7 +92,10 @@ class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
 
     @Override
     public void afterElement(WindowedValue<T> element) {
-      verifyUnmodified(mutationElements.get(element));
+      MutationDetector detector = mutationElements.get(element);
+      if (detector != null) {
+        verifyUnmodified(detector);
+      }
     }
 
     @Override
@@ -82,6 +106,7 @@ class ImmutabilityEnforcementFactory implements ModelEnforcementFactory {
       for (MutationDetector detector : mutationElements.values()) {
         verifyUnmodified(detector);
       }
+      sampler.finish();
     }
 
     private void verifyUnmodified(MutationDetector detector) {
@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkState;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
 import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
 import org.apache.beam.sdk.coders.VoidCoder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.PCollection;
 
@@ -38,11 +39,14 @@ class ImmutableListBundleFactory implements BundleFactory {
     return new ImmutableListBundleFactory();
   }
 
+  /** The key of all root bundles, which is encoded once. */
+  private static final StructuralKey<Void> ROOT_KEY = StructuralKey.of(null, VoidCoder.of());
+
   private ImmutableListBundleFactory() {}
 
   @Override
   public <T> UncommittedBundle<T> createRootBundle(PCollection<T> output) {
-    return UncommittedImmutableListBundle.create(output, StructuralKey.of(null, VoidCoder.of()));
+    return UncommittedImmutableListBundle.create(output, ROOT_KEY);
   }
 
   @Override
@@ -116,6 +120,7 @@ class ImmutableListBundleFactory implements BundleFactory {
       this.key = key;
       this.committedElements = committedElements;
       this.synchronizedCompletionTime = synchronizedCompletionTime;
+      this.minTimestamp = minTimestamp(committedElements);
     }
 
     private final PCollection<T> pcollection;
@@ -123,6 +128,18 @@ class ImmutableListBundleFactory implements BundleFactory {
     private final StructuralKey<?> key;
     private final Iterable<WindowedValue<T>> committedElements;
     private final Instant synchronizedCompletionTime;
+    private final Instant minTimestamp;
+
+    private static Instant minTimestamp(Iterable<? extends WindowedValue<?>> elements) {
+      Instant minTimestamp = BoundedWindow.TIMESTAMP_MAX_VALUE;
+      for (WindowedValue<?> element : elements) {
+        // Elements in no windows, such as those which deliver timers, do not hold the watermark
+        if (!element.getWindows().isEmpty() && element.getTimestamp().isBefore(minTimestamp)) {
+          minTimestamp = element.getTimestamp();
+        }
+      }
+      return minTimestamp;
+    }
 
     @Override
     public StructuralKey<?> getKey() {
@@ -144,6 +161,11 @@ class ImmutableListBundleFactory implements BundleFactory {
       return synchronizedCompletionTime;
     }
 
+    @Override
+    public Instant getMinTimestamp() {
+      return minTimestamp;
+    }
+
     @Override
     public String toString() {
       return MoreObjects.toStringHelper(this)
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import org.apache.beam.runners.direct.DirectCombinePerKey.DirectPartialCombine;
+import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.PartialWindowedCombiner;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.WindowingStrategy;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+
+import org.joda.time.Instant;
+
+/**
+ * The {@link DirectRunner} {@link TransformEvaluatorFactory} for the {@link DirectPartialCombine}
+ * {@link PTransform}.
+ */
+class PartialCombineEvaluatorFactory implements TransformEvaluatorFactory {
+  /**
+   * The number of accumulators held by an evaluator before they are output.
+   */
+  private static final int MAX_ACCUMULATORS = 10000;
+
+  @Override
+  public <InputT> TransformEvaluator<InputT> forApplication(
+      AppliedPTransform<?, ?, ?> application,
+      CommittedBundle<?> inputBundle,
+      EvaluationContext evaluationContext) {
+    @SuppressWarnings({"cast", "unchecked", "rawtypes"})
+    TransformEvaluator<InputT> evaluator =
+        createEvaluator(
+            (AppliedPTransform) application, (CommittedBundle) inputBundle, evaluationContext);
+    return evaluator;
+  }
+
+  @Override
+  public void cleanup() {}
+
+  private <K, InputT, AccumT> TransformEvaluator<KV<K, InputT>> createEvaluator(
+      AppliedPTransform<
+              PCollection<KV<K, InputT>>,
+              PCollection<KV<K, AccumT>>,
+              DirectPartialCombine<K, InputT, AccumT>>
+          application,
+      CommittedBundle<KV<K, InputT>> inputBundle,
+      EvaluationContext evaluationContext) {
+    return new PartialCombineEvaluator<>(evaluationContext, inputBundle, application);
+  }
+
+  /**
+   * A transform evaluator for the {@link DirectPartialCombine} primitive. The input values are
+   * combined into at most one accumulator per key and window, which are output when the
+   * {@link PartialWindowedCombiner} is full and when the bundle finishes. Values in windows which
+   * have expired with respect to the input watermark are dropped.
+   */
+  private static class PartialCombineEvaluator<K, InputT, AccumT>
+      implements TransformEvaluator<KV<K, InputT>> {
+    private final AppliedPTransform<
+            PCollection<KV<K, InputT>>,
+            PCollection<KV<K, AccumT>>,
+            DirectPartialCombine<K, InputT, AccumT>> application;
+    private final PartialWindowedCombiner<K, InputT, AccumT, BoundedWindow> combiner;
+    private final UncommittedBundle<KV<K, AccumT>> outputBundle;
+    private final Instant inputWatermark;
+
+    public PartialCombineEvaluator(
+        EvaluationContext evaluationContext,
+        CommittedBundle<KV<K, InputT>> inputBundle,
+        AppliedPTransform<
+                PCollection<KV<K, InputT>>,
+                PCollection<KV<K, AccumT>>,
+                DirectPartialCombine<K, InputT, AccumT>> application) {
+      this.application = application;
+      Coder<KV<K, InputT>> inputCoder = application.getInput().getCoder();
+      checkState(
+          inputCoder instanceof KvCoder,
+          "%s requires a coder of class %s."
+              + " This is an internal error; this is checked during pipeline construction"
+              + " but became corrupted.",
+          getClass().getSimpleName(),
+          KvCoder.class.getSimpleName());
+      @SuppressWarnings("unchecked")
+      Coder<K> keyCoder = ((KvCoder<K, InputT>) inputCoder).getKeyCoder();
+      @SuppressWarnings("unchecked")
+      WindowingStrategy<?, BoundedWindow> windowingStrategy =
+          (WindowingStrategy<?, BoundedWindow>) application.getInput().getWindowingStrategy();
+      this.combiner =
+          new PartialWindowedCombiner<>(
+              keyCoder,
+              application.getTransform().getCombineFn(),
+              windowingStrategy,
+              MAX_ACCUMULATORS);
+      this.outputBundle = evaluationContext.createBundle(inputBundle, application.getOutput());
+      this.inputWatermark = evaluationContext.getWatermarks(application).getInputWatermark();
+    }
+
+    @Override
+    public void processElement(WindowedValue<KV<K, InputT>> element) throws Exception {
+      // Values which are already too late for their windows are dropped here, as the
+      // GroupAlsoByWindow would drop them, before their windows can merge with on-time windows.
+      combiner.add(element, inputWatermark);
+      if (combiner.isFull()) {
+        flush();
+      }
+    }
+
+    @Override
+    public TransformResult finishBundle() throws Exception {
+      flush();
+      return StepTransformResult.withoutHold(application).addOutput(outputBundle).build();
+    }
+
+    private void flush() throws Exception {
+      for (WindowedValue<KV<K, AccumT>> accumulator : combiner.flush()) {
+        outputBundle.add(accumulator);
+      }
+    }
+  }
+}
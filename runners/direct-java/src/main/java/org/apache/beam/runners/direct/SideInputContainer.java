@@ -19,6 +19,7 @@ package org.apache.beam.runners.direct;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import org.apache.beam.sdk.transforms.ViewFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.util.PCollectionViewWindow;
@@ -51,11 +52,14 @@ import javax.annotation.Nullable;
  * An in-process container for {@link PCollectionView PCollectionViews}, which provides methods for
  * constructing {@link SideInputReader SideInputReaders} which block until a side input is
  * available and writing to a {@link PCollectionView}.
+ *
+ * <p>The contents of each {@link PCollectionView} in each window are materialized by the
+ * {@link PCollectionView PCollectionView's} {@link ViewFn} at most once per write, and the
+ * materialized value is shared by all readers.
  */
 class SideInputContainer {
   private final Collection<PCollectionView<?>> containedViews;
-  private final LoadingCache<
-          PCollectionViewWindow<?>, AtomicReference<Iterable<? extends WindowedValue<?>>>>
+  private final LoadingCache<PCollectionViewWindow<?>, AtomicReference<ViewContents>>
       viewByWindows;
 
   /**
@@ -64,15 +68,14 @@ class SideInputContainer {
    */
   public static SideInputContainer create(
       final EvaluationContext context, Collection<PCollectionView<?>> containedViews) {
-    LoadingCache<PCollectionViewWindow<?>, AtomicReference<Iterable<? extends WindowedValue<?>>>>
-        viewByWindows = CacheBuilder.newBuilder().build(new CallbackSchedulingLoader(context));
+    LoadingCache<PCollectionViewWindow<?>, AtomicReference<ViewContents>> viewByWindows =
+        CacheBuilder.newBuilder().build(new CallbackSchedulingLoader(context));
     return new SideInputContainer(containedViews, viewByWindows);
   }
 
   private SideInputContainer(
       Collection<PCollectionView<?>> containedViews,
-      LoadingCache<PCollectionViewWindow<?>, AtomicReference<Iterable<? extends WindowedValue<?>>>>
-          viewByWindows) {
+      LoadingCache<PCollectionViewWindow<?>, AtomicReference<ViewContents>> viewByWindows) {
     this.containedViews = ImmutableSet.copyOf(containedViews);
     this.viewByWindows = viewByWindows;
   }
@@ -138,28 +141,71 @@ class SideInputContainer {
   private void updatePCollectionViewWindowValues(
       PCollectionView<?> view, BoundedWindow window, Collection<WindowedValue<?>> windowValues) {
     PCollectionViewWindow<?> windowedView = PCollectionViewWindow.of(view, window);
-    AtomicReference<Iterable<? extends WindowedValue<?>>> contents =
-        viewByWindows.getUnchecked(windowedView);
-    if (contents.compareAndSet(null, windowValues)) {
+    AtomicReference<ViewContents> contents = viewByWindows.getUnchecked(windowedView);
+    ViewContents newContents = new ViewContents(windowValues);
+    if (contents.compareAndSet(null, newContents)) {
       // the value had never been set, so we set it and are done.
       return;
     }
     PaneInfo newPane = windowValues.iterator().next().getPane();
 
-    Iterable<? extends WindowedValue<?>> existingValues;
+    ViewContents existingContents;
     long existingPane;
     do {
-      existingValues = contents.get();
+      existingContents = contents.get();
+      Iterable<? extends WindowedValue<?>> existingValues = existingContents.getValues();
       existingPane =
           Iterables.isEmpty(existingValues)
               ? -1L
               : existingValues.iterator().next().getPane().getIndex();
     } while (newPane.getIndex() > existingPane
-        && !contents.compareAndSet(existingValues, windowValues));
+        && !contents.compareAndSet(existingContents, newContents));
+  }
+
+  /**
+   * The values written to a {@link PCollectionView} in a window, and the result of applying the
+   * {@link ViewFn} of that {@link PCollectionView} to those values, computed on first use.
+   */
+  private static final class ViewContents {
+    private final Iterable<? extends WindowedValue<?>> values;
+    private volatile boolean materialized;
+    @Nullable private Object materializedValue;
+
+    private ViewContents(Iterable<? extends WindowedValue<?>> values) {
+      this.values = values;
+      this.materialized = false;
+    }
+
+    public Iterable<? extends WindowedValue<?>> getValues() {
+      return values;
+    }
+
+    /**
+     * Returns the result of applying the {@link ViewFn} of the provided view to the contents,
+     * applying it only if it has not already been applied.
+     */
+    @Nullable
+    public <T> T getMaterialized(PCollectionView<T> view) {
+      if (!materialized) {
+        synchronized (this) {
+          if (!materialized) {
+            // Safe covariant cast
+            @SuppressWarnings("unchecked")
+            Iterable<WindowedValue<?>> typedValues = (Iterable<WindowedValue<?>>) values;
+            materializedValue = view.getViewFn().apply(typedValues);
+            materialized = true;
+          }
+        }
+      }
+      // The view is always the same for a ViewContents, so the materialized value has type T
+      @SuppressWarnings("unchecked")
+      T result = (T) materializedValue;
+      return result;
+    }
   }
 
   private static class CallbackSchedulingLoader extends
-      CacheLoader<PCollectionViewWindow<?>, AtomicReference<Iterable<? extends WindowedValue<?>>>> {
+      CacheLoader<PCollectionViewWindow<?>, AtomicReference<ViewContents>> {
     private final EvaluationContext context;
 
     public CallbackSchedulingLoader(
@@ -168,10 +214,9 @@ class SideInputContainer {
     }
 
     @Override
-    public AtomicReference<Iterable<? extends WindowedValue<?>>>
-        load(PCollectionViewWindow<?> view) {
+    public AtomicReference<ViewContents> load(PCollectionViewWindow<?> view) {
 
-      AtomicReference<Iterable<? extends WindowedValue<?>>> contents = new AtomicReference<>();
+      AtomicReference<ViewContents> contents = new AtomicReference<>();
       WindowingStrategy<?, ?> windowingStrategy = view.getView().getWindowingStrategyInternal();
 
       context.scheduleAfterOutputWouldBeProduced(view.getView(),
@@ -185,10 +230,10 @@ class SideInputContainer {
   private static class WriteEmptyViewContents implements Runnable {
     private final PCollectionView<?> view;
     private final BoundedWindow window;
-    private final AtomicReference<Iterable<? extends WindowedValue<?>>> contents;
+    private final AtomicReference<ViewContents> contents;
 
     private WriteEmptyViewContents(PCollectionView<?> view, BoundedWindow window,
-        AtomicReference<Iterable<? extends WindowedValue<?>>> contents) {
+        AtomicReference<ViewContents> contents) {
       this.contents = contents;
       this.view = view;
       this.window = window;
@@ -198,7 +243,8 @@ class SideInputContainer {
     public void run() {
       // The requested window has closed without producing elements, so reflect that in
       // the PCollectionView. If set has already been called, will do nothing.
-      contents.compareAndSet(null, Collections.<WindowedValue<?>>emptyList());
+      contents.compareAndSet(
+          null, new ViewContents(Collections.<WindowedValue<?>>emptyList()));
     }
 
     @Override
@@ -212,9 +258,7 @@ class SideInputContainer {
 
   private final class SideInputContainerSideInputReader implements ReadyCheckingSideInputReader {
     private final Collection<PCollectionView<?>> readerViews;
-    private final LoadingCache<
-        PCollectionViewWindow<?>, Optional<? extends Iterable<? extends WindowedValue<?>>>>
-        viewContents;
+    private final LoadingCache<PCollectionViewWindow<?>, Optional<ViewContents>> viewContents;
 
     private SideInputContainerSideInputReader(Collection<PCollectionView<?>> readerViews) {
       this.readerViews = ImmutableSet.copyOf(readerViews);
@@ -243,11 +287,10 @@ class SideInputContainer {
           "calling get() on PCollectionView %s that is not ready in window %s",
           view,
           window);
-      // Safe covariant cast
-      @SuppressWarnings("unchecked") Iterable<WindowedValue<?>> values =
-          (Iterable<WindowedValue<?>>) viewContents.getUnchecked(PCollectionViewWindow.of(view,
-              window)).get();
-      return view.getViewFn().apply(values);
+      return viewContents
+          .getUnchecked(PCollectionViewWindow.of(view, window))
+          .get()
+          .getMaterialized(view);
     }
 
     @Override
@@ -265,12 +308,11 @@ class SideInputContainer {
    * A {@link CacheLoader} that loads the current contents of a {@link PCollectionViewWindow} into
    * an optional.
    */
-  private class CurrentViewContentsLoader extends CacheLoader<
-      PCollectionViewWindow<?>, Optional<? extends Iterable<? extends WindowedValue<?>>>> {
+  private class CurrentViewContentsLoader
+      extends CacheLoader<PCollectionViewWindow<?>, Optional<ViewContents>> {
 
     @Override
-    public Optional<? extends Iterable<? extends WindowedValue<?>>>
-        load(PCollectionViewWindow<?> key) {
+    public Optional<ViewContents> load(PCollectionViewWindow<?> key) {
       return Optional.fromNullable(viewByWindows.getUnchecked(key).get());
     }
   }
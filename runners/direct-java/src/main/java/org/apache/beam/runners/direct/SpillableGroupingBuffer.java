@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.UnsignedBytes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A buffer of encoded key-value pairs which groups values by key in bounded memory.
+ *
+ * <p>Records are buffered in memory until their estimated size exceeds the configured limit,
+ * at which point the buffered records are sorted by key and written to a temporary file as a
+ * sorted run. Once all records have been added, the sorted runs and any remaining buffered
+ * records are merged and returned one key at a time, in the unsigned lexicographic order of the
+ * encoded keys. The values of each key are streamed from the merged runs in the order they were
+ * added.
+ *
+ * <p>A {@link SpillableGroupingBuffer} is not thread-safe.
+ */
+class SpillableGroupingBuffer {
+  /**
+   * An estimate of the per-record memory overhead of buffering a record, in addition to the size
+   * of its encoded key and value.
+   */
+  private static final long RECORD_OVERHEAD_BYTES = 64L;
+
+  private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+
+  private static final Comparator<byte[]> KEY_COMPARATOR =
+      UnsignedBytes.lexicographicalComparator();
+
+  private static final Comparator<Record> RECORD_COMPARATOR =
+      new Comparator<Record>() {
+        @Override
+        public int compare(Record left, Record right) {
+          return KEY_COMPARATOR.compare(left.key, right.key);
+        }
+      };
+
+  /**
+   * Create a new {@link SpillableGroupingBuffer} which buffers approximately
+   * {@code maxBufferedBytes} bytes of records in memory before spilling them to disk.
+   */
+  public static SpillableGroupingBuffer create(long maxBufferedBytes) {
+    checkArgument(
+        maxBufferedBytes > 0,
+        "Maximum buffered bytes must be positive, got %s",
+        maxBufferedBytes);
+    return new SpillableGroupingBuffer(maxBufferedBytes);
+  }
+
+  private final long maxBufferedBytes;
+  private final List<File> spilledRuns;
+  private final List<Run> openRuns;
+  private List<Record> buffered;
+  private long bufferedBytes;
+  private GroupingIterator grouping;
+
+  private SpillableGroupingBuffer(long maxBufferedBytes) {
+    this.maxBufferedBytes = maxBufferedBytes;
+    this.spilledRuns = new ArrayList<>();
+    this.openRuns = new ArrayList<>();
+    this.buffered = new ArrayList<>();
+    this.bufferedBytes = 0L;
+  }
+
+  /**
+   * Adds a record with the provided encoded key and value to this buffer.
+   */
+  public void add(byte[] key, byte[] value) throws IOException {
+    checkState(grouping == null, "Cannot add records to a buffer after reading groups");
+    buffered.add(new Record(key, value));
+    bufferedBytes += key.length + value.length + RECORD_OVERHEAD_BYTES;
+    if (bufferedBytes >= maxBufferedBytes) {
+      spill();
+    }
+  }
+
+  /**
+   * Returns the number of sorted runs this buffer has written to disk.
+   */
+  public int getSpilledRunCount() {
+    return spilledRuns.size();
+  }
+
+  /**
+   * Returns the files holding the sorted runs this buffer has written to disk and not yet deleted.
+   */
+  @VisibleForTesting
+  List<File> getSpilledRuns() {
+    return Collections.unmodifiableList(spilledRuns);
+  }
+
+  /**
+   * Returns the next group of values that share a key, or {@code null} if all of the groups have
+   * been returned. No further records may be added after this method is called.
+   */
+  public KeyGroup nextGroup() throws IOException {
+    if (grouping == null) {
+      grouping = new GroupingIterator();
+    }
+    return grouping.next();
+  }
+
+  /**
+   * Releases all of the resources held by this buffer, including any temporary files. May be
+   * called at any time, including after a failure to add or read records.
+   */
+  public void close() throws IOException {
+    IOException failure = null;
+    for (Run run : openRuns) {
+      try {
+        run.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    openRuns.clear();
+    for (File spilled : spilledRuns) {
+      if (spilled.exists() && !spilled.delete()) {
+        failure = new IOException(String.format("Unable to delete spilled run %s", spilled));
+      }
+    }
+    spilledRuns.clear();
+    buffered = Collections.emptyList();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void spill() throws IOException {
+    Collections.sort(buffered, RECORD_COMPARATOR);
+    File spillFile = File.createTempFile("beam-direct-gbk-", ".run");
+    // The file is deleted by close; deleteOnExit only covers a buffer that is never closed.
+    spillFile.deleteOnExit();
+    spilledRuns.add(spillFile);
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(spillFile), SPILL_BUFFER_SIZE))) {
+      for (Record record : buffered) {
+        out.writeInt(record.key.length);
+        out.write(record.key);
+        out.writeInt(record.value.length);
+        out.write(record.value);
+      }
+    }
+    buffered = new ArrayList<>();
+    bufferedBytes = 0L;
+  }
+
+  /**
+   * An encoded key and the encoded values that were added with that key. The values are read from
+   * the merged runs as they are requested, so the values of a key are never buffered together.
+   * The values of a group can only be read until the next call to {@link #nextGroup}.
+   */
+  public class KeyGroup {
+    private final byte[] key;
+    private Run run;
+    private boolean exhausted;
+
+    private KeyGroup(byte[] key) {
+      this.key = key;
+    }
+
+    public byte[] getKey() {
+      return key;
+    }
+
+    /**
+     * Returns the next encoded value of this group, or {@code null} if all of the values of this
+     * group have been returned.
+     */
+    public byte[] nextValue() throws IOException {
+      checkState(grouping.current == this, "Cannot read the values of a previous group");
+      if (exhausted) {
+        return null;
+      }
+      if (run == null || run.current == null || !Arrays.equals(key, run.current.key)) {
+        // The current run has no more values for this key, so continue with the earliest run
+        // which does.
+        if (run != null && run.current != null) {
+          grouping.heads.add(run);
+        }
+        run = null;
+        if (grouping.heads.isEmpty() || !Arrays.equals(key, grouping.heads.peek().current.key)) {
+          exhausted = true;
+          return null;
+        }
+        run = grouping.heads.poll();
+      }
+      byte[] value = run.current.value;
+      run.advance();
+      return value;
+    }
+  }
+
+  private static class Record {
+    private final byte[] key;
+    private final byte[] value;
+
+    private Record(byte[] key, byte[] value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Merges all of the sorted runs, returning groups of values in key order.
+   */
+  private class GroupingIterator {
+    private final PriorityQueue<Run> heads;
+    private KeyGroup current;
+
+    private GroupingIterator() throws IOException {
+      Collections.sort(buffered, RECORD_COMPARATOR);
+      // Runs are ordered by the time their records were added, which the merge uses to preserve
+      // the order of values within a key. They are tracked as soon as they are opened, so that
+      // close releases them even if opening a later run fails.
+      List<Run> runs = openRuns;
+      for (File spilled : spilledRuns) {
+        runs.add(new FileRun(runs.size(), spilled));
+      }
+      runs.add(new MemoryRun(runs.size(), buffered));
+      heads = new PriorityQueue<>(runs.size(), new Comparator<Run>() {
+        @Override
+        public int compare(Run left, Run right) {
+          int keyComparison = KEY_COMPARATOR.compare(left.current.key, right.current.key);
+          return keyComparison != 0 ? keyComparison : Integer.compare(left.index, right.index);
+        }
+      });
+      for (Run run : runs) {
+        if (run.advance()) {
+          heads.add(run);
+        }
+      }
+    }
+
+    private KeyGroup next() throws IOException {
+      if (current != null) {
+        // Skip any values of the previous group which were not read.
+        while (current.nextValue() != null) {}
+      }
+      current = heads.isEmpty() ? null : new KeyGroup(heads.peek().current.key);
+      return current;
+    }
+  }
+
+  /**
+   * A sorted sequence of records. {@link #current} is the record most recently read, or
+   * {@code null} if the run is exhausted.
+   */
+  private abstract static class Run {
+    private final int index;
+    protected Record current;
+
+    protected Run(int index) {
+      this.index = index;
+    }
+
+    /**
+     * Reads the next record of this run into {@link #current}, returning false if there are no
+     * more records.
+     */
+    public abstract boolean advance() throws IOException;
+
+    public void close() throws IOException {}
+  }
+
+  /**
+   * A run of the records still buffered in memory. Each record is released as it is read, so that
+   * the values which have been returned can be collected.
+   */
+  private static class MemoryRun extends Run {
+    private final List<Record> records;
+    private int next;
+
+    private MemoryRun(int index, List<Record> records) {
+      super(index);
+      this.records = records;
+    }
+
+    @Override
+    public boolean advance() {
+      if (next < records.size()) {
+        current = records.set(next++, null);
+      } else {
+        current = null;
+      }
+      return current != null;
+    }
+  }
+
+  private static class FileRun extends Run {
+    private final DataInputStream in;
+
+    private FileRun(int index, File file) throws IOException {
+      super(index);
+      this.in =
+          new DataInputStream(
+              new BufferedInputStream(new FileInputStream(file), SPILL_BUFFER_SIZE));
+    }
+
+    @Override
+    public boolean advance() throws IOException {
+      int keyLength;
+      try {
+        keyLength = in.readInt();
+      } catch (EOFException e) {
+        current = null;
+        in.close();
+        return false;
+      }
+      byte[] key = new byte[keyLength];
+      in.readFully(key);
+      byte[] value = new byte[in.readInt()];
+      in.readFully(value);
+      current = new Record(key, value);
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
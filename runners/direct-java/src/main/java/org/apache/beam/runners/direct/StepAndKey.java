@@ -43,6 +43,13 @@ final class StepAndKey {
     this.key = key;
   }
 
+  /**
+   * Returns the step of this {@link StepAndKey}.
+   */
+  public AppliedPTransform<?, ?, ?> getStep() {
+    return step;
+  }
+
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(StepAndKey.class)
@@ -0,0 +1,478 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.runners.direct.WatermarkManager.TransformWatermarks;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.PCollection;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.joda.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Records the time spent and the elements processed by each step of a {@link DirectRunner}
+ * pipeline.
+ *
+ * <p>A {@link StepProfiler} observes evaluation through a decorated
+ * {@link TransformEvaluatorFactory}, which times each evaluation, and a decorated
+ * {@link BundleFactory}, which records when each bundle is committed. The time between the commit
+ * of a bundle and the start of its evaluation is recorded as the queue wait of the consuming step.
+ *
+ * <p>Each profile also records the number of elements the step output to {@link PCollection
+ * PCollections} whose coder uses a {@link SerializableCoder}, which identifies the steps whose
+ * elements fall back to Java serialization.
+ */
+class StepProfiler {
+  public static StepProfiler create() {
+    return new StepProfiler();
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(StepProfiler.class);
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final ConcurrentMap<AppliedPTransform<?, ?, ?>, StepProfile> profiles;
+  /** The value of {@link System#nanoTime()} when each live bundle was committed. */
+  private final Cache<CommittedBundle<?>, Long> commitTimes;
+  /** Whether the coder of each {@link PCollection} which has been output to is Java serialized. */
+  private final ConcurrentMap<PCollection<?>, Boolean> javaSerialized;
+
+  private StepProfiler() {
+    this.profiles = new ConcurrentHashMap<>();
+    this.commitTimes = CacheBuilder.newBuilder().weakKeys().build();
+    this.javaSerialized = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns a {@link TransformEvaluatorFactory} which creates evaluators using the provided
+   * factory, and records the evaluation of each bundle in this profiler.
+   */
+  public TransformEvaluatorFactory profilingEvaluatorFactory(TransformEvaluatorFactory underlying) {
+    return new ProfilingEvaluatorFactory(underlying);
+  }
+
+  /**
+   * Returns a {@link BundleFactory} which creates bundles using the provided factory, and records
+   * the commit of each bundle in this profiler.
+   */
+  public BundleFactory profilingBundleFactory(BundleFactory underlying) {
+    return new ProfilingBundleFactory(underlying);
+  }
+
+  /**
+   * Returns the profiles of all of the steps which have been evaluated, in descending order of
+   * wall time.
+   */
+  public List<StepProfile> getProfiles() {
+    List<StepProfile> sorted = new ArrayList<>(profiles.values());
+    Collections.sort(sorted, new Comparator<StepProfile>() {
+      @Override
+      public int compare(StepProfile left, StepProfile right) {
+        return Long.compare(right.getWallNanos(), left.getWallNanos());
+      }
+    });
+    return sorted;
+  }
+
+  /**
+   * Returns a human-readable report of the profiles of all steps, in descending order of wall
+   * time.
+   */
+  public String toReport() {
+    List<StepProfile> sorted = getProfiles();
+    int nameWidth = "step".length();
+    for (StepProfile profile : sorted) {
+      nameWidth = Math.max(nameWidth, profile.getStepName().length());
+    }
+    String format =
+        "%-" + nameWidth + "s %10s %10s %12s %8s %12s %12s %10s %14s %15s%n";
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            format,
+            "step",
+            "wall ms",
+            "cpu ms",
+            "queue ms",
+            "bundles",
+            "in elems",
+            "out elems",
+            "max bundle",
+            "max wm lag ms",
+            "java ser elems"));
+    for (StepProfile profile : sorted) {
+      report.append(
+          String.format(
+              format,
+              profile.getStepName(),
+              TimeUnit.NANOSECONDS.toMillis(profile.getWallNanos()),
+              TimeUnit.NANOSECONDS.toMillis(profile.getCpuNanos()),
+              TimeUnit.NANOSECONDS.toMillis(profile.getQueueWaitNanos()),
+              profile.getBundles(),
+              profile.getInputElements(),
+              profile.getOutputElements(),
+              profile.getMaxInputBundleSize(),
+              profile.getMaxWatermarkLagMillis(),
+              profile.getJavaSerializedElements()));
+    }
+    return report.toString();
+  }
+
+  /**
+   * Logs the report of the profiles of all steps, and writes the profiles as a JSON array, in
+   * descending order of wall time, to the provided file, if it is not null. A failure to write the
+   * file is logged rather than thrown, so that it does not obscure the result of the pipeline.
+   */
+  public void report(@Nullable String jsonOutputFile) {
+    LOG.info("Step profiles, in descending order of wall time:{}{}", LINE_SEPARATOR, toReport());
+    if (jsonOutputFile != null) {
+      try {
+        MAPPER.writeValue(new File(jsonOutputFile), getProfiles());
+      } catch (IOException e) {
+        LOG.warn("Unable to write step profiles to {}", jsonOutputFile, e);
+      }
+    }
+  }
+
+  private StepProfile getProfile(AppliedPTransform<?, ?, ?> step) {
+    StepProfile profile = profiles.get(step);
+    if (profile == null) {
+      profiles.putIfAbsent(step, new StepProfile(step.getFullName()));
+      profile = profiles.get(step);
+    }
+    return profile;
+  }
+
+  private boolean isJavaSerialized(PCollection<?> pcollection) {
+    Boolean serialized = javaSerialized.get(pcollection);
+    if (serialized == null) {
+      serialized = usesSerializableCoder(pcollection.getCoder());
+      javaSerialized.put(pcollection, serialized);
+    }
+    return serialized;
+  }
+
+  private static boolean usesSerializableCoder(Coder<?> coder) {
+    if (coder instanceof SerializableCoder) {
+      return true;
+    }
+    List<? extends Coder<?>> arguments = coder.getCoderArguments();
+    if (arguments != null) {
+      for (Coder<?> argument : arguments) {
+        if (argument != null && usesSerializableCoder(argument)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static long currentThreadCpuNanos() {
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0L;
+  }
+
+  /**
+   * The accumulated measurements of a single step.
+   */
+  @JsonPropertyOrder({
+      "step",
+      "wallNanos",
+      "cpuNanos",
+      "queueWaitNanos",
+      "bundles",
+      "inputElements",
+      "outputElements",
+      "maxInputBundleSize",
+      "maxWatermarkLagMillis",
+      "javaSerializedElements"})
+  public static class StepProfile {
+    private final String stepName;
+    private final AtomicLong wallNanos = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLong bundles = new AtomicLong();
+    private final AtomicLong inputElements = new AtomicLong();
+    private final AtomicLong outputElements = new AtomicLong();
+    private final AtomicLong maxInputBundleSize = new AtomicLong();
+    private final AtomicLong maxWatermarkLagMillis = new AtomicLong();
+    private final AtomicLong javaSerializedElements = new AtomicLong();
+
+    private StepProfile(String stepName) {
+      this.stepName = stepName;
+    }
+
+    @JsonProperty("step")
+    public String getStepName() {
+      return stepName;
+    }
+
+    /** The total wall time spent evaluating bundles of this step. */
+    public long getWallNanos() {
+      return wallNanos.get();
+    }
+
+    /** The total CPU time spent evaluating bundles of this step. */
+    public long getCpuNanos() {
+      return cpuNanos.get();
+    }
+
+    /** The total time input bundles of this step waited between commit and evaluation. */
+    public long getQueueWaitNanos() {
+      return queueWaitNanos.get();
+    }
+
+    /** The number of bundles of this step that have been evaluated. */
+    public long getBundles() {
+      return bundles.get();
+    }
+
+    /** The number of elements this step has processed. */
+    public long getInputElements() {
+      return inputElements.get();
+    }
+
+    /** The number of elements in the committed bundles this step has produced. */
+    public long getOutputElements() {
+      return outputElements.get();
+    }
+
+    /** The largest number of elements this step has processed in a single bundle. */
+    public long getMaxInputBundleSize() {
+      return maxInputBundleSize.get();
+    }
+
+    /**
+     * The largest observed difference between the input watermark and the output watermark of this
+     * step, measured when evaluating a bundle completes.
+     */
+    public long getMaxWatermarkLagMillis() {
+      return maxWatermarkLagMillis.get();
+    }
+
+    /**
+     * The number of elements in the committed bundles this step has produced for
+     * {@link PCollection PCollections} whose coder is, or is composed of, a
+     * {@link SerializableCoder}.
+     */
+    public long getJavaSerializedElements() {
+      return javaSerializedElements.get();
+    }
+
+    private void recordBundle(
+        long wall,
+        long cpu,
+        long elements,
+        @Nullable TransformWatermarks watermarks) {
+      wallNanos.addAndGet(wall);
+      cpuNanos.addAndGet(cpu);
+      bundles.incrementAndGet();
+      inputElements.addAndGet(elements);
+      updateMax(maxInputBundleSize, elements);
+      if (watermarks != null) {
+        Instant input = watermarks.getInputWatermark();
+        Instant output = watermarks.getOutputWatermark();
+        if (input.isBefore(BoundedWindow.TIMESTAMP_MAX_VALUE)
+            && output.isAfter(BoundedWindow.TIMESTAMP_MIN_VALUE)) {
+          updateMax(maxWatermarkLagMillis, input.getMillis() - output.getMillis());
+        }
+      }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+      long current = max.get();
+      while (value > current && !max.compareAndSet(current, value)) {
+        current = max.get();
+      }
+    }
+  }
+
+  private class ProfilingEvaluatorFactory implements TransformEvaluatorFactory {
+    private final TransformEvaluatorFactory underlying;
+
+    private ProfilingEvaluatorFactory(TransformEvaluatorFactory underlying) {
+      this.underlying = underlying;
+    }
+
+    @Nullable
+    @Override
+    public <InputT> TransformEvaluator<InputT> forApplication(
+        AppliedPTransform<?, ?, ?> application,
+        @Nullable CommittedBundle<?> inputBundle,
+        EvaluationContext evaluationContext)
+        throws Exception {
+      long startNanos = System.nanoTime();
+      long startCpuNanos = currentThreadCpuNanos();
+      StepProfile profile = getProfile(application);
+      if (inputBundle != null) {
+        Long committedNanos = commitTimes.getIfPresent(inputBundle);
+        if (committedNanos != null) {
+          profile.queueWaitNanos.addAndGet(startNanos - committedNanos);
+        }
+      }
+      TransformEvaluator<InputT> evaluator =
+          underlying.forApplication(application, inputBundle, evaluationContext);
+      if (evaluator == null) {
+        return null;
+      }
+      return new ProfilingEvaluator<>(
+          evaluator,
+          application,
+          evaluationContext,
+          profile,
+          startNanos,
+          startCpuNanos);
+    }
+
+    @Override
+    public void cleanup() throws Exception {
+      underlying.cleanup();
+    }
+  }
+
+  private static class ProfilingEvaluator<InputT> implements TransformEvaluator<InputT> {
+    private final TransformEvaluator<InputT> underlying;
+    private final AppliedPTransform<?, ?, ?> application;
+    private final EvaluationContext evaluationContext;
+    private final StepProfile profile;
+    private final long startNanos;
+    private final long startCpuNanos;
+    private long elements;
+
+    private ProfilingEvaluator(
+        TransformEvaluator<InputT> underlying,
+        AppliedPTransform<?, ?, ?> application,
+        EvaluationContext evaluationContext,
+        StepProfile profile,
+        long startNanos,
+        long startCpuNanos) {
+      this.underlying = underlying;
+      this.application = application;
+      this.evaluationContext = evaluationContext;
+      this.profile = profile;
+      this.startNanos = startNanos;
+      this.startCpuNanos = startCpuNanos;
+    }
+
+    @Override
+    public void processElement(WindowedValue<InputT> element) throws Exception {
+      elements++;
+      underlying.processElement(element);
+    }
+
+    @Override
+    public TransformResult finishBundle() throws Exception {
+      TransformResult result = underlying.finishBundle();
+      profile.recordBundle(
+          System.nanoTime() - startNanos,
+          currentThreadCpuNanos() - startCpuNanos,
+          elements,
+          evaluationContext.getWatermarks(application));
+      return result;
+    }
+  }
+
+  private class ProfilingBundleFactory implements BundleFactory {
+    private final BundleFactory underlying;
+
+    private ProfilingBundleFactory(BundleFactory underlying) {
+      this.underlying = underlying;
+    }
+
+    @Override
+    public <T> UncommittedBundle<T> createRootBundle(PCollection<T> output) {
+      return new ProfilingBundle<>(underlying.createRootBundle(output));
+    }
+
+    @Override
+    public <T> UncommittedBundle<T> createBundle(CommittedBundle<?> input, PCollection<T> output) {
+      return new ProfilingBundle<>(underlying.createBundle(input, output));
+    }
+
+    @Override
+    public <K, T> UncommittedBundle<T> createKeyedBundle(
+        CommittedBundle<?> input, StructuralKey<K> key, PCollection<T> output) {
+      return new ProfilingBundle<>(underlying.createKeyedBundle(input, key, output));
+    }
+  }
+
+  private class ProfilingBundle<T> implements UncommittedBundle<T> {
+    private final UncommittedBundle<T> underlying;
+
+    private ProfilingBundle(UncommittedBundle<T> underlying) {
+      this.underlying = underlying;
+    }
+
+    @Override
+    public PCollection<T> getPCollection() {
+      return underlying.getPCollection();
+    }
+
+    @Override
+    public UncommittedBundle<T> add(WindowedValue<T> element) {
+      underlying.add(element);
+      return this;
+    }
+
+    @Override
+    public CommittedBundle<T> commit(Instant synchronizedProcessingTime) {
+      CommittedBundle<T> committed = underlying.commit(synchronizedProcessingTime);
+      commitTimes.put(committed, System.nanoTime());
+      AppliedPTransform<?, ?, ?> producer = getPCollection().getProducingTransformInternal();
+      if (producer != null) {
+        StepProfile profile = getProfile(producer);
+        long elements = Iterables.size(committed.getElements());
+        profile.outputElements.addAndGet(elements);
+        if (isJavaSerialized(getPCollection())) {
+          profile.javaSerializedElements.addAndGet(elements);
+        }
+      }
+      return committed;
+    }
+  }
+}
@@ -20,11 +20,15 @@ package org.apache.beam.runners.direct;
 
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
-import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.coders.EncodedKey;
 
 /**
- * A (Key, Coder) pair that uses the structural value of the key (as provided by
- * {@link Coder#structuralValue(Object)}) to perform equality and hashing.
+ * A (Key, Coder) pair that uses the encoded value of the key (as an {@link EncodedKey}) to perform
+ * equality and hashing.
+ *
+ * <p>Keys are grouped by their encoded form, so keys with equal encodings are equal. A
+ * {@link StructuralKey} may be created from an {@link EncodedKey} that already exists, such as the
+ * key a {@link GroupByKeyOnlyEvaluatorFactory} grouped elements by, without encoding the key again.
  */
 class StructuralKey<K> {
   /**
@@ -32,26 +36,32 @@ class StructuralKey<K> {
    */
   public static <K> StructuralKey<K> of(K key, Coder<K> coder) {
     try {
-      return new StructuralKey<>(coder, key);
+      return new StructuralKey<>(coder, EncodedKey.of(coder, key));
     } catch (Exception e) {
       throw new IllegalArgumentException(
           "Could not encode a key with its provided coder " + coder.getClass().getSimpleName(), e);
     }
   }
 
+  /**
+   * Create a new Structural Key of the key with the provided encoding, which was encoded by the
+   * provided coder.
+   */
+  public static <K> StructuralKey<K> ofEncoded(EncodedKey encodedKey, Coder<K> coder) {
+    return new StructuralKey<>(coder, encodedKey);
+  }
+
   private final Coder<K> coder;
-  private final Object structuralValue;
-  private final byte[] encoded;
+  private final EncodedKey encodedKey;
 
-  private StructuralKey(Coder<K> coder, K key) throws Exception {
+  private StructuralKey(Coder<K> coder, EncodedKey encodedKey) {
     this.coder = coder;
-    this.structuralValue = coder.structuralValue(key);
-    this.encoded = CoderUtils.encodeToByteArray(coder, key);
+    this.encodedKey = encodedKey;
   }
 
   public K getKey() {
     try {
-      return CoderUtils.decodeFromByteArray(coder, encoded);
+      return encodedKey.decode(coder);
     } catch (CoderException e) {
       throw new IllegalArgumentException(
           "Could not decode Key with coder of type " + coder.getClass().getSimpleName());
@@ -65,13 +75,13 @@ class StructuralKey<K> {
     }
     if (other instanceof StructuralKey) {
       StructuralKey that = (StructuralKey) other;
-      return structuralValue.equals(that.structuralValue);
+      return encodedKey.equals(that.encodedKey);
     }
     return false;
   }
 
   @Override
   public int hashCode() {
-    return structuralValue.hashCode();
+    return encodedKey.hashCode();
   }
 }
@@ -19,6 +19,8 @@ package org.apache.beam.runners.direct;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import org.apache.beam.runners.direct.DirectCombinePerKey.DirectCombineAlsoByWindow;
+import org.apache.beam.runners.direct.DirectCombinePerKey.DirectPartialCombine;
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupAlsoByWindow;
 import org.apache.beam.runners.direct.DirectGroupByKey.DirectGroupByKeyOnly;
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
@@ -61,6 +63,9 @@ class TransformEvaluatorRegistry implements TransformEvaluatorFactory {
             // Runner-specific primitives used in expansion of GroupByKey
             .put(DirectGroupByKeyOnly.class, new GroupByKeyOnlyEvaluatorFactory())
             .put(DirectGroupAlsoByWindow.class, new GroupAlsoByWindowEvaluatorFactory())
+            // Runner-specific primitives used in expansion of Combine.PerKey
+            .put(DirectPartialCombine.class, new PartialCombineEvaluatorFactory())
+            .put(DirectCombineAlsoByWindow.class, new GroupAlsoByWindowEvaluatorFactory())
             .build();
     return new TransformEvaluatorRegistry(primitives);
   }
@@ -17,11 +17,17 @@
  */
 package org.apache.beam.runners.direct;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.common.base.MoreObjects;
 
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -45,7 +51,86 @@ final class TransformExecutorServices {
    * serial.
    */
   public static TransformExecutorService serial(ExecutorService executor) {
-    return new SerialEvaluationState(executor);
+    return new SerialEvaluationState(parallel(executor));
+  }
+
+  /**
+   * Returns an EvaluationState that evaluates {@link TransformExecutor TransformExecutors} in
+   * serial, scheduling each {@link TransformExecutor} with the provided
+   * {@link TransformExecutorService} once all previously scheduled work has completed.
+   */
+  public static TransformExecutorService serial(TransformExecutorService underlying) {
+    return new SerialEvaluationState(underlying);
+  }
+
+  /**
+   * Returns an EvaluationState that evaluates {@link TransformExecutor TransformExecutors} in
+   * parallel, with at most {@code maxOutstanding} {@link TransformExecutor TransformExecutors}
+   * submitted to the {@link ExecutorService} at any time.
+   */
+  public static BoundedEvaluationState bounded(ExecutorService executor, int maxOutstanding) {
+    checkArgument(
+        maxOutstanding > 0,
+        "The maximum number of outstanding %s must be positive, got %s",
+        TransformExecutor.class.getSimpleName(),
+        maxOutstanding);
+    return new BoundedEvaluationState(executor, maxOutstanding);
+  }
+
+  /**
+   * Submits the work to the {@link ExecutorService}. If the current thread is a worker of the
+   * {@link ExecutorService}, and the {@link ExecutorService} is a {@link ForkJoinPool}, the work is
+   * placed on the work queue of the current thread, so work scheduled by completing work stays on
+   * the same worker unless it is stolen by an idle worker.
+   *
+   * <p>Work submitted to a {@link ForkJoinPool} is run as a {@link ManagedBlocker}, as evaluators
+   * may block within user code. The pool activates or creates another worker while the work runs
+   * if it would otherwise have no worker available for the remaining work.
+   */
+  private static void submit(ExecutorService executor, TransformExecutor<?> work) {
+    if (executor instanceof ForkJoinPool) {
+      ForkJoinTask<?> task = ForkJoinTask.adapt(new ManagedBlockingWork(work));
+      if (ForkJoinTask.getPool() == executor) {
+        task.fork();
+      } else {
+        ((ForkJoinPool) executor).execute(task);
+      }
+    } else {
+      executor.submit(work);
+    }
+  }
+
+  /**
+   * Runs a {@link TransformExecutor} within {@link ForkJoinPool#managedBlock(ManagedBlocker)}.
+   */
+  private static class ManagedBlockingWork implements Runnable, ManagedBlocker {
+    private final TransformExecutor<?> work;
+    private boolean done;
+
+    private ManagedBlockingWork(TransformExecutor<?> work) {
+      this.work = work;
+    }
+
+    @Override
+    public void run() {
+      try {
+        ForkJoinPool.managedBlock(this);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public boolean block() {
+      work.run();
+      done = true;
+      return true;
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return done;
+    }
   }
 
   /**
@@ -64,7 +149,7 @@ final class TransformExecutorServices {
 
     @Override
     public void schedule(TransformExecutor<?> work) {
-      executor.submit(work);
+      submit(executor, work);
     }
 
     @Override
@@ -75,19 +160,19 @@ final class TransformExecutorServices {
   /**
    * A {@link TransformExecutorService} with a single work queue. Any {@link TransformExecutor}
    * scheduled will be placed on the work queue. Only one item of work will be submitted to the
-   * {@link ExecutorService} at any time.
+   * underlying {@link TransformExecutorService} at any time.
    *
    * <p>A principal use of this is for the serial evaluation of a (Step, Key) pair.
    * Keyed computations are processed serially per step.
    */
   private static class SerialEvaluationState implements TransformExecutorService {
-    private final ExecutorService executor;
+    private final TransformExecutorService underlying;
 
     private AtomicReference<TransformExecutor<?>> currentlyEvaluating;
     private final Queue<TransformExecutor<?>> workQueue;
 
-    private SerialEvaluationState(ExecutorService executor) {
-      this.executor = executor;
+    private SerialEvaluationState(TransformExecutorService underlying) {
+      this.underlying = underlying;
       this.currentlyEvaluating = new AtomicReference<>();
       this.workQueue = new ConcurrentLinkedQueue<>();
     }
@@ -111,6 +196,7 @@ final class TransformExecutorServices {
                 + " but could not complete due to unexpected currently executing "
                 + currentlyEvaluating.get());
       }
+      underlying.complete(completed);
       updateCurrentlyEvaluating();
     }
 
@@ -121,7 +207,7 @@ final class TransformExecutorServices {
           TransformExecutor<?> newWork = workQueue.poll();
           if (newWork != null) {
             if (currentlyEvaluating.compareAndSet(null, newWork)) {
-              executor.submit(newWork);
+              underlying.schedule(newWork);
             } else {
               workQueue.offer(newWork);
             }
@@ -138,4 +224,79 @@ final class TransformExecutorServices {
           .toString();
     }
   }
+
+  /**
+   * A {@link TransformExecutorService} with bounded parallelism. Any {@link TransformExecutor}
+   * scheduled will be placed on the work queue, and submitted to the {@link ExecutorService} when
+   * fewer than the maximum number of {@link TransformExecutor TransformExecutors} are outstanding.
+   *
+   * <p>A principal use of this is to bound the number of bundles of a single Step that are
+   * submitted at once, so that a Step with a large amount of available work does not flood the
+   * {@link ExecutorService}.
+   *
+   * <p>A {@link BoundedEvaluationState} with queued work is saturated. The executor holds back
+   * the bundles of the Steps which produce the input of a saturated Step, rather than scheduling
+   * work which would only add to its queue.
+   */
+  static class BoundedEvaluationState implements TransformExecutorService {
+    private final ExecutorService executor;
+    private final int maxOutstanding;
+
+    private final AtomicInteger outstanding;
+    private final Queue<TransformExecutor<?>> workQueue;
+
+    private BoundedEvaluationState(ExecutorService executor, int maxOutstanding) {
+      this.executor = executor;
+      this.maxOutstanding = maxOutstanding;
+      this.outstanding = new AtomicInteger();
+      this.workQueue = new ConcurrentLinkedQueue<>();
+    }
+
+    @Override
+    public void schedule(TransformExecutor<?> work) {
+      workQueue.offer(work);
+      submitAvailableWork();
+    }
+
+    @Override
+    public void complete(TransformExecutor<?> completed) {
+      outstanding.decrementAndGet();
+      submitAvailableWork();
+    }
+
+    /**
+     * Returns true if scheduled work is waiting for outstanding work to complete.
+     */
+    public boolean isSaturated() {
+      return !workQueue.isEmpty();
+    }
+
+    private void submitAvailableWork() {
+      while (!workQueue.isEmpty()) {
+        int current = outstanding.get();
+        if (current >= maxOutstanding) {
+          // The completion of outstanding work will submit the remaining work
+          return;
+        }
+        if (outstanding.compareAndSet(current, current + 1)) {
+          TransformExecutor<?> newWork = workQueue.poll();
+          if (newWork == null) {
+            // Another thread submitted the work; loop in case more work was added concurrently
+            outstanding.decrementAndGet();
+          } else {
+            submit(executor, newWork);
+          }
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(BoundedEvaluationState.class)
+          .add("maxOutstanding", maxOutstanding)
+          .add("outstanding", outstanding)
+          .add("workQueue", workQueue)
+          .toString();
+    }
+  }
 }
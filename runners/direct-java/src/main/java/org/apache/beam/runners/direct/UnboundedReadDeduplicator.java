@@ -17,18 +17,27 @@
  */
 package org.apache.beam.runners.direct;
 
-import org.apache.beam.sdk.coders.ByteArrayCoder;
+import static com.google.common.base.Preconditions.checkArgument;
+
 import org.apache.beam.sdk.io.Read.Unbounded;
 import org.apache.beam.sdk.transforms.PTransform;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Provides methods to determine if a record is a duplicate within the evaluation of a
@@ -62,41 +71,295 @@ interface UnboundedReadDeduplicator {
 
   /**
    * An {@link UnboundedReadDeduplicator} that returns true if the record ID has not been seen
-   * within 10 minutes.
+   * within the retention period.
+   *
+   * <p>Record IDs are tracked as 64-bit fingerprints in a sequence of time buckets, each of which
+   * covers an equal fraction of the retention period. The newest bucket receives all new
+   * fingerprints; when it ages out, a new bucket is started and the oldest bucket is discarded.
+   * A fingerprint that is seen again is added to the newest bucket, so an ID is retained for at
+   * least the retention period after it was last seen.
+   *
+   * <p>If enabled, buckets other than the newest are compacted into {@link BloomFilter Bloom
+   * filters}, which use a few bytes per ID at the cost of a small probability of reporting an
+   * unseen ID as a duplicate. {@link #getEstimatedFalsePositiveProbability()} estimates this
+   * probability for the current buckets.
    */
   class CachedIdDeduplicator implements UnboundedReadDeduplicator {
-    private static final ByteArrayCoder RECORD_ID_CODER = ByteArrayCoder.of();
-    private static final long MAX_RETENTION_SINCE_ACCESS =
-        Duration.standardMinutes(10L).getMillis();
+    private static final Logger LOG = LoggerFactory.getLogger(CachedIdDeduplicator.class);
 
-    private final LoadingCache<StructuralKey<byte[]>, AtomicBoolean> ids;
+    private static final Duration DEFAULT_RETENTION = Duration.standardMinutes(10L);
+    private static final int NUM_BUCKETS = 10;
+    private static final double BLOOM_FILTER_FPP = 1e-6;
+    private static final HashFunction FINGERPRINT_FUNCTION = Hashing.murmur3_128();
 
     /**
-     * Create a new {@link CachedIdDeduplicator}.
+     * Create a new {@link CachedIdDeduplicator} which retains IDs for 10 minutes, and does not use
+     * Bloom filters.
      */
-    public static UnboundedReadDeduplicator create() {
-      return new CachedIdDeduplicator();
+    public static CachedIdDeduplicator create() {
+      return create(NanosOffsetClock.create(), DEFAULT_RETENTION, false);
+    }
+
+    /**
+     * Create a new {@link CachedIdDeduplicator} which retains IDs for at least the provided
+     * retention period, as measured by the provided {@link Clock}, and compacts older buckets
+     * into Bloom filters if {@code useBloomFilters} is true.
+     */
+    public static CachedIdDeduplicator create(
+        Clock clock, Duration retention, boolean useBloomFilters) {
+      checkArgument(
+          retention.getMillis() > 0L, "Retention must be positive, got %s", retention);
+      return new CachedIdDeduplicator(clock, retention, useBloomFilters);
+    }
+
+    private final Clock clock;
+    private final long bucketMillis;
+    private final boolean useBloomFilters;
+
+    /** The buckets of fingerprints, newest first. The newest bucket is always exact. */
+    @GuardedBy("this")
+    private final Deque<IdBucket> buckets;
+    @GuardedBy("this")
+    private LongHashSet currentBucket;
+    @GuardedBy("this")
+    private long currentBucketEnd;
+    @GuardedBy("this")
+    private long lookups;
+    @GuardedBy("this")
+    private long duplicates;
+
+    private CachedIdDeduplicator(Clock clock, Duration retention, boolean useBloomFilters) {
+      this.clock = clock;
+      // An ID is retained until the bucket it is in is discarded, which happens between
+      // NUM_BUCKETS - 1 and NUM_BUCKETS bucket durations after it is added.
+      this.bucketMillis = Math.max(1L, divideRoundingUp(retention.getMillis(), NUM_BUCKETS - 1));
+      this.useBloomFilters = useBloomFilters;
+      this.buckets = new ArrayDeque<>(NUM_BUCKETS);
+      this.currentBucket = new LongHashSet();
+      this.buckets.addFirst(currentBucket);
+      this.currentBucketEnd = clock.now().getMillis() + bucketMillis;
     }
 
-    private CachedIdDeduplicator() {
-      ids = CacheBuilder.newBuilder()
-          .expireAfterAccess(MAX_RETENTION_SINCE_ACCESS, TimeUnit.MILLISECONDS)
-          .maximumSize(100_000L)
-          .build(new TrueBooleanLoader());
+    private static long divideRoundingUp(long numerator, long denominator) {
+      return (numerator + denominator - 1) / denominator;
     }
 
     @Override
-    public boolean shouldOutput(byte[] recordId) {
-      return ids.getUnchecked(StructuralKey.of(recordId, RECORD_ID_CODER)).getAndSet(false);
+    public synchronized boolean shouldOutput(byte[] recordId) {
+      rotateBuckets(clock.now().getMillis());
+      long fingerprint = FINGERPRINT_FUNCTION.hashBytes(recordId).asLong();
+      lookups++;
+      if (!currentBucket.add(fingerprint)) {
+        duplicates++;
+        return false;
+      }
+      Iterator<IdBucket> olderBuckets = buckets.iterator();
+      // Skip the current bucket
+      olderBuckets.next();
+      while (olderBuckets.hasNext()) {
+        if (olderBuckets.next().contains(fingerprint)) {
+          // The fingerprint remains in the current bucket, extending its retention
+          duplicates++;
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void rotateBuckets(long nowMillis) {
+      if (nowMillis < currentBucketEnd) {
+        return;
+      }
+      int rotations = 0;
+      while (nowMillis >= currentBucketEnd && rotations < NUM_BUCKETS) {
+        if (useBloomFilters) {
+          buckets.removeFirst();
+          buckets.addFirst(BloomFilterBucket.of(currentBucket));
+        }
+        currentBucket = new LongHashSet();
+        buckets.addFirst(currentBucket);
+        while (buckets.size() > NUM_BUCKETS) {
+          buckets.removeLast();
+        }
+        currentBucketEnd += bucketMillis;
+        rotations++;
+      }
+      if (nowMillis >= currentBucketEnd) {
+        // Every bucket has been replaced; restart the bucket boundaries from the current time
+        currentBucketEnd = nowMillis + bucketMillis;
+      }
+      LOG.debug(
+          "{} rotated {} buckets; {} lookups, {} duplicates, "
+              + "estimated false positive probability {}",
+          getClass().getSimpleName(),
+          rotations,
+          lookups,
+          duplicates,
+          getEstimatedFalsePositiveProbability());
+    }
+
+    /**
+     * Returns the number of record IDs this {@link CachedIdDeduplicator} has checked.
+     */
+    public synchronized long getLookupCount() {
+      return lookups;
+    }
+
+    /**
+     * Returns the number of record IDs this {@link CachedIdDeduplicator} has reported as
+     * duplicates.
+     */
+    public synchronized long getDuplicateCount() {
+      return duplicates;
+    }
+
+    /**
+     * Returns an estimate of the probability that a record ID which has not been seen within the
+     * retention period is reported as a duplicate. This is zero unless Bloom filters are used,
+     * ignoring collisions between 64-bit fingerprints.
+     */
+    public synchronized double getEstimatedFalsePositiveProbability() {
+      double trueNegative = 1.0;
+      for (IdBucket bucket : buckets) {
+        trueNegative *= 1.0 - bucket.falsePositiveProbability();
+      }
+      return 1.0 - trueNegative;
+    }
+
+    /**
+     * A set of fingerprints of record IDs.
+     */
+    private interface IdBucket {
+      boolean contains(long fingerprint);
+
+      double falsePositiveProbability();
     }
 
-    private static class TrueBooleanLoader
-        extends CacheLoader<StructuralKey<byte[]>, AtomicBoolean> {
+    /**
+     * A {@link IdBucket} backed by a {@link BloomFilter}.
+     */
+    private static class BloomFilterBucket implements IdBucket {
+      private static BloomFilterBucket of(LongHashSet exactBucket) {
+        BloomFilter<Long> filter =
+            BloomFilter.create(
+                Funnels.longFunnel(), Math.max(exactBucket.size(), 1), BLOOM_FILTER_FPP);
+        for (long fingerprint : exactBucket.values()) {
+          filter.put(fingerprint);
+        }
+        return new BloomFilterBucket(filter);
+      }
+
+      private final BloomFilter<Long> filter;
+
+      private BloomFilterBucket(BloomFilter<Long> filter) {
+        this.filter = filter;
+      }
+
       @Override
-      public AtomicBoolean load(StructuralKey<byte[]> key) throws Exception {
-        return new AtomicBoolean(true);
+      public boolean contains(long fingerprint) {
+        return filter.mightContain(fingerprint);
+      }
+
+      @Override
+      public double falsePositiveProbability() {
+        return filter.expectedFpp();
       }
     }
-  }
 
+    /**
+     * An exact {@link IdBucket} which stores fingerprints in an open-addressed table of
+     * primitive longs.
+     */
+    private static class LongHashSet implements IdBucket {
+      private static final int INITIAL_CAPACITY = 1024;
+
+      private long[] table;
+      private boolean containsZero;
+      private int size;
+
+      private LongHashSet() {
+        table = new long[INITIAL_CAPACITY];
+      }
+
+      /**
+       * Adds the fingerprint to this set, returning false if it was already present.
+       */
+      public boolean add(long fingerprint) {
+        if (fingerprint == 0L) {
+          if (containsZero) {
+            return false;
+          }
+          containsZero = true;
+          size++;
+          return true;
+        }
+        if (!insert(table, fingerprint)) {
+          return false;
+        }
+        size++;
+        // Keep the load factor of the table at most one half
+        if (2 * size > table.length) {
+          long[] resized = new long[table.length * 2];
+          for (long existing : table) {
+            if (existing != 0L) {
+              insert(resized, existing);
+            }
+          }
+          table = resized;
+        }
+        return true;
+      }
+
+      private static boolean insert(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int index = (int) fingerprint & mask;
+        while (table[index] != 0L) {
+          if (table[index] == fingerprint) {
+            return false;
+          }
+          index = (index + 1) & mask;
+        }
+        table[index] = fingerprint;
+        return true;
+      }
+
+      @Override
+      public boolean contains(long fingerprint) {
+        if (fingerprint == 0L) {
+          return containsZero;
+        }
+        int mask = table.length - 1;
+        int index = (int) fingerprint & mask;
+        while (table[index] != 0L) {
+          if (table[index] == fingerprint) {
+            return true;
+          }
+          index = (index + 1) & mask;
+        }
+        return false;
+      }
+
+      @Override
+      public double falsePositiveProbability() {
+        return 0.0;
+      }
+
+      public int size() {
+        return size;
+      }
+
+      public List<Long> values() {
+        List<Long> values = new ArrayList<>(size);
+        if (containsZero) {
+          values.add(0L);
+        }
+        for (long fingerprint : table) {
+          if (fingerprint != 0L) {
+            values.add(fingerprint);
+          }
+        }
+        return values;
+      }
+    }
+  }
 }
@@ -32,6 +32,7 @@ import org.apache.beam.sdk.values.PCollection;
 
 import com.google.common.annotations.VisibleForTesting;
 
+import org.joda.time.Duration;
 import org.joda.time.Instant;
 
 import java.io.IOException;
@@ -95,7 +96,12 @@ class UnboundedReadEvaluatorFactory implements TransformEvaluatorFactory {
             (UnboundedSource<OutputT, CheckpointMarkT>) transform.getTransform().getSource();
         UnboundedReadDeduplicator deduplicator;
         if (source.requiresDeduping()) {
-          deduplicator = UnboundedReadDeduplicator.CachedIdDeduplicator.create();
+          DirectOptions options = evaluationContext.getPipelineOptions();
+          deduplicator =
+              UnboundedReadDeduplicator.CachedIdDeduplicator.create(
+                  options.getClock(),
+                  Duration.millis(options.getDeduplicationRetentionMillis()),
+                  options.isDeduplicateWithBloomFilters());
         } else {
           deduplicator = UnboundedReadDeduplicator.NeverDeduplicator.create();
         }
@@ -27,16 +27,14 @@ import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.TimeDomain;
 import org.apache.beam.sdk.util.TimerInternals;
 import org.apache.beam.sdk.util.TimerInternals.TimerData;
-import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PValue;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -60,6 +58,7 @@ import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
@@ -125,6 +124,10 @@ import javax.annotation.Nullable;
  * Watermark_Out' = MAX(Watermark_Out, MIN(Watermark_In', U(StateHold)))
  * Watermark_PCollection = Watermark_Out_ProducingPTransform
  * </pre>
+ *
+ * <p>Watermarks are refreshed incrementally. Only transforms which have been updated, or which
+ * consume from a transform whose output watermark has advanced, are refreshed, and each
+ * transform is refreshed at most once per call to {@link #refreshAll()}.
  */
 public class WatermarkManager {
   /**
@@ -207,14 +210,18 @@ public class WatermarkManager {
    */
   private static class AppliedPTransformInputWatermark implements Watermark {
     private final Collection<? extends Watermark> inputWatermarks;
-    private final SortedMultiset<WindowedValue<?>> pendingElements;
+    /**
+     * The minimum timestamps of each pending {@link CommittedBundle}. Only the timestamp is
+     * retained, so pending elements are not referenced by the watermark.
+     */
+    private final SortedMultiset<Instant> pendingTimestamps;
     private final Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers;
 
     private AtomicReference<Instant> currentWatermark;
 
     public AppliedPTransformInputWatermark(Collection<? extends Watermark> inputWatermarks) {
       this.inputWatermarks = inputWatermarks;
-      this.pendingElements = TreeMultiset.create(new WindowedValueByTimestampComparator());
+      this.pendingTimestamps = TreeMultiset.create();
       this.objectTimers = new HashMap<>();
       currentWatermark = new AtomicReference<>(BoundedWindow.TIMESTAMP_MIN_VALUE);
     }
@@ -246,26 +253,21 @@ public class WatermarkManager {
       for (Watermark inputWatermark : inputWatermarks) {
         minInputWatermark = INSTANT_ORDERING.min(minInputWatermark, inputWatermark.get());
       }
-      if (!pendingElements.isEmpty()) {
+      if (!pendingTimestamps.isEmpty()) {
         minInputWatermark = INSTANT_ORDERING.min(
-            minInputWatermark, pendingElements.firstEntry().getElement().getTimestamp());
+            minInputWatermark, pendingTimestamps.firstEntry().getElement());
       }
       Instant newWatermark = INSTANT_ORDERING.max(oldWatermark, minInputWatermark);
       currentWatermark.set(newWatermark);
       return WatermarkUpdate.fromTimestamps(oldWatermark, newWatermark);
     }
 
-    private synchronized void addPendingElements(Iterable<? extends WindowedValue<?>> newPending) {
-      for (WindowedValue<?> pendingElement : newPending) {
-        pendingElements.add(pendingElement);
-      }
+    private synchronized void addPending(CommittedBundle<?> newPending) {
+      pendingTimestamps.add(newPending.getMinTimestamp());
     }
 
-    private synchronized void removePendingElements(
-        Iterable<? extends WindowedValue<?>> finishedElements) {
-      for (WindowedValue<?> finishedElement : finishedElements) {
-        pendingElements.remove(finishedElement);
-      }
+    private synchronized void removePending(CommittedBundle<?> completed) {
+      pendingTimestamps.remove(completed.getMinTimestamp());
     }
 
     private synchronized void updateTimers(TimerUpdate update) {
@@ -294,7 +296,7 @@ public class WatermarkManager {
     @Override
     public synchronized String toString() {
       return MoreObjects.toStringHelper(AppliedPTransformInputWatermark.class)
-          .add("pendingElements", pendingElements)
+          .add("pendingTimestamps", pendingTimestamps)
           .add("currentWatermark", currentWatermark)
           .toString();
     }
@@ -384,7 +386,10 @@ public class WatermarkManager {
    */
   private static class SynchronizedProcessingTimeInputWatermark implements Watermark {
     private final Collection<? extends Watermark> inputWms;
-    private final Collection<CommittedBundle<?>> pendingBundles;
+    /**
+     * The synchronized processing output watermarks of each pending {@link CommittedBundle}.
+     */
+    private final SortedMultiset<Instant> pendingBundleHolds;
     private final Map<StructuralKey<?>, NavigableSet<TimerData>> processingTimers;
     private final Map<StructuralKey<?>, NavigableSet<TimerData>> synchronizedProcessingTimers;
 
@@ -394,7 +399,7 @@ public class WatermarkManager {
 
     public SynchronizedProcessingTimeInputWatermark(Collection<? extends Watermark> inputWms) {
       this.inputWms = inputWms;
-      this.pendingBundles = new HashSet<>();
+      this.pendingBundleHolds = TreeMultiset.create();
       this.processingTimers = new HashMap<>();
       this.synchronizedProcessingTimers = new HashMap<>();
       this.pendingTimers = new PriorityQueue<>();
@@ -430,22 +435,22 @@ public class WatermarkManager {
       for (Watermark input : inputWms) {
         minTime = INSTANT_ORDERING.min(minTime, input.get());
       }
-      for (CommittedBundle<?> bundle : pendingBundles) {
-        // TODO: Track elements in the bundle by the processing time they were output instead of
-        // entire bundles. Requried to support arbitrarily splitting and merging bundles between
-        // steps
-        minTime = INSTANT_ORDERING.min(minTime, bundle.getSynchronizedProcessingOutputWatermark());
+      // TODO: Track elements in the bundle by the processing time they were output instead of
+      // entire bundles. Requried to support arbitrarily splitting and merging bundles between
+      // steps
+      if (!pendingBundleHolds.isEmpty()) {
+        minTime = INSTANT_ORDERING.min(minTime, pendingBundleHolds.firstEntry().getElement());
       }
       earliestHold.set(minTime);
       return WatermarkUpdate.fromTimestamps(oldHold, minTime);
     }
 
     public synchronized void addPending(CommittedBundle<?> bundle) {
-      pendingBundles.add(bundle);
+      pendingBundleHolds.add(bundle.getSynchronizedProcessingOutputWatermark());
     }
 
     public synchronized void removePending(CommittedBundle<?> bundle) {
-      pendingBundles.remove(bundle);
+      pendingBundleHolds.remove(bundle.getSynchronizedProcessingOutputWatermark());
     }
 
     /**
@@ -629,19 +634,6 @@ public class WatermarkManager {
 
   private static final Ordering<Instant> INSTANT_ORDERING = Ordering.natural();
 
-  /**
-   * A function that takes a WindowedValue and returns the exploded representation of that
-   * {@link WindowedValue}.
-   */
-  private static final Function<WindowedValue<?>, ? extends Iterable<? extends WindowedValue<?>>>
-      EXPLODE_WINDOWS_FN =
-          new Function<WindowedValue<?>, Iterable<? extends WindowedValue<?>>>() {
-            @Override
-            public Iterable<? extends WindowedValue<?>> apply(WindowedValue<?> input) {
-              return input.explodeWindows();
-            }
-          };
-
   /**
    * For each (Object, PriorityQueue) pair in the provided map, remove each Timer that is before the
    * latestTime argument and put in in the result with the same key, then remove all of the keys
@@ -696,10 +688,27 @@ public class WatermarkManager {
   private final ConcurrentLinkedQueue<PendingWatermarkUpdate> pendingUpdates;
 
   /**
-   * A queue of pending {@link AppliedPTransform AppliedPTransforms} that have potentially
-   * stale data.
+   * The position of each {@link AppliedPTransform} in a topological ordering of the
+   * {@link Pipeline}. A transform is always after all of the transforms that produce its inputs.
    */
-  private final ConcurrentLinkedQueue<AppliedPTransform<?, ?, ?>> pendingRefreshes;
+  private final Map<AppliedPTransform<?, ?, ?>, Integer> topologicalIndices;
+
+  /**
+   * The set of {@link AppliedPTransform AppliedPTransforms} that have potentially stale data,
+   * ordered topologically. Only accessed within {@link #refreshAll()}.
+   */
+  private final NavigableSet<AppliedPTransform<?, ?, ?>> pendingRefreshes;
+
+  /**
+   * The number of times the watermarks of an {@link AppliedPTransform} have been refreshed.
+   */
+  private final AtomicLong performedRefreshes;
+
+  /**
+   * The number of times a refresh of an {@link AppliedPTransform} was requested while a refresh of
+   * that transform was already pending, and was combined with the pending refresh.
+   */
+  private final AtomicLong skippedRefreshes;
 
   /**
    * Creates a new {@link WatermarkManager}. All watermarks within the newly created
@@ -724,7 +733,11 @@ public class WatermarkManager {
     this.clock = clock;
     this.consumers = consumers;
     this.pendingUpdates = new ConcurrentLinkedQueue<>();
-    this.pendingRefreshes = new ConcurrentLinkedQueue<>();
+    this.topologicalIndices = new HashMap<>();
+    this.pendingRefreshes =
+        new TreeSet<>(Ordering.<Integer>natural().onResultOf(Functions.forMap(topologicalIndices)));
+    this.performedRefreshes = new AtomicLong();
+    this.skippedRefreshes = new AtomicLong();
 
     transformToWatermarks = new HashMap<>();
 
@@ -756,6 +769,9 @@ public class WatermarkManager {
           new TransformWatermarks(
               inputWatermark, outputWatermark, inputProcessingWatermark, outputProcessingWatermark);
       transformToWatermarks.put(transform, wms);
+      // The watermarks of all of the producers of the inputs have been created before this point,
+      // so the order of creation is a topological ordering
+      topologicalIndices.put(transform, topologicalIndices.size());
     }
     return wms;
   }
@@ -840,14 +856,12 @@ public class WatermarkManager {
    * of all {@link TransformWatermarks} to be advanced as far as possible.
    */
   private void applyPendingUpdates() {
-    Set<AppliedPTransform<?, ?, ?>> updatedTransforms = new HashSet<>();
     PendingWatermarkUpdate pending = pendingUpdates.poll();
     while (pending != null) {
       applyPendingUpdate(pending);
-      updatedTransforms.add(pending.getTransform());
+      markForRefresh(pending.getTransform());
       pending = pendingUpdates.poll();
     }
-    pendingRefreshes.addAll(updatedTransforms);
   }
 
   private void applyPendingUpdate(PendingWatermarkUpdate pending) {
@@ -889,9 +903,11 @@ public class WatermarkManager {
     }
 
     TransformWatermarks completedTransform = transformToWatermarks.get(result.getTransform());
-    if (input != null) {
-      // Add the unprocessed inputs
-      completedTransform.addPending(result.getUnprocessedInputs());
+    CommittedBundle<?> unprocessedInputs = result.getUnprocessedInputs();
+    if (unprocessedInputs != null && !Iterables.isEmpty(unprocessedInputs.getElements())) {
+      // Add the unprocessed inputs. An empty bundle will never be processed, so it must not be
+      // added to the pending bundles.
+      completedTransform.addPending(unprocessedInputs);
     }
     completedTransform.updateTimers(timerUpdate);
     if (input != null) {
@@ -905,21 +921,48 @@ public class WatermarkManager {
    */
   synchronized void refreshAll() {
     applyPendingUpdates();
-    while (!pendingRefreshes.isEmpty()) {
-      refreshWatermarks(pendingRefreshes.poll());
+    // Consumers are always ordered after their producers, so refreshing in order ensures that
+    // each transform is refreshed at most once, after all of its inputs have been refreshed
+    AppliedPTransform<?, ?, ?> toRefresh = pendingRefreshes.pollFirst();
+    while (toRefresh != null) {
+      refreshWatermarks(toRefresh);
+      toRefresh = pendingRefreshes.pollFirst();
     }
   }
 
   private void refreshWatermarks(AppliedPTransform<?, ?, ?> toRefresh) {
     TransformWatermarks myWatermarks = transformToWatermarks.get(toRefresh);
     WatermarkUpdate updateResult = myWatermarks.refresh();
-    Set<AppliedPTransform<?, ?, ?>> additionalRefreshes = new HashSet<>();
+    performedRefreshes.incrementAndGet();
     if (updateResult.isAdvanced()) {
       for (PValue outputPValue : toRefresh.getOutput().expand()) {
-        additionalRefreshes.addAll(consumers.get(outputPValue));
+        for (AppliedPTransform<?, ?, ?> consumer : consumers.get(outputPValue)) {
+          markForRefresh(consumer);
+        }
       }
     }
-    pendingRefreshes.addAll(additionalRefreshes);
+  }
+
+  private void markForRefresh(AppliedPTransform<?, ?, ?> transform) {
+    if (!pendingRefreshes.add(transform)) {
+      skippedRefreshes.incrementAndGet();
+    }
+  }
+
+  /**
+   * Returns the number of times the watermarks of a single {@link AppliedPTransform} have been
+   * refreshed by this {@link WatermarkManager}.
+   */
+  long getPerformedRefreshCount() {
+    return performedRefreshes.get();
+  }
+
+  /**
+   * Returns the number of refreshes of a single {@link AppliedPTransform} that were not performed
+   * because a refresh of that {@link AppliedPTransform} was already pending.
+   */
+  long getSkippedRefreshCount() {
+    return skippedRefreshes.get();
   }
 
   /**
@@ -1121,19 +1164,15 @@ public class WatermarkManager {
     }
 
     private void removePending(CommittedBundle<?> bundle) {
-      inputWatermark.removePendingElements(elementsFromBundle(bundle));
+      inputWatermark.removePending(bundle);
       synchronizedProcessingInputWatermark.removePending(bundle);
     }
 
     private void addPending(CommittedBundle<?> bundle) {
-      inputWatermark.addPendingElements(elementsFromBundle(bundle));
+      inputWatermark.addPending(bundle);
       synchronizedProcessingInputWatermark.addPending(bundle);
     }
 
-    private Iterable<? extends WindowedValue<?>> elementsFromBundle(CommittedBundle<?> bundle) {
-      return FluentIterable.from(bundle.getElements()).transformAndConcat(EXPLODE_WINDOWS_FN);
-    }
-
     private Map<StructuralKey<?>, FiredTimers> extractFiredTimers() {
       Map<StructuralKey<?>, List<TimerData>> eventTimeTimers =
           inputWatermark.extractFiredEventTimeTimers();
@@ -1373,15 +1412,6 @@ public class WatermarkManager {
     }
   }
 
-  private static class WindowedValueByTimestampComparator extends Ordering<WindowedValue<?>> {
-    @Override
-    public int compare(WindowedValue<?> o1, WindowedValue<?> o2) {
-      return ComparisonChain.start()
-          .compare(o1.getTimestamp(), o2.getTimestamp())
-          .result();
-    }
-  }
-
   public Set<AppliedPTransform<?, ?, ?>> getCompletedTransforms() {
     Set<AppliedPTransform<?, ?, ?>> result = new HashSet<>();
     for (Map.Entry<AppliedPTransform<?, ?, ?>, TransformWatermarks> wms :
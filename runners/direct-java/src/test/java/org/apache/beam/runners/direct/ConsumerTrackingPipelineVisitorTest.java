@@ -18,6 +18,7 @@
 package org.apache.beam.runners.direct;
 
 import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
 
 import org.apache.beam.sdk.io.CountingInput;
@@ -29,6 +30,8 @@ import org.apache.beam.sdk.transforms.OldDoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
 import org.apache.beam.sdk.values.PCollectionView;
@@ -37,6 +40,7 @@ import org.apache.beam.sdk.values.PInput;
 import org.apache.beam.sdk.values.PValue;
 
 import org.hamcrest.Matchers;
+import org.joda.time.Duration;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -45,6 +49,7 @@ import org.junit.runners.JUnit4;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for {@link ConsumerTrackingPipelineVisitor}.
@@ -213,6 +218,35 @@ public class ConsumerTrackingPipelineVisitorTest implements Serializable {
             finished.getProducingTransformInternal(), "s2"));
   }
 
+  @Test
+  public void getFusedConsumersContainsSingleConsumerElementwiseEdges() {
+    PCollection<String> created = p.apply(Create.of("1", "2", "3"));
+    PCollectionView<List<String>> view = created.apply(View.<String>asList());
+    PCollection<String> first = created.apply("first", ParDo.of(new IdentityFn()));
+    PCollection<String> second = first.apply("second", ParDo.of(new IdentityFn()));
+    PCollection<String> windowed =
+        second.apply(Window.<String>into(FixedWindows.of(Duration.standardMinutes(1L))));
+    PCollection<String> sideInput =
+        windowed.apply("sideInput", ParDo.withSideInputs(view).of(new IdentityFn()));
+    sideInput.apply("left", ParDo.of(new IdentityFn()));
+    sideInput.apply("right", ParDo.of(new IdentityFn()));
+
+    p.traverseTopologically(visitor);
+    Map<PValue, AppliedPTransform<?, ?, ?>> fusedConsumers = visitor.getFusedConsumers();
+    assertThat(
+        fusedConsumers,
+        Matchers.<PValue, AppliedPTransform<?, ?, ?>>hasEntry(
+            first, second.getProducingTransformInternal()));
+    assertThat(
+        fusedConsumers,
+        Matchers.<PValue, AppliedPTransform<?, ?, ?>>hasEntry(
+            second, windowed.getProducingTransformInternal()));
+    // Consumed by a ParDo with side inputs
+    assertThat(fusedConsumers, not(Matchers.<PValue>hasKey(windowed)));
+    // Consumed by multiple PTransforms
+    assertThat(fusedConsumers, not(Matchers.<PValue>hasKey(sideInput)));
+  }
+
   @Test
   public void traverseMultipleTimesThrows() {
     p.apply(Create.of(1, 2, 3));
@@ -262,6 +296,14 @@ public class ConsumerTrackingPipelineVisitorTest implements Serializable {
     visitor.getValueToConsumers();
   }
 
+  @Test
+  public void getFusedConsumersWithoutVisitingThrows() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("completely traversed");
+    thrown.expectMessage("getFusedConsumers");
+    visitor.getFusedConsumers();
+  }
+
   @Test
   public void getViewsWithoutVisitingThrows() {
     thrown.expect(IllegalStateException.class);
@@ -269,4 +311,11 @@ public class ConsumerTrackingPipelineVisitorTest implements Serializable {
     thrown.expectMessage("getViews");
     visitor.getViews();
   }
+
+  private static class IdentityFn extends OldDoFn<String, String> {
+    @Override
+    public void processElement(OldDoFn<String, String>.ProcessContext c) throws Exception {
+      c.output(c.element());
+    }
+  }
 }
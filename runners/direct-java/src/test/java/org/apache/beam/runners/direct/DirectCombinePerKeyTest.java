@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisplayItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.runners.direct.DirectCombinePerKey.DirectCombineAlsoByWindow;
+import org.apache.beam.runners.direct.DirectCombinePerKey.DirectPartialCombine;
+import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.Pipeline.PipelineVisitor;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.runners.TransformTreeNode;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Combine.KeyedCombineFn;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.display.DisplayData;
+import org.apache.beam.sdk.transforms.windowing.AfterPane;
+import org.apache.beam.sdk.transforms.windowing.Repeatedly;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for {@link DirectCombinePerKey}.
+ */
+@RunWith(JUnit4.class)
+public class DirectCombinePerKeyTest implements Serializable {
+  private Pipeline getPipeline() {
+    PipelineOptions opts = PipelineOptionsFactory.create();
+    opts.setRunner(DirectRunner.class);
+
+    Pipeline p = Pipeline.create(opts);
+    return p;
+  }
+
+  private PCollection<KV<String, Integer>> createSessions(Pipeline p) {
+    return p
+        .apply(
+            Create.timestamped(
+                TimestampedValue.of(KV.of("foo", 1), new Instant(0L)),
+                TimestampedValue.of(KV.of("foo", 2), new Instant(5L)),
+                TimestampedValue.of(KV.of("foo", 4), new Instant(30L)),
+                TimestampedValue.of(KV.of("bar", 8), new Instant(12L)),
+                TimestampedValue.of(KV.of("bar", 16), new Instant(4L)),
+                TimestampedValue.of(KV.of("bar", 32), new Instant(20L))))
+        .apply(Window.<KV<String, Integer>>into(Sessions.withGapDuration(Duration.millis(10L))));
+  }
+
+  @Test
+  public void sessionsSumShouldMergeAccumulators() throws Throwable {
+    Pipeline p = getPipeline();
+
+    PCollection<KV<String, Integer>> sums =
+        createSessions(p).apply(Sum.<String>integersPerKey());
+
+    // foo has the sessions [0, 15) and [30, 40), and all of the values of bar merge into [4, 30).
+    PAssert.that(sums).containsInAnyOrder(KV.of("foo", 3), KV.of("foo", 4), KV.of("bar", 56));
+
+    DirectPipelineResult result = ((DirectPipelineResult) p.run());
+    result.awaitCompletion();
+
+    Set<Class<?>> primitives = primitiveTransforms(p);
+    assertThat(primitives.contains(DirectPartialCombine.class), is(true));
+    assertThat(primitives.contains(DirectCombineAlsoByWindow.class), is(true));
+  }
+
+  @Test
+  public void keyedCombineFnShouldReceiveKeys() throws Throwable {
+    Pipeline p = getPipeline();
+
+    PCollection<KV<String, String>> sums =
+        createSessions(p).apply(Combine.<String, Integer, String>perKey(new KeyedSumFn()));
+
+    PAssert.that(sums)
+        .containsInAnyOrder(KV.of("foo", "foo:3"), KV.of("foo", "foo:4"), KV.of("bar", "bar:56"));
+
+    DirectPipelineResult result = ((DirectPipelineResult) p.run());
+    result.awaitCompletion();
+
+    assertThat(primitiveTransforms(p).contains(DirectCombineAlsoByWindow.class), is(true));
+  }
+
+  @Test
+  public void liftedPrimitivesShouldHaveCombineFnDisplayData() {
+    Pipeline p = getPipeline();
+    createSessions(p).apply(Sum.<String>integersPerKey());
+
+    final Map<Class<?>, DisplayData> displayData = new HashMap<>();
+    p.traverseTopologically(
+        new PipelineVisitor.Defaults() {
+          @Override
+          public void visitPrimitiveTransform(TransformTreeNode node) {
+            PTransform<?, ?> transform = node.getTransform();
+            displayData.put(transform.getClass(), DisplayData.from(transform));
+          }
+        });
+    assertThat(
+        displayData.get(DirectPartialCombine.class),
+        hasDisplayItem("combineFn", Sum.SumIntegerFn.class));
+    assertThat(
+        displayData.get(DirectCombineAlsoByWindow.class),
+        hasDisplayItem("combineFn", Sum.SumIntegerFn.class));
+  }
+
+  @Test
+  public void elementCountTriggerShouldNotBeLifted() {
+    Pipeline p = getPipeline();
+
+    createSessions(p)
+        .apply(
+            Window.<KV<String, Integer>>triggering(
+                    Repeatedly.forever(AfterPane.elementCountAtLeast(3)))
+                .discardingFiredPanes()
+                .withAllowedLateness(Duration.ZERO))
+        .apply(Sum.<String>integersPerKey());
+
+    Set<Class<?>> primitives = primitiveTransforms(p);
+    assertThat(primitives.contains(DirectPartialCombine.class), is(false));
+    assertThat(primitives.contains(DirectCombineAlsoByWindow.class), is(false));
+  }
+
+  private static class KeyedSumFn extends KeyedCombineFn<String, Integer, Integer, String> {
+    @Override
+    public Integer createAccumulator(String key) {
+      return 0;
+    }
+
+    @Override
+    public Integer addInput(String key, Integer accumulator, Integer value) {
+      return accumulator + value;
+    }
+
+    @Override
+    public Integer mergeAccumulators(String key, Iterable<Integer> accumulators) {
+      int sum = 0;
+      for (Integer accumulator : accumulators) {
+        sum += accumulator;
+      }
+      return sum;
+    }
+
+    @Override
+    public String extractOutput(String key, Integer accumulator) {
+      return key + ":" + accumulator;
+    }
+  }
+
+  private Set<Class<?>> primitiveTransforms(Pipeline p) {
+    final Set<Class<?>> primitives = new HashSet<>();
+    p.traverseTopologically(
+        new PipelineVisitor.Defaults() {
+          @Override
+          public void visitPrimitiveTransform(TransformTreeNode node) {
+            PTransform<?, ?> transform = node.getTransform();
+            primitives.add(transform.getClass());
+          }
+        });
+    return primitives;
+  }
+}
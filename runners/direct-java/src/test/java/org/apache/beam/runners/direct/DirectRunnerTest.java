@@ -19,11 +19,14 @@ package org.apache.beam.runners.direct;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isA;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.Pipeline.PipelineExecutionException;
+import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.ListCoder;
 import org.apache.beam.sdk.coders.VarIntCoder;
@@ -56,6 +59,8 @@ import org.junit.internal.matchers.ThrowableMessageMatcher;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
@@ -112,6 +117,47 @@ public class DirectRunnerTest implements Serializable {
     result.awaitCompletion();
   }
 
+  @Test
+  public void wordCountWithFusedStagesShouldSucceed() throws Throwable {
+    Pipeline p = getPipeline();
+    p.getOptions().as(DirectOptions.class).setFuseStages(true);
+
+    PCollection<String> words =
+        p.apply(Create.of("foo", "bar", "foo", "baz", "bar", "foo"))
+            .apply(MapElements.via(new SimpleFunction<String, String>() {
+              @Override
+              public String apply(String input) {
+                return input.toUpperCase();
+              }
+            }))
+            .apply(MapElements.via(new SimpleFunction<String, String>() {
+              @Override
+              public String apply(String input) {
+                return input.toLowerCase();
+              }
+            }));
+    PCollection<String> countStrs =
+        words
+            .apply(Count.<String>perElement())
+            .apply(MapElements.via(new SimpleFunction<KV<String, Long>, String>() {
+              @Override
+              public String apply(KV<String, Long> input) {
+                return String.format("%s: %s", input.getKey(), input.getValue());
+              }
+            }))
+            .apply(MapElements.via(new SimpleFunction<String, String>() {
+              @Override
+              public String apply(String input) {
+                return input;
+              }
+            }));
+
+    PAssert.that(countStrs).containsInAnyOrder("baz: 1", "bar: 2", "foo: 3");
+
+    DirectPipelineResult result = ((DirectPipelineResult) p.run());
+    result.awaitCompletion();
+  }
+
   private static AtomicInteger changed;
   @Test
   public void reusePipelineSucceeds() throws Throwable {
@@ -378,4 +424,62 @@ public class DirectRunnerTest implements Serializable {
     thrown.expectMessage("must not be mutated");
     pipeline.run();
   }
+
+  /**
+   * Tests that an element input to a {@link OldDoFn} that cannot be encoded with the coder
+   * of its {@link PCollection} fails in the {@link DirectRunner}.
+   */
+  @Test
+  public void testUnencodableInputDoFnError() throws Exception {
+    Pipeline pipeline = getPipeline();
+    // Checking the immutability of the output would also encode it
+    pipeline.getOptions().as(DirectOptions.class).setTestImmutability(false);
+    applyUnencodableInput(pipeline);
+
+    thrown.expect(PipelineExecutionException.class);
+    thrown.expectCause(isA(CoderException.class));
+    thrown.expectMessage("Encode not allowed");
+    pipeline.run();
+  }
+
+  @Test
+  public void testUnencodableInputWithoutEncodabilityTestSucceeds() throws Exception {
+    Pipeline pipeline = getPipeline();
+    DirectOptions options = pipeline.getOptions().as(DirectOptions.class);
+    options.setTestImmutability(false);
+    options.setTestEncodability(false);
+    applyUnencodableInput(pipeline);
+
+    pipeline.run();
+  }
+
+  private void applyUnencodableInput(Pipeline pipeline) {
+    pipeline
+        .apply(Create.of(1, 2, 3))
+        .apply(MapElements.via(new SimpleFunction<Integer, Integer>() {
+          @Override
+          public Integer apply(Integer input) {
+            return input;
+          }
+        }))
+        .setCoder(new IntegerNoEncodeCoder())
+        .apply(ParDo.of(new OldDoFn<Integer, Integer>() {
+          @Override public void processElement(ProcessContext c) {
+            c.output(c.element());
+          }
+        }));
+  }
+
+  private static class IntegerNoEncodeCoder extends AtomicCoder<Integer> {
+    @Override
+    public void encode(Integer value, OutputStream outStream, Context context)
+        throws CoderException {
+      throw new CoderException("Encode not allowed");
+    }
+
+    @Override
+    public Integer decode(InputStream inStream, Context context) throws CoderException {
+      throw new CoderException("Decode not allowed");
+    }
+  }
 }
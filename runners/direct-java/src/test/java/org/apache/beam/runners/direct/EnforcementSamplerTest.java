@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.runners.direct.EnforcementSampler.BundleSampler;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.Create;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link EnforcementSampler}.
+ */
+@RunWith(JUnit4.class)
+public class EnforcementSamplerTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+  private AppliedPTransform<?, ?, ?> step;
+
+  @Before
+  public void setup() {
+    TestPipeline p = TestPipeline.create();
+    step = p.apply(Create.of(1, 2, 3)).getProducingTransformInternal();
+  }
+
+  @Test
+  public void allSamplesEveryElement() {
+    EnforcementSampler sampler = EnforcementSampler.all();
+    BundleSampler bundleSampler = sampler.forInputBundle(step);
+    for (int i = 0; i < 10; i++) {
+      assertThat(bundleSampler.sample(), is(true));
+    }
+    bundleSampler.finish();
+
+    assertThat(sampler.getCheckedInputElementCounts(), hasEntry(step.getFullName(), 10L));
+  }
+
+  @Test
+  public void sampleRateSamplesOneInNOnAverage() {
+    EnforcementSampler sampler = EnforcementSampler.create(4, 0);
+    BundleSampler bundleSampler = sampler.forInputBundle(step);
+    long sampled = 0L;
+    for (int i = 0; i < 100000; i++) {
+      if (bundleSampler.sample()) {
+        sampled++;
+      }
+    }
+    bundleSampler.finish();
+
+    // The expected count is 25000, with a standard deviation of about 137
+    assertThat(sampled, allOf(greaterThan(23000L), lessThan(27000L)));
+    assertThat(sampler.getCheckedInputElementCounts(), hasEntry(step.getFullName(), sampled));
+  }
+
+  @Test
+  public void sampleRateSamplesEveryPositionAcrossBundles() {
+    EnforcementSampler sampler = EnforcementSampler.create(4, 0);
+    boolean[] sampledPositions = new boolean[4];
+    // A position is never sampled in 200 bundles with probability (3/4)^200, less than 1e-24
+    for (int bundle = 0; bundle < 200; bundle++) {
+      BundleSampler bundleSampler = sampler.forInputBundle(step);
+      for (int i = 0; i < sampledPositions.length; i++) {
+        sampledPositions[i] |= bundleSampler.sample();
+      }
+      bundleSampler.finish();
+    }
+
+    for (boolean sampledPosition : sampledPositions) {
+      assertThat(sampledPosition, is(true));
+    }
+  }
+
+  @Test
+  public void maxElementsPerBundleLimitsEachBundle() {
+    EnforcementSampler sampler = EnforcementSampler.create(1, 2);
+    BundleSampler first = sampler.forInputBundle(step);
+    assertThat(first.sample(), is(true));
+    assertThat(first.sample(), is(true));
+    assertThat(first.sample(), is(false));
+    first.finish();
+
+    BundleSampler second = sampler.forInputBundle(step);
+    assertThat(second.sample(), is(true));
+    second.finish();
+    second.finish();
+
+    assertThat(sampler.getCheckedInputElementCounts(), hasEntry(step.getFullName(), 3L));
+  }
+
+  @Test
+  public void inputAndOutputCountsAreSeparate() {
+    EnforcementSampler sampler = EnforcementSampler.all();
+    BundleSampler input = sampler.forInputBundle(step);
+    input.sample();
+    input.finish();
+    BundleSampler output = sampler.forOutputBundle(step);
+    output.sample();
+    output.sample();
+    output.finish();
+
+    assertThat(sampler.getCheckedInputElementCounts(), hasEntry(step.getFullName(), 1L));
+    assertThat(sampler.getCheckedOutputElementCounts(), hasEntry(step.getFullName(), 2L));
+  }
+
+  @Test
+  public void nonPositiveSampleRateThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("sample rate");
+    EnforcementSampler.create(0, 0);
+  }
+
+  @Test
+  public void negativeMaxElementsThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("nonnegative");
+    EnforcementSampler.create(1, -1);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.runners.direct.ExecutorServiceParallelExecutor.MonitorSignal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for {@link ExecutorServiceParallelExecutor}.
+ */
+@RunWith(JUnit4.class)
+public class ExecutorServiceParallelExecutorTest {
+  @Test
+  public void monitorSignalBeforeAwaitIsNotLost() throws Exception {
+    MonitorSignal signal = new MonitorSignal();
+    signal.signal();
+
+    // Would wait forever if the signal had been lost
+    signal.await(0L);
+  }
+
+  @Test
+  public void monitorSignalWakesWaitingMonitor() throws Exception {
+    final MonitorSignal signal = new MonitorSignal();
+    final CountDownLatch woken = new CountDownLatch(1);
+    Thread monitor =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              signal.await(0L);
+              woken.countDown();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+    monitor.start();
+
+    while (monitor.getState() != Thread.State.WAITING) {
+      Thread.yield();
+    }
+    assertThat(woken.getCount(), is(1L));
+
+    signal.signal();
+    woken.await();
+    monitor.join();
+  }
+
+  @Test
+  public void monitorSignalIsClearedByAwait() throws Exception {
+    final MonitorSignal signal = new MonitorSignal();
+    signal.signal();
+    signal.await(0L);
+
+    final CountDownLatch woken = new CountDownLatch(1);
+    Thread monitor =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              signal.await(0L);
+              woken.countDown();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+    monitor.start();
+
+    // The earlier signal was consumed, so the monitor waits for another
+    while (monitor.getState() != Thread.State.WAITING) {
+      Thread.yield();
+    }
+    assertThat(woken.getCount(), is(1L));
+
+    signal.signal();
+    woken.await();
+    monitor.join();
+  }
+
+  @Test
+  public void monitorSignalAwaitWithMaxWaitReturnsWithoutSignal() throws Exception {
+    MonitorSignal signal = new MonitorSignal();
+
+    signal.await(1L);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ForkJoinPoolExecutorServiceFactory}.
+ */
+@RunWith(JUnit4.class)
+public class ForkJoinPoolExecutorServiceFactoryTest {
+  @Test
+  public void defaultExecutorServiceFactory() {
+    DirectOptions options = PipelineOptionsFactory.as(DirectOptions.class);
+    assertThat(
+        options.getExecutorServiceFactory(), instanceOf(ForkJoinPoolExecutorServiceFactory.class));
+  }
+
+  @Test
+  public void workersAreNotDaemonThreads() throws Exception {
+    ExecutorService executorService = new ForkJoinPoolExecutorServiceFactory().create();
+    try {
+      assertThat(executorService, instanceOf(ForkJoinPool.class));
+      boolean isDaemon = executorService.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return Thread.currentThread().isDaemon();
+        }
+      }).get();
+      // Daemon workers would let the JVM exit while a pipeline run without blocking is running.
+      assertThat(isDaemon, is(false));
+    } finally {
+      executorService.shutdown();
+      executorService.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.OldDoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.PCollection;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.hamcrest.Matchers;
+import org.joda.time.Instant;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link FusedStageEvaluatorFactory}.
+ */
+@RunWith(JUnit4.class)
+public class FusedStageEvaluatorFactoryTest implements Serializable {
+  private transient PCollection<String> created;
+  private transient PCollection<Integer> lengths;
+  private transient PCollection<Integer> doubled;
+  private transient FusedStageEvaluatorFactory factory;
+  private transient BundleFactory bundleFactory;
+  private transient EvaluationContext context;
+
+  @Before
+  public void setup() {
+    TestPipeline p = TestPipeline.create();
+    created = p.apply(Create.of("foo", "bara"));
+    lengths =
+        created.apply(
+            "lengths",
+            ParDo.of(
+                new OldDoFn<String, Integer>() {
+                  @Override
+                  public void processElement(ProcessContext c) {
+                    c.output(c.element().length());
+                  }
+                }));
+    doubled =
+        lengths.apply(
+            "doubled",
+            ParDo.of(
+                new OldDoFn<Integer, Integer>() {
+                  @Override
+                  public void processElement(ProcessContext c) {
+                    c.output(c.element() * 2);
+                  }
+                }));
+
+    ConsumerTrackingPipelineVisitor visitor = new ConsumerTrackingPipelineVisitor();
+    p.traverseTopologically(visitor);
+
+    factory =
+        FusedStageEvaluatorFactory.create(
+            TransformEvaluatorRegistry.defaultRegistry(),
+            visitor.getFusedConsumers(),
+            ImmutableMap.<Class<? extends PTransform>, Collection<ModelEnforcementFactory>>of());
+    bundleFactory = factory.fusingBundleFactory(ImmutableListBundleFactory.create());
+    context =
+        EvaluationContext.create(
+            DirectRunner.fromOptions(PipelineOptionsFactory.create()).getPipelineOptions(),
+            bundleFactory,
+            visitor.getRootTransforms(),
+            visitor.getValueToConsumers(),
+            visitor.getStepNames(),
+            visitor.getViews());
+  }
+
+  @Test
+  public void fusedStageOutputsFromLastMember() throws Exception {
+    CommittedBundle<String> inputBundle =
+        bundleFactory.createRootBundle(created).commit(Instant.now());
+    AppliedPTransform<?, ?, ?> head = lengths.getProducingTransformInternal();
+
+    TransformEvaluator<String> evaluator = factory.forApplication(head, inputBundle, context);
+    evaluator.processElement(WindowedValue.valueInGlobalWindow("foo"));
+    evaluator.processElement(WindowedValue.timestampedValueInGlobalWindow("bara", new Instant(8)));
+    TransformResult result = evaluator.finishBundle();
+
+    assertThat(result.getTransform(), Matchers.<AppliedPTransform<?, ?, ?>>equalTo(head));
+    assertThat(result.getWatermarkHold(), equalTo(BoundedWindow.TIMESTAMP_MAX_VALUE));
+    assertThat(result.getAggregatorChanges(), not(nullValue()));
+
+    Map<PCollection<?>, CommittedBundle<?>> outputs = new HashMap<>();
+    for (UncommittedBundle<?> outputBundle : result.getOutputBundles()) {
+      outputs.put(outputBundle.getPCollection(), outputBundle.commit(Instant.now()));
+    }
+    assertThat(outputs.get(lengths).getElements(), emptyIterable());
+    assertThat(
+        outputs.get(doubled).getElements(),
+        Matchers.<WindowedValue<?>>containsInAnyOrder(
+            WindowedValue.valueInGlobalWindow(6),
+            WindowedValue.timestampedValueInGlobalWindow(8, new Instant(8))));
+  }
+
+  @Test
+  public void unfusedTransformUsesUnderlyingEvaluator() throws Exception {
+    CommittedBundle<Integer> inputBundle =
+        bundleFactory.createRootBundle(lengths).commit(Instant.now());
+    AppliedPTransform<?, ?, ?> tail = doubled.getProducingTransformInternal();
+
+    TransformEvaluator<Integer> evaluator = factory.forApplication(tail, inputBundle, context);
+    evaluator.processElement(WindowedValue.valueInGlobalWindow(2));
+    TransformResult result = evaluator.finishBundle();
+
+    assertThat(result.getTransform(), Matchers.<AppliedPTransform<?, ?, ?>>equalTo(tail));
+    UncommittedBundle<?> outputBundle = result.getOutputBundles().iterator().next();
+    assertThat(
+        outputBundle.commit(Instant.now()).getElements(),
+        Matchers.<WindowedValue<?>>contains(WindowedValue.valueInGlobalWindow(4)));
+  }
+}
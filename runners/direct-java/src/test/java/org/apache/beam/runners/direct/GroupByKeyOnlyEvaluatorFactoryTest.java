@@ -28,6 +28,7 @@ import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.util.KeyedWorkItem;
@@ -74,6 +75,8 @@ public class GroupByKeyOnlyEvaluatorFactoryTest {
     CommittedBundle<KV<String, WindowedValue<Integer>>> inputBundle =
         bundleFactory.createRootBundle(kvs).commit(Instant.now());
     EvaluationContext evaluationContext = mock(EvaluationContext.class);
+    when(evaluationContext.getPipelineOptions())
+        .thenReturn(PipelineOptionsFactory.as(DirectOptions.class));
 
     StructuralKey<String> fooKey = StructuralKey.of("foo", StringUtf8Coder.of());
     UncommittedBundle<KeyedWorkItem<String, Integer>> fooBundle = bundleFactory.createKeyedBundle(
@@ -147,6 +150,63 @@ public class GroupByKeyOnlyEvaluatorFactoryTest {
                 keyCoder)));
   }
 
+  @Test
+  public void testSpillingEvaluator() throws Exception {
+    TestPipeline p = TestPipeline.create();
+    PCollection<KV<String, Integer>> values =
+        p.apply(Create.of(KV.of("foo", 1), KV.of("bar", 2)));
+    PCollection<KV<String, WindowedValue<Integer>>> kvs =
+        values.apply(new ReifyTimestampsAndWindows<String, Integer>());
+    PCollection<KeyedWorkItem<String, Integer>> groupedKvs =
+        kvs.apply(new DirectGroupByKeyOnly<String, Integer>());
+
+    CommittedBundle<KV<String, WindowedValue<Integer>>> inputBundle =
+        bundleFactory.createRootBundle(kvs).commit(Instant.now());
+    EvaluationContext evaluationContext = mock(EvaluationContext.class);
+    DirectOptions options = PipelineOptionsFactory.as(DirectOptions.class);
+    // Spill every element to its own sorted run
+    options.setGroupByKeyBufferBytes(1L);
+    when(evaluationContext.getPipelineOptions()).thenReturn(options);
+
+    StructuralKey<String> fooKey = StructuralKey.of("foo", StringUtf8Coder.of());
+    UncommittedBundle<KeyedWorkItem<String, Integer>> fooBundle =
+        bundleFactory.createKeyedBundle(null, fooKey, groupedKvs);
+    StructuralKey<String> barKey = StructuralKey.of("bar", StringUtf8Coder.of());
+    UncommittedBundle<KeyedWorkItem<String, Integer>> barBundle =
+        bundleFactory.createKeyedBundle(null, barKey, groupedKvs);
+    when(evaluationContext.createKeyedBundle(inputBundle, fooKey, groupedKvs))
+        .thenReturn(fooBundle);
+    when(evaluationContext.createKeyedBundle(inputBundle, barKey, groupedKvs))
+        .thenReturn(barBundle);
+
+    TransformEvaluator<KV<String, WindowedValue<Integer>>> evaluator =
+        new GroupByKeyOnlyEvaluatorFactory()
+            .forApplication(
+                groupedKvs.getProducingTransformInternal(), inputBundle, evaluationContext);
+    evaluator.processElement(WindowedValue.valueInEmptyWindows(gwValue(KV.of("foo", 1))));
+    evaluator.processElement(WindowedValue.valueInEmptyWindows(gwValue(KV.of("bar", 2))));
+    evaluator.processElement(WindowedValue.valueInEmptyWindows(gwValue(KV.of("foo", 3))));
+    evaluator.finishBundle();
+
+    assertThat(
+        fooBundle.commit(Instant.now()).getElements(),
+        contains(
+            new KeyedWorkItemMatcher<String, Integer>(
+                KeyedWorkItems.elementsWorkItem(
+                    "foo",
+                    ImmutableSet.of(
+                        WindowedValue.valueInGlobalWindow(1),
+                        WindowedValue.valueInGlobalWindow(3))),
+                StringUtf8Coder.of())));
+    assertThat(
+        barBundle.commit(Instant.now()).getElements(),
+        contains(
+            new KeyedWorkItemMatcher<String, Integer>(
+                KeyedWorkItems.elementsWorkItem(
+                    "bar", ImmutableSet.of(WindowedValue.valueInGlobalWindow(2))),
+                StringUtf8Coder.of())));
+  }
+
   private <K, V> KV<K, WindowedValue<V>> gwValue(KV<K, V> kv) {
     return KV.of(kv.getKey(), WindowedValue.valueInGlobalWindow(kv.getValue()));
   }
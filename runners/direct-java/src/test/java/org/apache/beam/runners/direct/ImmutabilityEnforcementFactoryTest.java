@@ -17,6 +17,8 @@
  */
 package org.apache.beam.runners.direct;
 
+import static org.junit.Assert.assertThat;
+
 import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.AppliedPTransform;
@@ -28,6 +30,8 @@ import org.apache.beam.sdk.util.IllegalMutationException;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.PCollection;
 
+import org.hamcrest.Matchers;
+
 import org.joda.time.Instant;
 import org.junit.Before;
 import org.junit.Rule;
@@ -45,14 +49,14 @@ import java.util.Collections;
 @RunWith(JUnit4.class)
 public class ImmutabilityEnforcementFactoryTest implements Serializable {
   @Rule public transient ExpectedException thrown = ExpectedException.none();
-  private transient ImmutabilityEnforcementFactory factory;
+  private transient ModelEnforcementFactory factory;
   private transient BundleFactory bundleFactory;
   private transient PCollection<byte[]> pcollection;
   private transient AppliedPTransform<?, ?, ?> consumer;
 
   @Before
   public void setup() {
-    factory = new ImmutabilityEnforcementFactory();
+    factory = ImmutabilityEnforcementFactory.create();
     bundleFactory = ImmutableListBundleFactory.create();
     TestPipeline p = TestPipeline.create();
     pcollection =
@@ -125,4 +129,33 @@ public class ImmutabilityEnforcementFactoryTest implements Serializable {
         StepTransformResult.withoutHold(consumer).build(),
         Collections.<CommittedBundle<?>>emptyList());
   }
+
+  @Test
+  public void mutatedUnsampledElementSucceeds() {
+    // Only the first element of each bundle is checked
+    EnforcementSampler sampler = EnforcementSampler.create(1, 1);
+    ModelEnforcementFactory sampledFactory = ImmutabilityEnforcementFactory.create(sampler);
+    WindowedValue<byte[]> first = WindowedValue.valueInGlobalWindow("bar".getBytes());
+    WindowedValue<byte[]> second = WindowedValue.valueInGlobalWindow("baz".getBytes());
+    CommittedBundle<byte[]> elements =
+        bundleFactory
+            .createRootBundle(pcollection)
+            .add(first)
+            .add(second)
+            .commit(Instant.now());
+
+    ModelEnforcement<byte[]> enforcement = sampledFactory.forBundle(elements, consumer);
+    enforcement.beforeElement(first);
+    enforcement.afterElement(first);
+    enforcement.beforeElement(second);
+    second.getValue()[0] = 'f';
+    enforcement.afterElement(second);
+    enforcement.afterFinish(
+        elements,
+        StepTransformResult.withoutHold(consumer).build(),
+        Collections.<CommittedBundle<?>>emptyList());
+
+    assertThat(
+        sampler.getCheckedInputElementCounts(), Matchers.hasEntry(consumer.getFullName(), 1L));
+  }
 }
@@ -31,6 +31,7 @@ import org.apache.beam.sdk.coders.VoidCoder;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.WithKeys;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.util.WindowedValue;
@@ -139,6 +140,22 @@ public class ImmutableListBundleFactoryTest {
     afterCommitGetElementsShouldHaveAddedElements(ImmutableList.of(firstValue, secondValue));
   }
 
+  @Test
+  public void getMinTimestampReturnsMinimumElementTimestamp() {
+    UncommittedBundle<Integer> bundle = bundleFactory.createRootBundle(created);
+    bundle.add(WindowedValue.timestampedValueInGlobalWindow(1, new Instant(1000L)));
+    bundle.add(WindowedValue.timestampedValueInGlobalWindow(2, new Instant(-2000L)));
+    bundle.add(WindowedValue.timestampedValueInGlobalWindow(3, new Instant(500L)));
+    // Elements in no windows do not contribute to the minimum timestamp
+    bundle.add(WindowedValue.valueInEmptyWindows(4));
+    CommittedBundle<Integer> committed = bundle.commit(Instant.now());
+
+    assertThat(committed.getMinTimestamp(), equalTo(new Instant(-2000L)));
+    assertThat(
+        committed.withElements(Collections.<WindowedValue<Integer>>emptyList()).getMinTimestamp(),
+        equalTo(BoundedWindow.TIMESTAMP_MAX_VALUE));
+  }
+
   @SuppressWarnings("unchecked")
   @Test
   public void withElementsShouldReturnIndependentBundle() {
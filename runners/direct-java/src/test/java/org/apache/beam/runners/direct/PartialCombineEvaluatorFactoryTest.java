@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import org.apache.beam.runners.direct.DirectCombinePerKey.DirectPartialCombine;
+import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.runners.direct.WatermarkManager.TransformWatermarks;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.AppliedPTransform;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link PartialCombineEvaluatorFactory}.
+ */
+@RunWith(JUnit4.class)
+public class PartialCombineEvaluatorFactoryTest {
+  private BundleFactory bundleFactory = ImmutableListBundleFactory.create();
+
+  @Mock private EvaluationContext evaluationContext;
+  @Mock private TransformWatermarks watermarks;
+
+  private PCollection<KV<String, Integer>> input;
+  private PCollection<KV<String, int[]>> partials;
+  private AppliedPTransform<
+          PCollection<KV<String, Integer>>,
+          PCollection<KV<String, int[]>>,
+          DirectPartialCombine<String, Integer, int[]>>
+      application;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    TestPipeline p = TestPipeline.create();
+    input =
+        p.apply(Create.of(KV.of("foo", 1)))
+            .apply(
+                Window.<KV<String, Integer>>into(Sessions.withGapDuration(Duration.millis(10L))));
+    DirectPartialCombine<String, Integer, int[]> transform =
+        new DirectPartialCombine<>(
+            Sum.<String>integersPerKey(), new Sum.SumIntegerFn().<String>asKeyedFn());
+    partials = input.apply(transform);
+    application = AppliedPTransform.of("PartialCombine", input, partials, transform);
+    when(evaluationContext.getWatermarks(application)).thenReturn(watermarks);
+  }
+
+  @Test
+  public void mergesSessionsWithinBundle() throws Exception {
+    when(watermarks.getInputWatermark()).thenReturn(BoundedWindow.TIMESTAMP_MIN_VALUE);
+
+    List<KV<IntervalWindow, KV<String, Integer>>> outputs =
+        evaluate(
+            ImmutableList.of(
+                element("foo", 1, 0L),
+                element("foo", 2, 5L),
+                element("foo", 4, 30L),
+                element("bar", 8, 12L)));
+
+    assertThat(
+        outputs,
+        containsInAnyOrder(
+            KV.of(window(0L, 15L), KV.of("foo", 3)),
+            KV.of(window(30L, 40L), KV.of("foo", 4)),
+            KV.of(window(12L, 22L), KV.of("bar", 8))));
+  }
+
+  @Test
+  public void dropsLateValuesBeforeMergingSessions() throws Exception {
+    when(watermarks.getInputWatermark()).thenReturn(new Instant(16L));
+
+    // [5, 15) has expired, so the first value must not be merged into the on-time [12, 22).
+    List<KV<IntervalWindow, KV<String, Integer>>> outputs =
+        evaluate(
+            ImmutableList.of(
+                element("foo", 1, 5L), element("foo", 2, 12L), element("bar", 8, 8L)));
+
+    assertThat(
+        outputs,
+        containsInAnyOrder(
+            KV.of(window(12L, 22L), KV.of("foo", 2)), KV.of(window(8L, 18L), KV.of("bar", 8))));
+  }
+
+  private List<KV<IntervalWindow, KV<String, Integer>>> evaluate(
+      List<WindowedValue<KV<String, Integer>>> elements) throws Exception {
+    CommittedBundle<KV<String, Integer>> inputBundle =
+        bundleFactory.createRootBundle(input).commit(Instant.now());
+    UncommittedBundle<KV<String, int[]>> outputBundle =
+        bundleFactory.createBundle(inputBundle, partials);
+    when(evaluationContext.createBundle(inputBundle, partials)).thenReturn(outputBundle);
+
+    TransformEvaluator<KV<String, Integer>> evaluator =
+        new PartialCombineEvaluatorFactory()
+            .forApplication(application, inputBundle, evaluationContext);
+    for (WindowedValue<KV<String, Integer>> element : elements) {
+      evaluator.processElement(element);
+    }
+    evaluator.finishBundle();
+
+    List<KV<IntervalWindow, KV<String, Integer>>> outputs = new ArrayList<>();
+    for (WindowedValue<KV<String, int[]>> partial :
+        outputBundle.commit(Instant.now()).getElements()) {
+      outputs.add(
+          KV.of(
+              (IntervalWindow) Iterables.getOnlyElement(partial.getWindows()),
+              KV.of(partial.getValue().getKey(), partial.getValue().getValue()[0])));
+    }
+    return outputs;
+  }
+
+  private static WindowedValue<KV<String, Integer>> element(
+      String key, int value, long timestamp) {
+    return WindowedValue.of(
+        KV.of(key, value),
+        new Instant(timestamp),
+        window(timestamp, timestamp + 10L),
+        PaneInfo.NO_FIRING);
+  }
+
+  private static IntervalWindow window(long start, long end) {
+    return new IntervalWindow(new Instant(start), new Instant(end));
+  }
+}
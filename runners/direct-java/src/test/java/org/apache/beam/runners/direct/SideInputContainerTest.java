@@ -21,6 +21,8 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doAnswer;
@@ -192,6 +194,40 @@ public class SideInputContainerTest {
     assertThat(overwrittenViewContents.size(), is(1));
   }
 
+  @Test
+  public void getMaterializesViewOncePerWrite() throws Exception {
+    WindowedValue<KV<String, Integer>> one =
+        WindowedValue.of(
+            KV.of("one", 1),
+            new Instant(1L),
+            SECOND_WINDOW,
+            PaneInfo.createPane(true, false, Timing.EARLY));
+    container.write(mapView, ImmutableList.<WindowedValue<?>>of(one));
+
+    ReadyCheckingSideInputReader firstReader =
+        container.createReaderForViews(ImmutableList.<PCollectionView<?>>of(mapView));
+    ReadyCheckingSideInputReader secondReader =
+        container.createReaderForViews(ImmutableList.<PCollectionView<?>>of(mapView));
+    Map<String, Integer> firstContents = firstReader.get(mapView, SECOND_WINDOW);
+    assertThat(firstReader.get(mapView, SECOND_WINDOW), sameInstance(firstContents));
+    assertThat(secondReader.get(mapView, SECOND_WINDOW), sameInstance(firstContents));
+
+    WindowedValue<KV<String, Integer>> two =
+        WindowedValue.of(
+            KV.of("two", 2),
+            new Instant(20L),
+            SECOND_WINDOW,
+            PaneInfo.createPane(false, false, Timing.EARLY, 1, -1));
+    container.write(mapView, ImmutableList.<WindowedValue<?>>of(two));
+
+    Map<String, Integer> updatedContents =
+        container
+            .createReaderForViews(ImmutableList.<PCollectionView<?>>of(mapView))
+            .get(mapView, SECOND_WINDOW);
+    assertThat(updatedContents, not(sameInstance(firstContents)));
+    assertThat(updatedContents, hasEntry("two", 2));
+  }
+
   /**
    * Demonstrates that calling get() on a window that currently has no data does not return until
    * there is data in the pane.
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.runners.direct.SpillableGroupingBuffer.KeyGroup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link SpillableGroupingBuffer}.
+ */
+@RunWith(JUnit4.class)
+public class SpillableGroupingBufferTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void inMemoryGroupsInKeyOrder() throws Exception {
+    SpillableGroupingBuffer buffer = SpillableGroupingBuffer.create(1024L * 1024L);
+    addAll(buffer);
+
+    assertThat(buffer.getSpilledRunCount(), equalTo(0));
+    assertGroups(buffer);
+  }
+
+  @Test
+  public void spilledGroupsInKeyOrder() throws Exception {
+    SpillableGroupingBuffer buffer = SpillableGroupingBuffer.create(150L);
+    addAll(buffer);
+
+    assertThat(buffer.getSpilledRunCount(), equalTo(2));
+    assertGroups(buffer);
+  }
+
+  @Test
+  public void unreadValuesAreSkipped() throws Exception {
+    SpillableGroupingBuffer buffer = SpillableGroupingBuffer.create(150L);
+    addAll(buffer);
+
+    KeyGroup bar = buffer.nextGroup();
+    assertThat(string(bar.nextValue()), equalTo("2"));
+    assertThat(string(buffer.nextGroup().getKey()), equalTo("baz"));
+    KeyGroup foo = buffer.nextGroup();
+    assertThat(string(foo.getKey()), equalTo("foo"));
+    assertThat(strings(foo), contains("1", "3", "6"));
+    assertThat(buffer.nextGroup(), nullValue());
+    buffer.close();
+  }
+
+  @Test
+  public void readPreviousGroupThrows() throws Exception {
+    SpillableGroupingBuffer buffer = SpillableGroupingBuffer.create(1024L);
+    addAll(buffer);
+    KeyGroup bar = buffer.nextGroup();
+    buffer.nextGroup();
+
+    thrown.expect(IllegalStateException.class);
+    bar.nextValue();
+  }
+
+  @Test
+  public void addAfterGroupingThrows() throws Exception {
+    SpillableGroupingBuffer buffer = SpillableGroupingBuffer.create(1024L);
+    buffer.nextGroup();
+
+    thrown.expect(IllegalStateException.class);
+    buffer.add(bytes("foo"), bytes("bar"));
+  }
+
+  @Test
+  public void closeDeletesSpilledRuns() throws Exception {
+    SpillableGroupingBuffer buffer = SpillableGroupingBuffer.create(150L);
+    addAll(buffer);
+    List<File> spilled = new ArrayList<>(buffer.getSpilledRuns());
+    assertThat(spilled, hasSize(2));
+
+    // Close part way through reading the groups, as on a failure.
+    buffer.nextGroup();
+    buffer.close();
+
+    for (File file : spilled) {
+      assertThat(file.exists(), is(false));
+    }
+    assertThat(buffer.getSpilledRuns(), empty());
+  }
+
+  @Test
+  public void closeBeforeReadingDeletesSpilledRuns() throws Exception {
+    SpillableGroupingBuffer buffer = SpillableGroupingBuffer.create(150L);
+    addAll(buffer);
+    List<File> spilled = new ArrayList<>(buffer.getSpilledRuns());
+
+    buffer.close();
+
+    for (File file : spilled) {
+      assertThat(file.exists(), is(false));
+    }
+  }
+
+  private void addAll(SpillableGroupingBuffer buffer) throws Exception {
+    buffer.add(bytes("foo"), bytes("1"));
+    buffer.add(bytes("bar"), bytes("2"));
+    buffer.add(bytes("foo"), bytes("3"));
+    buffer.add(bytes("baz"), bytes("4"));
+    buffer.add(bytes("bar"), bytes("5"));
+    buffer.add(bytes("foo"), bytes("6"));
+  }
+
+  private void assertGroups(SpillableGroupingBuffer buffer) throws Exception {
+    KeyGroup bar = buffer.nextGroup();
+    assertThat(string(bar.getKey()), equalTo("bar"));
+    assertThat(strings(bar), contains("2", "5"));
+    KeyGroup baz = buffer.nextGroup();
+    assertThat(string(baz.getKey()), equalTo("baz"));
+    assertThat(strings(baz), contains("4"));
+    KeyGroup foo = buffer.nextGroup();
+    assertThat(string(foo.getKey()), equalTo("foo"));
+    assertThat(strings(foo), contains("1", "3", "6"));
+    assertThat(buffer.nextGroup(), nullValue());
+    buffer.close();
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String string(byte[] value) {
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  private static List<String> strings(KeyGroup group) throws Exception {
+    List<String> result = new ArrayList<>();
+    byte[] value = group.nextValue();
+    while (value != null) {
+      result.add(string(value));
+      value = group.nextValue();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.runners.direct.DirectRunner.CommittedBundle;
+import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
+import org.apache.beam.runners.direct.DirectRunner.UncommittedBundle;
+import org.apache.beam.runners.direct.StepProfiler.StepProfile;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.SimpleFunction;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.PCollection;
+
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link StepProfiler}.
+ */
+@RunWith(JUnit4.class)
+public class StepProfilerTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void profiledPipelineReportsSteps() throws Throwable {
+    File jsonFile = new File(tmp.getRoot(), "profile.json");
+    DirectOptions options = PipelineOptionsFactory.as(DirectOptions.class);
+    options.setRunner(DirectRunner.class);
+    options.setBlockOnRun(false);
+    options.setProfileSteps(true);
+    options.setProfileOutputFile(jsonFile.getAbsolutePath());
+    Pipeline p = Pipeline.create(options);
+    p.apply("Words", Create.of("foo", "bar", "foo"))
+        .apply("Upper", MapElements.via(new UpperFn()))
+        .apply("Count", Count.<String>perElement());
+
+    DirectPipelineResult result = (DirectPipelineResult) p.run();
+    result.awaitCompletion();
+
+    String report = result.getProfileReport();
+    assertThat(report, startsWith("step"));
+    assertThat(report, containsString("Upper"));
+    String json = new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8);
+    assertThat(json, startsWith("[{\"step\":"));
+    assertThat(json, containsString("\"step\":\"Upper"));
+    assertThat(json, containsString("\"javaSerializedElements\":"));
+  }
+
+  @Test
+  public void profileRecordsElementsAndBundles() throws Exception {
+    TestPipeline p = TestPipeline.create();
+    PCollection<String> created = p.apply("Words", Create.of("foo", "bar", "foo"));
+    PCollection<String> upper =
+        created
+            .apply("Upper", MapElements.via(new UpperFn()))
+            .setCoder(SerializableCoder.of(String.class));
+    ConsumerTrackingPipelineVisitor visitor = new ConsumerTrackingPipelineVisitor();
+    p.traverseTopologically(visitor);
+
+    StepProfiler profiler = StepProfiler.create();
+    BundleFactory bundleFactory =
+        profiler.profilingBundleFactory(ImmutableListBundleFactory.create());
+    EvaluationContext context =
+        EvaluationContext.create(
+            DirectRunner.fromOptions(PipelineOptionsFactory.create()).getPipelineOptions(),
+            bundleFactory,
+            visitor.getRootTransforms(),
+            visitor.getValueToConsumers(),
+            visitor.getStepNames(),
+            visitor.getViews());
+    CommittedBundle<String> input =
+        bundleFactory
+            .createRootBundle(created)
+            .add(WindowedValue.valueInGlobalWindow("foo"))
+            .add(WindowedValue.valueInGlobalWindow("bar"))
+            .add(WindowedValue.valueInGlobalWindow("foo"))
+            .commit(Instant.now());
+
+    TransformEvaluator<String> evaluator =
+        profiler
+            .profilingEvaluatorFactory(TransformEvaluatorRegistry.defaultRegistry())
+            .forApplication(upper.getProducingTransformInternal(), input, context);
+    for (WindowedValue<String> element : input.getElements()) {
+      evaluator.processElement(element);
+    }
+    for (UncommittedBundle<?> output : evaluator.finishBundle().getOutputBundles()) {
+      output.commit(Instant.now());
+    }
+
+    Map<String, StepProfile> profiles = new HashMap<>();
+    for (StepProfile profile : profiler.getProfiles()) {
+      profiles.put(profile.getStepName(), profile);
+    }
+    StepProfile upperProfile = profiles.get(upper.getProducingTransformInternal().getFullName());
+    assertThat(upperProfile.getBundles(), equalTo(1L));
+    assertThat(upperProfile.getInputElements(), equalTo(3L));
+    assertThat(upperProfile.getMaxInputBundleSize(), equalTo(3L));
+    assertThat(upperProfile.getWallNanos(), greaterThan(0L));
+    assertThat(upperProfile.getQueueWaitNanos(), greaterThan(0L));
+    assertThat(upperProfile.getOutputElements(), equalTo(3L));
+    assertThat(upperProfile.getJavaSerializedElements(), equalTo(3L));
+    StepProfile createdProfile =
+        profiles.get(created.getProducingTransformInternal().getFullName());
+    assertThat(createdProfile.getOutputElements(), equalTo(3L));
+    assertThat(createdProfile.getJavaSerializedElements(), equalTo(0L));
+  }
+
+  @Test
+  public void profileReportWithoutProfilingThrows() throws Throwable {
+    DirectOptions options = PipelineOptionsFactory.as(DirectOptions.class);
+    options.setRunner(DirectRunner.class);
+    Pipeline p = Pipeline.create(options);
+    p.apply(Create.of(1, 2, 3));
+    DirectPipelineResult result = (DirectPipelineResult) p.run();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("profileSteps");
+    result.getProfileReport();
+  }
+
+  private static class UpperFn extends SimpleFunction<String, String> {
+    @Override
+    public String apply(String input) {
+      return input.toUpperCase();
+    }
+  }
+}
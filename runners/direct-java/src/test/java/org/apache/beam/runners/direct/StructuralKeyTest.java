@@ -25,6 +25,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
 
 import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.EncodedKey;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
 
@@ -78,4 +79,15 @@ public class StructuralKeyTest {
         StructuralKey.of(new byte[] {9, -128, 22}, ByteArrayCoder.of());
     assertThat(key, not(equalTo(otherKey)));
   }
+
+  @Test
+  public void fromEncodedKeyEqualsFromKey() throws Exception {
+    StructuralKey<String> key = StructuralKey.of("foo", StringUtf8Coder.of());
+    EncodedKey encodedKey = EncodedKey.of(StringUtf8Coder.of(), "foo");
+    StructuralKey<String> fromEncoded = StructuralKey.ofEncoded(encodedKey, StringUtf8Coder.of());
+
+    assertThat(fromEncoded, equalTo(key));
+    assertThat(fromEncoded.hashCode(), equalTo(key.hashCode()));
+    assertThat(fromEncoded.getKey(), equalTo("foo"));
+  }
 }
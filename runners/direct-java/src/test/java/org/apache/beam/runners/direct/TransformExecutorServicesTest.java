@@ -17,6 +17,9 @@
  */
 package org.apache.beam.runners.direct;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -29,8 +32,14 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Tests for {@link TransformExecutorServices}.
@@ -65,6 +74,123 @@ public class TransformExecutorServicesTest {
     parallel.complete(second);
   }
 
+  @Test
+  public void boundedScheduleWaitsForOutstandingToComplete() {
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> second = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> third = mock(TransformExecutor.class);
+
+    TransformExecutorService bounded = TransformExecutorServices.bounded(executorService, 2);
+    bounded.schedule(first);
+    bounded.schedule(second);
+    verify(first).run();
+    verify(second).run();
+
+    bounded.schedule(third);
+    verify(third, never()).run();
+
+    bounded.complete(second);
+    verify(third).run();
+
+    bounded.complete(first);
+    bounded.complete(third);
+  }
+
+  @Test
+  public void boundedIsSaturatedWhileWorkIsQueued() {
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> second = mock(TransformExecutor.class);
+
+    TransformExecutorServices.BoundedEvaluationState bounded =
+        TransformExecutorServices.bounded(executorService, 1);
+    bounded.schedule(first);
+    assertThat(bounded.isSaturated(), is(false));
+
+    bounded.schedule(second);
+    assertThat(bounded.isSaturated(), is(true));
+
+    bounded.complete(first);
+    assertThat(bounded.isSaturated(), is(false));
+    bounded.complete(second);
+  }
+
+  @Test
+  public void forkJoinPoolEvaluatesWorkWhileOtherWorkBlocks() throws Exception {
+    final CountDownLatch secondRan = new CountDownLatch(1);
+    final AtomicBoolean firstUnblocked = new AtomicBoolean();
+    final CountDownLatch firstDone = new CountDownLatch(1);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        firstUnblocked.set(secondRan.await(10, TimeUnit.SECONDS));
+        firstDone.countDown();
+        return null;
+      }
+    }).when(first).run();
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> second = mock(TransformExecutor.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        secondRan.countDown();
+        return null;
+      }
+    }).when(second).run();
+
+    // A single worker would be starved by the blocked work if the pool did not compensate for it.
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      TransformExecutorService bounded = TransformExecutorServices.bounded(pool, 2);
+      bounded.schedule(first);
+      bounded.schedule(second);
+      firstDone.await();
+      assertThat(firstUnblocked.get(), is(true));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void boundedNonPositiveMaxOutstandingThrows() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("must be positive");
+    TransformExecutorServices.bounded(executorService, 0);
+  }
+
+  @Test
+  public void serialWithUnderlyingCompletesUnderlying() {
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> first = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> second = mock(TransformExecutor.class);
+    @SuppressWarnings("unchecked")
+    TransformExecutor<Object> third = mock(TransformExecutor.class);
+
+    TransformExecutorService bounded = TransformExecutorServices.bounded(executorService, 1);
+    TransformExecutorService serial = TransformExecutorServices.serial(bounded);
+    serial.schedule(first);
+    bounded.schedule(second);
+    verify(first).run();
+    verify(second, never()).run();
+
+    serial.schedule(third);
+    serial.complete(first);
+    // The bounded executor service schedules the work that was waiting first
+    verify(second).run();
+    verify(third, never()).run();
+
+    bounded.complete(second);
+    verify(third).run();
+    serial.complete(third);
+  }
+
   @Test
   public void serialScheduleTwoWaitsForFirstToComplete() {
     @SuppressWarnings("unchecked")
@@ -18,12 +18,16 @@
 package org.apache.beam.runners.direct;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 
 import org.apache.beam.runners.direct.UnboundedReadDeduplicator.CachedIdDeduplicator;
 import org.apache.beam.runners.direct.UnboundedReadDeduplicator.NeverDeduplicator;
 
+import org.joda.time.Duration;
+import org.joda.time.Instant;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -88,6 +92,56 @@ public class UnboundedReadDeduplicatorTest {
     assertThat(failureCount.get(), equalTo(numThreads - 1));
   }
 
+  @Test
+  public void cachedIdDeduplicatorOutputsAfterRetention() {
+    byte[] id = new byte[] {-1, 2, 4, 22};
+    MockClock clock = MockClock.fromInstant(new Instant(0L));
+    UnboundedReadDeduplicator dedupper =
+        CachedIdDeduplicator.create(clock, Duration.standardMinutes(9L), false);
+
+    assertThat(dedupper.shouldOutput(id), is(true));
+    clock.advance(Duration.standardMinutes(8L));
+    assertThat(dedupper.shouldOutput(id), is(false));
+    clock.advance(Duration.standardMinutes(8L));
+    // Seen 8 minutes ago, which is within the retention period
+    assertThat(dedupper.shouldOutput(id), is(false));
+    clock.advance(Duration.standardMinutes(11L));
+    assertThat(dedupper.shouldOutput(id), is(true));
+  }
+
+  @Test
+  public void cachedIdDeduplicatorWithBloomFiltersDeduplicatesOlderIds() {
+    MockClock clock = MockClock.fromInstant(new Instant(0L));
+    CachedIdDeduplicator dedupper =
+        CachedIdDeduplicator.create(clock, Duration.standardMinutes(9L), true);
+
+    int numIds = 10000;
+    for (int i = 0; i < numIds; i++) {
+      assertThat(dedupper.shouldOutput(Integer.toString(i).getBytes()), is(true));
+    }
+    clock.advance(Duration.standardMinutes(3L));
+    for (int i = 0; i < numIds; i++) {
+      assertThat(dedupper.shouldOutput(Integer.toString(i).getBytes()), is(false));
+    }
+
+    assertThat(dedupper.getLookupCount(), equalTo(2L * numIds));
+    assertThat(dedupper.getDuplicateCount(), equalTo((long) numIds));
+    assertThat(dedupper.getEstimatedFalsePositiveProbability(), greaterThan(0.0));
+    assertThat(dedupper.getEstimatedFalsePositiveProbability(), lessThan(1e-4));
+  }
+
+  @Test
+  public void cachedIdDeduplicatorWithoutBloomFiltersHasNoFalsePositives() {
+    MockClock clock = MockClock.fromInstant(new Instant(0L));
+    CachedIdDeduplicator dedupper =
+        CachedIdDeduplicator.create(clock, Duration.standardMinutes(9L), false);
+    dedupper.shouldOutput(new byte[] {1});
+    clock.advance(Duration.standardMinutes(3L));
+    dedupper.shouldOutput(new byte[] {1});
+
+    assertThat(dedupper.getEstimatedFalsePositiveProbability(), equalTo(0.0));
+  }
+
   private static class TryOutputIdRunnable implements Runnable {
     private final UnboundedReadDeduplicator deduplicator;
     private final byte[] id;
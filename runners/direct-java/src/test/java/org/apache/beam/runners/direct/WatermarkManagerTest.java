@@ -297,6 +297,39 @@ public class WatermarkManagerTest implements Serializable {
         not(laterThan(BoundedWindow.TIMESTAMP_MAX_VALUE)));
   }
 
+  /**
+   * Demonstrates that a transform is refreshed at most once per call to refreshAll, even if
+   * multiple upstream transforms have advanced.
+   */
+  @Test
+  public void refreshAllRefreshesEachTransformOnce() {
+    manager.updateWatermarks(null,
+        TimerUpdate.empty(),
+        result(createdInts.getProducingTransformInternal(),
+            null,
+            Collections.<CommittedBundle<?>>emptyList()),
+        BoundedWindow.TIMESTAMP_MAX_VALUE);
+    manager.updateWatermarks(null,
+        TimerUpdate.empty(),
+        result(intsToFlatten.getProducingTransformInternal(),
+            null,
+            Collections.<CommittedBundle<?>>emptyList()),
+        BoundedWindow.TIMESTAMP_MAX_VALUE);
+    manager.refreshAll();
+
+    // Both sources, filtered, keyed, timesTwo, and flattened are each refreshed once. The refresh
+    // of flattened caused by the second source advancing is combined with the pending refresh.
+    assertThat(manager.getPerformedRefreshCount(), equalTo(6L));
+    assertThat(manager.getSkippedRefreshCount(), equalTo(1L));
+
+    TransformWatermarks flattenedWms =
+        manager.getWatermarks(flattened.getProducingTransformInternal());
+    assertThat(flattenedWms.getOutputWatermark(), equalTo(BoundedWindow.TIMESTAMP_MAX_VALUE));
+    TransformWatermarks timesTwoWms =
+        manager.getWatermarks(filteredTimesTwo.getProducingTransformInternal());
+    assertThat(timesTwoWms.getOutputWatermark(), equalTo(BoundedWindow.TIMESTAMP_MAX_VALUE));
+  }
+
   /**
    * Demonstrates that pending elements are independent among
    * {@link AppliedPTransform AppliedPTransforms} that consume the same input {@link PCollection}.
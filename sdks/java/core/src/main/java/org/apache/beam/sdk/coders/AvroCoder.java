@@ -101,6 +101,12 @@ import javax.annotation.Nullable;
  * Schema provided or generated by Avro. Only coders that are deterministic can be used in
  * {@link org.apache.beam.sdk.transforms.GroupByKey} operations.
  *
+ * <p>For plain record classes whose fields are primitives, strings, byte arrays, lists, maps,
+ * nested records or nullable unions of those, the coder resolves the class and schema once into a
+ * specialized reader and writer, and uses them in place of Avro's reflect reader and writer. The
+ * encoding is the same either way. {@link #decode(Object, InputStream, Context)} can additionally
+ * decode into an existing instance to avoid allocating a new record per element.
+ *
  * @param <T> the type of elements handled by this coder
  */
 public class AvroCoder<T> extends StandardCoder<T> {
@@ -181,6 +187,9 @@ public class AvroCoder<T> extends StandardCoder<T> {
   private final transient ThreadLocal<BinaryEncoder> encoder;
   private final transient ThreadLocal<DatumWriter<T>> writer;
   private final transient ThreadLocal<DatumReader<T>> reader;
+  // A reader and writer specialized to the type and schema, or null if they are not supported,
+  // in which case the reflect or generic reader and writer are used.
+  @Nullable private final transient SpecializedAvroCodec<T> specializedCodec;
 
   protected AvroCoder(Class<T> type, Schema schema) {
     this.type = type;
@@ -207,6 +216,8 @@ public class AvroCoder<T> extends StandardCoder<T> {
         return createDatumWriter();
       }
     };
+
+    this.specializedCodec = SpecializedAvroCodec.create(type, schema);
   }
 
   /**
@@ -261,17 +272,44 @@ public class AvroCoder<T> extends StandardCoder<T> {
     BinaryEncoder encoderInstance = ENCODER_FACTORY.directBinaryEncoder(outStream, encoder.get());
     // Save the potentially-new instance for reuse later.
     encoder.set(encoderInstance);
-    writer.get().write(value, encoderInstance);
+    if (specializedCodec != null) {
+      specializedCodec.write(value, encoderInstance);
+    } else {
+      writer.get().write(value, encoderInstance);
+    }
     // Direct binary encoder does not buffer any data and need not be flushed.
   }
 
   @Override
   public T decode(InputStream inStream, Context context) throws IOException {
+    return decode(null, inStream, context);
+  }
+
+  /**
+   * Decodes a value in the same way as {@link #decode(InputStream, Context)}, but reuses the
+   * provided instance, and any records nested within it, rather than constructing new ones where
+   * possible. The returned value may be {@code reuse} itself.
+   *
+   * <p>This is only safe when the caller exclusively owns {@code reuse} and no longer needs its
+   * previous contents; values that have been output or are otherwise retained must not be reused.
+   */
+  public T decode(@Nullable T reuse, InputStream inStream, Context context) throws IOException {
     // Get a BinaryDecoder instance from the ThreadLocal cache and attempt to reuse it.
     BinaryDecoder decoderInstance = DECODER_FACTORY.directBinaryDecoder(inStream, decoder.get());
     // Save the potentially-new instance for later.
     decoder.set(decoderInstance);
-    return reader.get().read(null, decoderInstance);
+    if (specializedCodec != null) {
+      return specializedCodec.read(reuse, decoderInstance);
+    }
+    return reader.get().read(reuse, decoderInstance);
+  }
+
+  /**
+   * Returns whether this coder encodes and decodes with a reader and writer specialized to its
+   * type and schema, rather than the generic reflect reader and writer.
+   */
+  boolean isSpecialized() {
+    return specializedCodec != null;
   }
 
   @Override
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import org.apache.beam.sdk.coders.Coder.Context;
+import org.apache.beam.sdk.util.EncodingBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An optional extension of {@link Coder} for coders that can encode values directly into an
+ * {@link EncodingBuffer} and decode them directly from a {@link ByteBuffer}, without the
+ * per-call stream wrappers and virtual single-byte writes of the stream-based API.
+ *
+ * <p>The buffer encoding must be byte-for-byte identical to the encoding produced by
+ * {@link Coder#encode} in the same {@link Context}, so values written by one API can always be
+ * read by the other. Callers should use {@link BufferCoders}, which falls back to the
+ * stream-based API for coders that do not implement this interface.
+ *
+ * @param <T> the type of the values being transcoded
+ */
+public interface BufferCoder<T> {
+  /**
+   * Encodes the given value of type {@code T} onto the given buffer in the given context.
+   *
+   * @throws CoderException if the value could not be encoded for some reason
+   */
+  void encodeToBuffer(T value, EncodingBuffer buffer, Context context)
+      throws CoderException, IOException;
+
+  /**
+   * Decodes a value of type {@code T} from the given buffer in the given context, advancing the
+   * position of the buffer past the encoded value. In the {@link Context#OUTER outer} context,
+   * all of the remaining bytes of the buffer are consumed.
+   *
+   * @throws CoderException if the value could not be decoded for some reason
+   */
+  T decodeFromBuffer(ByteBuffer buffer, Context context) throws CoderException, IOException;
+}
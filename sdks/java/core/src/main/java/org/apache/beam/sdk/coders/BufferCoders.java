@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import org.apache.beam.sdk.coders.Coder.Context;
+import org.apache.beam.sdk.util.ByteBufferInputStream;
+import org.apache.beam.sdk.util.EncodingBuffer;
+
+import com.google.common.base.Throwables;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Static utility methods for encoding and decoding values with {@link ByteBuffer buffers}.
+ *
+ * <p>Coders that implement {@link BufferCoder} are invoked directly. All other coders are adapted
+ * to their stream-based {@link Coder#encode} and {@link Coder#decode} methods, so any
+ * {@link Coder} may be used with these methods.
+ */
+public final class BufferCoders {
+  private BufferCoders() {}
+
+  /**
+   * Encodes the given value onto the given buffer with the given coder, in the given context.
+   */
+  public static <T> void encode(
+      Coder<T> coder, T value, EncodingBuffer buffer, Context context)
+      throws CoderException, IOException {
+    if (coder instanceof BufferCoder) {
+      @SuppressWarnings("unchecked")
+      BufferCoder<T> bufferCoder = (BufferCoder<T>) coder;
+      bufferCoder.encodeToBuffer(value, buffer, context);
+    } else {
+      coder.encode(value, buffer, context);
+    }
+  }
+
+  /**
+   * Decodes a value from the given buffer with the given coder, in the given context. The
+   * position of the buffer is advanced past the decoded value.
+   */
+  public static <T> T decode(Coder<T> coder, ByteBuffer buffer, Context context)
+      throws CoderException, IOException {
+    if (coder instanceof BufferCoder) {
+      @SuppressWarnings("unchecked")
+      BufferCoder<T> bufferCoder = (BufferCoder<T>) coder;
+      return bufferCoder.decodeFromBuffer(buffer, context);
+    } else {
+      return coder.decode(new ByteBufferInputStream(buffer), context);
+    }
+  }
+
+  /**
+   * Encodes the given value in the outer context into a new byte array.
+   */
+  public static <T> byte[] encodeToByteArray(Coder<T> coder, T value) throws CoderException {
+    EncodingBuffer buffer = new EncodingBuffer();
+    try {
+      encode(coder, value, buffer, Context.OUTER);
+    } catch (IOException exn) {
+      Throwables.propagateIfPossible(exn, CoderException.class);
+      throw new IllegalArgumentException(
+          "Forbidden IOException when writing to EncodingBuffer", exn);
+    }
+    return buffer.toByteArray();
+  }
+
+  /**
+   * Decodes a value from the given byte array, which must contain exactly one value encoded in
+   * the outer context.
+   */
+  public static <T> T decodeFromByteArray(Coder<T> coder, byte[] encodedValue)
+      throws CoderException {
+    ByteBuffer buffer = ByteBuffer.wrap(encodedValue);
+    T result;
+    try {
+      result = decode(coder, buffer, Context.OUTER);
+    } catch (IOException exn) {
+      Throwables.propagateIfPossible(exn, CoderException.class);
+      throw new IllegalArgumentException(
+          "Forbidden IOException when reading from ByteBuffer", exn);
+    }
+    if (buffer.hasRemaining()) {
+      throw new CoderException(
+          buffer.remaining() + " unexpected extra bytes after decoding " + result);
+    }
+    return result;
+  }
+
+  /**
+   * Reads a big-endian {@code int} from the buffer, regardless of its byte order.
+   */
+  static int readInt(ByteBuffer buffer) throws EOFException {
+    if (buffer.remaining() < 4) {
+      throw new EOFException();
+    }
+    return ((buffer.get() & 0xFF) << 24)
+        | ((buffer.get() & 0xFF) << 16)
+        | ((buffer.get() & 0xFF) << 8)
+        | (buffer.get() & 0xFF);
+  }
+
+  /**
+   * Reads exactly {@code length} bytes from the buffer into a new array.
+   */
+  static byte[] readBytes(ByteBuffer buffer, int length) throws EOFException {
+    if (buffer.remaining() < length) {
+      throw new EOFException(
+          String.format("Expected %d bytes but only %d remain", length, buffer.remaining()));
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return bytes;
+  }
+}
@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.coders;
 
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.ExposedByteArrayOutputStream;
 import org.apache.beam.sdk.util.StreamUtils;
 import org.apache.beam.sdk.util.VarInt;
@@ -28,6 +29,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A {@link Coder} for {@code byte[]}.
@@ -40,7 +42,7 @@ import java.io.OutputStream;
  * encoded via a {@link VarIntCoder}.</li>
  * </ul>
  */
-public class ByteArrayCoder extends AtomicCoder<byte[]> {
+public class ByteArrayCoder extends AtomicCoder<byte[]> implements BufferCoder<byte[]> {
 
   @JsonCreator
   public static ByteArrayCoder of() {
@@ -104,6 +106,31 @@ public class ByteArrayCoder extends AtomicCoder<byte[]> {
     }
   }
 
+  @Override
+  public void encodeToBuffer(byte[] value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null byte[]");
+    }
+    if (!context.isWholeStream) {
+      buffer.writeVarInt(value.length);
+    }
+    buffer.write(value, 0, value.length);
+  }
+
+  @Override
+  public byte[] decodeFromBuffer(ByteBuffer buffer, Context context) throws IOException {
+    if (context.isWholeStream) {
+      return BufferCoders.readBytes(buffer, buffer.remaining());
+    } else {
+      int length = VarInt.decodeInt(buffer);
+      if (length < 0) {
+        throw new IOException("invalid length " + length);
+      }
+      return BufferCoders.readBytes(buffer, length);
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -0,0 +1,504 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.values.TypeDescriptor;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link SerializableCoder} with a more compact and faster encoding.
+ *
+ * <p>Java serialization writes the full descriptor of the class of every object, and of each of its
+ * superclasses, in every encoded element. A {@link CompactSerializableCoder} instead writes a small
+ * integer for the descriptor of each class in a table of known classes, which is determined by the
+ * record type alone: the record type, the serializable types of its fields (transitively), their
+ * serializable superclasses, and common serializable JDK types such as boxed primitives and
+ * collections. Descriptors of other classes, such as subclasses of the declared types, are written
+ * in full. The stream header is omitted from each element, and the object streams are pooled by the
+ * coder and reused for later elements.
+ *
+ * <p>Since the table is derived from the local version of each class, a value must be decoded with
+ * the same versions of the known classes as it was encoded with. The encoding id of a
+ * {@link CompactSerializableCoder} includes the names and serial version UIDs of every class in the
+ * table.
+ *
+ * <p>The encoding of a {@link CompactSerializableCoder} is not compatible with the encoding of a
+ * {@link SerializableCoder}.
+ *
+ * @param <T> the type of elements handled by this coder
+ */
+public class CompactSerializableCoder<T extends Serializable> extends SerializableCoder<T> {
+
+  /**
+   * Returns a {@link CompactSerializableCoder} instance for the provided element type.
+   * @param <T> the element type
+   */
+  public static <T extends Serializable> CompactSerializableCoder<T> of(TypeDescriptor<T> type) {
+    @SuppressWarnings("unchecked")
+    Class<T> clazz = (Class<T>) type.getRawType();
+    return of(clazz);
+  }
+
+  /**
+   * Returns a {@link CompactSerializableCoder} instance for the provided element class.
+   * @param <T> the element type
+   */
+  public static <T extends Serializable> CompactSerializableCoder<T> of(Class<T> clazz) {
+    return new CompactSerializableCoder<>(clazz);
+  }
+
+  @JsonCreator
+  @SuppressWarnings("unchecked")
+  public static CompactSerializableCoder<?> of(@JsonProperty("type") String classType)
+      throws ClassNotFoundException {
+    Class<?> clazz = Class.forName(classType);
+    if (!Serializable.class.isAssignableFrom(clazz)) {
+      throw new ClassNotFoundException(
+          "Class " + classType + " does not implement Serializable");
+    }
+    return of((Class<? extends Serializable>) clazz);
+  }
+
+  /**
+   * A {@link CoderProvider} that constructs a {@link CompactSerializableCoder}
+   * for any class that implements serializable.
+   *
+   * <p>To use it in place of {@link SerializableCoder#PROVIDER}, set it as part of the fallback
+   * {@link CoderProvider} of the {@link CoderRegistry}.
+   */
+  public static final CoderProvider PROVIDER = new CoderProvider() {
+    @Override
+    public <T> Coder<T> getCoder(TypeDescriptor<T> typeDescriptor)
+        throws CannotProvideCoderException {
+      Class<?> clazz = typeDescriptor.getRawType();
+      if (Serializable.class.isAssignableFrom(clazz)) {
+        @SuppressWarnings("unchecked")
+        Class<? extends Serializable> serializableClazz =
+            (Class<? extends Serializable>) clazz;
+        @SuppressWarnings("unchecked")
+        Coder<T> coder = (Coder<T>) CompactSerializableCoder.of(serializableClazz);
+        return coder;
+      } else {
+        throw new CannotProvideCoderException(
+            "Cannot provide CompactSerializableCoder because " + typeDescriptor
+            + " does not implement Serializable");
+      }
+    }
+  };
+
+  /**
+   * Serializable JDK classes which are always in the table of known classes, after the classes
+   * reachable from the record type.
+   */
+  private static final List<Class<?>> COMMON_CLASSES = Collections.unmodifiableList(
+      Arrays.<Class<?>>asList(
+          Number.class,
+          Boolean.class,
+          Byte.class,
+          Character.class,
+          Short.class,
+          Integer.class,
+          Long.class,
+          Float.class,
+          Double.class,
+          BigInteger.class,
+          BigDecimal.class,
+          Enum.class,
+          Date.class,
+          ArrayList.class,
+          LinkedList.class,
+          HashMap.class,
+          LinkedHashMap.class,
+          TreeMap.class,
+          HashSet.class,
+          LinkedHashSet.class,
+          TreeSet.class));
+
+  /** The largest number of classes reachable from the record type to add to the table. */
+  private static final int MAX_REACHABLE_CLASSES = 256;
+
+  /** The stream header that {@link ObjectInputStream} reads when it is constructed. */
+  private static final byte[] STREAM_HEADER = {
+      (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8),
+      (byte) ObjectStreamConstants.STREAM_MAGIC,
+      (byte) (ObjectStreamConstants.STREAM_VERSION >> 8),
+      (byte) ObjectStreamConstants.STREAM_VERSION};
+
+  /** Read by a reused {@link ObjectInputStream} before each element, to clear its handles. */
+  private static final byte[] RESET = {ObjectStreamConstants.TC_RESET};
+
+  private transient volatile ClassTable classTable;
+  /**
+   * The streams which are not in use. Pooling the streams in the coder, rather than in a
+   * {@link ThreadLocal}, ensures they are released with the coder rather than retained by every
+   * thread of a pool which ever used it.
+   */
+  private transient volatile Queue<Streams> idleStreams;
+
+  protected CompactSerializableCoder(Class<T> type) {
+    super(type);
+  }
+
+  @Override
+  public void encode(T value, OutputStream outStream, Context context)
+      throws IOException, CoderException {
+    Streams current = acquireStreams();
+    try {
+      current.encode(value, outStream);
+    } catch (IOException exn) {
+      throw new CoderException("unable to serialize record " + value, exn);
+    } finally {
+      releaseStreams(current);
+    }
+  }
+
+  @Override
+  public T decode(InputStream inStream, Context context)
+      throws IOException, CoderException {
+    Streams current = acquireStreams();
+    try {
+      return getRecordType().cast(current.decode(inStream));
+    } catch (ClassNotFoundException e) {
+      throw new CoderException("unable to deserialize record", e);
+    } finally {
+      releaseStreams(current);
+    }
+  }
+
+  @Override
+  public String getEncodingId() {
+    return String.format("%s:compact-%08x", super.getEncodingId(), getClassTable().fingerprint());
+  }
+
+  private ClassTable getClassTable() {
+    ClassTable table = classTable;
+    if (table == null) {
+      table = ClassTable.forType(getRecordType());
+      classTable = table;
+    }
+    return table;
+  }
+
+  private Queue<Streams> getIdleStreams() {
+    Queue<Streams> idle = idleStreams;
+    if (idle == null) {
+      synchronized (this) {
+        if (idleStreams == null) {
+          idleStreams = new ConcurrentLinkedQueue<>();
+        }
+        idle = idleStreams;
+      }
+    }
+    return idle;
+  }
+
+  /**
+   * Returns idle {@link Streams} of this coder, or new {@link Streams} if all are in use, as
+   * happens if a value is encoded or decoded by this coder while it is serializing another value.
+   */
+  private Streams acquireStreams() throws IOException {
+    Streams current = getIdleStreams().poll();
+    return current == null ? new Streams(getClassTable()) : current;
+  }
+
+  /**
+   * Returns the provided {@link Streams} to the idle streams of this coder, unless encoding or
+   * decoding with them failed.
+   */
+  private void releaseStreams(Streams current) {
+    if (!current.broken) {
+      getIdleStreams().offer(current);
+    }
+  }
+
+  /**
+   * The classes whose descriptors are written as an index into the table rather than in full.
+   */
+  private static class ClassTable {
+    private final List<Class<?>> classes;
+    private final Map<Class<?>, Integer> indices;
+    private final Map<String, Class<?>> classesByName;
+
+    private static ClassTable forType(Class<?> type) {
+      Set<Class<?>> reachable = new LinkedHashSet<>();
+      addReachable(type, reachable);
+      reachable.addAll(COMMON_CLASSES);
+      return new ClassTable(new ArrayList<>(reachable));
+    }
+
+    private static void addReachable(Class<?> clazz, Set<Class<?>> reachable) {
+      if (clazz == null
+          || clazz.isPrimitive()
+          || clazz.isArray()
+          || clazz.isInterface()
+          || reachable.contains(clazz)
+          || reachable.size() >= MAX_REACHABLE_CLASSES) {
+        return;
+      }
+      ObjectStreamClass descriptor = ObjectStreamClass.lookup(clazz);
+      if (descriptor == null) {
+        return;
+      }
+      reachable.add(clazz);
+      addReachable(clazz.getSuperclass(), reachable);
+      // The fields of a descriptor are sorted, so the table does not depend on reflection order.
+      for (ObjectStreamField field : descriptor.getFields()) {
+        if (!field.isPrimitive()) {
+          addReachable(field.getType(), reachable);
+        }
+      }
+    }
+
+    private ClassTable(List<Class<?>> classes) {
+      this.classes = classes;
+      this.indices = new HashMap<>();
+      this.classesByName = new HashMap<>();
+      for (Class<?> clazz : classes) {
+        indices.put(clazz, indices.size());
+        classesByName.put(clazz.getName(), clazz);
+      }
+    }
+
+    private int fingerprint() {
+      int fingerprint = 1;
+      for (Class<?> clazz : classes) {
+        fingerprint = 31 * fingerprint + clazz.getName().hashCode();
+        fingerprint = 31 * fingerprint
+            + Long.valueOf(ObjectStreamClass.lookup(clazz).getSerialVersionUID()).hashCode();
+      }
+      return fingerprint;
+    }
+  }
+
+  /**
+   * Reusable object streams, which write to and read from the stream of the element being
+   * encoded or decoded.
+   */
+  private static class Streams {
+    private final SwitchingOutputStream out;
+    private final ObjectOutputStream objectOut;
+    private final SwitchingInputStream in;
+    private final ObjectInputStream objectIn;
+    /**
+     * Whether encoding or decoding an element failed, leaving the object streams in an unknown
+     * state.
+     */
+    private boolean broken;
+
+    private Streams(ClassTable table) throws IOException {
+      out = new SwitchingOutputStream();
+      // The stream header is discarded; it is never written to an element.
+      objectOut = new TableObjectOutputStream(out, table);
+      in = new SwitchingInputStream();
+      in.setSource(STREAM_HEADER, null);
+      objectIn = new TableObjectInputStream(in, table);
+    }
+
+    private void encode(Object value, OutputStream outStream) throws IOException {
+      broken = true;
+      // Clear the handles of the previous element, so that the encoding of this element does not
+      // refer to it. The reset marker itself is discarded.
+      objectOut.reset();
+      objectOut.flush();
+      out.setSink(outStream);
+      try {
+        objectOut.writeObject(value);
+        objectOut.flush();
+      } finally {
+        out.setSink(null);
+      }
+      broken = false;
+    }
+
+    private Object decode(InputStream inStream) throws IOException, ClassNotFoundException {
+      // Supply the reset marker that encode discarded, so that handles of the previous element
+      // are cleared before this element is read.
+      broken = true;
+      in.setSource(RESET, inStream);
+      Object value;
+      try {
+        value = objectIn.readObject();
+      } finally {
+        in.setSource(null, null);
+      }
+      broken = false;
+      return value;
+    }
+  }
+
+  /**
+   * An {@link ObjectOutputStream} which writes the descriptors of the classes in a
+   * {@link ClassTable} as their index.
+   */
+  private static class TableObjectOutputStream extends ObjectOutputStream {
+    private final ClassTable table;
+
+    private TableObjectOutputStream(OutputStream out, ClassTable table) throws IOException {
+      super(out);
+      this.table = table;
+    }
+
+    @Override
+    protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+      Integer index = table.indices.get(desc.forClass());
+      if (index == null) {
+        VarInt.encode(0, this);
+        super.writeClassDescriptor(desc);
+      } else {
+        VarInt.encode(index + 1, this);
+      }
+    }
+  }
+
+  /**
+   * An {@link ObjectInputStream} which reads the descriptors written by a
+   * {@link TableObjectOutputStream}.
+   */
+  private static class TableObjectInputStream extends ObjectInputStream {
+    private final ClassTable table;
+
+    private TableObjectInputStream(InputStream in, ClassTable table) throws IOException {
+      super(in);
+      this.table = table;
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+      int index = VarInt.decodeInt(this) - 1;
+      if (index < 0) {
+        return super.readClassDescriptor();
+      } else if (index >= table.classes.size()) {
+        throw new StreamCorruptedException(
+            String.format("Unknown class index %s in a table of %s classes",
+                index, table.classes.size()));
+      }
+      return ObjectStreamClass.lookup(table.classes.get(index));
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc)
+        throws IOException, ClassNotFoundException {
+      Class<?> known = table.classesByName.get(desc.getName());
+      return known != null ? known : super.resolveClass(desc);
+    }
+  }
+
+  /**
+   * An {@link OutputStream} which writes to the current sink, or discards its output if there is
+   * none.
+   */
+  private static class SwitchingOutputStream extends OutputStream {
+    private OutputStream sink;
+
+    private void setSink(OutputStream sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (sink != null) {
+        sink.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (sink != null) {
+        sink.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (sink != null) {
+        sink.flush();
+      }
+    }
+  }
+
+  /**
+   * An {@link InputStream} which reads a prefix followed by the current source.
+   */
+  private static class SwitchingInputStream extends InputStream {
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] prefix = EMPTY;
+    private int prefixPosition;
+    private InputStream source;
+
+    private void setSource(byte[] prefix, InputStream source) {
+      this.prefix = prefix == null ? EMPTY : prefix;
+      this.prefixPosition = 0;
+      this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (prefixPosition < prefix.length) {
+        return prefix[prefixPosition++] & 0xFF;
+      }
+      return source == null ? -1 : source.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (prefixPosition < prefix.length) {
+        int count = Math.min(len, prefix.length - prefixPosition);
+        System.arraycopy(prefix, prefixPosition, b, off, count);
+        prefixPosition += count;
+        return count;
+      }
+      return source == null ? -1 : source.read(b, off, len);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import org.apache.beam.sdk.util.CoderUtils;
+
+import java.util.Arrays;
+
+/**
+ * The encoding of a key in the {@link Coder.Context#OUTER OUTER} context, which uses structural,
+ * value-based equality.
+ *
+ * <p>An {@link EncodedKey} caches its hash code, so an {@link EncodedKey} which is created once for
+ * a key may be compared, hashed and grouped on many times without encoding the key or hashing its
+ * encoding again. {@link StandardCoder} returns an {@link EncodedKey} as the
+ * {@link Coder#structuralValue structural value} of values which are not consistent with equals.
+ *
+ * <p>An {@link EncodedKey} does not copy the encoded bytes it is created with, which must not be
+ * modified afterwards.
+ */
+public class EncodedKey extends StructuralByteArray {
+  /**
+   * Returns the {@link EncodedKey} of the provided key, encoded with the provided coder.
+   */
+  public static <K> EncodedKey of(Coder<K> coder, K key) throws CoderException {
+    return new EncodedKey(CoderUtils.encodeToByteArray(coder, key));
+  }
+
+  /**
+   * Returns the {@link EncodedKey} of a key with the provided encoding in the
+   * {@link Coder.Context#OUTER OUTER} context.
+   */
+  public static EncodedKey of(byte[] encoded) {
+    return new EncodedKey(encoded);
+  }
+
+  /** The cached result of {@link #hashCode()}, or 0 if it has not been computed. */
+  private int hash;
+
+  private EncodedKey(byte[] encoded) {
+    super(encoded);
+  }
+
+  /**
+   * Decodes the key with the provided coder, which must be the coder the key was encoded with.
+   * Each call returns a new instance of the key.
+   */
+  public <K> K decode(Coder<K> coder) throws CoderException {
+    return CoderUtils.decodeFromByteArray(coder, value);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (o instanceof EncodedKey) {
+      EncodedKey that = (EncodedKey) o;
+      return hashCode() == that.hashCode() && Arrays.equals(value, that.value);
+    }
+    return super.equals(o);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The hash code is equal to that of a {@link StructuralByteArray} with the same bytes, and is
+   * computed at most once.
+   */
+  @Override
+  public int hashCode() {
+    int result = hash;
+    if (result == 0) {
+      result = super.hashCode();
+      hash = result;
+    }
+    return result;
+  }
+}
@@ -20,6 +20,7 @@ package org.apache.beam.sdk.coders;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import org.apache.beam.sdk.util.BufferedElementCountingOutputStream;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.util.common.ElementByteSizeObservableIterable;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
@@ -29,6 +30,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -59,7 +61,7 @@ import java.util.Observer;
  * @param <IterableT> the type of the Iterables being transcoded
  */
 public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
-    extends StandardCoder<IterableT> {
+    extends StandardCoder<IterableT> implements BufferCoder<IterableT> {
   public Coder<T> getElemCoder() {
     return elementCoder;
   }
@@ -103,6 +105,8 @@ public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
       throw new CoderException("cannot encode a null " + iterableName);
     }
     Context nestedContext = context.nested();
+    // The DataOutputStream does not buffer, so only the size is written through it; elements and
+    // counts are written to outStream directly, so that they may use its fast paths.
     DataOutputStream dataOutStream = new DataOutputStream(outStream);
     if (iterable instanceof Collection) {
       // We can know the size of the Iterable.  Use an encoding with a
@@ -110,7 +114,7 @@ public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
       Collection<T> collection = (Collection<T>) iterable;
       dataOutStream.writeInt(collection.size());
       for (T elem : collection) {
-        elementCoder.encode(elem, dataOutStream, nestedContext);
+        elementCoder.encode(elem, outStream, nestedContext);
       }
     } else {
       // We don't know the size without traversing it so use a fixed size buffer
@@ -118,7 +122,7 @@ public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
       // by the elements.
       dataOutStream.writeInt(-1);
       BufferedElementCountingOutputStream countingOutputStream =
-          new BufferedElementCountingOutputStream(dataOutStream);
+          new BufferedElementCountingOutputStream(outStream);
       for (T elem : iterable) {
         countingOutputStream.markElementStart();
         elementCoder.encode(elem, countingOutputStream, nestedContext);
@@ -133,12 +137,13 @@ public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
   public IterableT decode(InputStream inStream, Context context)
       throws IOException, CoderException {
     Context nestedContext = context.nested();
+    // The DataInputStream does not buffer, so only the size is read through it.
     DataInputStream dataInStream = new DataInputStream(inStream);
     int size = dataInStream.readInt();
     if (size >= 0) {
       List<T> elements = new ArrayList<>(size);
       for (int i = 0; i < size; i++) {
-        elements.add(elementCoder.decode(dataInStream, nestedContext));
+        elements.add(elementCoder.decode(inStream, nestedContext));
       }
       return decodeToIterable(elements);
     } else {
@@ -146,9 +151,53 @@ public abstract class IterableLikeCoder<T, IterableT extends Iterable<T>>
       long count;
       // We don't know the size a priori.  Check if we're done with
       // each block of elements.
-      while ((count = VarInt.decodeLong(dataInStream)) > 0) {
+      while ((count = VarInt.decodeLong(inStream)) > 0) {
         while (count > 0) {
-          elements.add(elementCoder.decode(dataInStream, nestedContext));
+          elements.add(elementCoder.decode(inStream, nestedContext));
+          count -= 1;
+        }
+      }
+      return decodeToIterable(elements);
+    }
+  }
+
+  @Override
+  public void encodeToBuffer(IterableT iterable, EncodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    if (iterable == null) {
+      throw new CoderException("cannot encode a null " + iterableName);
+    }
+    if (iterable instanceof Collection) {
+      Context nestedContext = context.nested();
+      Collection<T> collection = (Collection<T>) iterable;
+      buffer.writeInt(collection.size());
+      for (T elem : collection) {
+        BufferCoders.encode(elementCoder, elem, buffer, nestedContext);
+      }
+    } else {
+      // The size of a general Iterable is only known after traversing it, so the block-counted
+      // encoding is produced by the stream-based implementation.
+      encode(iterable, buffer, context);
+    }
+  }
+
+  @Override
+  public IterableT decodeFromBuffer(ByteBuffer buffer, Context context)
+      throws IOException, CoderException {
+    Context nestedContext = context.nested();
+    int size = BufferCoders.readInt(buffer);
+    if (size >= 0) {
+      List<T> elements = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        elements.add(BufferCoders.decode(elementCoder, buffer, nestedContext));
+      }
+      return decodeToIterable(elements);
+    } else {
+      List<T> elements = new ArrayList<>();
+      long count;
+      while ((count = VarInt.decodeLong(buffer)) > 0) {
+        while (count > 0) {
+          elements.add(BufferCoders.decode(elementCoder, buffer, nestedContext));
           count -= 1;
         }
       }
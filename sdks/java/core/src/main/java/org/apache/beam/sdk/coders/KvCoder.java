@@ -22,6 +22,7 @@ import static org.apache.beam.sdk.util.Structs.addBoolean;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import org.apache.beam.sdk.util.CloudObject;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.PropertyNames;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
 import org.apache.beam.sdk.values.KV;
@@ -32,6 +33,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -41,7 +43,7 @@ import java.util.List;
  * @param <K> the type of the keys of the KVs being transcoded
  * @param <V> the type of the values of the KVs being transcoded
  */
-public class KvCoder<K, V> extends StandardCoder<KV<K, V>> {
+public class KvCoder<K, V> extends StandardCoder<KV<K, V>> implements BufferCoder<KV<K, V>> {
   public static <K, V> KvCoder<K, V> of(Coder<K> keyCoder,
                                         Coder<V> valueCoder) {
     return new KvCoder<>(keyCoder, valueCoder);
@@ -100,6 +102,26 @@ public class KvCoder<K, V> extends StandardCoder<KV<K, V>> {
     return KV.of(key, value);
   }
 
+  @Override
+  public void encodeToBuffer(KV<K, V> kv, EncodingBuffer buffer, Context context)
+      throws IOException, CoderException {
+    if (kv == null) {
+      throw new CoderException("cannot encode a null KV");
+    }
+    Context nestedContext = context.nested();
+    BufferCoders.encode(keyCoder, kv.getKey(), buffer, nestedContext);
+    BufferCoders.encode(valueCoder, kv.getValue(), buffer, nestedContext);
+  }
+
+  @Override
+  public KV<K, V> decodeFromBuffer(ByteBuffer buffer, Context context)
+      throws IOException, CoderException {
+    Context nestedContext = context.nested();
+    K key = BufferCoders.decode(keyCoder, buffer, nestedContext);
+    V value = BufferCoders.decode(valueCoder, buffer, nestedContext);
+    return KV.of(key, value);
+  }
+
   @Override
   public List<? extends Coder<?>> getCoderArguments() {
     return Arrays.asList(keyCoder, valueCoder);
@@ -0,0 +1,687 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.reflect.AvroEncode;
+import org.apache.avro.reflect.AvroIgnore;
+import org.apache.avro.reflect.AvroName;
+import org.apache.avro.reflect.AvroSchema;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.reflect.Stringable;
+import org.apache.avro.reflect.Union;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * A reader and writer for Avro reflect records that is specialized to a single class and
+ * {@link Schema}.
+ *
+ * <p>The schema and class are resolved once, when the codec is created, into a tree of typed
+ * field readers and writers. Encoding and decoding a record then walks that tree directly,
+ * instead of resolving each field, union branch and datum type per record as
+ * {@link org.apache.avro.reflect.ReflectDatumWriter} and
+ * {@link org.apache.avro.reflect.ReflectDatumReader} do. Primitive fields are read and written
+ * without boxing.
+ *
+ * <p>Only a subset of reflect schemas is supported: records of primitive, {@link String},
+ * {@code byte[]}, nested record, {@link List} and {@link Map} fields, and nullable unions of
+ * those. {@link #create} returns {@code null} for any other class or schema, in which case the
+ * reflect reader and writer should be used. The encoding produced is identical to the encoding of
+ * the reflect writer.
+ */
+final class SpecializedAvroCodec<T> {
+  /**
+   * Returns a {@link SpecializedAvroCodec} for the provided class and schema, or {@code null} if
+   * the class or schema is not supported.
+   */
+  @Nullable
+  static <T> SpecializedAvroCodec<T> create(Class<T> type, Schema schema) {
+    if (schema.getType() != Type.RECORD || IndexedRecord.class.isAssignableFrom(type)) {
+      return null;
+    }
+    try {
+      RecordCodec root = new Builder().record(type, schema);
+      return new SpecializedAvroCodec<>(type, root);
+    } catch (UnsupportedSchemaException | SecurityException e) {
+      return null;
+    }
+  }
+
+  private final Class<T> type;
+  private final RecordCodec root;
+
+  private SpecializedAvroCodec(Class<T> type, RecordCodec root) {
+    this.type = type;
+    this.root = root;
+  }
+
+  /**
+   * Writes the provided record to the encoder.
+   */
+  void write(T value, Encoder out) throws IOException {
+    root.write(value, out);
+  }
+
+  /**
+   * Reads a record from the decoder. If {@code reuse} is not {@code null}, its fields are
+   * overwritten and it is returned instead of a newly constructed record; nested records are
+   * reused in the same way.
+   */
+  T read(@Nullable T reuse, Decoder in) throws IOException {
+    return type.cast(root.read(reuse, in));
+  }
+
+  /**
+   * Thrown while building a codec for a class or schema that is not supported.
+   */
+  private static class UnsupportedSchemaException extends Exception {
+    private UnsupportedSchemaException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Resolves a class and schema into a tree of {@link ValueCodec ValueCodecs}.
+   */
+  private static class Builder {
+    // Schemas of the records currently being resolved, used to reject recursive types.
+    private final Set<Schema> activeSchemas = new HashSet<>();
+
+    private RecordCodec record(Class<?> clazz, Schema schema)
+        throws UnsupportedSchemaException {
+      if (clazz.isInterface()
+          || Modifier.isAbstract(clazz.getModifiers())
+          || clazz.isAnnotationPresent(AvroSchema.class)
+          || clazz.isAnnotationPresent(Union.class)
+          || clazz.isAnnotationPresent(Stringable.class)) {
+        throw new UnsupportedSchemaException("unsupported record class " + clazz);
+      }
+      if (!activeSchemas.add(schema)) {
+        throw new UnsupportedSchemaException("recursive schema " + schema.getFullName());
+      }
+      Map<String, Field> javaFields = javaFields(clazz);
+      List<Schema.Field> schemaFields = schema.getFields();
+      FieldCodec[] fields = new FieldCodec[schemaFields.size()];
+      for (int i = 0; i < fields.length; i++) {
+        Schema.Field schemaField = schemaFields.get(i);
+        Field javaField = javaFields.get(schemaField.name());
+        if (javaField == null) {
+          throw new UnsupportedSchemaException("no field for " + schemaField.name());
+        }
+        javaField.setAccessible(true);
+        fields[i] = field(javaField, schemaField.schema());
+      }
+      activeSchemas.remove(schema);
+
+      Constructor<?> constructor;
+      try {
+        constructor = clazz.getDeclaredConstructor();
+      } catch (NoSuchMethodException e) {
+        throw new UnsupportedSchemaException("no default constructor for " + clazz);
+      }
+      constructor.setAccessible(true);
+      return new RecordCodec(clazz, constructor, fields);
+    }
+
+    /**
+     * Returns the fields of the class and its superclasses by their Avro name, in the same way as
+     * {@link org.apache.avro.reflect.ReflectData}.
+     */
+    private Map<String, Field> javaFields(Class<?> clazz) throws UnsupportedSchemaException {
+      Map<String, Field> fields = new HashMap<>();
+      for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if ((field.getModifiers() & (Modifier.TRANSIENT | Modifier.STATIC)) != 0
+              || field.isAnnotationPresent(AvroIgnore.class)) {
+            continue;
+          }
+          if (field.isAnnotationPresent(AvroEncode.class)
+              || field.isAnnotationPresent(AvroSchema.class)
+              || field.isAnnotationPresent(Stringable.class)
+              || field.isAnnotationPresent(Union.class)) {
+            throw new UnsupportedSchemaException("custom encoding for field " + field);
+          }
+          AvroName avroName = field.getAnnotation(AvroName.class);
+          String name = avroName != null ? avroName.value() : field.getName();
+          if (fields.put(name, field) != null) {
+            throw new UnsupportedSchemaException("duplicate field " + name);
+          }
+        }
+      }
+      return fields;
+    }
+
+    private FieldCodec field(Field field, Schema schema) throws UnsupportedSchemaException {
+      Class<?> fieldType = field.getType();
+      if (fieldType.isPrimitive()) {
+        checkProperties(schema, null);
+        if (fieldType == int.class && schema.getType() == Type.INT) {
+          return new IntFieldCodec(field);
+        } else if (fieldType == long.class && schema.getType() == Type.LONG) {
+          return new LongFieldCodec(field);
+        } else if (fieldType == double.class && schema.getType() == Type.DOUBLE) {
+          return new DoubleFieldCodec(field);
+        } else if (fieldType == float.class && schema.getType() == Type.FLOAT) {
+          return new FloatFieldCodec(field);
+        } else if (fieldType == boolean.class && schema.getType() == Type.BOOLEAN) {
+          return new BooleanFieldCodec(field);
+        }
+        throw new UnsupportedSchemaException("unsupported field " + field);
+      }
+      return new ObjectFieldCodec(field, value(fieldType, schema));
+    }
+
+    private ValueCodec value(Class<?> clazz, Schema schema) throws UnsupportedSchemaException {
+      switch (schema.getType()) {
+        case INT:
+          return expect(clazz, Integer.class, schema, IntCodec.INSTANCE);
+        case LONG:
+          return expect(clazz, Long.class, schema, LongCodec.INSTANCE);
+        case DOUBLE:
+          return expect(clazz, Double.class, schema, DoubleCodec.INSTANCE);
+        case FLOAT:
+          return expect(clazz, Float.class, schema, FloatCodec.INSTANCE);
+        case BOOLEAN:
+          return expect(clazz, Boolean.class, schema, BooleanCodec.INSTANCE);
+        case STRING:
+          return expect(clazz, String.class, schema, StringCodec.INSTANCE);
+        case BYTES:
+          // Reflect schemas for byte[] name the array class.
+          checkProperties(schema, byte[].class);
+          return expect(clazz, byte[].class, schema, BytesCodec.INSTANCE);
+        case RECORD:
+          if (clazz == Object.class) {
+            // The element class of a list or map is erased, so resolve it from the schema in the
+            // same way as the reflect reader.
+            clazz = ReflectData.get().getClass(schema);
+            if (clazz == null) {
+              throw new UnsupportedSchemaException("no class for " + schema.getFullName());
+            }
+          }
+          return record(clazz, schema);
+        case ARRAY:
+          if (clazz != List.class) {
+            throw new UnsupportedSchemaException("unsupported array class " + clazz);
+          }
+          // Reflect schemas for collections name the declared collection class.
+          checkProperties(schema, List.class);
+          return new ListCodec(value(Object.class, schema.getElementType()));
+        case MAP:
+          if (clazz != Map.class) {
+            throw new UnsupportedSchemaException("unsupported map class " + clazz);
+          }
+          checkProperties(schema, null);
+          return new MapCodec(value(Object.class, schema.getValueType()));
+        case UNION:
+          return nullable(clazz, schema);
+        default:
+          throw new UnsupportedSchemaException("unsupported schema " + schema);
+      }
+    }
+
+    private ValueCodec nullable(Class<?> clazz, Schema schema) throws UnsupportedSchemaException {
+      List<Schema> branches = schema.getTypes();
+      if (branches.size() != 2) {
+        throw new UnsupportedSchemaException("unsupported union " + schema);
+      }
+      int nullIndex;
+      if (branches.get(0).getType() == Type.NULL) {
+        nullIndex = 0;
+      } else if (branches.get(1).getType() == Type.NULL) {
+        nullIndex = 1;
+      } else {
+        throw new UnsupportedSchemaException("unsupported union " + schema);
+      }
+      return new NullableCodec(nullIndex, value(clazz, branches.get(1 - nullIndex)));
+    }
+
+    /**
+     * Element and value types of lists and maps are erased, so {@link Object} is accepted for any
+     * schema whose decoded class is fixed by the schema alone.
+     */
+    private static ValueCodec expect(
+        Class<?> clazz, Class<?> expected, Schema schema, ValueCodec codec)
+        throws UnsupportedSchemaException {
+      if (clazz != expected && clazz != Object.class) {
+        throw new UnsupportedSchemaException(
+            String.format("unsupported class %s for %s", clazz, expected));
+      }
+      if (expected != byte[].class) {
+        checkProperties(schema, null);
+      }
+      return codec;
+    }
+
+    /**
+     * Rejects schemas with logical types or with reflect properties that select a different Java
+     * class than the one this codec reads and writes.
+     */
+    private static void checkProperties(Schema schema, @Nullable Class<?> javaClass)
+        throws UnsupportedSchemaException {
+      for (Map.Entry<String, Object> prop : schema.getObjectProps().entrySet()) {
+        boolean expectedClass = javaClass != null
+            && prop.getKey().equals("java-class")
+            && javaClass.getName().equals(prop.getValue());
+        if (prop.getKey().startsWith("java-") && !expectedClass) {
+          throw new UnsupportedSchemaException("unsupported property " + prop.getKey());
+        }
+      }
+      if (schema.getLogicalType() != null) {
+        throw new UnsupportedSchemaException("unsupported logical type " + schema);
+      }
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads and writes a single value of a schema.
+   */
+  private abstract static class ValueCodec {
+    abstract void write(Object value, Encoder out) throws IOException;
+
+    abstract Object read(@Nullable Object reuse, Decoder in) throws IOException;
+  }
+
+  /**
+   * Reads and writes a single field of a record.
+   */
+  private abstract static class FieldCodec {
+    protected final Field field;
+
+    protected FieldCodec(Field field) {
+      this.field = field;
+    }
+
+    abstract void write(Object record, Encoder out) throws IOException, IllegalAccessException;
+
+    abstract void read(Object record, Decoder in) throws IOException, IllegalAccessException;
+  }
+
+  private static class RecordCodec extends ValueCodec {
+    private final Class<?> clazz;
+    private final Constructor<?> constructor;
+    private final FieldCodec[] fields;
+
+    private RecordCodec(Class<?> clazz, Constructor<?> constructor, FieldCodec[] fields) {
+      this.clazz = clazz;
+      this.constructor = constructor;
+      this.fields = fields;
+    }
+
+    @Override
+    void write(Object record, Encoder out) throws IOException {
+      try {
+        for (FieldCodec field : fields) {
+          field.write(record, out);
+        }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      Object record = reuse != null && reuse.getClass() == clazz ? reuse : newInstance();
+      try {
+        for (FieldCodec field : fields) {
+          field.read(record, in);
+        }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+      return record;
+    }
+
+    private Object newInstance() {
+      try {
+        return constructor.newInstance();
+      } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+        throw new RuntimeException("Unable to construct " + clazz, e);
+      }
+    }
+  }
+
+  private static class IntFieldCodec extends FieldCodec {
+    private IntFieldCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object record, Encoder out) throws IOException, IllegalAccessException {
+      out.writeInt(field.getInt(record));
+    }
+
+    @Override
+    void read(Object record, Decoder in) throws IOException, IllegalAccessException {
+      field.setInt(record, in.readInt());
+    }
+  }
+
+  private static class LongFieldCodec extends FieldCodec {
+    private LongFieldCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object record, Encoder out) throws IOException, IllegalAccessException {
+      out.writeLong(field.getLong(record));
+    }
+
+    @Override
+    void read(Object record, Decoder in) throws IOException, IllegalAccessException {
+      field.setLong(record, in.readLong());
+    }
+  }
+
+  private static class DoubleFieldCodec extends FieldCodec {
+    private DoubleFieldCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object record, Encoder out) throws IOException, IllegalAccessException {
+      out.writeDouble(field.getDouble(record));
+    }
+
+    @Override
+    void read(Object record, Decoder in) throws IOException, IllegalAccessException {
+      field.setDouble(record, in.readDouble());
+    }
+  }
+
+  private static class FloatFieldCodec extends FieldCodec {
+    private FloatFieldCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object record, Encoder out) throws IOException, IllegalAccessException {
+      out.writeFloat(field.getFloat(record));
+    }
+
+    @Override
+    void read(Object record, Decoder in) throws IOException, IllegalAccessException {
+      field.setFloat(record, in.readFloat());
+    }
+  }
+
+  private static class BooleanFieldCodec extends FieldCodec {
+    private BooleanFieldCodec(Field field) {
+      super(field);
+    }
+
+    @Override
+    void write(Object record, Encoder out) throws IOException, IllegalAccessException {
+      out.writeBoolean(field.getBoolean(record));
+    }
+
+    @Override
+    void read(Object record, Decoder in) throws IOException, IllegalAccessException {
+      field.setBoolean(record, in.readBoolean());
+    }
+  }
+
+  private static class ObjectFieldCodec extends FieldCodec {
+    private final ValueCodec value;
+
+    private ObjectFieldCodec(Field field, ValueCodec value) {
+      super(field);
+      this.value = value;
+    }
+
+    @Override
+    void write(Object record, Encoder out) throws IOException, IllegalAccessException {
+      Object fieldValue = field.get(record);
+      try {
+        value.write(fieldValue, out);
+      } catch (NullPointerException e) {
+        throw npeWithFieldName(e);
+      }
+    }
+
+    @Override
+    void read(Object record, Decoder in) throws IOException, IllegalAccessException {
+      field.set(record, value.read(field.get(record), in));
+    }
+
+    private NullPointerException npeWithFieldName(NullPointerException cause) {
+      NullPointerException result =
+          new NullPointerException(cause.getMessage() + " in field " + field.getName());
+      result.initCause(cause.getCause() != null ? cause.getCause() : cause);
+      return result;
+    }
+  }
+
+  private static class IntCodec extends ValueCodec {
+    private static final IntCodec INSTANCE = new IntCodec();
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      out.writeInt((Integer) value);
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      return in.readInt();
+    }
+  }
+
+  private static class LongCodec extends ValueCodec {
+    private static final LongCodec INSTANCE = new LongCodec();
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      out.writeLong((Long) value);
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      return in.readLong();
+    }
+  }
+
+  private static class DoubleCodec extends ValueCodec {
+    private static final DoubleCodec INSTANCE = new DoubleCodec();
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      out.writeDouble((Double) value);
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      return in.readDouble();
+    }
+  }
+
+  private static class FloatCodec extends ValueCodec {
+    private static final FloatCodec INSTANCE = new FloatCodec();
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      out.writeFloat((Float) value);
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      return in.readFloat();
+    }
+  }
+
+  private static class BooleanCodec extends ValueCodec {
+    private static final BooleanCodec INSTANCE = new BooleanCodec();
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      out.writeBoolean((Boolean) value);
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      return in.readBoolean();
+    }
+  }
+
+  private static class StringCodec extends ValueCodec {
+    private static final StringCodec INSTANCE = new StringCodec();
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      out.writeString((String) value);
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      return in.readString();
+    }
+  }
+
+  private static class BytesCodec extends ValueCodec {
+    private static final BytesCodec INSTANCE = new BytesCodec();
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      out.writeBytes((byte[]) value);
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      ByteBuffer buffer = in.readBytes(null);
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+  }
+
+  private static class NullableCodec extends ValueCodec {
+    private final int nullIndex;
+    private final ValueCodec value;
+
+    private NullableCodec(int nullIndex, ValueCodec value) {
+      this.nullIndex = nullIndex;
+      this.value = value;
+    }
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      if (value == null) {
+        out.writeIndex(nullIndex);
+        out.writeNull();
+      } else {
+        out.writeIndex(1 - nullIndex);
+        this.value.write(value, out);
+      }
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      if (in.readIndex() == nullIndex) {
+        in.readNull();
+        return null;
+      }
+      return value.read(reuse, in);
+    }
+  }
+
+  private static class ListCodec extends ValueCodec {
+    private final ValueCodec element;
+
+    private ListCodec(ValueCodec element) {
+      this.element = element;
+    }
+
+    @Override
+    void write(Object value, Encoder out) throws IOException {
+      List<?> list = (List<?>) value;
+      out.writeArrayStart();
+      out.setItemCount(list.size());
+      for (Object item : list) {
+        out.startItem();
+        element.write(item, out);
+      }
+      out.writeArrayEnd();
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      long count = in.readArrayStart();
+      List<Object> list = new ArrayList<>((int) Math.min(count, Integer.MAX_VALUE));
+      while (count > 0) {
+        for (long i = 0; i < count; i++) {
+          list.add(element.read(null, in));
+        }
+        count = in.arrayNext();
+      }
+      return list;
+    }
+  }
+
+  private static class MapCodec extends ValueCodec {
+    private final ValueCodec value;
+
+    private MapCodec(ValueCodec value) {
+      this.value = value;
+    }
+
+    @Override
+    void write(Object map, Encoder out) throws IOException {
+      Map<?, ?> entries = (Map<?, ?>) map;
+      out.writeMapStart();
+      out.setItemCount(entries.size());
+      for (Map.Entry<?, ?> entry : entries.entrySet()) {
+        out.startItem();
+        out.writeString(entry.getKey().toString());
+        value.write(entry.getValue(), out);
+      }
+      out.writeMapEnd();
+    }
+
+    @Override
+    Object read(@Nullable Object reuse, Decoder in) throws IOException {
+      long count = in.readMapStart();
+      Map<String, Object> map = new HashMap<>();
+      while (count > 0) {
+        for (long i = 0; i < count; i++) {
+          String key = in.readString();
+          map.put(key, value.read(null, in));
+        }
+        count = in.mapNext();
+      }
+      return map;
+    }
+  }
+}
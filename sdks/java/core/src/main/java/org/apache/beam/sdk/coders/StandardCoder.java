@@ -216,6 +216,12 @@ public abstract class StandardCoder<T> implements Coder<T> {
     return false;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @return the value if it is not null and this coder is consistent with equals, and otherwise
+   * the {@link EncodedKey} of the value.
+   */
   @Override
   public Object structuralValue(T value) throws Exception {
     if (value != null && consistentWithEquals()) {
@@ -224,7 +230,7 @@ public abstract class StandardCoder<T> implements Coder<T> {
       try {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
         encode(value, os, Context.OUTER);
-        return new StructuralByteArray(os.toByteArray());
+        return EncodedKey.of(os.toByteArray());
       } catch (Exception exn) {
         throw new IllegalArgumentException(
             "Unable to encode element '" + value + "' with coder '" + this + "'.", exn);
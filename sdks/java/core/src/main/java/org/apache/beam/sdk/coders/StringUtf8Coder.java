@@ -17,23 +17,22 @@
  */
 package org.apache.beam.sdk.coders;
 
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.ExposedByteArrayOutputStream;
 import org.apache.beam.sdk.util.StreamUtils;
+import org.apache.beam.sdk.util.Utf8Encoding;
 import org.apache.beam.sdk.util.VarInt;
 
-import com.google.common.base.Utf8;
 import com.google.common.io.ByteStreams;
-import com.google.common.io.CountingOutputStream;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -41,7 +40,7 @@ import java.nio.charset.StandardCharsets;
  * If in a nested context, prefixes the string with an integer length field,
  * encoded via a {@link VarIntCoder}.
  */
-public class StringUtf8Coder extends AtomicCoder<String> {
+public class StringUtf8Coder extends AtomicCoder<String> implements BufferCoder<String> {
 
   @JsonCreator
   public static StringUtf8Coder of() {
@@ -52,20 +51,96 @@ public class StringUtf8Coder extends AtomicCoder<String> {
 
   private static final StringUtf8Coder INSTANCE = new StringUtf8Coder();
 
-  private static void writeString(String value, DataOutputStream dos)
+  /**
+   * Strings of at most this many chars are tried on an ASCII fast path through a per-thread
+   * scratch array. Longer or non-ASCII strings go through {@link String#getBytes} and
+   * {@code new String(bytes, UTF_8)}, which the JDK already optimizes well; routing those
+   * through the hand-written encoder was measured to be slower.
+   */
+  private static final int SHORT_STRING_CHARS = 64;
+
+  /**
+   * Size of the per-thread scratch array used for short strings in the stream path, and for
+   * decoding from a {@link ByteBuffer} that has no accessible backing array.
+   */
+  private static final int SCRATCH_BYTES = 8 * 1024;
+
+  private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[SCRATCH_BYTES];
+    }
+  };
+
+  private static void writeString(String value, OutputStream outStream) throws IOException {
+    if (outStream instanceof EncodingBuffer) {
+      writeString(value, (EncodingBuffer) outStream, true);
+    } else if (!writeShortAscii(value, outStream)) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      VarInt.encode(bytes.length, outStream);
+      outStream.write(bytes);
+    }
+  }
+
+  /**
+   * Writes a short, all-ASCII string with its length prefix and returns {@code true}, or writes
+   * nothing and returns {@code false} if the string is too long or not ASCII.
+   */
+  private static boolean writeShortAscii(String value, OutputStream outStream)
       throws IOException {
+    int length = value.length();
+    if (length > SHORT_STRING_CHARS) {
+      return false;
+    }
+    byte[] scratch = SCRATCH.get();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        return false;
+      }
+      scratch[i] = (byte) c;
+    }
+    // The length fits in a single VarInt byte.
+    outStream.write(length);
+    outStream.write(scratch, 0, length);
+    return true;
+  }
+
+  /**
+   * Writes a string to an {@link EncodingBuffer}, with its length prefix if {@code withLength} is
+   * set. As in the stream path, short ASCII strings are written directly into the buffer, and all
+   * other strings go through {@link String#getBytes}.
+   */
+  private static void writeString(String value, EncodingBuffer buffer, boolean withLength) {
+    if (value.length() <= SHORT_STRING_CHARS) {
+      int length = Utf8Encoding.encodedLength(value);
+      if (length == value.length()) {
+        if (withLength) {
+          buffer.writeVarInt(length);
+        }
+        buffer.writeUtf8(value, length);
+        return;
+      }
+    }
     byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-    VarInt.encode(bytes.length, dos);
-    dos.write(bytes);
+    if (withLength) {
+      buffer.writeVarInt(bytes.length);
+    }
+    buffer.write(bytes, 0, bytes.length);
   }
 
-  private static String readString(DataInputStream dis) throws IOException {
-    int len = VarInt.decodeInt(dis);
+  private static String readString(InputStream inStream) throws IOException {
+    int len = VarInt.decodeInt(inStream);
     if (len < 0) {
       throw new CoderException("Invalid encoded string length: " + len);
     }
+    if (len <= SHORT_STRING_CHARS) {
+      byte[] scratch = SCRATCH.get();
+      ByteStreams.readFully(inStream, scratch, 0, len);
+      return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
     byte[] bytes = new byte[len];
-    dis.readFully(bytes);
+    ByteStreams.readFully(inStream, bytes);
     return new String(bytes, StandardCharsets.UTF_8);
   }
 
@@ -80,12 +155,13 @@ public class StringUtf8Coder extends AtomicCoder<String> {
     if (context.isWholeStream) {
       byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
       if (outStream instanceof ExposedByteArrayOutputStream) {
+        // The stream takes ownership of the array, so this is the only copy made.
         ((ExposedByteArrayOutputStream) outStream).writeAndOwn(bytes);
       } else {
         outStream.write(bytes);
       }
     } else {
-      writeString(value, new DataOutputStream(outStream));
+      writeString(value, outStream);
     }
   }
 
@@ -93,11 +169,10 @@ public class StringUtf8Coder extends AtomicCoder<String> {
   public String decode(InputStream inStream, Context context)
       throws IOException {
     if (context.isWholeStream) {
-      byte[] bytes = StreamUtils.getBytes(inStream);
-      return new String(bytes, StandardCharsets.UTF_8);
+      return new String(StreamUtils.getBytes(inStream), StandardCharsets.UTF_8);
     } else {
       try {
-        return readString(new DataInputStream(inStream));
+        return readString(inStream);
       } catch (EOFException | UTFDataFormatException exn) {
         // These exceptions correspond to decoding problems, so change
         // what kind of exception they're branded as.
@@ -106,6 +181,47 @@ public class StringUtf8Coder extends AtomicCoder<String> {
     }
   }
 
+  @Override
+  public void encodeToBuffer(String value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null String");
+    }
+    writeString(value, buffer, !context.isWholeStream);
+  }
+
+  @Override
+  public String decodeFromBuffer(ByteBuffer buffer, Context context)
+      throws IOException, CoderException {
+    int length;
+    if (context.isWholeStream) {
+      length = buffer.remaining();
+    } else {
+      try {
+        length = VarInt.decodeInt(buffer);
+      } catch (EOFException | UTFDataFormatException exn) {
+        throw new CoderException(exn);
+      }
+      if (length < 0) {
+        throw new CoderException("Invalid encoded string length: " + length);
+      }
+      if (length > buffer.remaining()) {
+        throw new CoderException(new EOFException());
+      }
+    }
+    if (buffer.hasArray()) {
+      // Decode directly from the backing array rather than copying the bytes out first.
+      int position = buffer.position();
+      String value = new String(
+          buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+      buffer.position(position + length);
+      return value;
+    }
+    byte[] bytes = length <= SCRATCH_BYTES ? SCRATCH.get() : new byte[length];
+    buffer.get(bytes, 0, length);
+    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -128,14 +244,11 @@ public class StringUtf8Coder extends AtomicCoder<String> {
     if (value == null) {
       throw new CoderException("cannot encode a null String");
     }
+    int length = Utf8Encoding.encodedLength(value);
     if (context.isWholeStream) {
-      return Utf8.encodedLength(value);
+      return length;
     } else {
-      CountingOutputStream countingStream =
-          new CountingOutputStream(ByteStreams.nullOutputStream());
-      DataOutputStream stream = new DataOutputStream(countingStream);
-      writeString(value, stream);
-      return countingStream.getCount();
+      return VarInt.getLength(length) + length;
     }
   }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.coders;
 
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.VarInt;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -26,13 +27,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 
 /**
  * A {@link Coder} that encodes {@link Integer Integers} using between 1 and 5 bytes. Negative
  * numbers always take 5 bytes, so {@link BigEndianIntegerCoder} may be preferable for
  * integers that are known to often be large or negative.
  */
-public class VarIntCoder extends AtomicCoder<Integer> {
+public class VarIntCoder extends AtomicCoder<Integer> implements BufferCoder<Integer> {
 
   @JsonCreator
   public static VarIntCoder of() {
@@ -67,6 +69,27 @@ public class VarIntCoder extends AtomicCoder<Integer> {
     }
   }
 
+  @Override
+  public void encodeToBuffer(Integer value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Integer");
+    }
+    buffer.writeVarInt(value.intValue());
+  }
+
+  @Override
+  public Integer decodeFromBuffer(ByteBuffer buffer, Context context)
+      throws IOException, CoderException {
+    try {
+      return VarInt.decodeInt(buffer);
+    } catch (EOFException | UTFDataFormatException exn) {
+      // These exceptions correspond to decoding problems, so change
+      // what kind of exception they're branded as.
+      throw new CoderException(exn);
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -17,6 +17,7 @@
  */
 package org.apache.beam.sdk.coders;
 
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.VarInt;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -26,13 +27,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 
 /**
  * A {@link Coder} that encodes {@link Long Longs} using between 1 and 10 bytes. Negative
  * numbers always take 10 bytes, so {@link BigEndianLongCoder} may be preferable for
  * longs that are known to often be large or negative.
  */
-public class VarLongCoder extends AtomicCoder<Long> {
+public class VarLongCoder extends AtomicCoder<Long> implements BufferCoder<Long> {
 
   @JsonCreator
   public static VarLongCoder of() {
@@ -66,6 +68,27 @@ public class VarLongCoder extends AtomicCoder<Long> {
     }
   }
 
+  @Override
+  public void encodeToBuffer(Long value, EncodingBuffer buffer, Context context)
+      throws CoderException {
+    if (value == null) {
+      throw new CoderException("cannot encode a null Long");
+    }
+    buffer.writeVarLong(value.longValue());
+  }
+
+  @Override
+  public Long decodeFromBuffer(ByteBuffer buffer, Context context)
+      throws IOException, CoderException {
+    try {
+      return VarInt.decodeLong(buffer);
+    } catch (EOFException | UTFDataFormatException exn) {
+      // These exceptions correspond to decoding problems, so change
+      // what kind of exception they're branded as.
+      throw new CoderException(exn);
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
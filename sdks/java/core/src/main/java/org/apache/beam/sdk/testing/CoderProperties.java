@@ -26,10 +26,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import org.apache.beam.sdk.coders.BufferCoders;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.Coder.NonDeterministicException;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.EncodingBuffer;
 import org.apache.beam.sdk.util.PropertyNames;
 import org.apache.beam.sdk.util.SerializableUtils;
 import org.apache.beam.sdk.util.Serializer;
@@ -47,6 +49,7 @@ import com.google.common.io.CountingOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -124,6 +127,49 @@ public class CoderProperties {
     assertThat(decodeEncode(coder, context, value), equalTo(value));
   }
 
+  /**
+   * Verifies that for the given {@code Coder<T>} and value of type {@code T}, encoding with
+   * {@link BufferCoders} produces the same bytes as the stream-based API, and decoding those bytes
+   * with {@link BufferCoders} consumes exactly the encoded bytes and yields a value with the same
+   * encoding as the value decoded by the stream-based API, in any {@code Coder.Context}.
+   */
+  public static <T> void coderBufferEncodingConsistentWithStream(
+      Coder<T> coder, T value)
+      throws Exception {
+    for (Coder.Context context : ALL_CONTEXTS) {
+      coderBufferEncodingConsistentWithStreamInContext(coder, context, value);
+    }
+  }
+
+  /**
+   * Verifies that for the given {@code Coder<T>}, {@code Coder.Context}, and value of type
+   * {@code T}, encoding with {@link BufferCoders} produces the same bytes as the stream-based
+   * API, and decoding those bytes with {@link BufferCoders} consumes exactly the encoded bytes and
+   * yields a value with the same encoding as the value decoded by the stream-based API.
+   */
+  public static <T> void coderBufferEncodingConsistentWithStreamInContext(
+      Coder<T> coder, Coder.Context context, T value)
+      throws Exception {
+    byte[] streamEncoded = encode(coder, context, value);
+    EncodingBuffer buffer = new EncodingBuffer(0);
+    BufferCoders.encode(coder, value, buffer, context);
+    assertThat(buffer.toByteArray(), equalTo(streamEncoded));
+
+    ByteBuffer encoded = ByteBuffer.allocate(streamEncoded.length + 1);
+    encoded.put(streamEncoded);
+    if (context == Coder.Context.NESTED) {
+      // A trailing byte that must not be consumed by a nested decode.
+      encoded.put((byte) 1);
+    }
+    encoded.flip();
+    T decoded = BufferCoders.decode(coder, encoded, context);
+    assertThat("consumed bytes equal to encoded bytes", encoded.position(),
+        equalTo(streamEncoded.length));
+    assertThat(
+        encode(coder, context, decoded),
+        equalTo(encode(coder, context, decode(coder, context, streamEncoded))));
+  }
+
   /**
    * Verifies that for the given {@code Coder<Collection<T>>},
    * and value of type {@code Collection<T>}, encoding followed by decoding yields an
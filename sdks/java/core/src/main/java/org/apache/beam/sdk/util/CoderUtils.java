@@ -19,6 +19,10 @@ package org.apache.beam.sdk.util;
 
 import static org.apache.beam.sdk.util.Structs.addList;
 
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
+import org.apache.beam.sdk.coders.BufferCoder;
+import org.apache.beam.sdk.coders.BufferCoders;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.IterableCoder;
@@ -40,13 +44,14 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.ref.SoftReference;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.TypeVariable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 
 /**
  * Utilities for working with Coders.
@@ -64,25 +69,14 @@ public final class CoderUtils {
    */
   public static final String KIND_STREAM = "kind:stream";
 
-  private static ThreadLocal<SoftReference<ExposedByteArrayOutputStream>>
-      threadLocalOutputStream = new ThreadLocal<>();
-
-  /**
-   * If true, a call to {@code encodeToByteArray} is already on the call stack.
-   */
-  private static ThreadLocal<Boolean> threadLocalOutputStreamInUse = new ThreadLocal<Boolean>() {
-    @Override
-    protected Boolean initialValue() {
-      return false;
-    }
-  };
+  private static ThreadLocal<SoftReference<StreamPool>> threadLocalStreamPool =
+      new ThreadLocal<>();
 
   /**
    * Encodes the given value using the specified Coder, and returns
    * the encoded bytes.
    *
-   * <p>This function is not reentrant; it should not be called from methods of the provided
-   * {@link Coder}.
+   * <p>This function is reentrant; it may be called from methods of the provided {@link Coder}.
    */
   public static <T> byte[] encodeToByteArray(Coder<T> coder, T value) throws CoderException {
     return encodeToByteArray(coder, value, Coder.Context.OUTER);
@@ -90,22 +84,105 @@ public final class CoderUtils {
 
   public static <T> byte[] encodeToByteArray(Coder<T> coder, T value, Coder.Context context)
       throws CoderException {
-    if (threadLocalOutputStreamInUse.get()) {
-      // encodeToByteArray() is called recursively and the thread local stream is in use,
-      // allocating a new one.
-      ByteArrayOutputStream stream = new ExposedByteArrayOutputStream();
+    StreamPool pool = getThreadLocalStreamPool();
+    if (coder instanceof BufferCoder) {
+      EncodingBuffer buffer = pool.acquireBuffer();
+      try {
+        encodeToBuffer(coder, value, buffer, context);
+        return buffer.toByteArray();
+      } finally {
+        pool.release(buffer);
+      }
+    }
+    ExposedByteArrayOutputStream stream = pool.acquire();
+    try {
       encodeToSafeStream(coder, value, stream, context);
       return stream.toByteArray();
-    } else {
-      threadLocalOutputStreamInUse.set(true);
+    } finally {
+      pool.release(stream);
+    }
+  }
+
+  /**
+   * Encodes the given value using the specified Coder into {@code buffer}, starting at
+   * {@code offset}, and returns the length of the encoding.
+   *
+   * <p>If the encoding is longer than the {@code buffer.length - offset} bytes available,
+   * {@code buffer} is left unchanged, and the caller may retry with a buffer that has at least
+   * the returned number of bytes available.
+   */
+  public static <T> int encodeToByteArray(
+      Coder<T> coder, T value, Coder.Context context, byte[] buffer, int offset)
+      throws CoderException {
+    checkPositionIndex(offset, buffer.length);
+    StreamPool pool = getThreadLocalStreamPool();
+    if (coder instanceof BufferCoder) {
+      EncodingBuffer encoded = pool.acquireBuffer();
       try {
-        ByteArrayOutputStream stream = getThreadLocalOutputStream();
-        encodeToSafeStream(coder, value, stream, context);
-        return stream.toByteArray();
+        encodeToBuffer(coder, value, encoded, context);
+        int length = encoded.size();
+        if (length <= buffer.length - offset) {
+          encoded.asByteBuffer().get(buffer, offset, length);
+        }
+        return length;
       } finally {
-        threadLocalOutputStreamInUse.set(false);
+        pool.release(encoded);
       }
     }
+    ExposedByteArrayOutputStream stream = pool.acquire();
+    try {
+      encodeToSafeStream(coder, value, stream, context);
+      int length = stream.size();
+      if (length <= buffer.length - offset) {
+        stream.asByteBuffer().get(buffer, offset, length);
+      }
+      return length;
+    } finally {
+      pool.release(stream);
+    }
+  }
+
+  /**
+   * Encodes the given value using the specified Coder, and returns a read-only
+   * {@link ByteBuffer} containing the encoded bytes without copying them.
+   *
+   * <p>The returned {@link ByteBuffer} is backed by a buffer that is reused by this thread, and
+   * is only valid until the next call to {@code encodeToByteBuffer} on the same thread. Callers
+   * that need to retain the encoded bytes should use {@link #encodeToByteArray} instead.
+   */
+  public static <T> ByteBuffer encodeToByteBuffer(Coder<T> coder, T value)
+      throws CoderException {
+    return encodeToByteBuffer(coder, value, Coder.Context.OUTER);
+  }
+
+  public static <T> ByteBuffer encodeToByteBuffer(Coder<T> coder, T value, Coder.Context context)
+      throws CoderException {
+    StreamPool pool = getThreadLocalStreamPool();
+    pool.releaseLent();
+    if (coder instanceof BufferCoder) {
+      EncodingBuffer buffer = pool.acquireBuffer();
+      try {
+        encodeToBuffer(coder, value, buffer, context);
+      } catch (CoderException | RuntimeException exn) {
+        pool.release(buffer);
+        throw exn;
+      }
+      // A call made while encoding may have lent out another buffer, which is now invalid.
+      pool.releaseLent();
+      pool.lentBuffer = buffer;
+      return buffer.asByteBuffer().asReadOnlyBuffer();
+    }
+    ExposedByteArrayOutputStream stream = pool.acquire();
+    try {
+      encodeToSafeStream(coder, value, stream, context);
+    } catch (CoderException | RuntimeException exn) {
+      pool.release(stream);
+      throw exn;
+    }
+    // A call made while encoding may have lent out another stream, which is now invalid.
+    pool.releaseLent();
+    pool.lent = stream;
+    return stream.asByteBuffer();
   }
 
   /**
@@ -124,6 +201,22 @@ public final class CoderUtils {
     }
   }
 
+  /**
+   * Encodes {@code value} to the given {@link EncodingBuffer} with the {@link BufferCoder} API of
+   * the specified Coder.
+   */
+  private static <T> void encodeToBuffer(
+      Coder<T> coder, T value, EncodingBuffer buffer, Coder.Context context)
+      throws CoderException {
+    try {
+      BufferCoders.encode(coder, value, buffer, context);
+    } catch (IOException exn) {
+      Throwables.propagateIfPossible(exn, CoderException.class);
+      throw new IllegalArgumentException(
+          "Forbidden IOException when writing to EncodingBuffer", exn);
+    }
+  }
+
   /**
    * Decodes the given bytes using the specified Coder, and returns
    * the resulting decoded value.
@@ -135,6 +228,9 @@ public final class CoderUtils {
 
   public static <T> T decodeFromByteArray(
       Coder<T> coder, byte[] encodedValue, Coder.Context context) throws CoderException {
+    if (coder instanceof BufferCoder) {
+      return decodeFromBuffer(coder, ByteBuffer.wrap(encodedValue), context);
+    }
     try (ExposedByteArrayInputStream stream = new ExposedByteArrayInputStream(encodedValue)) {
       T result = decodeFromSafeStream(coder, stream, context);
       if (stream.available() != 0) {
@@ -161,25 +257,168 @@ public final class CoderUtils {
     }
   }
 
-  private static ByteArrayOutputStream getThreadLocalOutputStream() {
-    SoftReference<ExposedByteArrayOutputStream> refStream = threadLocalOutputStream.get();
-    ExposedByteArrayOutputStream stream = refStream == null ? null : refStream.get();
-    if (stream == null) {
-      stream = new ExposedByteArrayOutputStream();
-      threadLocalOutputStream.set(new SoftReference<>(stream));
+  /**
+   * Decodes a value from all of the remaining bytes of the given {@link ByteBuffer} with the
+   * {@link BufferCoder} API of the specified Coder.
+   */
+  private static <T> T decodeFromBuffer(
+      Coder<T> coder, ByteBuffer buffer, Coder.Context context) throws CoderException {
+    T result;
+    try {
+      result = BufferCoders.decode(coder, buffer, context);
+    } catch (IOException exn) {
+      Throwables.propagateIfPossible(exn, CoderException.class);
+      throw new IllegalArgumentException(
+          "Forbidden IOException when reading from ByteBuffer", exn);
+    }
+    if (buffer.hasRemaining()) {
+      throw new CoderException(
+          buffer.remaining() + " unexpected extra bytes after decoding " + result);
+    }
+    return result;
+  }
+
+  private static StreamPool getThreadLocalStreamPool() {
+    SoftReference<StreamPool> refPool = threadLocalStreamPool.get();
+    StreamPool pool = refPool == null ? null : refPool.get();
+    if (pool == null) {
+      pool = new StreamPool();
+      threadLocalStreamPool.set(new SoftReference<>(pool));
+    }
+    return pool;
+  }
+
+  /**
+   * A pool of {@link ExposedByteArrayOutputStream ExposedByteArrayOutputStreams} that are reused
+   * by a single thread to encode values.
+   *
+   * <p>Each nested call to encode a value, such as one made from the methods of a {@link Coder},
+   * acquires its own stream. Released streams are kept in size classes by the power of two of
+   * their capacity, and the largest available stream is acquired first so that it rarely needs to
+   * grow. Streams that grew beyond {@link #MAX_POOLED_CAPACITY} are not retained.
+   *
+   * <p>Values of coders that implement {@link BufferCoder} are encoded to pooled
+   * {@link EncodingBuffer EncodingBuffers} instead, which are kept in the same size classes.
+   */
+  private static final class StreamPool {
+    private static final int MIN_SIZE_CLASS = 5;
+    private static final int MAX_SIZE_CLASS = 20;
+    private static final int MAX_POOLED_CAPACITY = 1 << MAX_SIZE_CLASS;
+    private static final int MAX_STREAMS_PER_SIZE_CLASS = 4;
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<ExposedByteArrayOutputStream>[] sizeClasses =
+        new ArrayDeque[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<EncodingBuffer>[] bufferSizeClasses =
+        new ArrayDeque[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+
+    /** The stream backing the last result of {@link #encodeToByteBuffer}, if any. */
+    private ExposedByteArrayOutputStream lent;
+
+    /** The buffer backing the last result of {@link #encodeToByteBuffer}, if any. */
+    private EncodingBuffer lentBuffer;
+
+    private StreamPool() {
+      for (int i = 0; i < sizeClasses.length; i++) {
+        sizeClasses[i] = new ArrayDeque<>(MAX_STREAMS_PER_SIZE_CLASS);
+        bufferSizeClasses[i] = new ArrayDeque<>(MAX_STREAMS_PER_SIZE_CLASS);
+      }
+    }
+
+    private ExposedByteArrayOutputStream acquire() {
+      for (int i = sizeClasses.length - 1; i >= 0; i--) {
+        ExposedByteArrayOutputStream stream = sizeClasses[i].pollFirst();
+        if (stream != null) {
+          return stream;
+        }
+      }
+      return new ExposedByteArrayOutputStream();
+    }
+
+    private EncodingBuffer acquireBuffer() {
+      for (int i = bufferSizeClasses.length - 1; i >= 0; i--) {
+        EncodingBuffer buffer = bufferSizeClasses[i].pollFirst();
+        if (buffer != null) {
+          return buffer;
+        }
+      }
+      return new EncodingBuffer();
+    }
+
+    private void release(ExposedByteArrayOutputStream stream) {
+      stream.reset();
+      int capacity = stream.capacity();
+      if (capacity > MAX_POOLED_CAPACITY) {
+        return;
+      }
+      ArrayDeque<ExposedByteArrayOutputStream> streams = sizeClasses[sizeClass(capacity)];
+      if (streams.size() < MAX_STREAMS_PER_SIZE_CLASS) {
+        streams.addFirst(stream);
+      }
+    }
+
+    private void release(EncodingBuffer buffer) {
+      buffer.reset();
+      int capacity = buffer.capacity();
+      if (capacity > MAX_POOLED_CAPACITY) {
+        return;
+      }
+      ArrayDeque<EncodingBuffer> buffers = bufferSizeClasses[sizeClass(capacity)];
+      if (buffers.size() < MAX_STREAMS_PER_SIZE_CLASS) {
+        buffers.addFirst(buffer);
+      }
+    }
+
+    private static int sizeClass(int capacity) {
+      return Math.max(MIN_SIZE_CLASS, 31 - Integer.numberOfLeadingZeros(capacity))
+          - MIN_SIZE_CLASS;
+    }
+
+    private void releaseLent() {
+      if (lent != null) {
+        release(lent);
+        lent = null;
+      }
+      if (lentBuffer != null) {
+        release(lentBuffer);
+        lentBuffer = null;
+      }
     }
-    stream.reset();
-    return stream;
   }
 
   /**
    * Clones the given value by encoding and then decoding it with the specified Coder.
    *
-   * <p>This function is not reentrant; it should not be called from methods of the provided
+   * <p>The value is decoded directly from the buffer it was encoded to, without copying the
+   * encoded bytes. This function is reentrant; it may be called from methods of the provided
    * {@link Coder}.
    */
   public static <T> T clone(Coder<T> coder, T value) throws CoderException {
-    return decodeFromByteArray(coder, encodeToByteArray(coder, value, Coder.Context.OUTER));
+    StreamPool pool = getThreadLocalStreamPool();
+    if (coder instanceof BufferCoder) {
+      EncodingBuffer buffer = pool.acquireBuffer();
+      try {
+        encodeToBuffer(coder, value, buffer, Coder.Context.OUTER);
+        return decodeFromBuffer(coder, buffer.asByteBuffer(), Coder.Context.OUTER);
+      } finally {
+        pool.release(buffer);
+      }
+    }
+    ExposedByteArrayOutputStream stream = pool.acquire();
+    try {
+      encodeToSafeStream(coder, value, stream, Coder.Context.OUTER);
+      ByteArrayInputStream inStream = stream.newInputStream();
+      T result = decodeFromSafeStream(coder, inStream, Coder.Context.OUTER);
+      if (inStream.available() != 0) {
+        throw new CoderException(
+            inStream.available() + " unexpected extra bytes after decoding " + result);
+      }
+      return result;
+    } finally {
+      pool.release(stream);
+    }
   }
 
   /**
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable, reusable byte buffer that encoded values are written to.
+ *
+ * <p>An {@link EncodingBuffer} is an {@link OutputStream}, so coders that only implement the
+ * stream-based API can write to it directly, while coders that implement
+ * {@link org.apache.beam.sdk.coders.BufferCoder} write primitive values such as variable-length
+ * integers straight into the backing array. The buffer may be {@link #reset} and reused to avoid
+ * allocating a new buffer for each encoded value.
+ *
+ * <p>An {@link EncodingBuffer} is not thread-safe.
+ */
+public class EncodingBuffer extends OutputStream {
+  private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+  private byte[] buf;
+  private int count;
+
+  public EncodingBuffer() {
+    this(DEFAULT_INITIAL_CAPACITY);
+  }
+
+  public EncodingBuffer(int initialCapacity) {
+    checkArgument(initialCapacity >= 0, "Negative initial capacity: %s", initialCapacity);
+    this.buf = new byte[initialCapacity];
+    this.count = 0;
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(1);
+    buf[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new IndexOutOfBoundsException();
+    }
+    ensureCapacity(len);
+    System.arraycopy(b, off, buf, count, len);
+    count += len;
+  }
+
+  /**
+   * Writes the provided {@code int} as four big-endian bytes, matching
+   * {@link java.io.DataOutputStream#writeInt(int)}.
+   */
+  public void writeInt(int v) {
+    ensureCapacity(4);
+    buf[count] = (byte) (v >>> 24);
+    buf[count + 1] = (byte) (v >>> 16);
+    buf[count + 2] = (byte) (v >>> 8);
+    buf[count + 3] = (byte) v;
+    count += 4;
+  }
+
+  /**
+   * Writes the provided {@code int} in the variable-length encoding of {@link VarInt}.
+   */
+  public void writeVarInt(int v) {
+    writeVarLong(v & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Writes the provided {@code long} in the variable-length encoding of {@link VarInt}.
+   */
+  public void writeVarLong(long v) {
+    ensureCapacity(VarInt.MAX_LONG_LENGTH);
+    count = VarInt.encode(v, buf, count);
+  }
+
+  /**
+   * Writes the UTF-8 encoding of the provided {@link String}, which must be exactly
+   * {@code encodedLength} bytes long as computed by {@link Utf8Encoding#encodedLength}.
+   */
+  public void writeUtf8(String value, int encodedLength) {
+    ensureCapacity(encodedLength);
+    count = Utf8Encoding.encode(value, buf, count);
+  }
+
+  /**
+   * Returns the number of bytes written to this buffer since it was created or last reset.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Returns the number of bytes this buffer can hold without growing.
+   */
+  int capacity() {
+    return buf.length;
+  }
+
+  /**
+   * Discards the contents of this buffer, retaining its capacity for reuse.
+   */
+  public void reset() {
+    count = 0;
+  }
+
+  /**
+   * Returns a copy of the contents of this buffer.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, count);
+  }
+
+  /**
+   * Returns a {@link ByteBuffer} view of the contents of this buffer, without copying them. The
+   * returned {@link ByteBuffer} is only valid until this buffer is next written to or reset.
+   */
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, count);
+  }
+
+  private void ensureCapacity(int additional) {
+    int required = count + additional;
+    if (required < 0) {
+      throw new OutOfMemoryError("Encoded value is too large for an EncodingBuffer");
+    }
+    if (required > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(required, buf.length * 2));
+    }
+  }
+}
@@ -27,10 +27,23 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
  */
 public class ExposedByteArrayInputStream extends ByteArrayInputStream{
 
+  /** Holds the value decoded by {@link #readVarLong()}. */
+  private final long[] decoded = new long[1];
+
   public ExposedByteArrayInputStream(byte[] buf) {
     super(buf);
   }
 
+  /**
+   * Reads a variable-length encoded long directly from the buffer.
+   *
+   * @see VarInt#decodeLong(java.io.InputStream)
+   */
+  long readVarLong() throws IOException {
+    pos = VarInt.decode(buf, pos, count, decoded, 0);
+    return decoded[0];
+  }
+
   /** Read all remaining bytes.
    * @throws IOException */
   @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "Returns internal buffer by design")
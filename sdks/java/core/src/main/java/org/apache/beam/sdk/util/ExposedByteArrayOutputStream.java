@@ -17,8 +17,11 @@
  */
 package org.apache.beam.sdk.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -82,6 +85,43 @@ public class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
     }
   }
 
+  /**
+   * Writes the variable-length encoding of the given value directly into the buffer.
+   *
+   * @see VarInt#encode(long, java.io.OutputStream)
+   */
+  void writeVarLong(long v) {
+    fallback();
+    int required = count + VarInt.MAX_LONG_LENGTH;
+    if (required > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length << 1, required));
+    }
+    count = VarInt.encode(v, buf, count);
+  }
+
+  /**
+   * Returns a read-only {@link ByteBuffer} view of the contents of this stream, without copying
+   * them. The view is only valid until this stream is next written to or reset.
+   */
+  ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns a {@link ByteArrayInputStream} that reads the contents of this stream, without copying
+   * them. The returned stream is only valid until this stream is next written to or reset.
+   */
+  ByteArrayInputStream newInputStream() {
+    return new ByteArrayInputStream(buf, 0, count);
+  }
+
+  /**
+   * Returns the capacity of the buffer that this stream writes to after it is reset.
+   */
+  int capacity() {
+    return swappedBuffer != null ? swappedBuffer.length : buf.length;
+  }
+
   @Override
   public void write(byte[] b, int off, int len) {
     fallback();
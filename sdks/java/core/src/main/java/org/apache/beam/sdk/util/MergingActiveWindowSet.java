@@ -20,10 +20,15 @@ package org.apache.beam.sdk.util;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.MapCoder;
 import org.apache.beam.sdk.coders.SetCoder;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
 import org.apache.beam.sdk.transforms.windowing.WindowFn;
+import org.apache.beam.sdk.util.state.BagState;
+import org.apache.beam.sdk.util.state.ReadableState;
 import org.apache.beam.sdk.util.state.StateInternals;
 import org.apache.beam.sdk.util.state.StateNamespaces;
 import org.apache.beam.sdk.util.state.StateTag;
@@ -34,23 +39,43 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
+import org.joda.time.Instant;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.annotation.Nullable;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
 /**
  * An {@link ActiveWindowSet} for merging {@link WindowFn} implementations.
+ *
+ * <p>For {@link Sessions}, which only merges overlapping {@link IntervalWindow IntervalWindows},
+ * the ACTIVE windows are kept ordered by their start so that each merge only considers the NEW
+ * windows and the ACTIVE windows they overlap, rather than every window of the key.
+ *
+ * <p>Changes to the set are persisted as deltas, which are appended to a {@link BagState} rather
+ * than rewriting every window of the key. The deltas are replaced by a single snapshot once
+ * {@link #MAX_DELTAS} of them have accumulated.
  */
 public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWindowSet<W> {
+  /**
+   * The number of persisted deltas after which the next {@link #persist} replaces them with a
+   * snapshot of the whole set.
+   */
+  @VisibleForTesting
+  static final int MAX_DELTAS = 16;
+
   private final WindowFn<Object, W> windowFn;
 
   /**
@@ -63,58 +88,233 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
    */
   private final Map<W, Set<W>> activeWindowToStateAddressWindows;
 
+  /**
+   * The NEW windows, which are the keys of {@link #activeWindowToStateAddressWindows} with an
+   * empty set of state address windows.
+   */
+  private final Set<W> newWindows;
+
+  /**
+   * The disjoint ACTIVE windows by their start, if {@link #windowFn} only merges overlapping
+   * {@link IntervalWindow IntervalWindows}, or {@code null} otherwise.
+   */
+  @Nullable
+  private final NavigableMap<Instant, W> activeWindowsByStart;
+
+  /**
+   * The ACTIVE windows which overlap a window of {@link #activeWindowsByStart}, such as windows
+   * made ACTIVE without being merged. They are considered by the next merge, after which they are
+   * disjoint.
+   */
+  private final Set<W> unmergedWindows;
+
   /**
    * Deep clone of {@link #activeWindowToStateAddressWindows} as of last commit.
-   * Used to avoid writing to state if no changes have been made during the work unit.
+   * Used to avoid writing to state if no changes have been made during the work unit, and to
+   * compute the delta to persist otherwise.
    */
-  private final Map<W, Set<W>> originalActiveWindowToStateAddressWindows;
+  private Map<W, Set<W>> originalActiveWindowToStateAddressWindows;
 
   /**
-   * Handle representing our state in the backend.
+   * Handle representing our state in the backend before it was persisted as deltas. Only read
+   * to load the set, and cleared once the set has been persisted as deltas.
    */
   private final ValueState<Map<W, Set<W>>> valueState;
 
+  /**
+   * Handle representing our state in the backend: a snapshot of the set followed by the deltas
+   * applied to it since. A window with an empty set of state address windows in a delta has been
+   * removed.
+   */
+  private final BagState<Map<W, Set<W>>> deltasState;
+
+  /** Whether {@link #valueState} may still hold the set, so that it must be cleared. */
+  private boolean hasValueState;
+
+  /** The number of deltas, including the snapshot, held by {@link #deltasState}. */
+  private int numDeltas;
+
   public MergingActiveWindowSet(WindowFn<Object, W> windowFn, StateInternals<?> state) {
     this.windowFn = windowFn;
 
+    Coder<Map<W, Set<W>>> coder =
+        MapCoder.of(windowFn.windowCoder(), SetCoder.of(windowFn.windowCoder()));
     StateTag<Object, ValueState<Map<W, Set<W>>>> tag =
-        StateTags.makeSystemTagInternal(StateTags.value(
-            "tree", MapCoder.of(windowFn.windowCoder(), SetCoder.of(windowFn.windowCoder()))));
+        StateTags.makeSystemTagInternal(StateTags.value("tree", coder));
+    StateTag<Object, BagState<Map<W, Set<W>>>> deltasTag =
+        StateTags.makeSystemTagInternal(StateTags.bag("treeDeltas", coder));
     valueState = state.state(StateNamespaces.global(), tag);
-    // Little use trying to prefetch this state since the ReduceFnRunner
-    // is stymied until it is available.
-    activeWindowToStateAddressWindows = emptyIfNull(valueState.read());
+    deltasState = state.state(StateNamespaces.global(), deltasTag);
+    // Little use trying to prefetch this state since the ReduceFnRunner is stymied until it is
+    // available, but both parts of it can be fetched together.
+    prefetch(valueState);
+    prefetch(deltasState);
+    Map<W, Set<W>> snapshot = valueState.read();
+    hasValueState = snapshot != null;
+    activeWindowToStateAddressWindows = emptyIfNull(snapshot);
+    for (Map<W, Set<W>> delta : deltasState.read()) {
+      for (Map.Entry<W, Set<W>> entry : delta.entrySet()) {
+        if (entry.getValue() == null || entry.getValue().isEmpty()) {
+          activeWindowToStateAddressWindows.remove(entry.getKey());
+        } else {
+          activeWindowToStateAddressWindows.put(
+              entry.getKey(), new LinkedHashSet<>(entry.getValue()));
+        }
+      }
+      numDeltas++;
+    }
     originalActiveWindowToStateAddressWindows = deepCopy(activeWindowToStateAddressWindows);
+
+    newWindows = new HashSet<>();
+    unmergedWindows = new HashSet<>();
+    // A subclass of Sessions may override mergeWindows, so only Sessions itself is known to merge
+    // exactly the overlapping windows.
+    activeWindowsByStart =
+        windowFn.getClass() == Sessions.class ? new TreeMap<Instant, W>() : null;
+    for (Map.Entry<W, Set<W>> entry : activeWindowToStateAddressWindows.entrySet()) {
+      indexWindow(entry.getKey(), entry.getValue());
+    }
   }
 
   @Override
   public void cleanupTemporaryWindows() {
     // All NEW windows can be forgotten since they must have ended up being merged into
     // some other ACTIVE window.
-    Iterator<Map.Entry<W, Set<W>>> iter = activeWindowToStateAddressWindows.entrySet().iterator();
-    while (iter.hasNext()) {
-      Map.Entry<W, Set<W>> entry = iter.next();
-      if (entry.getValue().isEmpty()) {
-        iter.remove();
-      }
+    for (W window : newWindows) {
+      activeWindowToStateAddressWindows.remove(window);
     }
+    newWindows.clear();
   }
 
   @Override
   public void persist() {
+    checkState(newWindows.isEmpty(),
+        "Cannot persist NEW windows %s; they must be activated or cleaned up first", newWindows);
     checkInvariants();
     if (activeWindowToStateAddressWindows.isEmpty()) {
       // Force all persistent state to disappear.
       valueState.clear();
+      deltasState.clear();
+      hasValueState = false;
+      numDeltas = 0;
+      originalActiveWindowToStateAddressWindows = new HashMap<>();
+      return;
+    }
+    if (hasValueState || numDeltas >= MAX_DELTAS) {
+      // Replace the persisted state with a snapshot.
+      Map<W, Set<W>> snapshot = deepCopy(activeWindowToStateAddressWindows);
+      valueState.clear();
+      deltasState.clear();
+      deltasState.add(snapshot);
+      hasValueState = false;
+      numDeltas = 1;
+      originalActiveWindowToStateAddressWindows = deepCopy(snapshot);
       return;
     }
-    if (activeWindowToStateAddressWindows.equals(originalActiveWindowToStateAddressWindows)) {
+    Map<W, Set<W>> delta = new HashMap<>();
+    for (Map.Entry<W, Set<W>> entry : activeWindowToStateAddressWindows.entrySet()) {
+      if (!entry.getValue().equals(originalActiveWindowToStateAddressWindows.get(entry.getKey()))) {
+        delta.put(entry.getKey(), new LinkedHashSet<>(entry.getValue()));
+      }
+    }
+    for (W window : originalActiveWindowToStateAddressWindows.keySet()) {
+      if (!activeWindowToStateAddressWindows.containsKey(window)) {
+        delta.put(window, new LinkedHashSet<W>());
+      }
+    }
+    if (delta.isEmpty()) {
       // No change.
       return;
     }
-    valueState.write(activeWindowToStateAddressWindows);
-    // No need to update originalActiveWindowToStateAddressWindows since this object is about to
-    // become garbage.
+    deltasState.add(delta);
+    numDeltas++;
+    originalActiveWindowToStateAddressWindows = deepCopy(activeWindowToStateAddressWindows);
+  }
+
+  @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED_NO_SIDE_EFFECT",
+      justification = "prefetch call readLater")
+  private static void prefetch(ReadableState<?> state) {
+    state.readLater();
+  }
+
+  /**
+   * Records {@code window} as NEW or ACTIVE according to {@code stateAddressWindows}.
+   */
+  private void indexWindow(W window, Set<W> stateAddressWindows) {
+    if (stateAddressWindows.isEmpty()) {
+      newWindows.add(window);
+    } else {
+      newWindows.remove(window);
+      if (activeWindowsByStart != null) {
+        IntervalWindow interval = (IntervalWindow) window;
+        if (window.equals(activeWindowsByStart.get(interval.start()))) {
+          return;
+        }
+        if (overlappingActiveWindows(interval).isEmpty()) {
+          activeWindowsByStart.put(interval.start(), window);
+        } else {
+          unmergedWindows.add(window);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the windows of {@link #activeWindowsByStart} which overlap {@code interval}. Of the
+   * disjoint windows starting at or before {@code interval}, only the last may overlap it.
+   */
+  private List<W> overlappingActiveWindows(IntervalWindow interval) {
+    List<W> overlapping = new ArrayList<>();
+    Map.Entry<Instant, W> before = activeWindowsByStart.floorEntry(interval.start());
+    if (before != null && ((IntervalWindow) before.getValue()).intersects(interval)) {
+      overlapping.add(before.getValue());
+    }
+    overlapping.addAll(
+        activeWindowsByStart.subMap(interval.start(), false, interval.end(), false).values());
+    return overlapping;
+  }
+
+  /**
+   * Forgets {@code window} as NEW or ACTIVE.
+   */
+  private void unindexWindow(W window) {
+    newWindows.remove(window);
+    unmergedWindows.remove(window);
+    if (activeWindowsByStart != null) {
+      Instant start = ((IntervalWindow) window).start();
+      if (window.equals(activeWindowsByStart.get(start))) {
+        activeWindowsByStart.remove(start);
+      }
+    }
+  }
+
+  private void putWindow(W window, Set<W> stateAddressWindows) {
+    activeWindowToStateAddressWindows.put(window, stateAddressWindows);
+    indexWindow(window, stateAddressWindows);
+  }
+
+  private void removeWindow(W window) {
+    activeWindowToStateAddressWindows.remove(window);
+    unindexWindow(window);
+  }
+
+  /**
+   * Returns the windows that {@link #windowFn} must consider for merging.
+   *
+   * <p>For {@link Sessions}, these are the NEW and unmerged ACTIVE windows, and the disjoint
+   * ACTIVE windows that overlap them, since only overlapping windows merge.
+   */
+  private Collection<W> windowsToMerge() {
+    if (activeWindowsByStart == null) {
+      return activeWindowToStateAddressWindows.keySet();
+    }
+    Set<W> candidates = new HashSet<>(newWindows);
+    candidates.addAll(unmergedWindows);
+    Set<W> windows = new HashSet<>(candidates);
+    for (W candidate : candidates) {
+      windows.addAll(overlappingActiveWindows((IntervalWindow) candidate));
+    }
+    return windows;
   }
 
   @Override
@@ -137,7 +337,7 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
   public void ensureWindowExists(W window) {
     if (!activeWindowToStateAddressWindows.containsKey(window)) {
       // Add window as NEW.
-      activeWindowToStateAddressWindows.put(window, new LinkedHashSet<W>());
+      putWindow(window, new LinkedHashSet<W>());
     }
   }
 
@@ -150,6 +350,7 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
     if (stateAddressWindows.isEmpty()) {
       // Window was NEW, make it ACTIVE with itself as its state address window.
       stateAddressWindows.add(window);
+      indexWindow(window, stateAddressWindows);
     }
   }
 
@@ -160,31 +361,33 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
       // Make window ACTIVE with itself as its state address window.
       Set<W> stateAddressWindows = new LinkedHashSet<>();
       stateAddressWindows.add(window);
-      activeWindowToStateAddressWindows.put(window, stateAddressWindows);
+      putWindow(window, stateAddressWindows);
     }
   }
 
   @VisibleForTesting
   public void addActiveForTesting(W window, Iterable<W> stateAddressWindows) {
     if (!activeWindowToStateAddressWindows.containsKey(window)) {
-      activeWindowToStateAddressWindows.put(window, Sets.newLinkedHashSet(stateAddressWindows));
+      putWindow(window, Sets.newLinkedHashSet(stateAddressWindows));
     }
   }
 
   @Override
   public void remove(W window) {
-    activeWindowToStateAddressWindows.remove(window);
+    removeWindow(window);
   }
 
   private class MergeContextImpl extends WindowFn<Object, W>.MergeContext {
     private MergeCallback<W> mergeCallback;
+    private final Collection<W> windows;
     private final List<Collection<W>> allToBeMerged;
     private final List<W> allMergeResults;
     private final Set<W> seen;
 
-    public MergeContextImpl(MergeCallback<W> mergeCallback) {
+    public MergeContextImpl(MergeCallback<W> mergeCallback, Collection<W> windows) {
       windowFn.super();
       this.mergeCallback = mergeCallback;
+      this.windows = windows;
       allToBeMerged = new ArrayList<>();
       allMergeResults = new ArrayList<>();
       seen = new HashSet<>();
@@ -192,7 +395,7 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
 
     @Override
     public Collection<W> windows() {
-      return activeWindowToStateAddressWindows.keySet();
+      return windows;
     }
 
     @Override
@@ -235,7 +438,11 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
 
   @Override
   public void merge(MergeCallback<W> mergeCallback) throws Exception {
-    MergeContextImpl context = new MergeContextImpl(mergeCallback);
+    Collection<W> windowsToMerge = windowsToMerge();
+    if (windowsToMerge.isEmpty()) {
+      return;
+    }
+    MergeContextImpl context = new MergeContextImpl(mergeCallback, windowsToMerge);
 
     // See what the window function does with the NEW and already ACTIVE windows.
     // Entering userland.
@@ -243,6 +450,15 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
 
     // Actually do the merging and invoke the callbacks.
     context.recordMerges();
+
+    if (activeWindowsByStart != null && !unmergedWindows.isEmpty()) {
+      // Every window which overlapped an unmerged window has now been merged with it.
+      List<W> merged = new ArrayList<>(unmergedWindows);
+      unmergedWindows.clear();
+      for (W window : merged) {
+        indexWindow(window, activeWindowToStateAddressWindows.get(window));
+      }
+    }
   }
 
   /**
@@ -274,7 +490,7 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
         // THEN otherTarget equiv mergeResult.
         newStateAddressWindows.add(otherStateAddressWindow);
       }
-      activeWindowToStateAddressWindows.remove(other);
+      removeWindow(other);
 
       // Now other equiv mergeResult.
     }
@@ -285,7 +501,7 @@ public class MergingActiveWindowSet<W extends BoundedWindow> implements ActiveWi
       newStateAddressWindows.add(mergeResult);
     }
 
-    activeWindowToStateAddressWindows.put(mergeResult, newStateAddressWindows);
+    putWindow(mergeResult, newStateAddressWindows);
 
     merged(mergeResult);
   }
@@ -20,7 +20,7 @@ package org.apache.beam.sdk.util;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -151,9 +151,10 @@ public class MutationDetectors {
       // For example, an unbounded Iterable will be encoded in an unbounded way, but decoded into an
       // ArrayList, which will then be re-encoded in a bounded format. So we really do need to
       // encode-decode-encode retainedObject.
-      if (Arrays.equals(
-          CoderUtils.encodeToByteArray(coder, clonedOriginalObject),
-          CoderUtils.encodeToByteArray(coder, clonedPossiblyModifiedObject))) {
+      ByteBuffer encodedClonedOriginalObject =
+          ByteBuffer.wrap(CoderUtils.encodeToByteArray(coder, clonedOriginalObject));
+      if (encodedClonedOriginalObject.equals(
+          CoderUtils.encodeToByteBuffer(coder, clonedPossiblyModifiedObject))) {
         return;
       }
 
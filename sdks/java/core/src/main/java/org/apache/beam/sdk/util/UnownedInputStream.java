@@ -33,6 +33,11 @@ public class UnownedInputStream extends FilterInputStream {
     super(delegate);
   }
 
+  /** Returns the stream this stream reads from. */
+  InputStream getDelegate() {
+    return in;
+  }
+
   @Override
   public void close() throws IOException {
     throw new UnsupportedOperationException("Caller does not own the underlying input stream "
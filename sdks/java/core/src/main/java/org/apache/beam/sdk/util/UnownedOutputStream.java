@@ -32,6 +32,11 @@ public class UnownedOutputStream extends FilterOutputStream {
     super(delegate);
   }
 
+  /** Returns the stream this stream writes to. */
+  OutputStream getDelegate() {
+    return out;
+  }
+
   @Override
   public void close() throws IOException {
     throw new UnsupportedOperationException("Caller does not own the underlying output stream "
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+/**
+ * Allocation-free UTF-8 encoding of {@link String Strings}.
+ *
+ * <p>The encoding produced is identical to {@code value.getBytes(StandardCharsets.UTF_8)},
+ * including the replacement of each unpaired surrogate character with {@code '?'}, but is
+ * written directly into a caller-provided array rather than into a newly allocated one.
+ */
+public final class Utf8Encoding {
+  private static final byte REPLACEMENT_BYTE = (byte) '?';
+
+  private Utf8Encoding() {}
+
+  /**
+   * Returns the number of bytes in the UTF-8 encoding of the given {@link String}.
+   */
+  public static int encodedLength(String value) {
+    int length = value.length();
+    int encodedLength = length;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        continue;
+      } else if (c < 0x800) {
+        encodedLength += 1;
+      } else if (!Character.isSurrogate(c)) {
+        encodedLength += 2;
+      } else if (isSurrogatePair(value, i, length)) {
+        // Two chars encoded as four bytes.
+        encodedLength += 2;
+        i++;
+      }
+      // An unpaired surrogate is replaced by a single byte.
+    }
+    return encodedLength;
+  }
+
+  /**
+   * Writes the UTF-8 encoding of the given {@link String} into {@code dest} starting at
+   * {@code offset}, returning the offset after the last byte written. {@code dest} must have at
+   * least {@link #encodedLength} bytes available after {@code offset}.
+   */
+  public static int encode(String value, byte[] dest, int offset) {
+    int length = value.length();
+    int position = offset;
+    int i = 0;
+    // Most strings are entirely ASCII, which needs no branching beyond the range check.
+    for (; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        break;
+      }
+      dest[position++] = (byte) c;
+    }
+    for (; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        dest[position++] = (byte) c;
+      } else if (c < 0x800) {
+        dest[position++] = (byte) (0xC0 | (c >>> 6));
+        dest[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (!Character.isSurrogate(c)) {
+        dest[position++] = (byte) (0xE0 | (c >>> 12));
+        dest[position++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+        dest[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (isSurrogatePair(value, i, length)) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        dest[position++] = (byte) (0xF0 | (codePoint >>> 18));
+        dest[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+        dest[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+        dest[position++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else {
+        dest[position++] = REPLACEMENT_BYTE;
+      }
+    }
+    return position;
+  }
+
+  private static boolean isSurrogatePair(String value, int index, int length) {
+    return Character.isHighSurrogate(value.charAt(index))
+        && index + 1 < length
+        && Character.isLowSurrogate(value.charAt(index + 1));
+  }
+}
@@ -21,6 +21,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Variable-length encoding for integers.
@@ -29,8 +30,18 @@ import java.io.OutputStream;
  * Takes between 1 and 10 bytes.
  * Less efficient than BigEndian{Int,Long} coder for negative or large numbers.
  * All negative ints are encoded using 5 bytes, longs take 10 bytes.
+ *
+ * <p>In addition to the stream-based methods, values may be encoded to and decoded from byte
+ * arrays, singly or in bulk. The stream-based methods use the arrays of an
+ * {@link ExposedByteArrayOutputStream} or {@link ExposedByteArrayInputStream} directly, including
+ * when the stream is wrapped in an {@link UnownedOutputStream} or {@link UnownedInputStream}.
  */
 public class VarInt {
+  /** The largest number of bytes in the encoding of an int. */
+  public static final int MAX_INT_LENGTH = 5;
+
+  /** The largest number of bytes in the encoding of a long. */
+  public static final int MAX_LONG_LENGTH = 10;
 
   private static long convertIntToLongNoSignExtend(int v) {
     return v & 0xFFFFFFFFL;
@@ -47,6 +58,13 @@ public class VarInt {
    * Encodes the given value onto the stream.
    */
   public static void encode(long v, OutputStream stream) throws IOException {
+    if (stream instanceof UnownedOutputStream) {
+      stream = ((UnownedOutputStream) stream).getDelegate();
+    }
+    if (stream instanceof ExposedByteArrayOutputStream) {
+      ((ExposedByteArrayOutputStream) stream).writeVarLong(v);
+      return;
+    }
     do {
       // Encode next 7 bits + terminator bit
       long bits = v & 0x7F;
@@ -60,17 +78,19 @@ public class VarInt {
    * Decodes an integer value from the given stream.
    */
   public static int decodeInt(InputStream stream) throws IOException {
-    long r = decodeLong(stream);
-    if (r < 0 || r >= 1L << 32) {
-      throw new IOException("varint overflow " + r);
-    }
-    return (int) r;
+    return checkedInt(decodeLong(stream));
   }
 
   /**
    * Decodes a long value from the given stream.
    */
   public static long decodeLong(InputStream stream) throws IOException {
+    if (stream instanceof UnownedInputStream) {
+      stream = ((UnownedInputStream) stream).getDelegate();
+    }
+    if (stream instanceof ExposedByteArrayInputStream) {
+      return ((ExposedByteArrayInputStream) stream).readVarLong();
+    }
     long result = 0;
     int shift = 0;
     int b;
@@ -95,6 +115,239 @@ public class VarInt {
     return result;
   }
 
+  /**
+   * Decodes an integer value from the given buffer, advancing its position past the encoded
+   * value.
+   */
+  public static int decodeInt(ByteBuffer buffer) throws IOException {
+    return checkedInt(decodeLong(buffer));
+  }
+
+  /**
+   * Decodes a long value from the given buffer, advancing its position past the encoded value.
+   */
+  public static long decodeLong(ByteBuffer buffer) throws IOException {
+    long result = 0;
+    int shift = 0;
+    int b;
+    do {
+      // Get 7 bits from next byte
+      if (!buffer.hasRemaining()) {
+        if (shift == 0) {
+          throw new EOFException();
+        } else {
+          throw new IOException("varint not terminated");
+        }
+      }
+      b = buffer.get() & 0xFF;
+      long bits = b & 0x7F;
+      if (shift >= 64 || (shift == 63 && bits > 1)) {
+        // Out of range
+        throw new IOException("varint too long");
+      }
+      result |= bits << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return result;
+  }
+
+  /**
+   * Encodes the given value into the array at the given offset, returning the offset after the
+   * encoded value. The array must have at least {@link #MAX_INT_LENGTH} bytes after the offset, or
+   * {@link #getLength(int)} bytes if fewer.
+   */
+  public static int encode(int v, byte[] buf, int offset) {
+    return encode(convertIntToLongNoSignExtend(v), buf, offset);
+  }
+
+  /**
+   * Encodes the given value into the array at the given offset, returning the offset after the
+   * encoded value. The array must have at least {@link #MAX_LONG_LENGTH} bytes after the offset,
+   * or {@link #getLength(long)} bytes if fewer.
+   */
+  public static int encode(long v, byte[] buf, int offset) {
+    while ((v & ~0x7FL) != 0) {
+      buf[offset++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buf[offset++] = (byte) v;
+    return offset;
+  }
+
+  /**
+   * Encodes all of the given values into the array at the given offset, returning the offset after
+   * the last encoded value. The array must have at least {@link #getLength(int[])} bytes after
+   * the offset.
+   */
+  public static int encode(int[] values, byte[] buf, int offset) {
+    for (int value : values) {
+      offset = encode(convertIntToLongNoSignExtend(value), buf, offset);
+    }
+    return offset;
+  }
+
+  /**
+   * Encodes all of the given values into the array at the given offset, returning the offset after
+   * the last encoded value. The array must have at least {@link #getLength(long[])} bytes after
+   * the offset.
+   */
+  public static int encode(long[] values, byte[] buf, int offset) {
+    for (long value : values) {
+      offset = encode(value, buf, offset);
+    }
+    return offset;
+  }
+
+  /**
+   * Encodes the zigzag encoding of each of the given values into the array at the given offset,
+   * returning the offset after the last encoded value. Values of small magnitude, including
+   * negative values, take few bytes.
+   *
+   * @see #zigZagEncode(int)
+   */
+  public static int encodeZigZag(int[] values, byte[] buf, int offset) {
+    for (int value : values) {
+      offset = encode(convertIntToLongNoSignExtend(zigZagEncode(value)), buf, offset);
+    }
+    return offset;
+  }
+
+  /**
+   * Encodes the zigzag encoding of each of the given values into the array at the given offset,
+   * returning the offset after the last encoded value. Values of small magnitude, including
+   * negative values, take few bytes.
+   *
+   * @see #zigZagEncode(long)
+   */
+  public static int encodeZigZag(long[] values, byte[] buf, int offset) {
+    for (long value : values) {
+      offset = encode(zigZagEncode(value), buf, offset);
+    }
+    return offset;
+  }
+
+  /**
+   * Decodes {@code values.length} int values from the array, starting at the given offset and
+   * reading no further than {@code limit}, returning the offset after the last decoded value.
+   */
+  public static int decode(byte[] buf, int offset, int limit, int[] values) throws IOException {
+    long[] decoded = new long[1];
+    for (int i = 0; i < values.length; i++) {
+      offset = decode(buf, offset, limit, decoded, 0);
+      values[i] = checkedInt(decoded[0]);
+    }
+    return offset;
+  }
+
+  /**
+   * Decodes {@code values.length} long values from the array, starting at the given offset and
+   * reading no further than {@code limit}, returning the offset after the last decoded value.
+   */
+  public static int decode(byte[] buf, int offset, int limit, long[] values) throws IOException {
+    for (int i = 0; i < values.length; i++) {
+      offset = decode(buf, offset, limit, values, i);
+    }
+    return offset;
+  }
+
+  /**
+   * Decodes {@code values.length} int values encoded by {@link #encodeZigZag(int[], byte[], int)}
+   * from the array, starting at the given offset and reading no further than {@code limit},
+   * returning the offset after the last decoded value.
+   */
+  public static int decodeZigZag(byte[] buf, int offset, int limit, int[] values)
+      throws IOException {
+    offset = decode(buf, offset, limit, values);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = zigZagDecode(values[i]);
+    }
+    return offset;
+  }
+
+  /**
+   * Decodes {@code values.length} long values encoded by
+   * {@link #encodeZigZag(long[], byte[], int)} from the array, starting at the given offset and
+   * reading no further than {@code limit}, returning the offset after the last decoded value.
+   */
+  public static int decodeZigZag(byte[] buf, int offset, int limit, long[] values)
+      throws IOException {
+    offset = decode(buf, offset, limit, values);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = zigZagDecode(values[i]);
+    }
+    return offset;
+  }
+
+  /**
+   * Decodes a single long value from the array into {@code values[index]}, returning the offset
+   * after the decoded value.
+   */
+  static int decode(byte[] buf, int offset, int limit, long[] values, int index)
+      throws IOException {
+    long result = 0;
+    int shift = 0;
+    int b;
+    do {
+      // Get 7 bits from next byte
+      if (offset >= limit) {
+        if (shift == 0) {
+          throw new EOFException();
+        } else {
+          throw new IOException("varint not terminated");
+        }
+      }
+      b = buf[offset++] & 0xFF;
+      long bits = b & 0x7F;
+      if (shift >= 64 || (shift == 63 && bits > 1)) {
+        // Out of range
+        throw new IOException("varint too long");
+      }
+      result |= bits << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    values[index] = result;
+    return offset;
+  }
+
+  private static int checkedInt(long r) throws IOException {
+    if (r < 0 || r >= 1L << 32) {
+      throw new IOException("varint overflow " + r);
+    }
+    return (int) r;
+  }
+
+  /**
+   * Returns the zigzag encoding of the given value, which maps signed values to unsigned values
+   * so that values of small magnitude have small encodings: 0, -1, 1, -2, ... are mapped to 0,
+   * 1, 2, 3, ....
+   */
+  public static int zigZagEncode(int v) {
+    return (v << 1) ^ (v >> 31);
+  }
+
+  /**
+   * Returns the zigzag encoding of the given value.
+   *
+   * @see #zigZagEncode(int)
+   */
+  public static long zigZagEncode(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  /**
+   * Returns the value whose zigzag encoding is the given value.
+   */
+  public static int zigZagDecode(int v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  /**
+   * Returns the value whose zigzag encoding is the given value.
+   */
+  public static long zigZagDecode(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
   /**
    * Returns the length of the encoding of the given value (in bytes).
    */
@@ -113,4 +366,26 @@ public class VarInt {
     } while (v != 0);
     return result;
   }
+
+  /**
+   * Returns the total length of the encodings of the given values (in bytes).
+   */
+  public static int getLength(int[] values) {
+    int result = 0;
+    for (int value : values) {
+      result += getLength(value);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the total length of the encodings of the given values (in bytes).
+   */
+  public static int getLength(long[] values) {
+    int result = 0;
+    for (long value : values) {
+      result += getLength(value);
+    }
+    return result;
+  }
 }
@@ -22,6 +22,8 @@ import static org.apache.beam.sdk.util.Structs.addBoolean;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import org.apache.beam.sdk.coders.BufferCoder;
+import org.apache.beam.sdk.coders.BufferCoders;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.CollectionCoder;
@@ -43,6 +45,7 @@ import org.joda.time.Instant;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -604,7 +607,8 @@ public abstract class WindowedValue<T> {
   /**
    * Coder for {@code WindowedValue}.
    */
-  public static class FullWindowedValueCoder<T> extends WindowedValueCoder<T> {
+  public static class FullWindowedValueCoder<T> extends WindowedValueCoder<T>
+      implements BufferCoder<WindowedValue<T>> {
     private final Coder<? extends BoundedWindow> windowCoder;
     // Precompute and cache the coder for a list of windows.
     private final Coder<Collection<? extends BoundedWindow>> windowsCoder;
@@ -679,6 +683,31 @@ public abstract class WindowedValue<T> {
       return WindowedValue.of(value, timestamp, windows, pane);
     }
 
+    @Override
+    public void encodeToBuffer(WindowedValue<T> windowedElem,
+                               EncodingBuffer buffer,
+                               Context context)
+        throws CoderException, IOException {
+      Context nestedContext = context.nested();
+      BufferCoders.encode(valueCoder, windowedElem.getValue(), buffer, nestedContext);
+      BufferCoders.encode(
+          InstantCoder.of(), windowedElem.getTimestamp(), buffer, nestedContext);
+      BufferCoders.encode(windowsCoder, windowedElem.getWindows(), buffer, nestedContext);
+      BufferCoders.encode(PaneInfoCoder.INSTANCE, windowedElem.getPane(), buffer, context);
+    }
+
+    @Override
+    public WindowedValue<T> decodeFromBuffer(ByteBuffer buffer, Context context)
+        throws CoderException, IOException {
+      Context nestedContext = context.nested();
+      T value = BufferCoders.decode(valueCoder, buffer, nestedContext);
+      Instant timestamp = BufferCoders.decode(InstantCoder.of(), buffer, nestedContext);
+      Collection<? extends BoundedWindow> windows =
+          BufferCoders.decode(windowsCoder, buffer, nestedContext);
+      PaneInfo pane = BufferCoders.decode(PaneInfoCoder.INSTANCE, buffer, nestedContext);
+      return WindowedValue.of(value, timestamp, windows, pane);
+    }
+
     @Override
     public void verifyDeterministic() throws NonDeterministicException {
       verifyDeterministic(
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.CollectionCoder;
+import org.apache.beam.sdk.coders.StandardCoder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo.PaneInfoCoder;
+
+import com.google.common.collect.ImmutableList;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.joda.time.Instant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Coder} for a batch of {@link WindowedValue WindowedValues}, such as the contents of a
+ * bundle, which encodes the batch column by column rather than element by element.
+ *
+ * <p>The elements of a bundle usually share a small number of windows and panes, and frequently
+ * have nearby or identical timestamps. Where {@link WindowedValue.FullWindowedValueCoder} encodes
+ * the full timestamp, windows and pane of every element, this coder encodes:
+ *
+ * <ul>
+ *   <li>the number of elements;
+ *   <li>the value of every element, in order;
+ *   <li>the timestamp of every element, as the zigzag-encoded difference from the timestamp of the
+ *       previous element;
+ *   <li>each distinct collection of windows once, followed by the index of the collection of
+ *       windows of every element;
+ *   <li>each distinct pane once, followed by the index of the pane of every element.
+ * </ul>
+ *
+ * <p>When the elements of the batch share a single collection of windows or a single pane, the
+ * per-element indices are omitted. Decoded elements with equal windows share a single collection of
+ * windows.
+ *
+ * <p>The encoding is self-delimiting in every {@link Coder.Context}.
+ *
+ * <p>This coder is intended for runners which serialize whole bundles. No runner in this
+ * repository does so yet; the DirectRunner keeps committed bundles in memory.
+ *
+ * @param <T> the type of the values
+ */
+public class WindowedValueBatchCoder<T> extends StandardCoder<List<WindowedValue<T>>> {
+  /**
+   * Create a new {@link WindowedValueBatchCoder} with the provided value coder and window coder.
+   */
+  public static <T> WindowedValueBatchCoder<T> of(
+      Coder<T> valueCoder, Coder<? extends BoundedWindow> windowCoder) {
+    return new WindowedValueBatchCoder<>(valueCoder, windowCoder);
+  }
+
+  @JsonCreator
+  public static WindowedValueBatchCoder<?> of(
+      @JsonProperty(PropertyNames.COMPONENT_ENCODINGS) List<Coder<?>> components) {
+    checkArgument(components.size() == 2, "Expecting 2 components, got %s", components.size());
+    @SuppressWarnings("unchecked")
+    Coder<? extends BoundedWindow> windowCoder = (Coder<? extends BoundedWindow>) components.get(1);
+    return of(components.get(0), windowCoder);
+  }
+
+  private final Coder<T> valueCoder;
+  private final Coder<? extends BoundedWindow> windowCoder;
+  private final Coder<Collection<? extends BoundedWindow>> windowsCoder;
+
+  private WindowedValueBatchCoder(
+      Coder<T> valueCoder, Coder<? extends BoundedWindow> windowCoder) {
+    this.valueCoder = checkNotNull(valueCoder);
+    this.windowCoder = checkNotNull(windowCoder);
+    // As in FullWindowedValueCoder, the window type is cast away so the collection coder can
+    // encode the windows of any element.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Coder<Collection<? extends BoundedWindow>> collectionCoder =
+        (Coder) CollectionCoder.of(this.windowCoder);
+    this.windowsCoder = collectionCoder;
+  }
+
+  public Coder<T> getValueCoder() {
+    return valueCoder;
+  }
+
+  public Coder<? extends BoundedWindow> getWindowCoder() {
+    return windowCoder;
+  }
+
+  @Override
+  public void encode(List<WindowedValue<T>> batch, OutputStream outStream, Context context)
+      throws CoderException, IOException {
+    Context nestedContext = context.nested();
+    int size = batch.size();
+    VarInt.encode(size, outStream);
+
+    for (WindowedValue<T> element : batch) {
+      valueCoder.encode(element.getValue(), outStream, nestedContext);
+    }
+
+    long previousMillis = 0L;
+    for (WindowedValue<T> element : batch) {
+      long millis = element.getTimestamp().getMillis();
+      VarInt.encode(VarInt.zigZagEncode(millis - previousMillis), outStream);
+      previousMillis = millis;
+    }
+
+    Dictionary<Collection<? extends BoundedWindow>> windows = new Dictionary<>(size);
+    Dictionary<PaneInfo> panes = new Dictionary<>(size);
+    for (WindowedValue<T> element : batch) {
+      windows.add(element.getWindows());
+      panes.add(element.getPane());
+    }
+    windows.encode(windowsCoder, outStream, nestedContext);
+    panes.encode(PaneInfoCoder.INSTANCE, outStream, nestedContext);
+  }
+
+  @Override
+  public List<WindowedValue<T>> decode(InputStream inStream, Context context)
+      throws CoderException, IOException {
+    Context nestedContext = context.nested();
+    int size = VarInt.decodeInt(inStream);
+    if (size < 0) {
+      throw new CoderException("Invalid batch size " + size);
+    }
+
+    List<T> values = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(valueCoder.decode(inStream, nestedContext));
+    }
+
+    long[] millis = new long[size];
+    long previousMillis = 0L;
+    for (int i = 0; i < size; i++) {
+      previousMillis += VarInt.zigZagDecode(VarInt.decodeLong(inStream));
+      millis[i] = previousMillis;
+    }
+
+    List<Collection<? extends BoundedWindow>> windows =
+        decodeDictionary(windowsCoder, size, inStream, nestedContext);
+    int[] windowIndices = decodeIndices(windows.size(), size, inStream);
+    List<PaneInfo> panes = decodeDictionary(PaneInfoCoder.INSTANCE, size, inStream, nestedContext);
+    int[] paneIndices = decodeIndices(panes.size(), size, inStream);
+
+    List<WindowedValue<T>> batch = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      batch.add(
+          WindowedValue.of(
+              values.get(i),
+              new Instant(millis[i]),
+              windows.get(windowIndices == null ? 0 : windowIndices[i]),
+              panes.get(paneIndices == null ? 0 : paneIndices[i])));
+    }
+    return batch;
+  }
+
+  @Override
+  public List<? extends Coder<?>> getCoderArguments() {
+    return null;
+  }
+
+  @Override
+  public List<? extends Coder<?>> getComponents() {
+    return ImmutableList.of(valueCoder, windowCoder);
+  }
+
+  @Override
+  public void verifyDeterministic() throws NonDeterministicException {
+    verifyDeterministic(
+        "WindowedValueBatchCoder requires a deterministic valueCoder", valueCoder);
+    verifyDeterministic(
+        "WindowedValueBatchCoder requires a deterministic windowCoder", windowCoder);
+  }
+
+  /**
+   * Decodes the distinct entries of a column written by {@link Dictionary#encode}.
+   */
+  private static <V> List<V> decodeDictionary(
+      Coder<V> coder, int batchSize, InputStream inStream, Context context)
+      throws CoderException, IOException {
+    int distinct = VarInt.decodeInt(inStream);
+    if (distinct < 0 || distinct > batchSize || (batchSize > 0 && distinct == 0)) {
+      throw new CoderException(
+          String.format("Invalid dictionary size %s for a batch of %s", distinct, batchSize));
+    }
+    List<V> entries = new ArrayList<>(distinct);
+    for (int i = 0; i < distinct; i++) {
+      entries.add(coder.decode(inStream, context));
+    }
+    return entries;
+  }
+
+  /**
+   * Decodes the per-element indices of a column written by {@link Dictionary#encode}, or returns
+   * {@code null} if every element refers to the only entry.
+   */
+  private static int[] decodeIndices(int distinct, int batchSize, InputStream inStream)
+      throws CoderException, IOException {
+    if (distinct <= 1) {
+      return null;
+    }
+    int[] indices = new int[batchSize];
+    for (int i = 0; i < batchSize; i++) {
+      int index = VarInt.decodeInt(inStream);
+      if (index < 0 || index >= distinct) {
+        throw new CoderException(
+            String.format("Invalid dictionary index %s for %s entries", index, distinct));
+      }
+      indices[i] = index;
+    }
+    return indices;
+  }
+
+  /**
+   * A column of values encoded as the distinct values in order of first appearance, followed by
+   * the index of the value of each element if there is more than one distinct value.
+   */
+  private static class Dictionary<V> {
+    private final Map<V, Integer> indices = new HashMap<>();
+    private final List<V> entries = new ArrayList<>();
+    private final int[] elementIndices;
+    private int size = 0;
+    private V previous = null;
+    private int previousIndex = -1;
+
+    private Dictionary(int batchSize) {
+      this.elementIndices = new int[batchSize];
+    }
+
+    private void add(V value) {
+      // Elements of a bundle usually arrive in runs with the same windows and pane, so check the
+      // previous entry before hashing.
+      int index;
+      if (previous != null && (previous == value || previous.equals(value))) {
+        index = previousIndex;
+      } else {
+        Integer existing = indices.get(value);
+        if (existing == null) {
+          index = entries.size();
+          indices.put(value, index);
+          entries.add(value);
+        } else {
+          index = existing;
+        }
+        previous = value;
+        previousIndex = index;
+      }
+      elementIndices[size++] = index;
+    }
+
+    private void encode(Coder<V> coder, OutputStream outStream, Context context)
+        throws CoderException, IOException {
+      VarInt.encode(entries.size(), outStream);
+      for (V entry : entries) {
+        coder.encode(entry, outStream, context);
+      }
+      if (entries.size() > 1) {
+        for (int i = 0; i < size; i++) {
+          VarInt.encode(elementIndices[i], outStream);
+        }
+      }
+    }
+  }
+}
@@ -463,7 +463,7 @@ public class StateTags {
         return true;
       }
 
-      if (!(obj instanceof CombiningValueStateTag)) {
+      if (!(obj instanceof KeyedCombiningValueStateTag)) {
         return false;
       }
 
@@ -19,6 +19,8 @@ package org.apache.beam.sdk.coders;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -34,6 +36,7 @@ import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.util.CloudObject;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.SerializableUtils;
 import org.apache.beam.sdk.values.PCollection;
 
@@ -42,10 +45,13 @@ import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.reflect.AvroName;
 import org.apache.avro.reflect.AvroSchema;
 import org.apache.avro.reflect.Nullable;
 import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.reflect.ReflectDatumWriter;
 import org.apache.avro.reflect.Stringable;
 import org.apache.avro.reflect.Union;
 import org.apache.avro.specific.SpecificData;
@@ -55,8 +61,10 @@ import org.hamcrest.Matcher;
 import org.hamcrest.Matchers;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -64,6 +72,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -80,6 +89,7 @@ import java.util.TreeSet;
 /** Tests for {@link AvroCoder}. */
 @RunWith(JUnit4.class)
 public class AvroCoderTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
 
   @DefaultCoder(AvroCoder.class)
   private static class Pojo {
@@ -807,4 +817,176 @@ public class AvroCoderTest {
     @SuppressWarnings("unused")
     String id;
   }
+
+  private static class AllPrimitives {
+    int intField;
+    long longField;
+    double doubleField;
+    float floatField;
+    boolean booleanField;
+    Integer boxedField;
+    String stringField;
+    byte[] bytesField;
+
+    // For deserialization only
+    @SuppressWarnings("unused")
+    AllPrimitives() {}
+
+    AllPrimitives(int i, String s) {
+      intField = i;
+      longField = -1L * i << 40;
+      doubleField = i / 3.0;
+      floatField = i / 7.0f;
+      booleanField = i % 2 == 0;
+      boxedField = -i;
+      stringField = s;
+      bytesField = s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof AllPrimitives)) {
+        return false;
+      }
+      AllPrimitives that = (AllPrimitives) other;
+      return intField == that.intField
+          && longField == that.longField
+          && doubleField == that.doubleField
+          && floatField == that.floatField
+          && booleanField == that.booleanField
+          && Objects.equals(boxedField, that.boxedField)
+          && Objects.equals(stringField, that.stringField)
+          && Arrays.equals(bytesField, that.bytesField);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(intField, stringField);
+    }
+  }
+
+  private static class NestedRecord {
+    String name;
+    AllPrimitives required;
+    @Nullable AllPrimitives optional;
+    @Nullable String optionalString;
+    List<String> tags;
+    Map<String, AllPrimitives> byName;
+
+    // For deserialization only
+    @SuppressWarnings("unused")
+    NestedRecord() {}
+
+    NestedRecord(String name, AllPrimitives optional) {
+      this.name = name;
+      this.required = new AllPrimitives(name.length(), name);
+      this.optional = optional;
+      this.tags = Arrays.asList(name, "", "tag");
+      this.byName = new LinkedHashMap<>();
+      this.byName.put(name, required);
+      this.byName.put("other", new AllPrimitives(3, "other"));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof NestedRecord)) {
+        return false;
+      }
+      NestedRecord that = (NestedRecord) other;
+      return Objects.equals(name, that.name)
+          && Objects.equals(required, that.required)
+          && Objects.equals(optional, that.optional)
+          && Objects.equals(optionalString, that.optionalString)
+          && Objects.equals(tags, that.tags)
+          && Objects.equals(byName, that.byName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name);
+    }
+  }
+
+  private enum Color { RED, GREEN }
+
+  private static class HasEnumAndShort {
+    Color color;
+    short small;
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof HasEnumAndShort
+          && color == ((HasEnumAndShort) other).color
+          && small == ((HasEnumAndShort) other).small;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(color, small);
+    }
+  }
+
+  private static <T> byte[] encodeWithReflect(Class<T> type, T value) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+    new ReflectDatumWriter<T>(ReflectData.get().getSchema(type)).write(value, encoder);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testSpecializedEncodingMatchesReflect() throws Exception {
+    AvroCoder<NestedRecord> coder = AvroCoder.of(NestedRecord.class);
+    assertTrue(coder.isSpecialized());
+    assertTrue(AvroCoder.of(Pojo.class).isSpecialized());
+
+    NestedRecord withOptional = new NestedRecord("with", new AllPrimitives(7, "seven"));
+    withOptional.optionalString = "present";
+    for (NestedRecord value : Arrays.asList(withOptional, new NestedRecord("without", null))) {
+      assertThat(
+          CoderUtils.encodeToByteArray(coder, value),
+          equalTo(encodeWithReflect(NestedRecord.class, value)));
+      CoderProperties.coderDecodeEncodeEqual(coder, value);
+    }
+  }
+
+  @Test
+  public void testUnsupportedTypesUseReflect() throws Exception {
+    AvroCoder<HasEnumAndShort> coder = AvroCoder.of(HasEnumAndShort.class);
+    assertFalse(coder.isSpecialized());
+    assertFalse(AvroCoder.of(GenericWithAnnotation.class).isSpecialized());
+
+    HasEnumAndShort value = new HasEnumAndShort();
+    value.color = Color.GREEN;
+    value.small = 12;
+    CoderProperties.coderDecodeEncodeEqual(coder, value);
+  }
+
+  @Test
+  public void testSpecializedEncodingNullInNonNullableField() throws Exception {
+    AvroCoder<NestedRecord> coder = AvroCoder.of(NestedRecord.class);
+    NestedRecord value = new NestedRecord("name", null);
+    value.name = null;
+
+    thrown.expect(NullPointerException.class);
+    thrown.expectMessage("name");
+    CoderUtils.encodeToByteArray(coder, value);
+  }
+
+  @Test
+  public void testDecodeReusesRecords() throws Exception {
+    AvroCoder<NestedRecord> coder = AvroCoder.of(NestedRecord.class);
+    NestedRecord first = new NestedRecord("first", new AllPrimitives(1, "one"));
+    NestedRecord second = new NestedRecord("second", new AllPrimitives(2, "two"));
+
+    NestedRecord reuse = coder.decode(
+        null, new ByteArrayInputStream(CoderUtils.encodeToByteArray(coder, first)), Context.OUTER);
+    AllPrimitives reusedOptional = reuse.optional;
+    NestedRecord decoded = coder.decode(
+        reuse, new ByteArrayInputStream(CoderUtils.encodeToByteArray(coder, second)),
+        Context.OUTER);
+
+    assertSame(reuse, decoded);
+    assertSame(reusedOptional, decoded.optional);
+    assertThat(decoded, equalTo(second));
+  }
 }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.sdk.coders.Coder.Context;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.EncodingBuffer;
+import org.apache.beam.sdk.values.KV;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/** Unit tests for {@link BufferCoders}. */
+@RunWith(JUnit4.class)
+public class BufferCodersTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void testStreamCoderFallback() throws Exception {
+    // BigEndianLongCoder does not implement BufferCoder, and is nested within coders that do.
+    Coder<KV<Long, List<String>>> coder =
+        KvCoder.of(BigEndianLongCoder.of(), ListCoder.of(StringUtf8Coder.of()));
+    CoderProperties.coderBufferEncodingConsistentWithStream(
+        coder, KV.of(-3L, Arrays.asList("foo", "", "bar")));
+  }
+
+  @Test
+  public void testEncodeToByteArrayRoundTrip() throws Exception {
+    KvCoder<String, Long> coder = KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of());
+    KV<String, Long> value = KV.of("key", Long.MIN_VALUE);
+    byte[] encoded = BufferCoders.encodeToByteArray(coder, value);
+    assertThat(BufferCoders.decodeFromByteArray(coder, encoded), equalTo(value));
+  }
+
+  @Test
+  public void testDecodeMultipleNestedValues() throws Exception {
+    EncodingBuffer buffer = new EncodingBuffer();
+    for (int i = 0; i < 100; i++) {
+      BufferCoders.encode(StringUtf8Coder.of(), "value-" + i, buffer, Context.NESTED);
+      BufferCoders.encode(BigEndianIntegerCoder.of(), i, buffer, Context.NESTED);
+    }
+    ByteBuffer encoded = buffer.asByteBuffer();
+    for (int i = 0; i < 100; i++) {
+      assertThat(
+          BufferCoders.decode(StringUtf8Coder.of(), encoded, Context.NESTED),
+          equalTo("value-" + i));
+      assertThat(
+          BufferCoders.decode(BigEndianIntegerCoder.of(), encoded, Context.NESTED), equalTo(i));
+    }
+    assertEquals(0, encoded.remaining());
+  }
+
+  @Test
+  public void testDecodeDirectBuffer() throws Exception {
+    byte[] encoded = BufferCoders.encodeToByteArray(StringUtf8Coder.of(), "direct");
+    ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+    direct.put(encoded);
+    direct.flip();
+    assertThat(
+        BufferCoders.decode(StringUtf8Coder.of(), direct, Context.OUTER), equalTo("direct"));
+  }
+
+  @Test
+  public void testDecodeTruncatedValueFails() throws Exception {
+    EncodingBuffer buffer = new EncodingBuffer();
+    BufferCoders.encode(StringUtf8Coder.of(), "truncated", buffer, Context.NESTED);
+    ByteBuffer encoded = buffer.asByteBuffer();
+    encoded.limit(encoded.limit() - 1);
+
+    thrown.expect(CoderException.class);
+    BufferCoders.decode(StringUtf8Coder.of(), encoded, Context.NESTED);
+  }
+}
@@ -56,6 +56,13 @@ public class ByteArrayCoderTest {
     }
   }
 
+  @Test
+  public void testBufferEncodingConsistentWithStream() throws Exception {
+    for (byte[] value : TEST_VALUES) {
+      CoderProperties.coderBufferEncodingConsistentWithStream(TEST_CODER, value);
+    }
+  }
+
   @Test
   public void testRegisterByteSizeObserver() throws Exception {
     CoderProperties.testByteCount(ByteArrayCoder.of(), Coder.Context.OUTER,
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.util.CloudObject;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.SerializableUtils;
+import org.apache.beam.sdk.util.Serializer;
+import org.apache.beam.sdk.values.KV;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Tests for {@link CompactSerializableCoder}.
+ */
+@RunWith(JUnit4.class)
+public class CompactSerializableCoderTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private enum Color {
+    RED,
+    GREEN
+  }
+
+  static class Record implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final int count;
+    private final Color color;
+    private final List<Long> values;
+    private final Map<String, Integer> counts;
+    private final Record child;
+
+    Record(String name, int count, Record child) {
+      this.name = name;
+      this.count = count;
+      this.color = count % 2 == 0 ? Color.RED : Color.GREEN;
+      this.values = new ArrayList<>(Arrays.asList((long) count, count * 2L));
+      this.counts = new HashMap<>();
+      this.counts.put(name, count);
+      this.child = child;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Record)) {
+        return false;
+      }
+      Record that = (Record) other;
+      return getClass() == that.getClass()
+          && Objects.equals(name, that.name)
+          && count == that.count
+          && color == that.color
+          && Objects.equals(values, that.values)
+          && Objects.equals(counts, that.counts)
+          && Objects.equals(child, that.child);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name, count, color, values, counts, child);
+    }
+  }
+
+  /** A subclass of the record type, whose descriptor is not in the table. */
+  static class SubRecord extends Record {
+    private static final long serialVersionUID = 1L;
+
+    private final double extra;
+
+    SubRecord(String name, int count, double extra) {
+      super(name, count, null);
+      this.extra = extra;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return super.equals(other) && extra == ((SubRecord) other).extra;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(super.hashCode(), extra);
+    }
+  }
+
+  /** A record which refers to the same object from two fields. */
+  static class SharedReferences implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Record first;
+    private final Record second;
+
+    SharedReferences(Record record) {
+      this.first = record;
+      this.second = record;
+    }
+  }
+
+  /** A record whose serialization fails. */
+  static class Unserializable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      throw new IOException("not today");
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException {}
+  }
+
+  private final CompactSerializableCoder<Record> coder =
+      CompactSerializableCoder.of(Record.class);
+
+  @Test
+  public void testEncodeDecode() throws Exception {
+    Record record = new Record("foo", 3, new Record("bar", 4, null));
+    CoderProperties.coderDecodeEncodeEqual(coder, record);
+    CoderProperties.coderDecodeEncodeEqual(coder, new SubRecord("baz", 5, 1.5));
+    CoderProperties.coderDecodeEncodeEqual(coder, null);
+  }
+
+  @Test
+  public void testEncodeDecodeManyElementsInOneStream() throws Exception {
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(i % 3 == 0 ? new SubRecord("sub" + i, i, i / 2.0) : new Record("r" + i, i, null));
+    }
+    records.add(null);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Record record : records) {
+      coder.encode(record, out, Coder.Context.NESTED);
+    }
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+    for (Record record : records) {
+      assertEquals(record, coder.decode(in, Coder.Context.NESTED));
+    }
+    assertEquals(0, in.available());
+  }
+
+  @Test
+  public void testEncodingIsIndependentOfPreviousElements() throws Exception {
+    Record record = new Record("foo", 3, null);
+    byte[] first = CoderUtils.encodeToByteArray(coder, record);
+    CoderUtils.encodeToByteArray(coder, new SubRecord("bar", 4, 2.0));
+    byte[] second = CoderUtils.encodeToByteArray(coder, record);
+
+    assertEquals(Arrays.toString(first), Arrays.toString(second));
+    // A fresh coder has no state from elements this coder has encoded or decoded.
+    assertEquals(record, CoderUtils.decodeFromByteArray(CompactSerializableCoder.of(Record.class),
+        second));
+  }
+
+  @Test
+  public void testSharedReferencesAreDecodedShared() throws Exception {
+    CompactSerializableCoder<SharedReferences> sharedCoder =
+        CompactSerializableCoder.of(SharedReferences.class);
+    SharedReferences decoded =
+        CoderUtils.clone(sharedCoder, new SharedReferences(new Record("foo", 1, null)));
+    assertEquals(new Record("foo", 1, null), decoded.first);
+    assertSame(decoded.first, decoded.second);
+  }
+
+  @Test
+  public void testEncodingSmallerThanSerializableCoder() throws Exception {
+    Record record = new Record("foo", 3, new Record("bar", 4, null));
+    int compactBytes = CoderUtils.encodeToByteArray(coder, record).length;
+    int serializableBytes =
+        CoderUtils.encodeToByteArray(SerializableCoder.of(Record.class), record).length;
+    assertThat(compactBytes, lessThan(serializableBytes / 2));
+  }
+
+  @Test
+  public void testNestedInOtherCoders() throws Exception {
+    KvCoder<Record, Record> kvCoder = KvCoder.of(coder, coder);
+    CoderProperties.coderDecodeEncodeEqual(
+        kvCoder, KV.of(new Record("key", 1, null), new Record("value", 2, null)));
+    CoderProperties.coderDecodeEncodeEqual(
+        ListCoder.of(coder),
+        Arrays.asList(new Record("a", 1, null), null, new SubRecord("b", 2, 3.0)));
+  }
+
+  @Test
+  public void testEncodeAfterFailedEncode() throws Exception {
+    CompactSerializableCoder<Serializable> anyCoder =
+        CompactSerializableCoder.of(Serializable.class);
+    try {
+      CoderUtils.encodeToByteArray(anyCoder, new Unserializable());
+    } catch (CoderException expected) {
+      assertThat(expected.getMessage(), containsString("unable to serialize record"));
+    }
+    Record record = new Record("foo", 3, null);
+    assertEquals(record, CoderUtils.clone(anyCoder, record));
+  }
+
+  @Test
+  public void testDecodeUnknownClassIndex() throws Exception {
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, new Record("foo", 3, null));
+    // The object and class descriptor markers are followed by the index of the record class.
+    encoded[2] = 127;
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Unknown class index");
+    coder.decode(new ByteArrayInputStream(encoded), Coder.Context.OUTER);
+  }
+
+  @Test
+  public void testSerializable() throws Exception {
+    CoderProperties.coderSerializable(coder);
+    CoderProperties.coderDecodeEncodeEqual(
+        SerializableUtils.clone(coder), new Record("foo", 3, null));
+  }
+
+  @Test
+  public void testCloudObjectRoundTrip() throws Exception {
+    CloudObject encoding = coder.asCloudObject();
+    Coder<?> decoded = Serializer.deserialize(encoding, Coder.class);
+    assertThat(decoded, instanceOf(CompactSerializableCoder.class));
+    assertEquals(coder, decoded);
+  }
+
+  @Test
+  public void testEncodingId() throws Exception {
+    assertThat(
+        coder.getEncodingId(),
+        containsString(String.format("%s:%s:compact-", Record.class.getName(), 1L)));
+    assertThat(
+        coder.getEncodingId(), not(SerializableCoder.of(Record.class).getEncodingId()));
+  }
+
+  @Test
+  public void testNullEncodingForString() throws Exception {
+    Coder<String> stringCoder = CompactSerializableCoder.of(String.class);
+    assertNull(CoderUtils.clone(stringCoder, null));
+    assertEquals("foo", CoderUtils.clone(stringCoder, "foo"));
+  }
+}
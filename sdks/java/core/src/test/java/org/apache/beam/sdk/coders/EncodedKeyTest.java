@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+/**
+ * Tests for {@link EncodedKey}.
+ */
+@RunWith(JUnit4.class)
+public class EncodedKeyTest {
+  private static final Coder<KV<String, Integer>> KEY_CODER =
+      KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of());
+
+  @Test
+  public void testOfKeyEncodesInOuterContext() throws Exception {
+    KV<String, Integer> key = KV.of("foo", 3);
+    EncodedKey encodedKey = EncodedKey.of(KEY_CODER, key);
+    assertArrayEquals(CoderUtils.encodeToByteArray(KEY_CODER, key), encodedKey.getValue());
+    assertEquals(key, encodedKey.decode(KEY_CODER));
+  }
+
+  @Test
+  public void testEqualEncodingsEqual() throws Exception {
+    EncodedKey encodedKey = EncodedKey.of(KEY_CODER, KV.of("foo", 3));
+    EncodedKey other = EncodedKey.of(CoderUtils.encodeToByteArray(KEY_CODER, KV.of("foo", 3)));
+    assertThat(encodedKey, equalTo(other));
+    assertEquals(encodedKey.hashCode(), other.hashCode());
+
+    EncodedKey different = EncodedKey.of(KEY_CODER, KV.of("foo", 4));
+    assertThat(encodedKey, not(equalTo(different)));
+  }
+
+  @Test
+  public void testConsistentWithStructuralByteArray() {
+    byte[] bytes = new byte[] {1, 2, 3};
+    EncodedKey encodedKey = EncodedKey.of(bytes);
+    StructuralByteArray structural = new StructuralByteArray(Arrays.copyOf(bytes, bytes.length));
+    assertThat(encodedKey, equalTo(structural));
+    assertThat(structural, equalTo((StructuralByteArray) encodedKey));
+    assertEquals(structural.hashCode(), encodedKey.hashCode());
+  }
+
+  @Test
+  public void testHashCodeIsCached() {
+    byte[] bytes = new byte[] {1, 2, 3};
+    EncodedKey encodedKey = EncodedKey.of(bytes);
+    int hash = encodedKey.hashCode();
+    // The bytes must not be modified; this shows that the hash code is not computed again.
+    bytes[0] = 7;
+    assertEquals(hash, encodedKey.hashCode());
+  }
+
+  @Test
+  public void testStandardCoderStructuralValue() throws Exception {
+    Object structuralValue = KEY_CODER.structuralValue(KV.of("foo", 3));
+    assertThat(structuralValue, not(instanceOf(EncodedKey.class)));
+    Coder<KV<String, Iterable<Integer>>> inconsistentCoder =
+        KvCoder.of(StringUtf8Coder.of(), IterableCoder.of(VarIntCoder.of()));
+    Iterable<Integer> values = Arrays.asList(3);
+    Object inconsistentValue = inconsistentCoder.structuralValue(KV.of("foo", values));
+    assertThat(((KV<?, ?>) inconsistentValue).getValue(), instanceOf(EncodedKey.class));
+  }
+}
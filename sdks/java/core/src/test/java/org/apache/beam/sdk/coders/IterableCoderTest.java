@@ -17,11 +17,17 @@
  */
 package org.apache.beam.sdk.coders;
 
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
 
 import org.apache.beam.sdk.testing.CoderProperties;
 import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -54,6 +60,57 @@ public class IterableCoderTest {
     }
   }
 
+  @Test
+  public void testBufferEncodingConsistentWithStream() throws Exception {
+    for (Iterable<Integer> value : TEST_VALUES) {
+      CoderProperties.coderBufferEncodingConsistentWithStream(TEST_CODER, value);
+    }
+    // An Iterable that is not a Collection uses the block-counted encoding.
+    CoderProperties.coderBufferEncodingConsistentWithStream(
+        TEST_CODER, Iterables.concat(Arrays.asList(1, 2), Arrays.asList(3)));
+  }
+
+  @Test
+  public void testDecodeToEqualList() throws Exception {
+    for (Iterable<Integer> value : TEST_VALUES) {
+      Iterable<Integer> decoded = CoderUtils.clone(TEST_CODER, value);
+      assertThat(decoded, instanceOf(List.class));
+      assertEquals(Lists.newArrayList(value), decoded);
+    }
+    // An Iterable that is not a Collection uses the block-counted encoding.
+    Iterable<Integer> decoded = CoderUtils.clone(
+        TEST_CODER, Iterables.concat(Arrays.asList(1, 2), Arrays.asList(3)));
+    assertEquals(Arrays.asList(1, 2, 3), decoded);
+  }
+
+  @Test
+  public void testDecodeAsNestedKvValue() throws Exception {
+    // The iterable is followed by more data, which must not be consumed by its decoding.
+    Coder<KV<Iterable<Integer>, String>> kvCoder = KvCoder.of(TEST_CODER, StringUtf8Coder.of());
+    List<Iterable<Integer>> values = Arrays.<Iterable<Integer>>asList(
+        Collections.<Integer>emptyList(),
+        Arrays.asList(1, 2, 3),
+        Iterables.concat(Arrays.asList(4, 5), Arrays.asList(6)));
+    for (Iterable<Integer> value : values) {
+      KV<Iterable<Integer>, String> kv = KV.of(value, "after");
+      KV<Iterable<Integer>, String> decoded = CoderUtils.clone(kvCoder, kv);
+      assertEquals(Lists.newArrayList(value), decoded.getKey());
+      assertEquals("after", decoded.getValue());
+
+      KV<Iterable<Integer>, String> fromBuffer =
+          BufferCoders.decodeFromByteArray(kvCoder, BufferCoders.encodeToByteArray(kvCoder, kv));
+      assertEquals(Lists.newArrayList(value), fromBuffer.getKey());
+      assertEquals("after", fromBuffer.getValue());
+    }
+  }
+
+  @Test
+  public void testDecodeFromTruncatedInputThrows() throws Exception {
+    byte[] encoded = CoderUtils.encodeToByteArray(TEST_CODER, Arrays.asList(1, 2));
+    thrown.expect(CoderException.class);
+    CoderUtils.decodeFromByteArray(TEST_CODER, Arrays.copyOf(encoded, encoded.length - 1));
+  }
+
   @Test
   public void testGetInstanceComponentsNonempty() {
     Iterable<Integer> iterable = Arrays.asList(2, 58, 99, 5);
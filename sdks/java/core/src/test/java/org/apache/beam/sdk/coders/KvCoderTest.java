@@ -72,6 +72,17 @@ public class KvCoderTest {
     }
   }
 
+  @Test
+  public void testBufferEncodingConsistentWithStream() throws Exception {
+    for (Map.Entry<Coder<?>, Iterable<?>> entry : TEST_DATA.entrySet()) {
+      @SuppressWarnings("unchecked")
+      Coder<Object> coder = (Coder<Object>) entry.getKey();
+      for (Object value : entry.getValue()) {
+        CoderProperties.coderBufferEncodingConsistentWithStream(coder, value);
+      }
+    }
+  }
+
   // If this changes, it implies the binary format has changed!
   private static final String EXPECTED_ENCODING_ID = "";
 
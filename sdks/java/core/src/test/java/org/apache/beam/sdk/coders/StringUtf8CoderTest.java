@@ -17,6 +17,8 @@
  */
 package org.apache.beam.sdk.coders;
 
+import static org.junit.Assert.assertArrayEquals;
+
 import org.apache.beam.sdk.testing.CoderProperties;
 import org.apache.beam.sdk.util.CoderUtils;
 
@@ -26,6 +28,7 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
@@ -50,6 +53,13 @@ public class StringUtf8CoderTest {
     }
   }
 
+  @Test
+  public void testBufferEncodingConsistentWithStream() throws Exception {
+    for (String value : TEST_VALUES) {
+      CoderProperties.coderBufferEncodingConsistentWithStream(TEST_CODER, value);
+    }
+  }
+
   /**
    * Generated data to check that the wire format has not changed. To regenerate, see
    * {@link org.apache.beam.sdk.coders.PrintBase64Encodings}.
@@ -68,6 +78,45 @@ public class StringUtf8CoderTest {
     CoderProperties.coderEncodesBase64(TEST_CODER, TEST_VALUES, TEST_ENCODINGS);
   }
 
+  @Test
+  public void testDecodeEncodeLongStrings() throws Exception {
+    // Longer than the short-string fast path, in both ASCII and multi-byte characters.
+    char[] chars = new char[20 * 1024];
+    Arrays.fill(chars, 'a');
+    CoderProperties.coderDecodeEncodeEqual(TEST_CODER, new String(chars));
+    Arrays.fill(chars, '\u00e9');
+    CoderProperties.coderDecodeEncodeEqual(TEST_CODER, new String(chars));
+  }
+
+  @Test
+  public void testDecodeEncodeAroundShortStringPath() throws Exception {
+    // Short ASCII strings take a fast path; the boundary and non-ASCII strings must not.
+    for (int length : new int[] {63, 64, 65, 127, 128, 129}) {
+      char[] chars = new char[length];
+      Arrays.fill(chars, 'a');
+      CoderProperties.coderDecodeEncodeEqual(TEST_CODER, new String(chars));
+      CoderProperties.coderBufferEncodingConsistentWithStream(TEST_CODER, new String(chars));
+      chars[length - 1] = '\u00e9';
+      CoderProperties.coderDecodeEncodeEqual(TEST_CODER, new String(chars));
+      CoderProperties.coderBufferEncodingConsistentWithStream(TEST_CODER, new String(chars));
+    }
+  }
+
+  @Test
+  public void testEncodingMatchesStringGetBytes() throws Exception {
+    char high = (char) 0xD83D;
+    char low = (char) 0xDE00;
+    List<String> values = Arrays.asList(
+        "\u00e9t\u00e9", "emoji " + high + low, "unpaired " + high, "unpaired " + low);
+    for (String value : values) {
+      assertArrayEquals(
+          value.getBytes(StandardCharsets.UTF_8),
+          CoderUtils.encodeToByteArray(TEST_CODER, value, Coder.Context.OUTER));
+      CoderProperties.coderBufferEncodingConsistentWithStream(TEST_CODER, value);
+      CoderProperties.testByteCount(TEST_CODER, Coder.Context.NESTED, new String[] {value});
+    }
+  }
+
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
@@ -49,6 +49,13 @@ public class VarIntCoderTest {
     }
   }
 
+  @Test
+  public void testBufferEncodingConsistentWithStream() throws Exception {
+    for (Integer value : TEST_VALUES) {
+      CoderProperties.coderBufferEncodingConsistentWithStream(TEST_CODER, value);
+    }
+  }
+
   // If this changes, it implies the binary format has changed.
   private static final String EXPECTED_ENCODING_ID = "";
 
@@ -51,6 +51,13 @@ public class VarLongCoderTest {
     }
   }
 
+  @Test
+  public void testBufferEncodingConsistentWithStream() throws Exception {
+    for (Long value : TEST_VALUES) {
+      CoderProperties.coderBufferEncodingConsistentWithStream(TEST_CODER, value);
+    }
+  }
+
   // If this changes, it implies the binary format has changed.
   private static final String EXPECTED_ENCODING_ID = "";
 
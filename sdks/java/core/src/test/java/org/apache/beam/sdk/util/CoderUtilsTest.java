@@ -19,6 +19,10 @@ package org.apache.beam.sdk.util;
 
 import static org.apache.beam.sdk.util.CoderUtils.makeCloudEncoding;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doThrow;
@@ -26,14 +30,17 @@ import static org.mockito.Mockito.mock;
 
 import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.Coder.Context;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.ListCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VoidCoder;
 import org.apache.beam.sdk.testing.CoderPropertiesTest.ClosingCoder;
+import org.apache.beam.sdk.values.KV;
 
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
@@ -43,8 +50,13 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Tests for CoderUtils.
@@ -228,4 +240,105 @@ public class CoderUtilsTest {
     expectedException.expectMessage("Caller does not own the underlying");
     CoderUtils.encodeToByteArray(new ClosingCoder(), "test-value", Context.NESTED);
   }
+
+  /**
+   * A {@link Coder} that encodes and decodes its value with {@link CoderUtils}, as some nested
+   * coders do.
+   */
+  static class ReentrantCoder extends AtomicCoder<String> {
+    @Override
+    public void encode(String value, OutputStream outStream, Context context)
+        throws IOException {
+      ByteArrayCoder.of().encode(
+          CoderUtils.encodeToByteArray(StringUtf8Coder.of(), value), outStream, context);
+    }
+
+    @Override
+    public String decode(InputStream inStream, Context context) throws IOException {
+      return CoderUtils.decodeFromByteArray(
+          StringUtf8Coder.of(), ByteArrayCoder.of().decode(inStream, context));
+    }
+  }
+
+  @Test
+  public void testReentrantEncodeAndClone() throws Exception {
+    ListCoder<String> coder = ListCoder.of(new ReentrantCoder());
+    List<String> value = Arrays.asList("a", "bb", "", "ccc");
+    byte[] expected = CoderUtils.encodeToByteArray(
+        ListCoder.of(ByteArrayCoder.of()),
+        Arrays.asList(
+            "a".getBytes(StandardCharsets.UTF_8),
+            "bb".getBytes(StandardCharsets.UTF_8),
+            new byte[0],
+            "ccc".getBytes(StandardCharsets.UTF_8)));
+
+    assertArrayEquals(expected, CoderUtils.encodeToByteArray(coder, value));
+    assertEquals(value, CoderUtils.clone(coder, value));
+  }
+
+  @Test
+  public void testCloneDoesNotAliasOwnedByteArray() throws Exception {
+    byte[] value = {1, 2, 3};
+    byte[] cloned = CoderUtils.clone(ByteArrayCoder.of(), value);
+    assertArrayEquals(value, cloned);
+    assertNotSame(value, cloned);
+    // The stream used for the clone is reused, which must not affect the result.
+    CoderUtils.encodeToByteArray(ByteArrayCoder.of(), new byte[] {4, 5, 6, 7});
+    assertArrayEquals(value, cloned);
+  }
+
+  @Test
+  public void testEncodeToProvidedByteArray() throws Exception {
+    byte[] expected = CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "abc", Context.NESTED);
+    byte[] buffer = new byte[5];
+    assertEquals(
+        expected.length,
+        CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "abc", Context.NESTED, buffer, 1));
+    assertArrayEquals(expected, Arrays.copyOfRange(buffer, 1, 1 + expected.length));
+
+    // An encoding that does not fit leaves the buffer unchanged.
+    byte[] small = new byte[3];
+    assertEquals(
+        expected.length,
+        CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "abc", Context.NESTED, small, 0));
+    assertArrayEquals(new byte[3], small);
+  }
+
+  @Test
+  public void testEncodeToByteBuffer() throws Exception {
+    ByteBuffer encoded = CoderUtils.encodeToByteBuffer(StringUtf8Coder.of(), "abc");
+    assertTrue(encoded.isReadOnly());
+    assertEquals(ByteBuffer.wrap(CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "abc")),
+        encoded);
+
+    // Encoding to a byte array does not invalidate the last ByteBuffer.
+    CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "xyz");
+    assertEquals(ByteBuffer.wrap("abc".getBytes(StandardCharsets.UTF_8)), encoded);
+
+    assertEquals(ByteBuffer.wrap("de".getBytes(StandardCharsets.UTF_8)),
+        CoderUtils.encodeToByteBuffer(StringUtf8Coder.of(), "de"));
+  }
+
+  @Test
+  public void testBufferCoderMatchesStreamEncoding() throws Exception {
+    KvCoder<String, Integer> coder = KvCoder.of(StringUtf8Coder.of(), BigEndianIntegerCoder.of());
+    KV<String, Integer> value = KV.of("foo", 3);
+    ExposedByteArrayOutputStream stream = new ExposedByteArrayOutputStream();
+    coder.encode(value, stream, Context.OUTER);
+
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, value);
+    assertArrayEquals(stream.toByteArray(), encoded);
+    assertEquals(value, CoderUtils.decodeFromByteArray(coder, encoded));
+    assertEquals(value, CoderUtils.clone(coder, value));
+  }
+
+  @Test
+  public void testBufferCoderExtraBytesFailsWhenDecodingByteArray() throws Exception {
+    byte[] encoded = CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "abc", Context.NESTED);
+    byte[] extra = Arrays.copyOf(encoded, encoded.length + 1);
+
+    expectedException.expect(CoderException.class);
+    expectedException.expectMessage("1 unexpected extra bytes");
+    CoderUtils.decodeFromByteArray(StringUtf8Coder.of(), extra, Context.NESTED);
+  }
 }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Unit tests for {@link EncodingBuffer}. */
+@RunWith(JUnit4.class)
+public class EncodingBufferTest {
+
+  @Test
+  public void testWritesGrowBuffer() throws IOException {
+    EncodingBuffer buffer = new EncodingBuffer(0);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    DataOutputStream expectedData = new DataOutputStream(expected);
+    byte[] bytes = new byte[2000];
+    Arrays.fill(bytes, (byte) 7);
+    for (int i = 0; i < 100; i++) {
+      buffer.write(i);
+      expectedData.write(i);
+      buffer.writeInt(-i);
+      expectedData.writeInt(-i);
+      buffer.write(bytes, i, 10 * i);
+      expectedData.write(bytes, i, 10 * i);
+    }
+    assertEquals(expected.size(), buffer.size());
+    assertArrayEquals(expected.toByteArray(), buffer.toByteArray());
+  }
+
+  @Test
+  public void testResetRetainsNoContents() {
+    EncodingBuffer buffer = new EncodingBuffer();
+    buffer.writeInt(1);
+    buffer.reset();
+    buffer.write(3);
+    assertArrayEquals(new byte[] {3}, buffer.toByteArray());
+  }
+
+  @Test
+  public void testAsByteBuffer() {
+    EncodingBuffer buffer = new EncodingBuffer();
+    buffer.writeVarInt(300);
+    buffer.write(5);
+    ByteBuffer byteBuffer = buffer.asByteBuffer();
+    assertEquals(3, byteBuffer.remaining());
+    assertEquals((byte) 0xAC, byteBuffer.get());
+    assertEquals((byte) 0x02, byteBuffer.get());
+    assertEquals((byte) 5, byteBuffer.get());
+  }
+}
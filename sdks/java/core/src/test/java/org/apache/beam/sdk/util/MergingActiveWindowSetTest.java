@@ -18,37 +18,51 @@
 package org.apache.beam.sdk.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.MapCoder;
+import org.apache.beam.sdk.coders.SetCoder;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
 import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
 import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.util.state.BagState;
 import org.apache.beam.sdk.util.state.InMemoryStateInternals;
 import org.apache.beam.sdk.util.state.StateInternals;
+import org.apache.beam.sdk.util.state.StateNamespaces;
+import org.apache.beam.sdk.util.state.StateTags;
+import org.apache.beam.sdk.util.state.ValueState;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Test NonMergingActiveWindowSet.
  */
 @RunWith(JUnit4.class)
 public class MergingActiveWindowSetTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
   private Sessions windowFn;
   private StateInternals<String> state;
   private MergingActiveWindowSet<IntervalWindow> set;
@@ -146,6 +160,22 @@ public class MergingActiveWindowSetTest {
     assertEquals(set, reloaded);
   }
 
+  private ValueState<Map<IntervalWindow, Set<IntervalWindow>>> treeState() {
+    return state.state(
+        StateNamespaces.global(),
+        StateTags.makeSystemTagInternal(StateTags.value("tree", coder())));
+  }
+
+  private BagState<Map<IntervalWindow, Set<IntervalWindow>>> deltasState() {
+    return state.state(
+        StateNamespaces.global(),
+        StateTags.makeSystemTagInternal(StateTags.bag("treeDeltas", coder())));
+  }
+
+  private Coder<Map<IntervalWindow, Set<IntervalWindow>>> coder() {
+    return MapCoder.of(windowFn.windowCoder(), SetCoder.of(windowFn.windowCoder()));
+  }
+
   private IntervalWindow window(long start, long size) {
     return new IntervalWindow(new Instant(start), new Duration(size));
   }
@@ -240,6 +270,105 @@ public class MergingActiveWindowSetTest {
     assertTrue(set.getActiveAndNewWindows().isEmpty());
   }
 
+  @Test
+  public void testManySessions() throws Exception {
+    // Many disjoint sessions, each persisted as a delta and then compacted into a snapshot.
+    for (int i = 0; i < 40; i++) {
+      add(i * 100);
+      set.merge(callback);
+      activate(new HashMap<IntervalWindow, IntervalWindow>(), i * 100);
+      cleanup();
+    }
+    assertEquals(40, set.getActiveAndNewWindows().size());
+
+    // A NEW window only merges with the ACTIVE windows it overlaps.
+    add(3005);
+    Map<IntervalWindow, IntervalWindow> map =
+        merge(ImmutableList.of(window(3000, 10), window(3005, 10)), window(3000, 15));
+    activate(map, 3005);
+    assertEquals(40, set.getActiveAndNewWindows().size());
+    assertEquals(
+        ImmutableSet.of(window(3000, 10)), set.readStateAddresses(window(3000, 15)));
+    cleanup();
+
+    // Removing windows is persisted too.
+    set.remove(window(0, 10));
+    set.remove(window(3000, 15));
+    cleanup();
+    assertEquals(38, set.getActiveAndNewWindows().size());
+  }
+
+  @Test
+  public void testCompactsDeltas() throws Exception {
+    // Each persist appends a delta until MAX_DELTAS of them replace each other with a snapshot.
+    for (int i = 0; i < MergingActiveWindowSet.MAX_DELTAS; i++) {
+      add(i * 100);
+      set.merge(callback);
+      activate(new HashMap<IntervalWindow, IntervalWindow>(), i * 100);
+      cleanup();
+    }
+    assertEquals(MergingActiveWindowSet.MAX_DELTAS, Iterables.size(deltasState().read()));
+
+    add(5000);
+    set.merge(callback);
+    activate(new HashMap<IntervalWindow, IntervalWindow>(), 5000);
+    cleanup();
+    assertEquals(1, Iterables.size(deltasState().read()));
+    assertEquals(
+        set.getActiveAndNewWindows(), Iterables.getOnlyElement(deltasState().read()).keySet());
+    assertEquals(MergingActiveWindowSet.MAX_DELTAS + 1, set.getActiveAndNewWindows().size());
+  }
+
+  @Test
+  public void testMigratesTreeValueState() throws Exception {
+    // The set used to be persisted as a single value, which is read and replaced by a snapshot.
+    Map<IntervalWindow, Set<IntervalWindow>> tree = new HashMap<>();
+    tree.put(window(1, 11), ImmutableSet.of(window(1, 10)));
+    tree.put(window(30, 10), ImmutableSet.of(window(30, 10)));
+    treeState().write(tree);
+
+    set = new MergingActiveWindowSet<>(windowFn, state);
+    assertEquals(tree.keySet(), set.getActiveAndNewWindows());
+    assertEquals(ImmutableSet.of(window(1, 10)), set.readStateAddresses(window(1, 11)));
+
+    add(5);
+    Map<IntervalWindow, IntervalWindow> map =
+        merge(ImmutableList.of(window(1, 11), window(5, 10)), window(1, 14));
+    activate(map, 5);
+    cleanup();
+    assertNull(treeState().read());
+    assertEquals(1, Iterables.size(deltasState().read()));
+    assertEquals(ImmutableSet.of(window(1, 10)), set.readStateAddresses(window(1, 14)));
+  }
+
+  @Test
+  public void testMergesOverlappingActiveWindows() throws Exception {
+    // Windows made ACTIVE without being merged may overlap, including with the same start.
+    set.addActiveForTesting(window(1, 10));
+    set.addActiveForTesting(window(1, 12));
+    set.addActiveForTesting(window(5, 10));
+    set.addActiveForTesting(window(30, 10));
+
+    set.merge(callback);
+    assertEquals(ImmutableSet.of(window(1, 14), window(30, 10)), set.getActiveAndNewWindows());
+
+    // The merged window is indexed, so a later NEW window which overlaps it is merged with it.
+    add(12);
+    Map<IntervalWindow, IntervalWindow> map =
+        merge(ImmutableList.of(window(1, 14), window(12, 10)), window(1, 21));
+    activate(map, 12);
+    cleanup();
+    assertEquals(ImmutableSet.of(window(1, 21), window(30, 10)), set.getActiveAndNewWindows());
+  }
+
+  @Test
+  public void testPersistWithNewWindowsFails() {
+    add(1);
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("NEW windows");
+    set.persist();
+  }
+
   @Test
   public void testLegacyState() {
     // Pre 1.4 we merged window state lazily.
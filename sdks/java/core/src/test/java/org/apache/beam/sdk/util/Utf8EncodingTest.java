@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Unit tests for {@link Utf8Encoding}. */
+@RunWith(JUnit4.class)
+public class Utf8EncodingTest {
+  private static final char HIGH_SURROGATE = (char) 0xD83D;
+  private static final char LOW_SURROGATE = (char) 0xDE00;
+
+  private static final List<String> TEST_VALUES = Arrays.asList(
+      "",
+      "ascii only",
+      "café",
+      "\u0800\uffff",
+      "スタリング",
+      "emoji " + HIGH_SURROGATE + LOW_SURROGATE,
+      "high " + HIGH_SURROGATE + " unpaired",
+      "low " + LOW_SURROGATE + " unpaired",
+      String.valueOf(HIGH_SURROGATE),
+      "" + LOW_SURROGATE + HIGH_SURROGATE,
+      "trailing high " + HIGH_SURROGATE);
+
+  @Test
+  public void testEncodeMatchesGetBytes() {
+    for (String value : TEST_VALUES) {
+      assertEncodingMatchesGetBytes(value);
+    }
+  }
+
+  @Test
+  public void testEncodeRandomStringsMatchesGetBytes() {
+    Random random = new Random(1234L);
+    for (int i = 0; i < 1000; i++) {
+      char[] chars = new char[random.nextInt(32)];
+      for (int j = 0; j < chars.length; j++) {
+        chars[j] = (char) random.nextInt(Character.MAX_VALUE + 1);
+      }
+      assertEncodingMatchesGetBytes(new String(chars));
+    }
+  }
+
+  @Test
+  public void testEncodeAtOffset() {
+    byte[] dest = new byte[10];
+    int end = Utf8Encoding.encode("café", dest, 3);
+    assertEquals(8, end);
+    assertArrayEquals(
+        "café".getBytes(StandardCharsets.UTF_8), Arrays.copyOfRange(dest, 3, end));
+  }
+
+  private static void assertEncodingMatchesGetBytes(String value) {
+    byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+    assertEquals(expected.length, Utf8Encoding.encodedLength(value));
+    byte[] actual = new byte[expected.length];
+    assertEquals(expected.length, Utf8Encoding.encode(value, actual, 0));
+    assertArrayEquals(expected, actual);
+  }
+}
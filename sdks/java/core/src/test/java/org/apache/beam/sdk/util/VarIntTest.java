@@ -21,6 +21,8 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
+import com.google.common.primitives.Bytes;
+
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -31,6 +33,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /** Unit tests for {@link VarInt}. */
 @RunWith(JUnit4.class)
@@ -199,6 +205,177 @@ public class VarIntTest {
     }
   }
 
+  @Test
+  public void decodeValuesFromByteBuffer() throws IOException {
+    for (int i = 0; i < LONG_ENCODED.length; ++i) {
+      ByteBuffer buffer = ByteBuffer.wrap(LONG_ENCODED[i]);
+      assertEquals(LONG_VALUES[i], VarInt.decodeLong(buffer));
+      assertEquals(0, buffer.remaining());
+    }
+
+    for (int i = 0; i < INT_ENCODED.length; ++i) {
+      ByteBuffer buffer = ByteBuffer.wrap(INT_ENCODED[i]);
+      assertEquals(INT_VALUES[i], VarInt.decodeInt(buffer));
+      assertEquals(0, buffer.remaining());
+    }
+  }
+
+  @Test
+  public void encodeValuesToEncodingBuffer() throws IOException {
+    EncodingBuffer buffer = new EncodingBuffer(0);
+    for (int i = 0; i < LONG_VALUES.length; ++i) {
+      buffer.reset();
+      buffer.writeVarLong(LONG_VALUES[i]);
+      assertThat(buffer.toByteArray(), equalTo(LONG_ENCODED[i]));
+    }
+
+    for (int i = 0; i < INT_VALUES.length; ++i) {
+      buffer.reset();
+      buffer.writeVarInt(INT_VALUES[i]);
+      assertThat(buffer.toByteArray(), equalTo(INT_ENCODED[i]));
+    }
+  }
+
+  @Test
+  public void encodeValuesToArray() throws IOException {
+    for (int i = 0; i < LONG_VALUES.length; ++i) {
+      byte[] buf = new byte[VarInt.MAX_LONG_LENGTH + 1];
+      int end = VarInt.encode(LONG_VALUES[i], buf, 1);
+      assertEquals(1 + LONG_ENCODED[i].length, end);
+      assertThat(Arrays.copyOfRange(buf, 1, end), equalTo(LONG_ENCODED[i]));
+    }
+
+    for (int i = 0; i < INT_VALUES.length; ++i) {
+      byte[] buf = new byte[VarInt.MAX_INT_LENGTH + 1];
+      int end = VarInt.encode(INT_VALUES[i], buf, 1);
+      assertEquals(1 + INT_ENCODED[i].length, end);
+      assertThat(Arrays.copyOfRange(buf, 1, end), equalTo(INT_ENCODED[i]));
+    }
+  }
+
+  @Test
+  public void bulkEncodeDecodeValues() throws IOException {
+    byte[] longs = new byte[VarInt.getLength(LONG_VALUES)];
+    assertEquals(longs.length, VarInt.encode(LONG_VALUES, longs, 0));
+    assertThat(longs, equalTo(encodeAll(LONG_VALUES)));
+    long[] decodedLongs = new long[LONG_VALUES.length];
+    assertEquals(longs.length, VarInt.decode(longs, 0, longs.length, decodedLongs));
+    assertThat(decodedLongs, equalTo(LONG_VALUES));
+
+    byte[] ints = new byte[VarInt.getLength(INT_VALUES)];
+    assertEquals(ints.length, VarInt.encode(INT_VALUES, ints, 0));
+    int[] decodedInts = new int[INT_VALUES.length];
+    assertEquals(ints.length, VarInt.decode(ints, 0, ints.length, decodedInts));
+    assertThat(decodedInts, equalTo(INT_VALUES));
+  }
+
+  @Test
+  public void bulkEncodeDecodeZigZagValues() throws IOException {
+    long[] longs = {0L, -1L, 1L, -64L, 63L, Long.MAX_VALUE, Long.MIN_VALUE};
+    byte[] encodedLongs = new byte[longs.length * VarInt.MAX_LONG_LENGTH];
+    int end = VarInt.encodeZigZag(longs, encodedLongs, 0);
+    // Values of small magnitude take a single byte.
+    assertEquals(5 + 2 * VarInt.MAX_LONG_LENGTH, end);
+    long[] decodedLongs = new long[longs.length];
+    assertEquals(end, VarInt.decodeZigZag(encodedLongs, 0, end, decodedLongs));
+    assertThat(decodedLongs, equalTo(longs));
+
+    int[] ints = {0, -1, 1, -64, 63, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    byte[] encodedInts = new byte[ints.length * VarInt.MAX_INT_LENGTH];
+    end = VarInt.encodeZigZag(ints, encodedInts, 0);
+    assertEquals(5 + 2 * VarInt.MAX_INT_LENGTH, end);
+    int[] decodedInts = new int[ints.length];
+    assertEquals(end, VarInt.decodeZigZag(encodedInts, 0, end, decodedInts));
+    assertThat(decodedInts, equalTo(ints));
+  }
+
+  @Test
+  public void zigZagValues() {
+    assertEquals(0, VarInt.zigZagEncode(0));
+    assertEquals(1, VarInt.zigZagEncode(-1));
+    assertEquals(2, VarInt.zigZagEncode(1));
+    assertEquals(-1, VarInt.zigZagEncode(Integer.MIN_VALUE));
+    assertEquals(-1L, VarInt.zigZagEncode(Long.MIN_VALUE));
+    assertEquals(Integer.MIN_VALUE, VarInt.zigZagDecode(-1));
+    assertEquals(Long.MIN_VALUE, VarInt.zigZagDecode(-1L));
+  }
+
+  @Test
+  public void bulkDecodeStopsAtLimit() throws Exception {
+    byte[] encoded = encodeAll(new long[] {1L, 300L});
+    thrown.expect(IOException.class);
+    thrown.expectMessage("varint not terminated");
+    VarInt.decode(encoded, 0, encoded.length - 1, new long[2]);
+  }
+
+  @Test
+  public void bulkDecodeThrowsExceptionForIntOverflow() throws Exception {
+    byte[] encoded = encodeLong(1L << 32);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("varint overflow");
+    VarInt.decode(encoded, 0, encoded.length, new int[1]);
+  }
+
+  @Test
+  public void encodeDecodeValuesWithExposedStreams() throws IOException {
+    ExposedByteArrayOutputStream outStream = new ExposedByteArrayOutputStream();
+    // The first write is owned by the stream, and must be copied before a varint is appended.
+    outStream.writeAndOwn(new byte[] {0x7f});
+    OutputStream unowned = new UnownedOutputStream(outStream);
+    for (long value : LONG_VALUES) {
+      VarInt.encode(value, unowned);
+    }
+    for (int value : INT_VALUES) {
+      VarInt.encode(value, unowned);
+    }
+    assertThat(
+        Arrays.copyOfRange(outStream.toByteArray(), 1, outStream.size()),
+        equalTo(Bytes.concat(encodeAll(LONG_VALUES), encodeAll(INT_VALUES))));
+
+    ExposedByteArrayInputStream inStream = new ExposedByteArrayInputStream(outStream.toByteArray());
+    assertEquals(0x7f, inStream.read());
+    InputStream unownedIn = new UnownedInputStream(inStream);
+    for (long value : LONG_VALUES) {
+      assertEquals(value, VarInt.decodeLong(unownedIn));
+    }
+    for (int value : INT_VALUES) {
+      assertEquals(value, VarInt.decodeInt(unownedIn));
+    }
+    assertEquals(-1, inStream.read());
+    thrown.expect(EOFException.class);
+    VarInt.decodeLong(unownedIn);
+  }
+
+  private static byte[] encodeAll(long[] values) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (long value : values) {
+      VarInt.encode(value, stream);
+    }
+    return stream.toByteArray();
+  }
+
+  private static byte[] encodeAll(int[] values) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (int value : values) {
+      VarInt.encode(value, stream);
+    }
+    return stream.toByteArray();
+  }
+
+  @Test
+  public void endOfByteBufferThrowsException() throws Exception {
+    thrown.expect(EOFException.class);
+    VarInt.decodeInt(ByteBuffer.allocate(0));
+  }
+
+  @Test
+  public void unterminatedByteBufferThrowsException() throws Exception {
+    byte[] e = encodeLong(Long.MAX_VALUE);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("varint not terminated");
+    VarInt.decodeLong(ByteBuffer.wrap(e, 0, 1));
+  }
+
   @Test
   public void decodeThrowsExceptionForOverflow() throws IOException {
     final byte[] tooLargeNumber =
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.util;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.Coder.NonDeterministicException;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.testing.CoderProperties;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo.Timing;
+
+import com.google.common.collect.ImmutableList;
+
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link WindowedValueBatchCoder}.
+ */
+@RunWith(JUnit4.class)
+public class WindowedValueBatchCoderTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private static final IntervalWindow FIRST_WINDOW =
+      new IntervalWindow(new Instant(0L), new Instant(10L));
+  private static final IntervalWindow SECOND_WINDOW =
+      new IntervalWindow(new Instant(5L), new Instant(15L));
+
+  private final WindowedValueBatchCoder<String> coder =
+      WindowedValueBatchCoder.of(StringUtf8Coder.of(), IntervalWindow.getCoder());
+
+  @Test
+  public void testCoderSerializable() throws Exception {
+    CoderProperties.coderSerializable(coder);
+  }
+
+  @Test
+  public void testEncodeDecodeEmptyBatch() throws Exception {
+    CoderProperties.coderDecodeEncodeEqual(
+        coder, Collections.<WindowedValue<String>>emptyList());
+  }
+
+  @Test
+  public void testEncodeDecodeGlobalWindow() throws Exception {
+    WindowedValueBatchCoder<Integer> globalCoder =
+        WindowedValueBatchCoder.of(VarIntCoder.of(), GlobalWindow.Coder.INSTANCE);
+    CoderProperties.coderDecodeEncodeEqual(
+        globalCoder,
+        ImmutableList.of(
+            WindowedValue.valueInGlobalWindow(1),
+            WindowedValue.valueInGlobalWindow(2),
+            WindowedValue.timestampedValueInGlobalWindow(3, BoundedWindow.TIMESTAMP_MAX_VALUE),
+            WindowedValue.valueInGlobalWindow(4)));
+  }
+
+  @Test
+  public void testEncodeDecodeMixedWindowsPanesAndTimestamps() throws Exception {
+    PaneInfo early = PaneInfo.createPane(true, false, Timing.EARLY);
+    PaneInfo late = PaneInfo.createPane(false, true, Timing.LATE, 3L, 2L);
+    List<WindowedValue<String>> batch =
+        ImmutableList.<WindowedValue<String>>of(
+            WindowedValue.of("foo", new Instant(7L), FIRST_WINDOW, early),
+            WindowedValue.of("bar", new Instant(3L), FIRST_WINDOW, PaneInfo.NO_FIRING),
+            WindowedValue.of(
+                "baz", new Instant(8L), ImmutableList.of(FIRST_WINDOW, SECOND_WINDOW), late),
+            WindowedValue.of("", BoundedWindow.TIMESTAMP_MIN_VALUE, SECOND_WINDOW, early),
+            WindowedValue.of("qux", BoundedWindow.TIMESTAMP_MAX_VALUE, SECOND_WINDOW, late));
+    CoderProperties.coderDecodeEncodeEqual(coder, batch);
+  }
+
+  @Test
+  public void testDecodedElementsShareWindows() throws Exception {
+    List<WindowedValue<String>> batch = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      batch.add(
+          WindowedValue.of(
+              "elem" + i,
+              new Instant(i),
+              ImmutableList.of(FIRST_WINDOW, SECOND_WINDOW),
+              PaneInfo.NO_FIRING));
+    }
+
+    List<WindowedValue<String>> decoded =
+        CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, batch));
+
+    Object windows = decoded.get(0).getWindows();
+    assertThat((Object) decoded.get(1).getWindows(), sameInstance(windows));
+    assertThat((Object) decoded.get(2).getWindows(), sameInstance(windows));
+    assertThat(decoded, equalTo(batch));
+  }
+
+  @Test
+  public void testEncodingSmallerThanPerElementEncoding() throws Exception {
+    List<WindowedValue<String>> batch = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      batch.add(
+          WindowedValue.of("elem" + i, new Instant(1000L + i), FIRST_WINDOW, PaneInfo.NO_FIRING));
+    }
+    Coder<Iterable<WindowedValue<String>>> perElementCoder =
+        IterableCoder.of(
+            WindowedValue.getFullCoder(StringUtf8Coder.of(), IntervalWindow.getCoder()));
+
+    int batchBytes = CoderUtils.encodeToByteArray(coder, batch).length;
+    int perElementBytes = CoderUtils.encodeToByteArray(perElementCoder, batch).length;
+
+    assertThat(batchBytes, lessThan(perElementBytes / 2));
+  }
+
+  @Test
+  public void testDecodeInvalidDictionaryIndex() throws Exception {
+    List<WindowedValue<String>> batch =
+        ImmutableList.of(
+            WindowedValue.of("foo", new Instant(0L), FIRST_WINDOW, PaneInfo.NO_FIRING),
+            WindowedValue.of("bar", new Instant(0L), SECOND_WINDOW, PaneInfo.NO_FIRING));
+    byte[] encoded = CoderUtils.encodeToByteArray(coder, batch);
+    // The last byte is the single pane; the two bytes before it are the pane dictionary size and
+    // the window index of the second element.
+    encoded[encoded.length - 3] = 2;
+
+    thrown.expect(CoderException.class);
+    thrown.expectMessage("Invalid dictionary index");
+    CoderUtils.decodeFromByteArray(coder, encoded);
+  }
+
+  @Test
+  public void testVerifyDeterministic() throws Exception {
+    coder.verifyDeterministic();
+
+    thrown.expect(NonDeterministicException.class);
+    WindowedValueBatchCoder.of(SerializableCoder.of(String.class), IntervalWindow.getCoder())
+        .verifyDeterministic();
+  }
+}
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertThat;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.CoderProperties;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
@@ -66,6 +67,20 @@ public class WindowedValueTest {
     Assert.assertArrayEquals(value.getWindows().toArray(), decodedValue.getWindows().toArray());
   }
 
+  @Test
+  public void testWindowedValueCoderBufferEncoding() throws Exception {
+    Instant timestamp = new Instant(1234);
+    WindowedValue<String> value = WindowedValue.of(
+        "abc",
+        timestamp,
+        Arrays.asList(new IntervalWindow(timestamp, timestamp.plus(1000)),
+                      new IntervalWindow(timestamp.plus(1000), timestamp.plus(2000))),
+        PaneInfo.createPane(false, false, Timing.EARLY, 1L, -1L));
+
+    CoderProperties.coderBufferEncodingConsistentWithStream(
+        WindowedValue.getFullCoder(StringUtf8Coder.of(), IntervalWindow.getCoder()), value);
+  }
+
   @Test
   public void testExplodeWindowsInNoWindowsEmptyIterable() {
     WindowedValue<String> value =
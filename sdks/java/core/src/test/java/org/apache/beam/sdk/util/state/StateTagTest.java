@@ -124,6 +124,47 @@ public class StateTagTest {
         StateTags.convertToBagTagInternal((StateTag) barCoder1Max));
   }
 
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  @Test
+  public void testKeyedCombiningValueEquality() {
+    CoderRegistry registry = new CoderRegistry();
+    registry.registerStandardCoders();
+
+    MaxIntegerFn maxFn = new Max.MaxIntegerFn();
+    MinIntegerFn minFn = new Min.MinIntegerFn();
+
+    Coder<int[]> accum1 = maxFn.getAccumulatorCoder(registry, VarIntCoder.of());
+    Coder<int[]> accum2 = minFn.getAccumulatorCoder(registry, BigEndianIntegerCoder.of());
+
+    StateTag<?, ?> fooCoder1Max1 =
+        StateTags.keyedCombiningValue("foo", accum1, maxFn.<String>asKeyedFn());
+    StateTag<?, ?> fooCoder1Max2 =
+        StateTags.keyedCombiningValue("foo", accum1, maxFn.<String>asKeyedFn());
+    StateTag<?, ?> fooCoder1Min =
+        StateTags.keyedCombiningValue("foo", accum1, minFn.<String>asKeyedFn());
+
+    StateTag<?, ?> fooCoder2Max =
+        StateTags.keyedCombiningValue("foo", accum2, maxFn.<String>asKeyedFn());
+    StateTag<?, ?> barCoder1Max =
+        StateTags.keyedCombiningValue("bar", accum1, maxFn.<String>asKeyedFn());
+
+    // Same name, coder and combineFn, but distinct instances
+    assertEquals(fooCoder1Max1, fooCoder1Max2);
+    assertEquals(fooCoder1Max1.hashCode(), fooCoder1Max2.hashCode());
+    assertEquals(
+        StateTags.makeSystemTagInternal((StateTag) fooCoder1Max1),
+        StateTags.makeSystemTagInternal((StateTag) fooCoder1Max2));
+
+    // Different combineFn, but we treat them as equal since we only serialize the bits.
+    assertEquals(fooCoder1Max1, fooCoder1Min);
+
+    // Different accumulator coder.
+    assertNotEquals(fooCoder1Max1, fooCoder2Max);
+
+    // These StateTags have different IDs.
+    assertNotEquals(fooCoder1Max1, barCoder1Max);
+  }
+
   @SuppressWarnings({"unchecked", "rawtypes"})
   @Test
   public void testCombiningValueWithContextEquality() {
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two sets of JMH results written with {@code -rf json}, and reports the benchmarks whose
+ * score regressed by more than a threshold.
+ *
+ * <p>Usage:
+ *
+ * <pre>{@code
+ * java -cp target/microbenchmarks.jar org.apache.beam.sdk.microbenchmarks.CompareBenchmarkResults \
+ *     baseline.json current.json [threshold]
+ * }</pre>
+ *
+ * <p>Benchmarks are matched by name, mode and parameters. A benchmark regressed when its score is
+ * worse than the baseline by more than the threshold and the confidence intervals JMH reports for
+ * the two scores (the score plus or minus its error) do not overlap, so that a difference within
+ * the noise of either run is never reported. The threshold is the largest tolerated relative
+ * slowdown, as a fraction, and defaults to {@value #DEFAULT_THRESHOLD}. For throughput benchmarks
+ * a regression is a lower score; for all other modes it is a higher score. The process exits with
+ * status 1 if any benchmark regressed, so the comparison can be used as a build gate.
+ *
+ * <p>Results measured with fewer than {@value #MIN_FORKS} forks or {@value #MIN_ITERATIONS}
+ * measurement iterations have wide confidence intervals, so few regressions can be detected in
+ * them; such results are flagged in the output.
+ */
+public class CompareBenchmarkResults {
+  /**
+   * The default largest relative slowdown which is not reported as a regression.
+   */
+  public static final double DEFAULT_THRESHOLD = 0.10;
+
+  /**
+   * The fewest forks with which a result is recorded to be considered reliable.
+   */
+  public static final int MIN_FORKS = 3;
+
+  /**
+   * The fewest measurement iterations per fork with which a result is recorded to be considered
+   * reliable.
+   */
+  public static final int MIN_ITERATIONS = 10;
+
+  private static final String ROW_FORMAT = "%-90s %24s %24s %9s  %s%n";
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println(
+          "Usage: CompareBenchmarkResults <baseline.json> <current.json> [threshold]");
+      System.exit(2);
+    }
+    double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+    Map<String, Result> baseline = readResults(new File(args[0]));
+    Map<String, Result> current = readResults(new File(args[1]));
+    int regressions = compare(baseline, current, threshold, System.out);
+    if (regressions > 0) {
+      System.out.printf(
+          "%d benchmark(s) regressed by more than %.0f%% beyond their confidence intervals%n",
+          regressions, threshold * 100);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Prints a comparison of every benchmark in {@code baseline} and {@code current} to {@code out},
+   * and returns the number of benchmarks that regressed by more than {@code threshold}.
+   */
+  public static int compare(
+      Map<String, Result> baseline, Map<String, Result> current, double threshold,
+      PrintStream out) {
+    int regressions = 0;
+    out.printf(ROW_FORMAT, "Benchmark", "Baseline", "Current", "Change", "");
+    for (Map.Entry<String, Result> entry : current.entrySet()) {
+      Result now = entry.getValue();
+      Result before = baseline.get(entry.getKey());
+      if (before == null) {
+        out.printf(ROW_FORMAT, entry.getKey(), "", now.describe(), "", "new");
+      } else if (!before.unit.equals(now.unit)) {
+        out.printf(
+            ROW_FORMAT, entry.getKey(), before.describe(), now.describe(), "", "unit mismatch");
+      } else {
+        double change = (now.score - before.score) / before.score;
+        // A positive slowdown is worse than the baseline, whatever the mode.
+        double slowdown = now.higherIsBetter() ? -change : change;
+        boolean significant = !before.overlaps(now);
+        String status = "";
+        if (slowdown > threshold && significant) {
+          status = "REGRESSION";
+          regressions++;
+        } else if (-slowdown > threshold && significant) {
+          status = "improved";
+        } else if (Math.abs(slowdown) > threshold) {
+          status = "within error";
+        }
+        if (!before.isReliable() || !now.isReliable()) {
+          status += status.isEmpty() ? "too few samples" : ", too few samples";
+        }
+        out.printf(
+            ROW_FORMAT,
+            entry.getKey(),
+            before.describe(),
+            now.describe(),
+            String.format("%+.1f%%", change * 100),
+            status);
+      }
+    }
+    for (Map.Entry<String, Result> entry : baseline.entrySet()) {
+      if (!current.containsKey(entry.getKey())) {
+        out.printf(ROW_FORMAT, entry.getKey(), entry.getValue().describe(), "", "", "missing");
+      }
+    }
+    return regressions;
+  }
+
+  /**
+   * Reads the results in a JMH JSON results file, keyed by benchmark name, mode and parameters.
+   */
+  public static Map<String, Result> readResults(File file) throws IOException {
+    JsonNode root = new ObjectMapper().readTree(file);
+    if (root == null || !root.isArray()) {
+      throw new IOException(
+          String.format("%s is not a JMH results file written with -rf json", file));
+    }
+    Map<String, Result> results = new TreeMap<>();
+    for (JsonNode benchmark : root) {
+      String mode = benchmark.path("mode").asText();
+      StringBuilder key = new StringBuilder(benchmark.path("benchmark").asText());
+      Map<String, String> params = new TreeMap<>();
+      Iterator<Map.Entry<String, JsonNode>> fields = benchmark.path("params").fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> param = fields.next();
+        params.put(param.getKey(), param.getValue().asText());
+      }
+      List<String> paramStrings = new ArrayList<>();
+      for (Map.Entry<String, String> param : params.entrySet()) {
+        paramStrings.add(param.getKey() + "=" + param.getValue());
+      }
+      if (!paramStrings.isEmpty()) {
+        key.append(paramStrings);
+      }
+      key.append(" (").append(mode).append(")");
+
+      JsonNode metric = benchmark.path("primaryMetric");
+      results.put(
+          key.toString(),
+          new Result(
+              mode,
+              metric.path("score").asDouble(),
+              metric.path("scoreError").asDouble(Double.NaN),
+              metric.path("scoreUnit").asText(),
+              benchmark.path("forks").asInt(),
+              benchmark.path("measurementIterations").asInt()));
+    }
+    return results;
+  }
+
+  /**
+   * The primary score of a single benchmark run.
+   */
+  public static class Result {
+    private final String mode;
+    private final double score;
+    private final double error;
+    private final String unit;
+    private final int forks;
+    private final int iterations;
+
+    Result(String mode, double score, double error, String unit, int forks, int iterations) {
+      this.mode = mode;
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+      this.forks = forks;
+      this.iterations = iterations;
+    }
+
+    private boolean higherIsBetter() {
+      return "thrpt".equals(mode);
+    }
+
+    /**
+     * Returns whether the confidence intervals of this and {@code other} overlap. A result without
+     * an error, such as one from a single iteration, is treated as having an interval of just its
+     * score.
+     */
+    private boolean overlaps(Result other) {
+      return lower() <= other.upper() && other.lower() <= upper();
+    }
+
+    private double lower() {
+      return Double.isNaN(error) ? score : score - error;
+    }
+
+    private double upper() {
+      return Double.isNaN(error) ? score : score + error;
+    }
+
+    private boolean isReliable() {
+      return forks >= MIN_FORKS && iterations >= MIN_ITERATIONS;
+    }
+
+    private String describe() {
+      if (Double.isNaN(error)) {
+        return String.format("%.3f %s", score, unit);
+      }
+      return String.format("%.3f +/-%.0f%% %s", score, 100 * error / score, unit);
+    }
+  }
+}
@@ -18,7 +18,17 @@
 package org.apache.beam.sdk.microbenchmarks.coders;
 
 import org.apache.beam.sdk.coders.AvroCoder;
+import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.DefaultCoder;
+import org.apache.beam.sdk.util.CoderUtils;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.reflect.Nullable;
+import org.apache.avro.reflect.ReflectDatumReader;
+import org.apache.avro.reflect.ReflectDatumWriter;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
@@ -28,11 +38,17 @@ import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Warmup;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Benchmarks for {@link AvroCoder}.
+ * Benchmarks for {@link AvroCoder}, comparing its specialized writer and reader to Avro's reflect
+ * writer and reader for flat and nested records, and measuring decoding into a reused record.
  */
 @State(Scope.Benchmark)
 @Fork(1)
@@ -92,21 +108,76 @@ public class AvroCoderBenchmark {
     }
   }
 
+  /**
+   * A record with nested records, a nullable field and collections.
+   */
+  private static class NestedPojo {
+    public String name;
+    public Pojo pojo;
+    @Nullable public Pojo optionalPojo;
+    public List<String> tags;
+    public Map<String, Long> counts;
+
+    // Empty constructor required for Avro decoding.
+    @SuppressWarnings("unused")
+    public NestedPojo() {
+    }
+
+    public NestedPojo(String name, Pojo pojo) {
+      this.name = name;
+      this.pojo = pojo;
+      this.optionalPojo = pojo;
+      this.tags = Arrays.asList("a", "b", "c", name);
+      this.counts = new HashMap<>();
+      for (int i = 0; i < 5; i++) {
+        counts.put(name + i, (long) i);
+      }
+    }
+  }
+
   AvroCoder<Pojo> coder = AvroCoder.of(Pojo.class);
+  AvroCoder<NestedPojo> nestedCoder = AvroCoder.of(NestedPojo.class);
 
   @Param({"true", "false"})
   boolean isWholeStream;
 
   Pojo shortPojo;
   Pojo longPojo;
+  NestedPojo nestedPojo;
+
+  byte[] encodedShortPojo;
+  byte[] encodedNestedPojo;
+  Pojo reusedPojo;
+  NestedPojo reusedNestedPojo;
+
+  ReflectDatumWriter<Pojo> reflectWriter;
+  ReflectDatumReader<Pojo> reflectReader;
+  ReflectDatumWriter<NestedPojo> nestedReflectWriter;
+  ReflectDatumReader<NestedPojo> nestedReflectReader;
+  ByteArrayOutputStream reflectOutput;
+  BinaryEncoder reflectEncoder;
+  BinaryDecoder reflectDecoder;
 
   @Setup
-  public void setUp() {
+  public void setUp() throws IOException {
     shortPojo = new Pojo("hello world", 42);
 
     char[] bytes60k = new char[60 * 1024];
     Arrays.fill(bytes60k, 'a');
     longPojo = new Pojo(new String(bytes60k), 42);
+
+    nestedPojo = new NestedPojo("nested", shortPojo);
+
+    encodedShortPojo = CoderUtils.encodeToByteArray(coder, shortPojo);
+    encodedNestedPojo = CoderUtils.encodeToByteArray(nestedCoder, nestedPojo);
+    reusedPojo = new Pojo();
+    reusedNestedPojo = new NestedPojo();
+
+    reflectWriter = new ReflectDatumWriter<>(coder.getSchema());
+    reflectReader = new ReflectDatumReader<>(coder.getSchema());
+    nestedReflectWriter = new ReflectDatumWriter<>(nestedCoder.getSchema());
+    nestedReflectReader = new ReflectDatumReader<>(nestedCoder.getSchema());
+    reflectOutput = new ByteArrayOutputStream();
   }
 
   @Benchmark
@@ -118,4 +189,45 @@ public class AvroCoderBenchmark {
   public Pojo codeLongPojo() throws Exception {
     return CoderBenchmarking.testCoder(coder, isWholeStream, longPojo);
   }
+
+  @Benchmark
+  public NestedPojo codeNestedPojo() throws IOException {
+    return CoderBenchmarking.testCoder(nestedCoder, isWholeStream, nestedPojo);
+  }
+
+  /**
+   * Encodes and decodes with Avro's reflect writer and reader, which {@link AvroCoder} uses for
+   * types that its specialized writer and reader do not support.
+   */
+  @Benchmark
+  public Pojo codeShortPojoWithReflect() throws IOException {
+    return codeWithReflect(reflectWriter, reflectReader, shortPojo);
+  }
+
+  @Benchmark
+  public NestedPojo codeNestedPojoWithReflect() throws IOException {
+    return codeWithReflect(nestedReflectWriter, nestedReflectReader, nestedPojo);
+  }
+
+  @Benchmark
+  public Pojo decodeShortPojoReusing() throws IOException {
+    return coder.decode(
+        reusedPojo, new ByteArrayInputStream(encodedShortPojo), Coder.Context.OUTER);
+  }
+
+  @Benchmark
+  public NestedPojo decodeNestedPojoReusing() throws IOException {
+    return nestedCoder.decode(
+        reusedNestedPojo, new ByteArrayInputStream(encodedNestedPojo), Coder.Context.OUTER);
+  }
+
+  private <T> T codeWithReflect(
+      ReflectDatumWriter<T> writer, ReflectDatumReader<T> reader, T value) throws IOException {
+    reflectOutput.reset();
+    reflectEncoder = EncoderFactory.get().directBinaryEncoder(reflectOutput, reflectEncoder);
+    writer.write(value, reflectEncoder);
+    reflectDecoder = DecoderFactory.get().directBinaryDecoder(
+        new ByteArrayInputStream(reflectOutput.toByteArray()), reflectDecoder);
+    return reader.read(null, reflectDecoder);
+  }
 }
@@ -17,10 +17,13 @@
  */
 package org.apache.beam.sdk.microbenchmarks.coders;
 
+import org.apache.beam.sdk.coders.BufferCoders;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.EncodingBuffer;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Utilities for writing coder benchmarks.
@@ -39,4 +42,20 @@ class CoderBenchmarking {
     byte[] encoded = CoderUtils.encodeToByteArray(coder, value, context);
     return CoderUtils.decodeFromByteArray(coder, encoded, context);
   }
+
+  /**
+   * Encodes and decodes the given value using the buffer-based API of the specified Coder,
+   * reusing the provided {@link EncodingBuffer}.
+   *
+   * @throws IOException if there are errors during encoding or decoding
+   */
+  public static <T> T testBufferCoder(
+      Coder<T> coder, boolean isWholeStream, T value, EncodingBuffer buffer) throws IOException {
+    Coder.Context context =
+        isWholeStream ? Coder.Context.OUTER : Coder.Context.NESTED;
+    buffer.reset();
+    BufferCoders.encode(coder, value, buffer, context);
+    ByteBuffer encoded = buffer.asByteBuffer();
+    return BufferCoders.decode(coder, encoded, context);
+  }
 }
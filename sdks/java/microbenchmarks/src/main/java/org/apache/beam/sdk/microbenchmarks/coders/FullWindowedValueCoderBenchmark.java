@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.WindowedValue.FullWindowedValueCoder;
+
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link FullWindowedValueCoder}, for values in the {@link GlobalWindow}, in a
+ * single {@link IntervalWindow}, and in several overlapping {@link IntervalWindow IntervalWindows}
+ * as produced by sliding windows.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class FullWindowedValueCoderBenchmark {
+
+  FullWindowedValueCoder<String> globalCoder =
+      WindowedValue.getFullCoder(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE);
+  FullWindowedValueCoder<String> intervalCoder =
+      WindowedValue.getFullCoder(StringUtf8Coder.of(), IntervalWindow.getCoder());
+
+  @Param({"true", "false"})
+  boolean isWholeStream;
+
+  WindowedValue<String> globalValue;
+  WindowedValue<String> singleWindowValue;
+  WindowedValue<String> multipleWindowsValue;
+
+  @Setup
+  public void setUp() {
+    String value = "some value to use for testing";
+    Instant timestamp = new Instant(1234567L);
+    globalValue = WindowedValue.timestampedValueInGlobalWindow(value, timestamp);
+    singleWindowValue =
+        WindowedValue.of(
+            value,
+            timestamp,
+            new IntervalWindow(new Instant(1200000L), new Instant(1260000L)),
+            PaneInfo.NO_FIRING);
+    List<BoundedWindow> windows = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Instant start = new Instant(1000000L + i * 60000L);
+      windows.add(new IntervalWindow(start, start.plus(300000L)));
+    }
+    multipleWindowsValue = WindowedValue.of(value, timestamp, windows, PaneInfo.NO_FIRING);
+  }
+
+  @Benchmark
+  public WindowedValue<String> codeGlobalWindow() throws IOException {
+    return CoderBenchmarking.testCoder(globalCoder, isWholeStream, globalValue);
+  }
+
+  @Benchmark
+  public WindowedValue<String> codeSingleWindow() throws IOException {
+    return CoderBenchmarking.testCoder(intervalCoder, isWholeStream, singleWindowValue);
+  }
+
+  @Benchmark
+  public WindowedValue<String> codeMultipleWindows() throws IOException {
+    return CoderBenchmarking.testCoder(intervalCoder, isWholeStream, multipleWindowsValue);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link IterableCoder}.
+ *
+ * <p>Iterables which are {@link java.util.Collection Collections} are encoded with their size up
+ * front; other iterables are encoded in blocks, which is measured separately.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class IterableCoderBenchmark {
+
+  IterableCoder<Integer> coder = IterableCoder.of(VarIntCoder.of());
+
+  @Param({"true", "false"})
+  boolean isWholeStream;
+
+  @Param({"10", "1000"})
+  int size;
+
+  List<Integer> list;
+  Iterable<Integer> iterable;
+
+  @Setup
+  public void setUp() {
+    list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(i * 31);
+    }
+    iterable = new Iterable<Integer>() {
+      @Override
+      public Iterator<Integer> iterator() {
+        return list.iterator();
+      }
+    };
+  }
+
+  @Benchmark
+  public Iterable<Integer> codeList() throws IOException {
+    return CoderBenchmarking.testCoder(coder, isWholeStream, list);
+  }
+
+  @Benchmark
+  public Iterable<Integer> codeNonCollectionIterable() throws IOException {
+    return CoderBenchmarking.testCoder(coder, isWholeStream, iterable);
+  }
+}
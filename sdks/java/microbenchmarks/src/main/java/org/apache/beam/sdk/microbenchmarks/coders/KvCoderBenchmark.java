@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.values.KV;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks for {@link KvCoder}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class KvCoderBenchmark {
+
+  KvCoder<String, Long> coder = KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of());
+  KvCoder<String, KV<String, Long>> nestedCoder = KvCoder.of(StringUtf8Coder.of(), coder);
+
+  @Param({"true", "false"})
+  boolean isWholeStream;
+
+  KV<String, Long> kv;
+  KV<String, KV<String, Long>> nestedKv;
+
+  @Setup
+  public void setUp() {
+    kv = KV.of("some-key", 1234567L);
+    nestedKv = KV.of("outer-key", kv);
+  }
+
+  @Benchmark
+  public KV<String, Long> codeKv() throws IOException {
+    return CoderBenchmarking.testCoder(coder, isWholeStream, kv);
+  }
+
+  @Benchmark
+  public KV<String, KV<String, Long>> codeNestedKv() throws IOException {
+    return CoderBenchmarking.testCoder(nestedCoder, isWholeStream, nestedKv);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.coders;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.WindowedValueBatchCoder;
+
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link WindowedValueBatchCoder}, compared against encoding the same bundle with
+ * an {@link IterableCoder} of {@link WindowedValue.FullWindowedValueCoder}.
+ *
+ * <p>The bundle contains {@link #bundleSize} short strings in a single {@link IntervalWindow} and
+ * pane, with increasing timestamps.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class WindowedValueBatchCoderBenchmark {
+
+  @Param({"true", "false"})
+  boolean isWholeStream;
+
+  @Param({"1000"})
+  int bundleSize;
+
+  Coder<List<WindowedValue<String>>> batchCoder =
+      WindowedValueBatchCoder.of(StringUtf8Coder.of(), IntervalWindow.getCoder());
+  Coder<Iterable<WindowedValue<String>>> perElementCoder =
+      IterableCoder.of(
+          WindowedValue.getFullCoder(StringUtf8Coder.of(), IntervalWindow.getCoder()));
+
+  List<WindowedValue<String>> bundle;
+
+  @Setup
+  public void setUp() {
+    IntervalWindow window = new IntervalWindow(new Instant(0L), new Instant(60_000L));
+    bundle = new ArrayList<>(bundleSize);
+    for (int i = 0; i < bundleSize; i++) {
+      bundle.add(
+          WindowedValue.of("element-" + i, new Instant(i * 10L), window, PaneInfo.NO_FIRING));
+    }
+  }
+
+  @Benchmark
+  public List<WindowedValue<String>> codeBundleWithBatchCoder() throws IOException {
+    return CoderBenchmarking.testCoder(batchCoder, isWholeStream, bundle);
+  }
+
+  @Benchmark
+  public Iterable<WindowedValue<String>> codeBundleWithPerElementCoder() throws IOException {
+    return CoderBenchmarking.testCoder(perElementCoder, isWholeStream, bundle);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.transforms;
+
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.Max;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.Top;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link CombineFn} accumulators.
+ *
+ * <p>Each invocation adds {@link #numInputs} inputs to {@link #numAccumulators} accumulators,
+ * merges the accumulators and extracts the output, as a runner does when combining values that
+ * were partially combined on several workers.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class CombineFnBenchmark {
+
+  private final CombineFn<Long, ?, Long> sumFn = new Sum.SumLongFn();
+  private final CombineFn<Long, ?, Long> maxFn = Max.MaxFn.<Long>naturalOrder();
+  private final CombineFn<Long, ?, List<Long>> topFn =
+      new Top.TopCombineFn<>(10, new Top.Largest<Long>());
+
+  @Param({"1000"})
+  int numInputs;
+
+  @Param({"1", "10"})
+  int numAccumulators;
+
+  List<Long> inputs;
+
+  @Setup
+  public void setUp() {
+    inputs = new ArrayList<>(numInputs);
+    for (int i = 0; i < numInputs; i++) {
+      inputs.add((i * 7919L) % 10007L);
+    }
+  }
+
+  @Benchmark
+  public Long combineSum() {
+    return combine(sumFn);
+  }
+
+  @Benchmark
+  public Long combineMax() {
+    return combine(maxFn);
+  }
+
+  @Benchmark
+  public List<Long> combineTop() {
+    return combine(topFn);
+  }
+
+  private <AccumT, OutputT> OutputT combine(CombineFn<Long, AccumT, OutputT> fn) {
+    List<AccumT> accumulators = new ArrayList<>(numAccumulators);
+    for (int i = 0; i < numAccumulators; i++) {
+      accumulators.add(fn.createAccumulator());
+    }
+    for (int i = 0; i < numInputs; i++) {
+      int index = i % numAccumulators;
+      accumulators.set(index, fn.addInput(accumulators.get(index), inputs.get(i)));
+    }
+    return fn.extractOutput(fn.mergeAccumulators(accumulators));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.transforms;
+
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.MergeOverlappingIntervalWindows;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.WindowFn;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for {@link MergeOverlappingIntervalWindows}, which {@link Sessions} uses to merge
+ * windows.
+ *
+ * <p>The windows are ten minute sessions in a shuffled order. When {@link #overlapping} is true,
+ * consecutive sessions start three minutes apart so all of them merge into a single window;
+ * otherwise they start twenty minutes apart and none of them merge.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class MergeOverlappingIntervalWindowsBenchmark {
+
+  private final Sessions sessions = Sessions.withGapDuration(Duration.standardMinutes(10));
+
+  @Param({"10", "1000"})
+  int numWindows;
+
+  @Param({"true", "false"})
+  boolean overlapping;
+
+  List<IntervalWindow> windows;
+
+  @Setup
+  public void setUp() {
+    Duration gap = Duration.standardMinutes(overlapping ? 3 : 20);
+    windows = new ArrayList<>(numWindows);
+    for (int i = 0; i < numWindows; i++) {
+      Instant start = new Instant(0L).plus(gap.multipliedBy(i));
+      windows.add(new IntervalWindow(start, start.plus(Duration.standardMinutes(10))));
+    }
+    Collections.shuffle(windows, new Random(42L));
+  }
+
+  @Benchmark
+  public int mergeWindows() throws Exception {
+    CountingMergeContext context = new CountingMergeContext(sessions, windows);
+    MergeOverlappingIntervalWindows.mergeWindows(context);
+    return context.merged;
+  }
+
+  private static class CountingMergeContext extends WindowFn<Object, IntervalWindow>.MergeContext {
+    private final Collection<IntervalWindow> windows;
+    private int merged = 0;
+
+    private CountingMergeContext(
+        WindowFn<Object, IntervalWindow> windowFn, Collection<IntervalWindow> windows) {
+      windowFn.super();
+      this.windows = windows;
+    }
+
+    @Override
+    public Collection<IntervalWindow> windows() {
+      return windows;
+    }
+
+    @Override
+    public void merge(Collection<IntervalWindow> toBeMerged, IntervalWindow mergeResult) {
+      merged += toBeMerged.size();
+    }
+  }
+}
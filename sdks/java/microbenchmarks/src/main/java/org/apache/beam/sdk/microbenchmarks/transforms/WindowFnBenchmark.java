@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.transforms;
+
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.SlidingWindows;
+import org.apache.beam.sdk.transforms.windowing.WindowFn;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+
+/**
+ * Benchmarks for {@link WindowFn#assignWindows} of the {@link FixedWindows},
+ * {@link SlidingWindows} and {@link Sessions} {@link WindowFn WindowFns}.
+ *
+ * <p>Each invocation assigns windows to an element with a different timestamp.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class WindowFnBenchmark {
+
+  private final FixedWindows fixedWindows = FixedWindows.of(Duration.standardMinutes(1));
+  private final SlidingWindows slidingWindows =
+      SlidingWindows.of(Duration.standardMinutes(10)).every(Duration.standardMinutes(1));
+  private final Sessions sessions = Sessions.withGapDuration(Duration.standardMinutes(10));
+
+  private final StubAssignContext fixedContext = new StubAssignContext(fixedWindows);
+  private final StubAssignContext slidingContext = new StubAssignContext(slidingWindows);
+  private final StubAssignContext sessionsContext = new StubAssignContext(sessions);
+
+  @Benchmark
+  public Collection<IntervalWindow> assignFixedWindows() throws Exception {
+    return fixedWindows.assignWindows(fixedContext.advance());
+  }
+
+  @Benchmark
+  public Collection<IntervalWindow> assignSlidingWindows() throws Exception {
+    return slidingWindows.assignWindows(slidingContext.advance());
+  }
+
+  @Benchmark
+  public Collection<IntervalWindow> assignSessions() throws Exception {
+    return sessions.assignWindows(sessionsContext.advance());
+  }
+
+  private static class StubAssignContext extends WindowFn<Object, IntervalWindow>.AssignContext {
+    private long timestampMillis = 0L;
+
+    private StubAssignContext(WindowFn<Object, IntervalWindow> windowFn) {
+      windowFn.super();
+    }
+
+    private StubAssignContext advance() {
+      timestampMillis += 1234L;
+      return this;
+    }
+
+    @Override
+    public Object element() {
+      return "element";
+    }
+
+    @Override
+    public Instant timestamp() {
+      return new Instant(timestampMillis);
+    }
+
+    @Override
+    public BoundedWindow window() {
+      return GlobalWindow.INSTANCE;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.util;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.ListCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link CoderUtils}, in particular {@link CoderUtils#clone}, which runners use to
+ * make defensive copies of elements, and the ways of encoding a nested {@link KvCoder} value.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class CoderUtilsBenchmark {
+
+  StringUtf8Coder stringCoder = StringUtf8Coder.of();
+  KvCoder<String, Long> kvCoder = KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of());
+  ListCoder<String> listCoder = ListCoder.of(StringUtf8Coder.of());
+  KvCoder<String, List<Long>> nestedKvCoder =
+      KvCoder.of(StringUtf8Coder.of(), ListCoder.of(VarLongCoder.of()));
+
+  String string;
+  KV<String, Long> kv;
+  List<String> list;
+  KV<String, List<Long>> nestedKv;
+  byte[] buffer = new byte[4096];
+
+  @Setup
+  public void setUp() {
+    string = "some string to use for testing";
+    kv = KV.of(string, 1234567L);
+    list = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      list.add(string + i);
+    }
+    List<Long> longs = new ArrayList<>();
+    for (long i = 0; i < 100; i++) {
+      longs.add(i * i * i);
+    }
+    nestedKv = KV.of(string, longs);
+  }
+
+  @Benchmark
+  public String cloneString() throws IOException {
+    return CoderUtils.clone(stringCoder, string);
+  }
+
+  @Benchmark
+  public KV<String, Long> cloneKv() throws IOException {
+    return CoderUtils.clone(kvCoder, kv);
+  }
+
+  @Benchmark
+  public List<String> cloneList() throws IOException {
+    return CoderUtils.clone(listCoder, list);
+  }
+
+  @Benchmark
+  public byte[] encodeKvToByteArray() throws IOException {
+    return CoderUtils.encodeToByteArray(kvCoder, kv);
+  }
+
+  @Benchmark
+  public KV<String, List<Long>> cloneNestedKv() throws IOException {
+    return CoderUtils.clone(nestedKvCoder, nestedKv);
+  }
+
+  @Benchmark
+  public byte[] encodeNestedKvToByteArray() throws IOException {
+    return CoderUtils.encodeToByteArray(nestedKvCoder, nestedKv);
+  }
+
+  @Benchmark
+  public int encodeNestedKvToProvidedArray() throws IOException {
+    return CoderUtils.encodeToByteArray(nestedKvCoder, nestedKv, Coder.Context.OUTER, buffer, 0);
+  }
+
+  @Benchmark
+  public ByteBuffer encodeNestedKvToByteBuffer() throws IOException {
+    return CoderUtils.encodeToByteBuffer(nestedKvCoder, nestedKv);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.util;
+
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.ListCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.util.MutationDetector;
+import org.apache.beam.sdk.util.MutationDetectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link MutationDetectors}, measuring the cost of creating a detector for a value
+ * and verifying that the value was not modified, as the DirectRunner does for every element.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class MutationDetectorsBenchmark {
+
+  ByteArrayCoder byteArrayCoder = ByteArrayCoder.of();
+  ListCoder<String> listCoder = ListCoder.of(StringUtf8Coder.of());
+
+  byte[] byteArray;
+  List<String> list;
+
+  @Setup
+  public void setUp() {
+    byteArray = new byte[1024];
+    Arrays.fill(byteArray, (byte) 47);
+    list = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      list.add("some string to use for testing " + i);
+    }
+  }
+
+  @Benchmark
+  public MutationDetector detectByteArrayMutations() throws Exception {
+    MutationDetector detector = MutationDetectors.forValueWithCoder(byteArray, byteArrayCoder);
+    detector.verifyUnmodified();
+    detector.close();
+    return detector;
+  }
+
+  @Benchmark
+  public MutationDetector detectListMutations() throws Exception {
+    MutationDetector detector = MutationDetectors.forValueWithCoder(list, listCoder);
+    detector.verifyUnmodified();
+    detector.close();
+    return detector;
+  }
+}
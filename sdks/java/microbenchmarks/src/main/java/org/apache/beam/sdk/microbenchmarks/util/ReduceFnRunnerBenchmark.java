@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.util;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Aggregator;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.WindowFn;
+import org.apache.beam.sdk.util.AppliedCombineFn;
+import org.apache.beam.sdk.util.BatchTimerInternals;
+import org.apache.beam.sdk.util.ReduceFnRunner;
+import org.apache.beam.sdk.util.SystemReduceFn;
+import org.apache.beam.sdk.util.TimerInternals;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.WindowingInternals;
+import org.apache.beam.sdk.util.WindowingStrategy;
+import org.apache.beam.sdk.util.state.InMemoryStateInternals;
+import org.apache.beam.sdk.util.state.StateInternals;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.TupleTag;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Benchmarks for {@link ReduceFnRunner} element processing.
+ *
+ * <p>Each invocation groups the values of a single key as the batch
+ * {@code GroupAlsoByWindowsViaOutputBufferDoFn} does: the elements are processed in timestamp
+ * order, then the input watermark is advanced to the end of time to fire every window. The
+ * elements are spread over ten minutes and are either assigned to one minute
+ * {@link FixedWindows} or to {@link Sessions} with a one minute gap, which merge as each element
+ * is processed. They are either buffered or combined with a sum.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class ReduceFnRunnerBenchmark {
+
+  private static final String KEY = "key";
+
+  @Param({"fixed", "sessions"})
+  String windowing;
+
+  @Param({"buffering", "combining"})
+  String reduce;
+
+  @Param({"1000"})
+  int numElements;
+
+  WindowingStrategy<?, IntervalWindow> windowingStrategy;
+  SystemReduceFn<String, Long, ?, ?, IntervalWindow> reduceFn;
+  List<WindowedValue<Long>> elements;
+  PipelineOptions options;
+  CountingWindowingInternals windowingInternals;
+  Aggregator<Long, Long> droppedDueToClosedWindow;
+
+  @Setup
+  public void setUp() throws Exception {
+    WindowFn<Object, IntervalWindow> windowFn;
+    if ("fixed".equals(windowing)) {
+      windowFn = FixedWindows.of(Duration.standardMinutes(1));
+    } else {
+      windowFn = Sessions.withGapDuration(Duration.standardMinutes(1));
+    }
+    windowingStrategy = WindowingStrategy.of(windowFn);
+
+    if ("buffering".equals(reduce)) {
+      reduceFn = SystemReduceFn.buffering(VarLongCoder.of());
+    } else {
+      Coder<String> keyCoder = StringUtf8Coder.of();
+      AppliedCombineFn<String, Long, ?, Long> combineFn =
+          AppliedCombineFn.withInputCoder(
+              new Sum.SumLongFn().<String>asKeyedFn(),
+              new CoderRegistry(),
+              KvCoder.of(keyCoder, VarLongCoder.of()));
+      reduceFn = SystemReduceFn.combining(keyCoder, combineFn);
+    }
+
+    long spreadMillis = Duration.standardMinutes(10).getMillis();
+    elements = new ArrayList<>(numElements);
+    for (int i = 0; i < numElements; i++) {
+      Instant timestamp = new Instant(i * spreadMillis / numElements);
+      Collection<IntervalWindow> windows =
+          windowFn.assignWindows(new StubAssignContext(windowFn, timestamp));
+      elements.add(WindowedValue.of((long) i, timestamp, windows, PaneInfo.NO_FIRING));
+    }
+
+    options = PipelineOptionsFactory.create();
+    windowingInternals = new CountingWindowingInternals();
+    droppedDueToClosedWindow = new NoopAggregator();
+  }
+
+  @Benchmark
+  public int processElements() throws Exception {
+    return processElements(reduceFn);
+  }
+
+  private <OutputT> int processElements(
+      SystemReduceFn<String, Long, ?, OutputT, IntervalWindow> reduceFn) throws Exception {
+    @SuppressWarnings("unchecked")
+    WindowingInternals<?, KV<String, OutputT>> internals =
+        (WindowingInternals<?, KV<String, OutputT>>) (WindowingInternals<?, ?>) windowingInternals;
+    BatchTimerInternals timerInternals = new BatchTimerInternals(new Instant(0L));
+    ReduceFnRunner<String, Long, OutputT, IntervalWindow> runner =
+        new ReduceFnRunner<>(
+            KEY,
+            windowingStrategy,
+            InMemoryStateInternals.forKey(KEY),
+            timerInternals,
+            internals,
+            droppedDueToClosedWindow,
+            reduceFn,
+            options);
+    windowingInternals.outputs = 0;
+    runner.processElements(elements);
+    timerInternals.advanceInputWatermark(runner, BoundedWindow.TIMESTAMP_MAX_VALUE);
+    runner.persist();
+    return windowingInternals.outputs;
+  }
+
+  private static class StubAssignContext extends WindowFn<Object, IntervalWindow>.AssignContext {
+    private final Instant timestamp;
+
+    private StubAssignContext(WindowFn<Object, IntervalWindow> windowFn, Instant timestamp) {
+      windowFn.super();
+      this.timestamp = timestamp;
+    }
+
+    @Override
+    public Object element() {
+      return null;
+    }
+
+    @Override
+    public Instant timestamp() {
+      return timestamp;
+    }
+
+    @Override
+    public BoundedWindow window() {
+      return GlobalWindow.INSTANCE;
+    }
+  }
+
+  /**
+   * A {@link WindowingInternals} which counts the values output by the {@link ReduceFnRunner}.
+   */
+  private static class CountingWindowingInternals implements WindowingInternals<Object, Object> {
+    private int outputs = 0;
+
+    @Override
+    public StateInternals<?> stateInternals() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void outputWindowedValue(
+        Object output,
+        Instant timestamp,
+        Collection<? extends BoundedWindow> windows,
+        PaneInfo pane) {
+      outputs++;
+    }
+
+    @Override
+    public TimerInternals timerInternals() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<? extends BoundedWindow> windows() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PaneInfo pane() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void writePCollectionViewData(
+        TupleTag<?> tag, Iterable<WindowedValue<T>> data, Coder<T> elemCoder) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> T sideInput(PCollectionView<T> view, BoundedWindow mainInputWindow) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class NoopAggregator implements Aggregator<Long, Long> {
+    @Override
+    public void addValue(Long value) {}
+
+    @Override
+    public String getName() {
+      return "droppedDueToClosedWindow";
+    }
+
+    @Override
+    public CombineFn<Long, ?, Long> getCombineFn() {
+      return new Sum.SumLongFn();
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks.util;
+
+import org.apache.beam.sdk.util.ExposedByteArrayInputStream;
+import org.apache.beam.sdk.util.ExposedByteArrayOutputStream;
+import org.apache.beam.sdk.util.VarInt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Benchmarks for {@link VarInt}.
+ *
+ * <p>The parameter values encode to 1, 2, 5 and 10 bytes respectively. The bulk benchmarks encode
+ * and decode {@link #BULK_SIZE} copies of the value.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class VarIntBenchmark {
+  static final int BULK_SIZE = 1000;
+
+  @Param({"1", "300", "2000000000", "-1"})
+  long value;
+
+  ByteArrayOutputStream outStream;
+  ByteArrayInputStream encodedInt;
+  ByteArrayInputStream encodedLong;
+  ExposedByteArrayOutputStream exposedOutStream;
+  ExposedByteArrayInputStream exposedEncodedLong;
+  byte[] buf;
+  long[] values;
+  long[] decodedValues;
+  byte[] encodedValues;
+
+  @Setup
+  public void setUp() throws IOException {
+    outStream = new ByteArrayOutputStream();
+    exposedOutStream = new ExposedByteArrayOutputStream();
+    buf = new byte[VarInt.MAX_LONG_LENGTH];
+    values = new long[BULK_SIZE];
+    Arrays.fill(values, value);
+    decodedValues = new long[BULK_SIZE];
+    encodedValues = new byte[VarInt.getLength(values)];
+    VarInt.encode(values, encodedValues, 0);
+
+    VarInt.encode((int) value, outStream);
+    encodedInt = new ByteArrayInputStream(outStream.toByteArray());
+
+    outStream.reset();
+    VarInt.encode(value, outStream);
+    encodedLong = new ByteArrayInputStream(outStream.toByteArray());
+    exposedEncodedLong = new ExposedByteArrayInputStream(outStream.toByteArray());
+  }
+
+  @Benchmark
+  public int encodeInt() throws IOException {
+    outStream.reset();
+    VarInt.encode((int) value, outStream);
+    return outStream.size();
+  }
+
+  @Benchmark
+  public int encodeLong() throws IOException {
+    outStream.reset();
+    VarInt.encode(value, outStream);
+    return outStream.size();
+  }
+
+  @Benchmark
+  public int decodeInt() throws IOException {
+    encodedInt.reset();
+    return VarInt.decodeInt(encodedInt);
+  }
+
+  @Benchmark
+  public long decodeLong() throws IOException {
+    encodedLong.reset();
+    return VarInt.decodeLong(encodedLong);
+  }
+
+  @Benchmark
+  public int encodeLongToExposedStream() throws IOException {
+    exposedOutStream.reset();
+    VarInt.encode(value, exposedOutStream);
+    return exposedOutStream.size();
+  }
+
+  @Benchmark
+  public long decodeLongFromExposedStream() throws IOException {
+    exposedEncodedLong.reset();
+    return VarInt.decodeLong(exposedEncodedLong);
+  }
+
+  @Benchmark
+  public int encodeLongToArray() {
+    return VarInt.encode(value, buf, 0);
+  }
+
+  @Benchmark
+  public int encodeLongsToStream() throws IOException {
+    outStream.reset();
+    for (long v : values) {
+      VarInt.encode(v, outStream);
+    }
+    return outStream.size();
+  }
+
+  @Benchmark
+  public int encodeLongsToArray() {
+    return VarInt.encode(values, encodedValues, 0);
+  }
+
+  @Benchmark
+  public long[] decodeLongsFromArray() throws IOException {
+    VarInt.decode(encodedValues, 0, encodedValues.length, decodedValues);
+    return decodedValues;
+  }
+
+  @Benchmark
+  public int getLength() {
+    return VarInt.getLength(value);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.microbenchmarks;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import org.apache.beam.sdk.microbenchmarks.CompareBenchmarkResults.Result;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Tests for {@link CompareBenchmarkResults}.
+ */
+@RunWith(JUnit4.class)
+public class CompareBenchmarkResultsTest {
+  private static final String BENCHMARK = "Benchmark.method (avgt)";
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+  @Test
+  public void slowerBeyondThresholdAndErrorIsRegression() {
+    assertEquals(1, compare(avgt(100.0, 1.0), avgt(120.0, 1.0)));
+    assertThat(output(), containsString("REGRESSION"));
+  }
+
+  @Test
+  public void slowerWithinThresholdIsNotRegression() {
+    assertEquals(0, compare(avgt(100.0, 1.0), avgt(105.0, 1.0)));
+    assertThat(output(), not(containsString("REGRESSION")));
+  }
+
+  @Test
+  public void slowerWithinErrorIsNotRegression() {
+    assertEquals(0, compare(avgt(100.0, 10.0), avgt(120.0, 15.0)));
+    assertThat(output(), containsString("within error"));
+  }
+
+  @Test
+  public void fasterBeyondThresholdIsImprovement() {
+    assertEquals(0, compare(avgt(100.0, 1.0), avgt(80.0, 1.0)));
+    assertThat(output(), containsString("improved"));
+  }
+
+  @Test
+  public void lowerThroughputIsRegression() {
+    Result baseline = new Result("thrpt", 100.0, 1.0, "ops/s", 3, 10);
+    Result current = new Result("thrpt", 80.0, 1.0, "ops/s", 3, 10);
+    assertEquals(1, compare(baseline, current));
+  }
+
+  @Test
+  public void resultWithoutErrorUsesItsScore() {
+    Result baseline = new Result("avgt", 100.0, Double.NaN, "ns/op", 3, 10);
+    assertEquals(1, compare(baseline, avgt(120.0, 1.0)));
+  }
+
+  @Test
+  public void fewSamplesAreFlagged() {
+    Result fewForks = new Result("avgt", 100.0, 1.0, "ns/op", 1, 10);
+    Result fewIterations = new Result("avgt", 100.0, 1.0, "ns/op", 3, 5);
+    compare(fewForks, avgt(100.0, 1.0));
+    compare(avgt(100.0, 1.0), fewIterations);
+    assertThat(output(), containsString("too few samples"));
+    assertEquals(2, output().split("too few samples", -1).length - 1);
+  }
+
+  @Test
+  public void differentUnitsAreNotCompared() {
+    Result current = new Result("avgt", 200.0, 1.0, "us/op", 3, 10);
+    assertEquals(0, compare(avgt(100.0, 1.0), current));
+    assertThat(output(), containsString("unit mismatch"));
+  }
+
+  @Test
+  public void newAndMissingBenchmarksAreReported() {
+    Map<String, Result> baseline =
+        Collections.singletonMap("Old.method (avgt)", avgt(100.0, 1.0));
+    Map<String, Result> current =
+        Collections.singletonMap("New.method (avgt)", avgt(100.0, 1.0));
+    assertEquals(
+        0, CompareBenchmarkResults.compare(baseline, current, 0.10, new PrintStream(output)));
+    assertThat(output(), containsString("new"));
+    assertThat(output(), containsString("missing"));
+  }
+
+  @Test
+  public void readResultsKeysByNameParamsAndMode() throws Exception {
+    File file = tmp.newFile("results.json");
+    String json =
+        "[{\"benchmark\":\"Benchmark.method\",\"mode\":\"avgt\",\"forks\":3,"
+            + "\"measurementIterations\":10,\"params\":{\"size\":\"10\",\"nested\":\"true\"},"
+            + "\"primaryMetric\":{\"score\":100.0,\"scoreError\":1.0,\"scoreUnit\":\"ns/op\"}}]";
+    Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+
+    Map<String, Result> results = CompareBenchmarkResults.readResults(file);
+    String key = "Benchmark.method[nested=true, size=10] (avgt)";
+    assertEquals(Collections.singleton(key), results.keySet());
+    assertEquals(
+        1,
+        CompareBenchmarkResults.compare(
+            results,
+            Collections.singletonMap(key, avgt(120.0, 1.0)),
+            0.10,
+            new PrintStream(output)));
+  }
+
+  private static Result avgt(double score, double error) {
+    return new Result("avgt", score, error, "ns/op", 3, 10);
+  }
+
+  private int compare(Result baseline, Result current) {
+    return CompareBenchmarkResults.compare(
+        Collections.singletonMap(BENCHMARK, baseline),
+        Collections.singletonMap(BENCHMARK, current),
+        0.10,
+        new PrintStream(output));
+  }
+
+  private String output() {
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+}